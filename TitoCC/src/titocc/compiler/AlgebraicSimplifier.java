@@ -0,0 +1,155 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Simplifies arithmetic instructions that have a constant immediate operand. Identities like
+ * "add V1, =0" and "mul V1, =1" are removed, operations with a constant result like "mul V1, =0"
+ * are replaced with loads, and multiplication, division and modulo by powers of two are replaced
+ * with shifts and masks.
+ *
+ * <p> TTK-91 "div" and "mod" are signed and round towards zero, so a negative dividend is biased
+ * by 2^k - 1 before shifting. For example "div V1, =4" becomes
+ *
+ * <br> load V2, V1
+ * <br> shra V2, =31
+ * <br> shr V2, =30
+ * <br> add V1, V2
+ * <br> shra V1, =2
+ */
+class AlgebraicSimplifier
+{
+	/**
+	 * Instructions that have no effect when the operand is zero.
+	 */
+	private static final Set<String> zeroIdentities = new HashSet<String>(
+			Arrays.asList("add", "sub", "or", "xor", "shl", "shr", "shra"));
+
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Constructs the simplifier.
+	 *
+	 * @param instructions instruction list; modified in place
+	 */
+	AlgebraicSimplifier(List<Instruction> instructions)
+	{
+		this.instructions = instructions;
+	}
+
+	/**
+	 * Simplifies all instructions.
+	 *
+	 * @return true if any instructions were changed
+	 */
+	boolean apply()
+	{
+		List<Instruction> result = new ArrayList<Instruction>(instructions.size());
+		boolean changed = false;
+		for (Instruction instr : instructions) {
+			List<Instruction> replacement = simplify(instr);
+			if (replacement == null) {
+				result.add(instr);
+				continue;
+			}
+			replacement.get(0).label = instr.label;
+			result.addAll(replacement);
+			changed = true;
+		}
+
+		if (changed) {
+			instructions.clear();
+			instructions.addAll(result);
+		}
+		return changed;
+	}
+
+	/**
+	 * Get the simplified instructions that replace an instruction.
+	 *
+	 * @return list of new instructions or null if the instruction can't be simplified
+	 */
+	private static List<Instruction> simplify(Instruction instr)
+	{
+		Integer operand = getConstantOperand(instr);
+		if (operand == null)
+			return null;
+
+		String op = instr.mnemonic;
+		VirtualRegister reg = instr.leftReg;
+		int value = operand;
+		List<Instruction> ret = new ArrayList<Instruction>();
+		if ((value == 0 && zeroIdentities.contains(op))
+				|| (value == 1 && (op.equals("mul") || op.equals("div")))
+				|| (value == -1 && op.equals("and"))) {
+			ret.add(new Instruction(null, "nop"));
+		} else if ((value == 0 && (op.equals("mul") || op.equals("and")))
+				|| ((value == 1 || value == -1) && op.equals("mod"))) {
+			ret.add(emit("load", reg, 0));
+		} else if (value > 1 && Integer.bitCount(value) == 1 && op.equals("mul")) {
+			ret.add(emit("shl", reg, Integer.numberOfTrailingZeros(value)));
+		} else if (value > 1 && Integer.bitCount(value) == 1 && op.equals("div")) {
+			int shift = Integer.numberOfTrailingZeros(value);
+			VirtualRegister bias = compileNegativeBias(ret, reg, shift);
+			ret.add(new Instruction(null, "add", reg, 0, null, bias));
+			ret.add(emit("shra", reg, shift));
+		} else if (value != Integer.MIN_VALUE && Integer.bitCount(Math.abs(value)) == 1
+				&& op.equals("mod")) {
+			// Sign of the remainder follows the dividend, so the sign of divisor is ignored.
+			int shift = Integer.numberOfTrailingZeros(Math.abs(value));
+			VirtualRegister bias = compileNegativeBias(ret, reg, shift);
+			ret.add(new Instruction(null, "add", reg, 0, null, bias));
+			ret.add(emit("and", reg, Math.abs(value) - 1));
+			ret.add(new Instruction(null, "sub", reg, 0, null, bias));
+		} else
+			return null;
+
+		return ret;
+	}
+
+	/**
+	 * Adds instructions that compute 2^shift - 1 to a new register if the value of reg is
+	 * negative, and 0 otherwise.
+	 *
+	 * @return register holding the bias
+	 */
+	private static VirtualRegister compileNegativeBias(List<Instruction> instrs,
+			VirtualRegister reg, int shift)
+	{
+		VirtualRegister bias = new VirtualRegister();
+		instrs.add(new Instruction(null, "load", bias, 0, null, reg));
+		if (shift > 1)
+			instrs.add(emit("shra", bias, 31));
+		instrs.add(emit("shr", bias, 32 - shift));
+		return bias;
+	}
+
+	private static Instruction emit(String mnemonic, VirtualRegister reg, int value)
+	{
+		return new Instruction(null, mnemonic, reg, 0, Integer.toString(value), null);
+	}
+
+	/**
+	 * Get the value of immediate constant operand.
+	 *
+	 * @return the value or null if the operand is not an integer constant
+	 */
+	private static Integer getConstantOperand(Instruction instr)
+	{
+		if (instr.rightReg != null || instr.getRealAddressingMode() != 0
+				|| instr.getImmediateValue() == null)
+			return null;
+		try {
+			return Integer.parseInt(instr.getImmediateValue());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -2,14 +2,49 @@ package titocc.compiler;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Formats and writes individual instructions to the output stream. Currently just outputs symbolic
  * assembly language (.k91 format) but this could maybe be changed to machine code (.b91) if
  * necessary.
+ *
+ * <p> The output can be divided into sections, e.g. one for each function and global object.
+ * Sections are kept in memory until finish() is called, and only the sections that are reachable
+ * from the output written before the first section are written out. A section is reachable if
+ * some reachable code refers to a label defined in it. Sections that define no labels are always
+ * kept.
  */
 public class Assembler
 {
+	/**
+	 * Part of the output that is removed if it is not referenced.
+	 */
+	private static class Section
+	{
+		/**
+		 * Output text of the section.
+		 */
+		final StringBuilder text = new StringBuilder();
+
+		/**
+		 * Labels defined in the section.
+		 */
+		final Set<String> labels = new HashSet<String>();
+
+		/**
+		 * Names referenced by the operands of the section.
+		 */
+		final Set<String> references = new HashSet<String>();
+	}
+
 	/**
 	 * Writer object for outputting the instructions.
 	 */
@@ -20,6 +55,21 @@ public class Assembler
 	 */
 	private String label = "";
 
+	/**
+	 * All sections in output order.
+	 */
+	private final List<Section> sections = new ArrayList<Section>();
+
+	/**
+	 * Section that receives the output, or null if output is written directly.
+	 */
+	private Section section = null;
+
+	/**
+	 * Names referenced by the output written before the first section.
+	 */
+	private final Set<String> rootReferences = new HashSet<String>();
+
 	/**
 	 * Constructs a new assembler object.
 	 *
@@ -39,7 +89,8 @@ public class Assembler
 	 */
 	public void emit(String instruction, String operand) throws IOException
 	{
-		writer.append(String.format("%-11s %-7s %s\n", label, instruction, operand));
+		write(String.format("%-11s %-7s %s\n", label, instruction, operand));
+		addReference(operand);
 		label = "";
 	}
 
@@ -54,7 +105,8 @@ public class Assembler
 	public void emit(String instruction, Register reg, String operand2) throws IOException
 	{
 		String fmt = "%-11s %-7s %s, %s\n";
-		writer.append(String.format(fmt, label, instruction, reg.toString(), operand2));
+		write(String.format(fmt, label, instruction, reg.toString(), operand2));
+		addReference(operand2);
 		label = "";
 	}
 
@@ -67,7 +119,21 @@ public class Assembler
 	public void addEmptyLines(int n) throws IOException
 	{
 		for (int i = 0; i < n; ++i)
-			writer.append('\n');
+			write("\n");
+	}
+
+	/**
+	 * Starts a new section. The following output belongs to the section until the next section is
+	 * started.
+	 *
+	 * @throws IOException if writer throws
+	 */
+	public void beginSection() throws IOException
+	{
+		if (!this.label.isEmpty())
+			emit("nop", "");
+		section = new Section();
+		sections.add(section);
 	}
 
 	/**
@@ -81,10 +147,13 @@ public class Assembler
 		if (!this.label.isEmpty())
 			emit("nop", "");
 		this.label = label;
+		if (section != null)
+			section.labels.add(label);
 	}
 
 	/**
 	 * Emits a "nop" instruction in the end if there is a label without a corresponding instruction.
+	 * Then writes the sections that are reachable from the output outside sections.
 	 *
 	 * @throws IOException if writer throws
 	 */
@@ -92,6 +161,68 @@ public class Assembler
 	{
 		if (!this.label.isEmpty())
 			emit("nop", "");
+
+		Map<String, Section> definingSections = new HashMap<String, Section>();
+		for (Section s : sections) {
+			for (String l : s.labels)
+				definingSections.put(l, s);
+		}
+
+		Set<Section> reachable = new HashSet<Section>();
+		Deque<String> names = new ArrayDeque<String>(rootReferences);
+		while (!names.isEmpty()) {
+			Section s = definingSections.get(names.pop());
+			if (s != null && reachable.add(s))
+				names.addAll(s.references);
+		}
+
+		for (Section s : sections) {
+			if (reachable.contains(s) || s.labels.isEmpty())
+				writer.append(s.text);
+		}
+		sections.clear();
+		section = null;
+	}
+
+	private void write(String text) throws IOException
+	{
+		if (section != null)
+			section.text.append(text);
+		else
+			writer.append(text);
+	}
+
+	/**
+	 * Records the label referenced by an operand.
+	 */
+	private void addReference(String operand)
+	{
+		String name = getReferencedName(operand);
+		if (name == null)
+			return;
+		if (section != null)
+			section.references.add(name);
+		else
+			rootReferences.add(name);
+	}
+
+	/**
+	 * Returns the name referenced by an operand, e.g. "x" in "=x", "@x" or "x(FP)".
+	 *
+	 * @param operand instruction operand
+	 * @return the name or null if the operand doesn't refer to a name
+	 */
+	static String getReferencedName(String operand)
+	{
+		String name = operand;
+		if (name.startsWith("=") || name.startsWith("@"))
+			name = name.substring(1);
+		int parenIdx = name.indexOf('(');
+		if (parenIdx >= 0)
+			name = name.substring(0, parenIdx);
+		if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_'))
+			return null;
+		return name;
 	}
 
 	/**
@@ -0,0 +1,182 @@
+package titocc.compiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assembler that records the output instead of writing it. The recorded output can be written to
+ * other assemblers any number of times, replacing the names of labels with different names on
+ * each instantiation. Used for code that is compiled once but emitted to several programs with
+ * their own globally unique names.
+ */
+class AssemblyTemplate extends Assembler
+{
+	/**
+	 * Kinds of recorded operations.
+	 */
+	private enum Kind
+	{
+		SECTION, EMPTY_LINES, LABEL, INSTRUCTION
+	}
+
+	/**
+	 * A recorded call to the assembler.
+	 */
+	private static class Operation
+	{
+		final Kind kind;
+
+		/**
+		 * Mnemonic of an instruction, the label, or the number of empty lines.
+		 */
+		final String text;
+
+		/**
+		 * Register operand, or null if the instruction has a single operand.
+		 */
+		final Register register;
+
+		/**
+		 * Last operand of an instruction.
+		 */
+		final String operand;
+
+		Operation(Kind kind, String text, Register register, String operand)
+		{
+			this.kind = kind;
+			this.text = text;
+			this.register = register;
+			this.operand = operand;
+		}
+	}
+
+	/**
+	 * Recorded operations in output order.
+	 */
+	private final List<Operation> operations = new ArrayList<Operation>();
+
+	/**
+	 * Labels in the order of definition.
+	 */
+	private final Set<String> labels = new LinkedHashSet<String>();
+
+	/**
+	 * Names referenced by the operands.
+	 */
+	private final Set<String> references = new LinkedHashSet<String>();
+
+	/**
+	 * Constructs an empty template.
+	 */
+	AssemblyTemplate()
+	{
+		super(null);
+	}
+
+	@Override
+	public void emit(String instruction, String operand)
+	{
+		operations.add(new Operation(Kind.INSTRUCTION, instruction, null, operand));
+		addReference(operand);
+	}
+
+	@Override
+	public void emit(String instruction, Register reg, String operand2)
+	{
+		operations.add(new Operation(Kind.INSTRUCTION, instruction, reg, operand2));
+		addReference(operand2);
+	}
+
+	@Override
+	public void addEmptyLines(int n)
+	{
+		operations.add(new Operation(Kind.EMPTY_LINES, Integer.toString(n), null, null));
+	}
+
+	@Override
+	public void beginSection()
+	{
+		operations.add(new Operation(Kind.SECTION, null, null, null));
+	}
+
+	@Override
+	public void addLabel(String label)
+	{
+		operations.add(new Operation(Kind.LABEL, label, null, null));
+		labels.add(label);
+	}
+
+	@Override
+	public void finish()
+	{
+	}
+
+	/**
+	 * Returns the labels defined in the template.
+	 *
+	 * @return set of labels in the order of definition
+	 */
+	Set<String> getLabels()
+	{
+		return Collections.unmodifiableSet(labels);
+	}
+
+	/**
+	 * Returns the names referenced by the operands, including references to the labels of the
+	 * template itself.
+	 *
+	 * @return set of referenced names
+	 */
+	Set<String> getReferences()
+	{
+		return Collections.unmodifiableSet(references);
+	}
+
+	/**
+	 * Writes the recorded output to an assembler.
+	 *
+	 * @param asm assembler that receives the output
+	 * @param renamed new names for labels and referenced names; names not in the map are kept
+	 * @throws IOException if assembler throws
+	 */
+	void instantiate(Assembler asm, Map<String, String> renamed) throws IOException
+	{
+		for (Operation op : operations) {
+			if (op.kind == Kind.SECTION) {
+				asm.beginSection();
+			} else if (op.kind == Kind.EMPTY_LINES) {
+				asm.addEmptyLines(Integer.parseInt(op.text));
+			} else if (op.kind == Kind.LABEL) {
+				asm.addLabel(rename(op.text, op.text, renamed));
+			} else {
+				String operand = rename(op.operand, getReferencedName(op.operand), renamed);
+				if (op.register != null)
+					asm.emit(op.text, op.register, operand);
+				else
+					asm.emit(op.text, operand);
+			}
+		}
+	}
+
+	private void addReference(String operand)
+	{
+		String name = getReferencedName(operand);
+		if (name != null)
+			references.add(name);
+	}
+
+	private static String rename(String operand, String name, Map<String, String> renamed)
+	{
+		String newName = name != null ? renamed.get(name) : null;
+		if (newName == null)
+			return operand;
+		int nameIdx = operand.indexOf(name);
+		return operand.substring(0, nameIdx) + newName
+				+ operand.substring(nameIdx + name.length());
+	}
+}
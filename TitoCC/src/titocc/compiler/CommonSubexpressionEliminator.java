@@ -0,0 +1,345 @@
+package titocc.compiler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Eliminates redundant computations using value numbering. Values are numbered over extended
+ * basic blocks, i.e. the numbering continues from a block to the next one if the previous block is
+ * its only predecessor (e.g. after a conditional jump). When an instruction computes a value that
+ * is still held in another virtual register, the instruction is replaced with a register copy, and
+ * later reads of registers are replaced with the first register holding the same value. The
+ * copies and the instructions computing operands for the removed computations are then typically
+ * removed by dead code elimination.
+ *
+ * <p> Values loaded from memory are invalidated conservatively by any instruction that may write
+ * to memory (store, call, push, pop).
+ *
+ * <p> Because most instructions modify their LHS register in place, values would usually be
+ * destroyed before they can be reused. Therefore registers are first renamed so that every load
+ * instruction defines a new virtual register when it is possible to do so without copying.
+ */
+class CommonSubexpressionEliminator
+{
+	/**
+	 * Instructions that compute a new value from LHS and RHS and store it in LHS register.
+	 */
+	private static final Set<String> arithmeticInstructions = new HashSet<String>(
+			Arrays.asList("add", "sub", "mul", "div", "mod", "and", "or", "xor", "shl", "shr",
+			"shra"));
+
+	/**
+	 * Arithmetic instructions whose operands can be swapped.
+	 */
+	private static final Set<String> commutativeInstructions = new HashSet<String>(
+			Arrays.asList("add", "mul", "and", "or", "xor"));
+
+	/**
+	 * Instructions that may write to memory.
+	 */
+	private static final Set<String> memoryWrites = new HashSet<String>(
+			Arrays.asList("store", "call", "push", "pop"));
+
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	private final String endLabel;
+
+	/**
+	 * Value numbers for expressions.
+	 */
+	private final Map<String, Integer> valueNumbers = new HashMap<String, Integer>();
+
+	/**
+	 * Value numbers currently held in registers.
+	 */
+	private final Map<VirtualRegister, Integer> registerValues =
+			new HashMap<VirtualRegister, Integer>();
+
+	/**
+	 * First register that was assigned each value number. The register is only valid as long as
+	 * it still holds the same value.
+	 */
+	private final Map<Integer, VirtualRegister> valueHolders =
+			new HashMap<Integer, VirtualRegister>();
+
+	/**
+	 * Version number that is incremented on every memory write.
+	 */
+	private int memoryVersion = 0;
+
+	/**
+	 * Counter for generating unique value numbers.
+	 */
+	private int nextValueNumber = 0;
+
+	/**
+	 * Constructs the eliminator.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	CommonSubexpressionEliminator(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+	}
+
+	/**
+	 * Applies the optimization.
+	 *
+	 * @return true if any instruction was replaced
+	 */
+	boolean apply()
+	{
+		renameRegisters();
+
+		FlowGraph graph = new FlowGraph(instructions, endLabel);
+		boolean changed = false;
+		for (int i = 0; i < instructions.size(); ++i) {
+			if (!graph.continuesBlock(i)) {
+				valueNumbers.clear();
+				registerValues.clear();
+				valueHolders.clear();
+			}
+			changed |= numberValues(i);
+		}
+		return changed;
+	}
+
+	/**
+	 * Gives each load instruction its own destination register. The old register is replaced
+	 * with the new one up to the next instruction that overwrites the register, as long as the
+	 * value is not used outside that range.
+	 */
+	private void renameRegisters()
+	{
+		FlowGraph graph = new FlowGraph(instructions, endLabel);
+		LivenessAnalysis liveness = new LivenessAnalysis(instructions, graph);
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			VirtualRegister reg = getOverwrittenRegister(instr);
+			if (reg == null || reg.realRegister != null)
+				continue;
+
+			int end = findRenamingRangeEnd(graph, liveness, i, reg);
+			if (end < 0)
+				continue;
+
+			VirtualRegister newReg = new VirtualRegister();
+			if (instr.mnemonic.equals("pop"))
+				instr.rightReg = newReg;
+			else
+				instr.leftReg = newReg;
+			for (int j = i + 1; j < end; ++j)
+				replaceRegister(instructions.get(j), reg, newReg);
+			// Last instruction overwrites the register but may also read it.
+			if (end < instructions.size() && instructions.get(end).rightReg == reg
+					&& !instructions.get(end).mnemonic.equals("pop"))
+				instructions.get(end).rightReg = newReg;
+		}
+	}
+
+	/**
+	 * Finds the next instruction that overwrites a register within the same extended basic
+	 * block, checking that the value defined by instruction at idx is not used outside the range.
+	 *
+	 * @return end index (exclusive) or -1 if the register cannot be renamed
+	 */
+	private int findRenamingRangeEnd(FlowGraph graph, LivenessAnalysis liveness, int idx,
+			VirtualRegister reg)
+	{
+		for (int i = idx + 1; i < instructions.size(); ++i) {
+			if (!graph.continuesBlock(i))
+				return liveness.isLiveBefore(i, reg) ? -1 : i;
+
+			Instruction instr = instructions.get(i);
+			if (getOverwrittenRegister(instr) == reg)
+				return i;
+
+			for (String targetLabel : instr.getJumpTargets()) {
+				int target = graph.getLabelPosition(targetLabel);
+				if (liveness.isLiveBefore(target, reg))
+					return -1;
+			}
+		}
+		return instructions.size();
+	}
+
+	/**
+	 * Get the register whose value is completely replaced by the instruction.
+	 */
+	private static VirtualRegister getOverwrittenRegister(Instruction instr)
+	{
+		if (instr.mnemonic.equals("pop"))
+			return instr.rightReg;
+		if (instr.leftReg != null && instr.discardsLhs())
+			return instr.leftReg;
+		return null;
+	}
+
+	private static void replaceRegister(Instruction instr, VirtualRegister oldReg,
+			VirtualRegister newReg)
+	{
+		if (instr.leftReg == oldReg)
+			instr.leftReg = newReg;
+		if (instr.rightReg == oldReg)
+			instr.rightReg = newReg;
+	}
+
+	/**
+	 * Updates value numbers for a single instruction and replaces the computation with a copy if
+	 * the value is already available.
+	 */
+	private boolean numberValues(int idx)
+	{
+		Instruction instr = instructions.get(idx);
+		if (instr.isPseudoInstruction() || instr.mnemonic.equals("nop"))
+			return false;
+
+		propagateCopies(instr);
+
+		boolean replaced = false;
+		if (instr.mnemonic.equals("load") && instr.leftReg.realRegister == null) {
+			int value = getOperandValue(instr);
+			// Loads of constants and variables are not replaced, because they can be merged into
+			// the instruction that uses the value, which is cheaper than keeping the value in a
+			// register.
+			if (instr.isConstantLoad(0) || instr.isConstantLoad(1)) {
+				registerValues.put(instr.leftReg, value);
+			} else {
+				replaced = replaceWithCopy(idx, value);
+				setRegisterValue(instr.leftReg, value);
+			}
+		} else if (arithmeticInstructions.contains(instr.mnemonic)
+				&& instr.leftReg.realRegister == null) {
+			int lhsValue = getRegisterValue(instr.leftReg);
+			int rhsValue = getOperandValue(instr);
+			if (commutativeInstructions.contains(instr.mnemonic) && lhsValue > rhsValue) {
+				int tmp = lhsValue;
+				lhsValue = rhsValue;
+				rhsValue = tmp;
+			}
+			int value = getValueNumber(instr.mnemonic + " " + lhsValue + " " + rhsValue);
+			replaced = replaceWithCopy(idx, value);
+			setRegisterValue(instr.leftReg, value);
+		} else {
+			VirtualRegister modifiedReg = instr.getModifiedRegister();
+			if (modifiedReg != null)
+				setRegisterValue(modifiedReg, newValueNumber());
+		}
+
+		if (memoryWrites.contains(instr.mnemonic))
+			++memoryVersion;
+
+		return replaced;
+	}
+
+	/**
+	 * Replaces registers that are only read by the instruction with the first register holding
+	 * the same value.
+	 */
+	private void propagateCopies(Instruction instr)
+	{
+		if (instr.rightReg != null && !instr.mnemonic.equals("pop"))
+			instr.rightReg = getLeader(instr.rightReg);
+		if (instr.leftReg != null && instr.getModifiedRegister() != instr.leftReg)
+			instr.leftReg = getLeader(instr.leftReg);
+	}
+
+	private VirtualRegister getLeader(VirtualRegister reg)
+	{
+		if (reg.realRegister != null)
+			return reg;
+		Integer value = registerValues.get(reg);
+		if (value == null)
+			return reg;
+		VirtualRegister holder = getHolder(value);
+		return holder != null && holder.realRegister == null ? holder : reg;
+	}
+
+	/**
+	 * Replaces instruction with a register copy if some other register holds the value.
+	 */
+	private boolean replaceWithCopy(int idx, int value)
+	{
+		Instruction instr = instructions.get(idx);
+		VirtualRegister holder = getHolder(value);
+		if (holder == null || holder == instr.leftReg)
+			return false;
+		instructions.set(idx, new Instruction(instr.label, "load", instr.leftReg, 0, null,
+				holder));
+		return true;
+	}
+
+	/**
+	 * Get the value number of the RHS operand. Addressing mode is taken into account, so that
+	 * memory fetches produce values that depend on the memory version.
+	 */
+	private int getOperandValue(Instruction instr)
+	{
+		String imm = instr.getImmediateValue();
+		VirtualRegister reg = instr.rightReg;
+		int value;
+		if (reg != null && (imm == null || imm.equals("0")))
+			value = getRegisterValue(reg);
+		else if (reg != null)
+			value = getValueNumber("=" + imm + "(" + getRegisterValue(reg) + ")");
+		else
+			value = getValueNumber("=" + imm);
+
+		for (int i = 0; i < instr.getRealAddressingMode(); ++i)
+			value = getValueNumber("@" + memoryVersion + " " + value);
+
+		return value;
+	}
+
+	private int getRegisterValue(VirtualRegister reg)
+	{
+		Integer value = registerValues.get(reg);
+		if (value == null) {
+			value = newValueNumber();
+			setRegisterValue(reg, value);
+		}
+		return value;
+	}
+
+	private void setRegisterValue(VirtualRegister reg, int value)
+	{
+		registerValues.put(reg, value);
+		if (getHolder(value) == null)
+			valueHolders.put(value, reg);
+	}
+
+	private VirtualRegister getHolder(int value)
+	{
+		VirtualRegister holder = valueHolders.get(value);
+		if (holder == null || !registerValues.get(holder).equals(value))
+			return null;
+		return holder;
+	}
+
+	private int getValueNumber(String expression)
+	{
+		Integer value = valueNumbers.get(expression);
+		if (value == null) {
+			value = newValueNumber();
+			valueNumbers.put(expression, value);
+		}
+		return value;
+	}
+
+	private int newValueNumber()
+	{
+		return nextValueNumber++;
+	}
+}
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import titocc.compiler.elements.TranslationUnit;
+import titocc.compiler.types.CType;
+import titocc.compiler.types.FunctionType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.Tokenizer;
 import titocc.util.Position;
@@ -74,7 +76,10 @@ public class Compiler
 		intrinsics.declare(scope);
 		translationUnit.compile(asm, scope);
 		intrinsics.define(asm, scope);
+		scope.getStringPool().define(asm);
+		scope.getConstantPool().define(asm);
 		checkDefinitions(asm, scope);
+		defineStackCallWrappers(asm, scope);
 		asm.finish();
 	}
 
@@ -117,6 +122,7 @@ public class Compiler
 				continue;
 
 			if (s.hasTentativeDefinition()) {
+				asm.beginSection();
 				asm.addEmptyLines(1);
 				asm.addLabel(s.getGlobalName());
 				asm.emit("ds", Integer.toString(s.getType().getSize()));
@@ -130,4 +136,36 @@ public class Compiler
 		for (Scope subScope : scope.getSubScopes())
 			checkDefinitions(asm, subScope);
 	}
+
+	/**
+	 * Defines wrapper functions for functions with register calling convention whose address is
+	 * used. The wrapper is called with the standard calling convention, i.e. the return value is
+	 * returned in a stack slot reserved by the caller. It passes the arguments on and stores the
+	 * return value from register to the stack slot.
+	 */
+	private void defineStackCallWrappers(Assembler asm, Scope scope) throws IOException
+	{
+		for (Symbol s : scope.getSymbols()) {
+			String wrapperName = s.getStackCallWrapperName();
+			if (wrapperName == null || s.getLinkedSymbol() != null)
+				continue;
+
+			FunctionType funcType = (FunctionType) s.getType();
+			int paramTotalSize = 0;
+			for (CType paramType : funcType.getParameterTypes())
+				paramTotalSize += paramType.getSize();
+
+			asm.beginSection();
+			asm.addEmptyLines(1);
+			asm.addLabel(wrapperName);
+			for (int i = 0; i < paramTotalSize; ++i)
+				asm.emit("push", Register.SP, (i - 1 - paramTotalSize) + "(FP)");
+			asm.emit("call", Register.SP, s.getReference());
+			if (!funcType.getReturnType().equals(CType.VOID)) {
+				asm.emit("store", IntermediateCompiler.RETURN_VALUE_REG.realRegister,
+						(-2 - paramTotalSize) + "(FP)");
+			}
+			asm.emit("exit", Register.SP, "=" + paramTotalSize);
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package titocc.compiler;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Static storage for the integer constants of a translation unit that don't fit in the 16-bit
+ * immediate operand. Each distinct value is stored once, and the constants are emitted after all
+ * functions so that no data is placed between instructions.
+ */
+public class ConstantPool
+{
+	/**
+	 * Global scope used for generating the labels.
+	 */
+	private final Scope scope;
+
+	/**
+	 * Labels of the pooled constants in insertion order.
+	 */
+	private final Map<Integer, String> labels = new LinkedHashMap<Integer, String>();
+
+	/**
+	 * Constructs an empty ConstantPool.
+	 *
+	 * @param scope global scope
+	 */
+	public ConstantPool(Scope scope)
+	{
+		this.scope = scope;
+	}
+
+	/**
+	 * Adds a constant to the pool unless it exists already.
+	 *
+	 * @param value constant value
+	 * @return label of the constant
+	 */
+	public String add(int value)
+	{
+		String label = labels.get(value);
+		if (label == null) {
+			label = scope.makeGloballyUniqueName("int");
+			labels.put(value, label);
+		}
+		return label;
+	}
+
+	/**
+	 * Get an RHS operand for a constant. Values that fit in the 16-bit immediate operand are
+	 * used directly, and other values are read from the pool.
+	 *
+	 * @param value constant value
+	 * @return RHS operand
+	 */
+	public String getOperand(int value)
+	{
+		if (value >= -32768 && value < 32768)
+			return "=" + value;
+		return add(value);
+	}
+
+	/**
+	 * Returns the pooled constants.
+	 *
+	 * @return map from constant values to their labels
+	 */
+	Map<Integer, String> getLabels()
+	{
+		return Collections.unmodifiableMap(labels);
+	}
+
+	/**
+	 * Emits the pooled constants.
+	 *
+	 * @param asm assembler used for emitting the data
+	 * @throws IOException if assembler throws
+	 */
+	public void define(Assembler asm) throws IOException
+	{
+		boolean first = true;
+		for (Map.Entry<Integer, String> e : labels.entrySet()) {
+			asm.beginSection();
+			if (first)
+				asm.addEmptyLines(1);
+			first = false;
+			asm.addLabel(e.getValue());
+			asm.emit("dc", e.getKey().toString());
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package titocc.compiler;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes register copies "load V1, V2" by merging the two virtual registers into one when their
+ * values are never needed at the same time. E.g. "load V1, Vx; add V1, =1; load Vx, V1" becomes
+ * "add Vx, =1".
+ *
+ * <p> Registers interfere if one of them is modified (other than by a copy between them) while
+ * the other one is live. Registers that don't interfere can share the same register, so the copy
+ * does nothing and is replaced with a "nop".
+ */
+class CopyCoalescer
+{
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	private final String endLabel;
+
+	/**
+	 * Liveness information for current instructions.
+	 */
+	private LivenessAnalysis liveness;
+
+	/**
+	 * Constructs the coalescer.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	CopyCoalescer(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+	}
+
+	/**
+	 * Coalesces copies until there is nothing left to coalesce. Liveness is recomputed after
+	 * merging registers, so each register is merged at most once per analysis.
+	 *
+	 * @return true if any copies were removed
+	 */
+	boolean apply()
+	{
+		boolean changedAny = false;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			liveness = new LivenessAnalysis(instructions, new FlowGraph(instructions, endLabel));
+			Set<VirtualRegister> merged = new HashSet<VirtualRegister>();
+			for (int i = 0; i < instructions.size(); ++i) {
+				Instruction copy = instructions.get(i);
+				if (!isCopy(copy) || merged.contains(copy.leftReg)
+						|| merged.contains(copy.rightReg))
+					continue;
+				if (copy.leftReg == copy.rightReg) {
+					instructions.set(i, copy.makeNop());
+					changed = true;
+				} else if (!interfere(copy.leftReg, copy.rightReg)) {
+					merged.add(copy.leftReg);
+					merged.add(copy.rightReg);
+					replaceRegister(copy.leftReg, copy.rightReg);
+					instructions.set(i, copy.makeNop());
+					changed = true;
+				}
+			}
+			changedAny |= changed;
+		}
+		return changedAny;
+	}
+
+	/**
+	 * Checks whether the instruction copies a virtual register to another.
+	 */
+	private static boolean isCopy(Instruction instr)
+	{
+		return instr.mnemonic.equals("load") && instr.getRealAddressingMode() == 0
+				&& instr.getImmediateValue() == null && instr.rightReg.realRegister == null
+				&& instr.leftReg.realRegister == null;
+	}
+
+	/**
+	 * Checks whether either register is modified while the other one is live.
+	 */
+	private boolean interfere(VirtualRegister reg1, VirtualRegister reg2)
+	{
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			VirtualRegister def = LivenessAnalysis.getDefinedRegister(instr);
+			if (def != reg1 && def != reg2)
+				continue;
+			VirtualRegister other = def == reg1 ? reg2 : reg1;
+			if (isCopy(instr) && instr.rightReg == other)
+				continue;
+			if (liveness.isLiveAfter(i, other))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces all occurrences of a register with another one.
+	 */
+	private void replaceRegister(VirtualRegister oldReg, VirtualRegister newReg)
+	{
+		for (Instruction instr : instructions) {
+			if (instr.leftReg == oldReg)
+				instr.leftReg = newReg;
+			if (instr.rightReg == oldReg)
+				instr.rightReg = newReg;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package titocc.compiler;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes intermediate instructions that have no effect on the program. Three kinds of dead code
+ * are eliminated:
+ * <br> - instructions that cannot be reached from the function entry (e.g. code after an
+ * unconditional jump that no jump targets),
+ * <br> - jumps to the instruction that would be executed next anyway,
+ * <br> - instructions without side effects whose result register is not live afterwards (e.g.
+ * the value of an expression statement like "i + 1;").
+ *
+ * <p> Removed instructions are replaced with "nop"s so that their labels are preserved. Labels that
+ * are no longer targeted by any jump are removed from the "nop"s afterwards.
+ */
+class DeadCodeEliminator
+{
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	private final String endLabel;
+
+	/**
+	 * Constructs the eliminator.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	DeadCodeEliminator(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+	}
+
+	/**
+	 * Removes dead code until there is nothing left to remove.
+	 *
+	 * @return true if any instructions were removed
+	 */
+	boolean apply()
+	{
+		boolean removedAny = false;
+		boolean removed = true;
+		while (removed) {
+			removed = removeUnreachableCode();
+			removed |= removeRedundantJumps();
+			removed |= removeUnusedResults();
+			removedAny |= removed;
+		}
+		removeUnusedLabels();
+		return removedAny;
+	}
+
+	/**
+	 * Removes executable instructions that are not reachable from function entry. Pseudo
+	 * instructions are kept because they define data.
+	 */
+	private boolean removeUnreachableCode()
+	{
+		boolean[] reachable = new FlowGraph(instructions, endLabel).getReachable();
+		boolean removed = false;
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			if (reachable[i] || instr.isPseudoInstruction())
+				continue;
+			// Labels of unreachable code can only be targeted by unreachable jumps, so they are
+			// removed as well.
+			if (!isRemoved(instr))
+				removed = true;
+			instructions.set(i, new Instruction(null, "nop"));
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes jumps whose target is the instruction that follows the jump.
+	 */
+	private boolean removeRedundantJumps()
+	{
+		FlowGraph graph = new FlowGraph(instructions, endLabel);
+		boolean removed = false;
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			if (!instr.isJumpInstruction() || instr.isTableJump())
+				continue;
+			int target = graph.getLabelPosition(instr.getJumpTargets().get(0));
+			if (graph.getNextExecutable(i + 1) == graph.getNextExecutable(target)) {
+				instructions.set(i, instr.makeNop());
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes instructions whose only effect is modifying a register that is not live.
+	 */
+	private boolean removeUnusedResults()
+	{
+		FlowGraph graph = new FlowGraph(instructions, endLabel);
+		LivenessAnalysis liveness = new LivenessAnalysis(instructions, graph);
+		boolean removed = false;
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			if (isRemoved(instr) || instr.hasSideEffects())
+				continue;
+			VirtualRegister def = LivenessAnalysis.getDefinedRegister(instr);
+			if (def != null && !liveness.isLiveAfter(i, def)) {
+				instructions.set(i, instr.makeNop());
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes labels from "nop" instructions when the labels are not used by any jumps, so that
+	 * the "nop"s themselves can be removed later.
+	 */
+	private void removeUnusedLabels()
+	{
+		Set<String> targets = new HashSet<String>();
+		for (Instruction instr : instructions)
+			targets.addAll(instr.getJumpTargets());
+		for (Instruction instr : instructions) {
+			if (isRemoved(instr) && instr.label != null && !targets.contains(instr.label))
+				instr.label = null;
+		}
+	}
+
+	private static boolean isRemoved(Instruction instr)
+	{
+		return instr.mnemonic.equals("nop");
+	}
+}
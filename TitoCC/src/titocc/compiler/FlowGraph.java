@@ -0,0 +1,281 @@
+package titocc.compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Control flow graph for a list of intermediate instructions. Each instruction is a node, and an
+ * extra node with index equal to the instruction count represents the function exit. Pseudo
+ * instructions ("dc", "ds", "equ") and "nop"s are not executed, so they simply fall through to the
+ * next instruction.
+ */
+class FlowGraph
+{
+	/**
+	 * Analyzed instructions.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Mapping from labels to instruction indices.
+	 */
+	private final Map<String, Integer> labelPositions = new HashMap<String, Integer>();
+
+	/**
+	 * Successor indices for each instruction.
+	 */
+	private final List<List<Integer>> successors = new ArrayList<List<Integer>>();
+
+	/**
+	 * Predecessor indices for each instruction and the exit node.
+	 */
+	private final List<List<Integer>> predecessors = new ArrayList<List<Integer>>();
+
+	/**
+	 * Constructs the flow graph.
+	 *
+	 * @param instructions list of instructions
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	FlowGraph(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+
+		for (int i = 0; i < instructions.size(); ++i) {
+			if (instructions.get(i).label != null)
+				labelPositions.put(instructions.get(i).label, i);
+		}
+		if (endLabel != null)
+			labelPositions.put(endLabel, instructions.size());
+
+		for (int i = 0; i <= instructions.size(); ++i)
+			predecessors.add(new ArrayList<Integer>(2));
+
+		for (int i = 0; i < instructions.size(); ++i) {
+			List<Integer> succ = new ArrayList<Integer>(2);
+			Instruction instr = instructions.get(i);
+			if (!instr.isUnconditionalJump())
+				succ.add(i + 1);
+			for (String targetLabel : instr.getJumpTargets()) {
+				int target = getLabelPosition(targetLabel);
+				if (!succ.contains(target))
+					succ.add(target);
+			}
+			successors.add(succ);
+			for (int s : succ)
+				predecessors.get(s).add(i);
+		}
+	}
+
+	/**
+	 * Returns the index of the exit node.
+	 *
+	 * @return exit node index
+	 */
+	int getExit()
+	{
+		return instructions.size();
+	}
+
+	/**
+	 * Returns the successors of an instruction.
+	 *
+	 * @param idx instruction index
+	 * @return list of successor indices
+	 */
+	List<Integer> getSuccessors(int idx)
+	{
+		return successors.get(idx);
+	}
+
+	/**
+	 * Returns the predecessors of an instruction or the exit node.
+	 *
+	 * @param idx instruction index
+	 * @return list of predecessor indices
+	 */
+	List<Integer> getPredecessors(int idx)
+	{
+		return predecessors.get(idx);
+	}
+
+	/**
+	 * Checks whether instruction at idx can only be reached from the previous instruction, i.e.
+	 * whether it belongs to the same extended basic block.
+	 *
+	 * @param idx instruction index
+	 * @return true if idx continues the basic block of the previous instruction
+	 */
+	boolean continuesBlock(int idx)
+	{
+		List<Integer> preds = predecessors.get(idx);
+		return idx > 0 && preds.size() == 1 && preds.get(0) == idx - 1;
+	}
+
+	/**
+	 * Finds the instruction that has the given label.
+	 *
+	 * @param label label
+	 * @return instruction index
+	 */
+	int getLabelPosition(String label)
+	{
+		Integer pos = labelPositions.get(label);
+		if (pos == null)
+			throw new InternalCompilerException("Jump to unknown label " + label + ".");
+		return pos;
+	}
+
+	/**
+	 * Finds the first executed instruction starting from the given index, skipping "nop"s and
+	 * pseudo instructions.
+	 *
+	 * @param idx instruction index
+	 * @return index of executable instruction or exit node
+	 */
+	int getNextExecutable(int idx)
+	{
+		while (idx < instructions.size() && (instructions.get(idx).mnemonic.equals("nop")
+				|| instructions.get(idx).isPseudoInstruction()))
+			++idx;
+		return idx;
+	}
+
+	/**
+	 * Finds all instructions that can be reached from the first instruction.
+	 *
+	 * @return array with true for each reachable instruction (and exit node)
+	 */
+	boolean[] getReachable()
+	{
+		boolean[] reachable = new boolean[instructions.size() + 1];
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		stack.push(0);
+		reachable[0] = true;
+		while (!stack.isEmpty()) {
+			int idx = stack.pop();
+			if (idx == getExit())
+				continue;
+			for (int s : successors.get(idx)) {
+				if (!reachable[s]) {
+					reachable[s] = true;
+					stack.push(s);
+				}
+			}
+		}
+		return reachable;
+	}
+
+	/**
+	 * Computes the dominators of each reachable instruction. Instruction A dominates instruction B
+	 * if every path from the function entry to B goes through A.
+	 *
+	 * @return array of dominator sets; null for unreachable instructions
+	 */
+	BitSet[] getDominators()
+	{
+		int n = instructions.size();
+		boolean[] reachable = getReachable();
+		BitSet[] dominators = new BitSet[n];
+		if (n == 0)
+			return dominators;
+
+		BitSet all = new BitSet(n);
+		all.set(0, n);
+		for (int i = 0; i < n; ++i) {
+			if (reachable[i])
+				dominators[i] = (BitSet) all.clone();
+		}
+		dominators[0] = new BitSet(n);
+		dominators[0].set(0);
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 1; i < n; ++i) {
+				if (dominators[i] == null)
+					continue;
+				BitSet dom = (BitSet) all.clone();
+				for (int p : predecessors.get(i)) {
+					if (dominators[p] != null)
+						dom.and(dominators[p]);
+				}
+				dom.set(i);
+				if (!dom.equals(dominators[i])) {
+					dominators[i] = dom;
+					changed = true;
+				}
+			}
+		}
+		return dominators;
+	}
+
+	/**
+	 * Finds the natural loops. Loops that share the same header are merged.
+	 *
+	 * @return list of loops, ordered so that inner loops come before the loops containing them
+	 */
+	List<Loop> getLoops()
+	{
+		BitSet[] dominators = getDominators();
+		Map<Integer, BitSet> loopBodies = new HashMap<Integer, BitSet>();
+		for (int i = 0; i < instructions.size(); ++i) {
+			if (dominators[i] == null)
+				continue;
+			for (int header : successors.get(i)) {
+				if (header < instructions.size() && dominators[i].get(header)) {
+					BitSet body = loopBodies.get(header);
+					if (body == null) {
+						body = new BitSet();
+						body.set(header);
+						loopBodies.put(header, body);
+					}
+					addLoopNodes(body, i);
+				}
+			}
+		}
+
+		List<Loop> loops = new ArrayList<Loop>();
+		for (Map.Entry<Integer, BitSet> e : loopBodies.entrySet())
+			loops.add(new Loop(e.getKey(), e.getValue()));
+		Collections.sort(loops, new Comparator<Loop>()
+		{
+			@Override
+			public int compare(Loop l1, Loop l2)
+			{
+				if (l1.body.cardinality() != l2.body.cardinality())
+					return l1.body.cardinality() - l2.body.cardinality();
+				return l1.header - l2.header;
+			}
+		});
+		return loops;
+	}
+
+	/**
+	 * Adds the source of a back edge and all instructions that reach it without going through the
+	 * loop header (which is already in the body) to the loop body.
+	 */
+	private void addLoopNodes(BitSet body, int backEdgeSource)
+	{
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		if (!body.get(backEdgeSource)) {
+			body.set(backEdgeSource);
+			stack.push(backEdgeSource);
+		}
+		while (!stack.isEmpty()) {
+			for (int p : predecessors.get(stack.pop())) {
+				if (!body.get(p)) {
+					body.set(p);
+					stack.push(p);
+				}
+			}
+		}
+	}
+}
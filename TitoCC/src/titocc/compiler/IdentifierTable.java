@@ -0,0 +1,126 @@
+package titocc.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identifier table shared by all scopes of a translation unit. Contains the declarations of the
+ * open scopes, i.e. the innermost scope that is being compiled and all its parent scopes. Each
+ * identifier maps to a stack of declarations where the declaration of the innermost scope is on
+ * top and shadows the declarations of the outer scopes. Therefore finding the visible declaration
+ * takes a single lookup regardless of the nesting depth. Closing a scope pops its declarations.
+ */
+class IdentifierTable
+{
+	/**
+	 * Declaration of an identifier in a scope.
+	 */
+	private static class Declaration
+	{
+		final Symbol symbol;
+
+		final Scope scope;
+
+		/**
+		 * Declaration of the same identifier in an outer scope, or null.
+		 */
+		Declaration shadowed;
+
+		Declaration(Symbol symbol, Scope scope, Declaration shadowed)
+		{
+			this.symbol = symbol;
+			this.scope = scope;
+			this.shadowed = shadowed;
+		}
+	}
+
+	/**
+	 * Innermost declaration of each identifier.
+	 */
+	private final Map<String, Declaration> declarations = new HashMap<String, Declaration>();
+
+	/**
+	 * Innermost open scope, or null if no scopes are open.
+	 */
+	private Scope innermostScope = null;
+
+	/**
+	 * Returns the innermost open scope.
+	 *
+	 * @return innermost scope or null
+	 */
+	Scope getInnermostScope()
+	{
+		return innermostScope;
+	}
+
+	/**
+	 * Sets the innermost open scope.
+	 *
+	 * @param scope innermost scope or null
+	 */
+	void setInnermostScope(Scope scope)
+	{
+		innermostScope = scope;
+	}
+
+	/**
+	 * Adds a declaration of an open scope. The declaration is placed below the declarations of
+	 * deeper scopes, so it may be declared in a parent of the innermost scope.
+	 *
+	 * @param symbol declared symbol
+	 * @param scope open scope where the symbol is declared
+	 */
+	void add(Symbol symbol, Scope scope)
+	{
+		String name = symbol.getName();
+		Declaration top = declarations.get(name);
+		if (top == null || top.scope.getDepth() <= scope.getDepth()) {
+			declarations.put(name, new Declaration(symbol, scope, top));
+			return;
+		}
+
+		Declaration decl = top;
+		while (decl.shadowed != null && decl.shadowed.scope.getDepth() > scope.getDepth())
+			decl = decl.shadowed;
+		decl.shadowed = new Declaration(symbol, scope, decl.shadowed);
+	}
+
+	/**
+	 * Removes the declaration of an identifier in a scope.
+	 *
+	 * @param name identifier
+	 * @param scope scope of the declaration
+	 */
+	void remove(String name, Scope scope)
+	{
+		Declaration top = declarations.get(name);
+		if (top.scope == scope) {
+			if (top.shadowed != null)
+				declarations.put(name, top.shadowed);
+			else
+				declarations.remove(name);
+			return;
+		}
+
+		Declaration decl = top;
+		while (decl.shadowed.scope != scope)
+			decl = decl.shadowed;
+		decl.shadowed = decl.shadowed.shadowed;
+	}
+
+	/**
+	 * Finds the innermost declaration of an identifier that is visible in an open scope.
+	 *
+	 * @param name identifier
+	 * @param depth nesting depth of the open scope; declarations of deeper scopes are skipped
+	 * @return declared symbol or null if not found
+	 */
+	Symbol find(String name, int depth)
+	{
+		Declaration decl = declarations.get(name);
+		while (decl != null && decl.scope.getDepth() > depth)
+			decl = decl.shadowed;
+		return decl != null ? decl.symbol : null;
+	}
+}
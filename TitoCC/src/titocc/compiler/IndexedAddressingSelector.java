@@ -0,0 +1,235 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Uses indexed addressing mode for memory accesses whose address is a constant base plus an
+ * index. Array accesses like "a[i]" are compiled as
+ *
+ * <br> load V1, =a
+ * <br> add V1, i(fp)
+ * <br> load V2, 0(V1)
+ *
+ * <p> which is replaced with
+ *
+ * <br> load V1, i(fp)
+ * <br> load V2, a(V1)
+ *
+ * <p> If the index is already in a register, both the load of the base and the addition are
+ * removed and the index register is used directly. Arrays in the stack frame have base address
+ * "=a(fp)", which is handled by adding FP to the index register if the index value is not needed
+ * afterwards.
+ */
+class IndexedAddressingSelector
+{
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	private final String endLabel;
+
+	/**
+	 * Flow graph for current instructions.
+	 */
+	private FlowGraph graph;
+
+	/**
+	 * Liveness information for current instructions.
+	 */
+	private LivenessAnalysis liveness;
+
+	/**
+	 * Indices of the instructions that define each virtual register.
+	 */
+	private Map<VirtualRegister, List<Integer>> definitions;
+
+	/**
+	 * Registers whose liveness has changed since the last analysis.
+	 */
+	private Set<VirtualRegister> modifiedRegisters;
+
+	/**
+	 * Constructs the selector.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	IndexedAddressingSelector(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+	}
+
+	/**
+	 * Replaces address computations with indexed addressing until there is nothing left to
+	 * replace.
+	 *
+	 * @return true if any instructions were changed
+	 */
+	boolean apply()
+	{
+		boolean changedAny = false;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			analyze();
+			for (int i = 0; i < instructions.size(); ++i)
+				changed |= selectIndexedAddressing(i);
+			changedAny |= changed;
+		}
+		return changedAny;
+	}
+
+	/**
+	 * Recomputes the information needed for the optimization.
+	 */
+	private void analyze()
+	{
+		graph = new FlowGraph(instructions, endLabel);
+		liveness = new LivenessAnalysis(instructions, graph);
+		modifiedRegisters = new HashSet<VirtualRegister>();
+
+		definitions = new HashMap<VirtualRegister, List<Integer>>();
+		for (int i = 0; i < instructions.size(); ++i) {
+			VirtualRegister def = LivenessAnalysis.getDefinedRegister(instructions.get(i));
+			if (def != null) {
+				List<Integer> defs = definitions.get(def);
+				if (defs == null) {
+					defs = new ArrayList<Integer>();
+					definitions.put(def, defs);
+				}
+				defs.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the instruction at addIdx adds an index to a base address that is used only
+	 * for memory accesses, and if so, changes the accesses to use indexed addressing.
+	 */
+	private boolean selectIndexedAddressing(int addIdx)
+	{
+		Instruction add = instructions.get(addIdx);
+		VirtualRegister addrReg = add.leftReg;
+		if (!add.mnemonic.equals("add") || addrReg.realRegister != null
+				|| modifiedRegisters.contains(addrReg))
+			return false;
+
+		// Address register must be defined by "load =base" followed by the addition.
+		List<Integer> defs = definitions.get(addrReg);
+		if (defs.size() != 2 || defs.get(1) != addIdx)
+			return false;
+		int loadIdx = defs.get(0);
+		Instruction load = instructions.get(loadIdx);
+		if (!load.mnemonic.equals("load") || load.getRealAddressingMode() != 0
+				|| load.getImmediateValue() == null
+				|| (load.rightReg != null && load.rightReg != VirtualRegister.FP))
+			return false;
+		for (int i = loadIdx + 1; i < addIdx; ++i) {
+			if (!graph.continuesBlock(i)
+					|| LivenessAnalysis.getUsedRegisters(instructions.get(i)).contains(addrReg))
+				return false;
+		}
+		if (!graph.continuesBlock(addIdx))
+			return false;
+
+		List<Integer> accesses = getMemoryAccesses(addrReg, addIdx);
+		if (accesses == null)
+			return false;
+		int lastAccess = accesses.get(accesses.size() - 1);
+
+		String base = load.getImmediateValue();
+		boolean frameBase = load.rightReg == VirtualRegister.FP;
+		VirtualRegister indexReg = getIndexRegister(add);
+		if (indexReg != null) {
+			// Index is in a register; use it directly if it doesn't change before the accesses.
+			if (modifiedRegisters.contains(indexReg)
+					|| isDefinedBetween(indexReg, addIdx, lastAccess)
+					|| (frameBase && liveness.isLiveAfter(addIdx, indexReg)))
+				return false;
+			instructions.set(loadIdx, load.makeNop());
+			if (frameBase) {
+				instructions.set(addIdx, new Instruction(add.label, "add", indexReg, 0, null,
+						VirtualRegister.FP));
+			} else
+				instructions.set(addIdx, add.makeNop());
+			modifiedRegisters.add(indexReg);
+		} else {
+			// Index is loaded to the address register instead of adding it to the base.
+			if (frameBase || (add.getRealAddressingMode() == 0 && add.rightReg == null))
+				return false;
+			instructions.set(loadIdx, load.makeNop());
+			instructions.set(addIdx, new Instruction(add.label, "load", addrReg,
+					add.getRealAddressingMode(), add.getImmediateValue(), add.rightReg));
+			indexReg = addrReg;
+		}
+		modifiedRegisters.add(addrReg);
+
+		for (int i : accesses) {
+			Instruction instr = instructions.get(i);
+			instructions.set(i, new Instruction(instr.label, instr.mnemonic, instr.leftReg,
+					instr.getRealAddressingMode(), base, indexReg));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds the instructions that use the address register after the addition. All usages
+	 * must be memory operands "0(reg)" in the same basic block.
+	 *
+	 * @return indices of the instructions or null if some usage is not a memory access
+	 */
+	private List<Integer> getMemoryAccesses(VirtualRegister addrReg, int addIdx)
+	{
+		List<Integer> accesses = new ArrayList<Integer>();
+		for (int i = addIdx + 1; i < instructions.size() && graph.continuesBlock(i); ++i) {
+			Instruction instr = instructions.get(i);
+			if (!LivenessAnalysis.getUsedRegisters(instr).contains(addrReg))
+				continue;
+			if (instr.leftReg == addrReg || instr.rightReg != addrReg
+					|| instr.getNominalAddressingMode() != 1
+					|| !"0".equals(instr.getImmediateValue()) || instr.mnemonic.equals("call"))
+				return null;
+			accesses.add(i);
+			if (!liveness.isLiveAfter(i, addrReg))
+				return accesses;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the index register if the instruction adds a register to its LHS register.
+	 */
+	private static VirtualRegister getIndexRegister(Instruction add)
+	{
+		if (add.getRealAddressingMode() != 0 || add.getImmediateValue() != null
+				|| add.rightReg == null || add.rightReg.realRegister != null)
+			return null;
+		return add.rightReg;
+	}
+
+	/**
+	 * Checks whether a register is modified by an instruction in range (first, last].
+	 */
+	private boolean isDefinedBetween(VirtualRegister reg, int first, int last)
+	{
+		List<Integer> defs = definitions.get(reg);
+		if (defs != null) {
+			for (int d : defs) {
+				if (d > first && d <= last)
+					return true;
+			}
+		}
+		return false;
+	}
+}
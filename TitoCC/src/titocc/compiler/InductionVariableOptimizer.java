@@ -0,0 +1,508 @@
+package titocc.compiler;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strength reduction for induction variables. A basic induction variable is a stack frame
+ * variable that is only modified in the loop by adding or subtracting an invariant value, e.g.
+ * "++i" or "j += n". A derived induction variable is a register value computed in the loop as
+ * "base + i * scale + offset" where base and offset are invariant, which is the typical address
+ * computation for subscript "a[i]".
+ *
+ * <p> The derived value is replaced by a new register that is computed once before the loop and
+ * incremented by "step * scale" right after every store to the basic induction variable. This
+ * removes the address arithmetic (including the scaling multiplication or shift) from the loop
+ * body.
+ */
+class InductionVariableOptimizer extends LoopOptimizer
+{
+	/**
+	 * Modification of a basic induction variable.
+	 */
+	private static class Update
+	{
+		/**
+		 * Index of the store instruction that writes the updated value.
+		 */
+		int storeIdx;
+
+		/**
+		 * The "add" or "sub" instruction that computes the new value.
+		 */
+		Instruction step;
+	}
+
+	/**
+	 * Value that is a linear function of a basic induction variable.
+	 */
+	private static class DerivedValue
+	{
+		/**
+		 * Register holding the value.
+		 */
+		VirtualRegister reg;
+
+		/**
+		 * Name of the basic induction variable.
+		 */
+		String variable;
+
+		/**
+		 * Multiplier for the induction variable.
+		 */
+		int scale = 1;
+
+		/**
+		 * Indices of all instructions that compute the value, in order.
+		 */
+		List<Integer> instructions = new ArrayList<Integer>();
+	}
+
+	/**
+	 * Constructs the optimizer.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	InductionVariableOptimizer(List<Instruction> instructions, String endLabel)
+	{
+		super(instructions, endLabel);
+	}
+
+	/**
+	 * Tries to replace one derived induction variable in the loop.
+	 */
+	@Override
+	protected boolean optimizeLoop(Loop loop)
+	{
+		List<Integer> entries = getLoopEntries(loop);
+		if (entries == null)
+			return false;
+
+		Map<String, List<Update>> inductionVariables = findInductionVariables(loop);
+		if (inductionVariables.isEmpty())
+			return false;
+
+		for (int i = loop.body.nextSetBit(0); i >= 0; i = loop.body.nextSetBit(i + 1)) {
+			DerivedValue derived = getDerivedValue(loop, i, inductionVariables);
+			if (derived == null || isUpdatedValue(inductionVariables, derived.reg))
+				continue;
+			List<Update> updates = inductionVariables.get(derived.variable);
+			if (!canScaleSteps(updates, derived.scale)
+					|| derived.instructions.size() <= updates.size()
+					|| !fitsInRegisters(loop, new VirtualRegister()))
+				continue;
+			reduce(loop, entries, derived, updates);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether register is the new value of an induction variable. Such a value is
+	 * computed from the induction variable but replacing it wouldn't remove anything.
+	 */
+	private static boolean isUpdatedValue(Map<String, List<Update>> inductionVariables,
+			VirtualRegister reg)
+	{
+		for (List<Update> updates : inductionVariables.values()) {
+			for (Update u : updates) {
+				if (u.step.leftReg == reg)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the stack frame variables whose every modification in the loop adds an invariant
+	 * value to the variable.
+	 */
+	private Map<String, List<Update>> findInductionVariables(Loop loop)
+	{
+		Map<String, List<Update>> updates = new HashMap<String, List<Update>>();
+		List<String> rejected = new ArrayList<String>();
+		for (int i = loop.body.nextSetBit(0); i >= 0; i = loop.body.nextSetBit(i + 1)) {
+			Instruction instr = instructions.get(i);
+			if (!instr.mnemonic.equals("store") || !isDirectStore(instr)
+					|| instr.rightReg != VirtualRegister.FP)
+				continue;
+			String name = instr.getImmediateValue();
+			Update update = getUpdate(loop, i, name);
+			if (update == null || addressTakenVariables.contains(name)) {
+				rejected.add(name);
+				continue;
+			}
+			List<Update> varUpdates = updates.get(name);
+			if (varUpdates == null) {
+				varUpdates = new ArrayList<Update>();
+				updates.put(name, varUpdates);
+			}
+			varUpdates.add(update);
+		}
+		for (String name : rejected)
+			updates.remove(name);
+		return updates;
+	}
+
+	/**
+	 * Checks that a store instruction stores the value "variable +- step", computed in the same
+	 * basic block, where step is invariant.
+	 */
+	private Update getUpdate(Loop loop, int storeIdx, String name)
+	{
+		VirtualRegister reg = instructions.get(storeIdx).leftReg;
+		if (reg.realRegister != null)
+			return null;
+
+		Instruction step = null;
+		for (int i = storeIdx - 1; i >= 0 && graph.continuesBlock(i + 1); --i) {
+			Instruction instr = instructions.get(i);
+			if (instr.mnemonic.equals("store") && isStoreTo(instr, name))
+				return null;
+			if (LivenessAnalysis.getDefinedRegister(instr) != reg)
+				continue;
+			if (step == null) {
+				if (!instr.mnemonic.equals("add") && !instr.mnemonic.equals("sub"))
+					return null;
+				step = getInvariantStep(loop, instr, reg);
+				if (step == null)
+					return null;
+			} else if (isLoadOf(instr, name)) {
+				Update update = new Update();
+				update.storeIdx = storeIdx;
+				update.step = step;
+				return update;
+			} else
+				return null;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the step instruction with an invariant operand, or null if the operand is not
+	 * invariant. A register operand loaded from an invariant variable in the loop is replaced
+	 * with the variable itself.
+	 */
+	private Instruction getInvariantStep(Loop loop, Instruction step, VirtualRegister reg)
+	{
+		if (isInvariantOperand(loop, step, reg))
+			return step;
+
+		VirtualRegister stepReg = step.rightReg;
+		if (stepReg == null || stepReg.realRegister != null || stepReg == VirtualRegister.FP
+				|| step.getRealAddressingMode() != 0)
+			return null;
+		List<Integer> defs = definitions.get(stepReg);
+		if (defs == null || defs.size() != 1)
+			return null;
+		Instruction load = instructions.get(defs.get(0));
+		if (!load.mnemonic.equals("load") || !isInvariantOperand(loop, load, stepReg))
+			return null;
+		return new Instruction(null, step.mnemonic, reg, load.getRealAddressingMode(),
+				load.getImmediateValue(), load.rightReg);
+	}
+
+	/**
+	 * Checks whether instruction at idx starts computing a value derived from an induction
+	 * variable.
+	 */
+	private DerivedValue getDerivedValue(Loop loop, int idx,
+			Map<String, List<Update>> inductionVariables)
+	{
+		Instruction first = instructions.get(idx);
+		if (!first.mnemonic.equals("load") || first.leftReg.realRegister != null)
+			return null;
+
+		DerivedValue derived = new DerivedValue();
+		derived.reg = first.leftReg;
+		List<Integer> defs = definitions.get(derived.reg);
+		if (defs.get(0) != idx || liveness.isLiveBefore(loop.header, derived.reg))
+			return null;
+
+		VirtualRegister indexReg = null;
+		for (int d : defs) {
+			if (!loop.contains(d))
+				return null;
+			Instruction instr = instructions.get(d);
+			String variable = getInductionVariableOperand(instr, inductionVariables);
+			if (instr.mnemonic.equals("add") && instr.rightReg != null
+					&& instr.rightReg.realRegister == null && instr.rightReg != derived.reg
+					&& derived.variable == null && indexReg == null) {
+				// Scaled index computed in separate register.
+				indexReg = instr.rightReg;
+				if (!addScaledIndex(derived, indexReg, d, inductionVariables))
+					return null;
+			} else if (variable != null && derived.variable == null
+					&& (instr.mnemonic.equals("add") || d == idx)) {
+				derived.variable = variable;
+			} else if (!(instr.mnemonic.equals("load") && d == idx)
+					&& !instr.mnemonic.equals("add") && !instr.mnemonic.equals("sub")) {
+				return null;
+			} else if (!isInvariantOperand(loop, instr, derived.reg))
+				return null;
+			derived.instructions.add(d);
+		}
+		if (derived.variable == null)
+			return null;
+
+		Collections.sort(derived.instructions);
+		if (!isContiguous(loop, derived, indexReg))
+			return null;
+
+		return derived;
+	}
+
+	/**
+	 * Adds the index register computation "load V, i(fp); mul V, =scale" to the derived value.
+	 */
+	private boolean addScaledIndex(DerivedValue derived, VirtualRegister indexReg, int addIdx,
+			Map<String, List<Update>> inductionVariables)
+	{
+		List<Integer> indexDefs = definitions.get(indexReg);
+		if (indexDefs == null || indexDefs.size() > 2)
+			return false;
+
+		Instruction load = instructions.get(indexDefs.get(0));
+		String variable = getInductionVariableOperand(load, inductionVariables);
+		if (!load.mnemonic.equals("load") || variable == null)
+			return false;
+		derived.variable = variable;
+
+		if (indexDefs.size() == 2) {
+			Instruction scaling = instructions.get(indexDefs.get(1));
+			Integer factor = getConstantOperand(scaling);
+			if (factor == null)
+				return false;
+			if (scaling.mnemonic.equals("mul"))
+				derived.scale = factor;
+			else if (scaling.mnemonic.equals("shl") && factor >= 0 && factor < 31)
+				derived.scale = 1 << factor;
+			else
+				return false;
+		}
+
+		// Index register must not be used anywhere else.
+		for (int i = 0; i < instructions.size(); ++i) {
+			if (i != addIdx && !indexDefs.contains(i)
+					&& LivenessAnalysis.getUsedRegisters(instructions.get(i)).contains(indexReg))
+				return false;
+		}
+		if (indexDefs.get(indexDefs.size() - 1) > addIdx)
+			return false;
+
+		derived.instructions.addAll(indexDefs);
+		return true;
+	}
+
+	/**
+	 * Checks that the instructions computing the derived value are in the same basic block and
+	 * that other instructions between them don't use the intermediate values.
+	 */
+	private boolean isContiguous(Loop loop, DerivedValue derived, VirtualRegister indexReg)
+	{
+		int first = derived.instructions.get(0);
+		int last = derived.instructions.get(derived.instructions.size() - 1);
+		for (int i = first + 1; i <= last; ++i) {
+			if (!loop.contains(i) || !graph.continuesBlock(i))
+				return false;
+			if (derived.instructions.contains(i))
+				continue;
+			List<VirtualRegister> used = LivenessAnalysis.getUsedRegisters(instructions.get(i));
+			VirtualRegister def = LivenessAnalysis.getDefinedRegister(instructions.get(i));
+			if (used.contains(derived.reg) || def == derived.reg
+					|| (indexReg != null && (used.contains(indexReg) || def == indexReg)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that all the steps can be multiplied by scale.
+	 */
+	private static boolean canScaleSteps(List<Update> updates, int scale)
+	{
+		if (scale == 1)
+			return true;
+		for (Update u : updates) {
+			if (getConstantOperand(u.step) == null)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the derived value with a new register that is updated together with the
+	 * induction variable.
+	 */
+	private void reduce(Loop loop, List<Integer> entries, DerivedValue derived,
+			List<Update> updates)
+	{
+		VirtualRegister newReg = new VirtualRegister();
+		VirtualRegister tmpReg = new VirtualRegister();
+
+		// Computation of the initial value, placed before the loop.
+		List<Instruction> init = new ArrayList<Instruction>();
+		for (int idx : derived.instructions) {
+			Instruction instr = copyInstruction(instructions.get(idx));
+			instr.leftReg = instr.leftReg == derived.reg ? newReg : tmpReg;
+			if (instr.rightReg != null && instr.rightReg.realRegister == null)
+				instr.rightReg = instr.rightReg == derived.reg ? newReg : tmpReg;
+			init.add(instr);
+		}
+
+		// Remove the computation from the loop and use the new register instead.
+		int last = derived.instructions.get(derived.instructions.size() - 1);
+		for (int idx : derived.instructions) {
+			if (idx != last)
+				instructions.set(idx, instructions.get(idx).makeNop());
+		}
+		if (replaceUsages(derived.reg, newReg, last, updates))
+			instructions.set(last, instructions.get(last).makeNop());
+		else {
+			instructions.set(last, new Instruction(instructions.get(last).label, "load",
+					derived.reg, 0, null, newReg));
+		}
+
+		// Insert increments after the updates of the induction variable.
+		List<Integer> positions = new ArrayList<Integer>();
+		Map<Integer, Instruction> increments = new HashMap<Integer, Instruction>();
+		for (Update u : updates) {
+			positions.add(u.storeIdx + 1);
+			increments.put(u.storeIdx + 1, makeIncrement(u.step, newReg, derived.scale));
+		}
+		Collections.sort(positions, Collections.reverseOrder());
+		for (int pos : positions)
+			instructions.add(pos, increments.get(pos));
+
+		// Insert the initialization, adjusting positions for the inserted increments.
+		List<Integer> shiftedEntries = new ArrayList<Integer>();
+		for (int e : entries)
+			shiftedEntries.add(e + countNotAfter(positions, e));
+		Loop shiftedLoop = new Loop(loop.header + countNotAfter(positions, loop.header),
+				loop.body);
+		insertAtEntries(shiftedLoop, shiftedEntries, init);
+	}
+
+	/**
+	 * Counts positions that are less than or equal to idx.
+	 */
+	private static int countNotAfter(List<Integer> positions, int idx)
+	{
+		int count = 0;
+		for (int p : positions) {
+			if (p <= idx)
+				++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Replaces usages of the old register with the new one if all of them are in the same basic
+	 * block and happen before the next update.
+	 */
+	private boolean replaceUsages(VirtualRegister oldReg, VirtualRegister newReg, int defIdx,
+			List<Update> updates)
+	{
+		List<Integer> usages = new ArrayList<Integer>();
+		for (int i = 0; i < instructions.size(); ++i) {
+			if (i != defIdx
+					&& LivenessAnalysis.getUsedRegisters(instructions.get(i)).contains(oldReg))
+				usages.add(i);
+		}
+		if (usages.isEmpty())
+			return true;
+
+		int lastUse = usages.get(usages.size() - 1);
+		if (usages.get(0) < defIdx || liveness.isLiveAfter(lastUse, oldReg))
+			return false;
+		for (int i = defIdx + 1; i <= lastUse; ++i) {
+			if (!graph.continuesBlock(i) || oldReg == LivenessAnalysis.getDefinedRegister(
+					instructions.get(i)))
+				return false;
+			for (Update u : updates) {
+				if (u.storeIdx == i)
+					return false;
+			}
+		}
+
+		for (int i : usages) {
+			Instruction instr = instructions.get(i);
+			if (instr.leftReg == oldReg)
+				instr.leftReg = newReg;
+			if (instr.rightReg == oldReg)
+				instr.rightReg = newReg;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates instruction that adds "step * scale" to the register.
+	 */
+	private static Instruction makeIncrement(Instruction step, VirtualRegister reg, int scale)
+	{
+		Integer value = getConstantOperand(step);
+		if (value == null)
+			return new Instruction(null, step.mnemonic, reg, step.getRealAddressingMode(),
+					step.getImmediateValue(), step.rightReg);
+
+		// Wrap around like the target arithmetic.
+		int delta = BigInteger.valueOf(value).multiply(BigInteger.valueOf(scale)).intValue();
+		String mnemonic = step.mnemonic;
+		if (delta < 0 && delta != Integer.MIN_VALUE) {
+			mnemonic = mnemonic.equals("add") ? "sub" : "add";
+			delta = -delta;
+		}
+		return new Instruction(null, mnemonic, reg, 0, Integer.toString(delta), null);
+	}
+
+	/**
+	 * Get the name of the induction variable if instruction is "load/add V, i(fp)".
+	 */
+	private static String getInductionVariableOperand(Instruction instr,
+			Map<String, List<Update>> inductionVariables)
+	{
+		if (instr.getRealAddressingMode() == 1 && instr.rightReg == VirtualRegister.FP
+				&& inductionVariables.containsKey(instr.getImmediateValue()))
+			return instr.getImmediateValue();
+		return null;
+	}
+
+	private static boolean isLoadOf(Instruction instr, String name)
+	{
+		return instr.mnemonic.equals("load") && instr.getRealAddressingMode() == 1
+				&& instr.rightReg == VirtualRegister.FP && name.equals(instr.getImmediateValue());
+	}
+
+	/**
+	 * Checks whether a store instruction may write to the named stack frame variable.
+	 */
+	private static boolean isStoreTo(Instruction instr, String name)
+	{
+		return !isDirectStore(instr) || (instr.rightReg == VirtualRegister.FP
+				&& name.equals(instr.getImmediateValue()));
+	}
+
+	/**
+	 * Get the value of immediate constant operand.
+	 *
+	 * @return the value or null if the operand is not an integer constant
+	 */
+	private static Integer getConstantOperand(Instruction instr)
+	{
+		if (instr.rightReg != null || instr.getRealAddressingMode() != 0)
+			return null;
+		try {
+			return Integer.parseInt(instr.getImmediateValue());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package titocc.compiler;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -16,6 +19,7 @@ import java.util.Set;
  * add/sub/mul/div/mod/and/or/xor/shl/shr/shra R, R/M
  * comp R, R/M
  * jump [R,] R/M (*)
+ * jump label(R) (jump table, see below)
  * jneg/jnneg/jzer/jnzer/jpos/jnneg R, R/M (*)
  * jles/jnles/jequ/jnequ/jgre/jngre [R,] R/M (*)
  * call R, R/M (*)
@@ -29,11 +33,19 @@ import java.util.Set;
  * reduced:  0    0    1
  * </pre>
  *
+ * Jump table is a single intermediate instruction that jumps to one of the target labels based
+ * on the index in the RHS register. It is assembled as "jump label(R)" followed by the table of
+ * jumps to the targets, so that the control flow stays analyzable.
+ *
  * Pseudo instructions:
  * equ value
  * dc value
  * ds size
  *
+ * Data block is a single "dc" pseudo instruction with several values, optionally followed by
+ * reserved zero words. It is assembled as consecutive "dc" words and a "ds", so that the data
+ * stays in one piece when instructions are inserted or removed.
+ *
  * Instructions that are guaranteed not to appear in the intermediate code:
  * (exit)
  * (svc)
@@ -55,6 +67,12 @@ class Instruction
 	static final Set<String> pseudoInstructions = new HashSet<String>(
 			Arrays.asList("dc", "ds", "equ"));
 
+	/**
+	 * Set of conditional jumps that test the state register set by "comp".
+	 */
+	static final Set<String> comparisonJumps = new HashSet<String>(
+			Arrays.asList("jles", "jnles", "jequ", "jnequ", "jgre", "jngre"));
+
 	/**
 	 * Optional label.
 	 */
@@ -90,6 +108,17 @@ class Instruction
 	 */
 	private int realAddressingMode = 0;
 
+	/**
+	 * Target labels of a jump table instruction; null for other instructions.
+	 */
+	private List<String> jumpTable = null;
+
+	/**
+	 * Values of a data block; null for other instructions. The size of the reserved zero area
+	 * following the values is in pseudoOperand.
+	 */
+	private List<Integer> dataValues = null;
+
 	/**
 	 * Constructs an instruction that has no operands ("nop").
 	 *
@@ -164,6 +193,43 @@ class Instruction
 			throw new InternalCompilerException("Non-constant address in jump instruction.");
 	}
 
+	/**
+	 * Constructs a data block.
+	 *
+	 * @param label required label
+	 * @param values values of the initialized words
+	 * @param reservedSize number of zero words reserved after the values
+	 */
+	Instruction(String label, List<Integer> values, int reservedSize)
+	{
+		if (label == null || values.isEmpty() && reservedSize == 0)
+			throw new InternalCompilerException("Constructing an illegal data block.");
+		this.label = label;
+		this.mnemonic = "dc";
+		this.dataValues = new ArrayList<Integer>(values);
+		this.pseudoOperand = reservedSize;
+	}
+
+	/**
+	 * Constructs a jump table instruction.
+	 *
+	 * @param label optional label; null if not used
+	 * @param tableLabel label for the table of jumps
+	 * @param indexReg register that holds the table index
+	 * @param targets target labels for each index
+	 */
+	Instruction(String label, String tableLabel, VirtualRegister indexReg, List<String> targets)
+	{
+		if (tableLabel == null || indexReg == null || targets.isEmpty())
+			throw new InternalCompilerException("Constructing an illegal jump table.");
+		this.label = label;
+		this.mnemonic = "jump";
+		this.leftReg = VirtualRegister.NONE;
+		this.immediateValue = tableLabel;
+		this.rightReg = indexReg;
+		this.jumpTable = new ArrayList<String>(targets);
+	}
+
 	/**
 	 * Get the register that is modified by this instructions.
 	 *
@@ -209,6 +275,108 @@ class Instruction
 		return mnemonic.charAt(0) == 'j';
 	}
 
+	/**
+	 * Checks whether the instruction is an unconditional jump.
+	 *
+	 * @return true if "jump"
+	 */
+	boolean isUnconditionalJump()
+	{
+		return mnemonic.equals("jump");
+	}
+
+	/**
+	 * Checks whether the instruction is a jump through a jump table.
+	 *
+	 * @return true if jump table
+	 */
+	boolean isTableJump()
+	{
+		return jumpTable != null;
+	}
+
+	/**
+	 * Returns the values of a data block.
+	 *
+	 * @return list of values, or null if this is not a data block
+	 */
+	List<Integer> getDataValues()
+	{
+		return dataValues;
+	}
+
+	/**
+	 * Checks whether the instruction is a conditional jump that tests the comparison result of an
+	 * earlier "comp" instruction (jles, jequ etc.).
+	 *
+	 * @return true if the jump reads the state register
+	 */
+	boolean readsComparisonResult()
+	{
+		return comparisonJumps.contains(mnemonic);
+	}
+
+	/**
+	 * Checks whether this is a pseudo instruction ("dc", "ds", "equ"). Pseudo instructions are
+	 * not executed and have no effect on the control flow.
+	 *
+	 * @return true if pseudo instruction
+	 */
+	boolean isPseudoInstruction()
+	{
+		return pseudoInstructions.contains(mnemonic);
+	}
+
+	/**
+	 * Checks whether the instruction has effects other than modifying the register returned by
+	 * getModifiedRegister(). This includes memory writes, I/O, stack manipulation and control
+	 * flow. Instructions that modify a physical register are also considered to have side
+	 * effects.
+	 *
+	 * @return true if the instruction must be kept even if its result is not used
+	 */
+	boolean hasSideEffects()
+	{
+		if (isPseudoInstruction() || isJumpInstruction())
+			return true;
+		if (mnemonic.equals("nop") || mnemonic.equals("comp"))
+			return false;
+		if (mnemonic.equals("store") || mnemonic.equals("out") || mnemonic.equals("in")
+				|| mnemonic.equals("call") || mnemonic.equals("push")
+				|| mnemonic.equals("pop") || mnemonic.equals("svc"))
+			return true;
+		return leftReg.realRegister != null;
+	}
+
+	/**
+	 * Get the registers whose earlier values are read by this instruction.
+	 *
+	 * @return list of 0-2 registers
+	 */
+	List<VirtualRegister> getReadRegisters()
+	{
+		List<VirtualRegister> regs = new ArrayList<VirtualRegister>(2);
+		if (leftReg != null && leftReg != VirtualRegister.NONE && !discardsLhs())
+			regs.add(leftReg);
+		if (rightReg != null && !mnemonic.equals("pop") && !regs.contains(rightReg))
+			regs.add(rightReg);
+		return regs;
+	}
+
+	/**
+	 * Get the jump target labels. Normal jumps have one target.
+	 *
+	 * @return list of target labels; empty if not a jump instruction
+	 */
+	List<String> getJumpTargets()
+	{
+		if (jumpTable != null)
+			return jumpTable;
+		if (isJumpInstruction())
+			return Collections.singletonList(immediateValue);
+		return Collections.emptyList();
+	}
+
 	/**
 	 * Get the full RHS operand as string.
 	 *
@@ -341,7 +509,7 @@ class Instruction
 	 *
 	 * @return nominal addressing mode (0-2)
 	 */
-	private int getNominalAddressingMode()
+	int getNominalAddressingMode()
 	{
 		int nominalMode = realAddressingMode;
 		if (hasReducedAddressingMode(mnemonic, immediateValue))
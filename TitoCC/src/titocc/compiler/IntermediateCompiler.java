@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -15,8 +16,9 @@ import java.util.TreeSet;
  * Implements an intermediate phase of compilation before the instructions are sent to the final
  * assembler. First performs some peephole optimizations using virtual registers (e.g.
  * "load V1, =2; add V2, 0(V1)" becomes "add V2, =2"), and then allocates physical registers to
- * virtual registers using simple linear scan allocator and inserts spill code. Finally the
- * instructions are sent to the actual assembler.
+ * virtual registers using simple linear scan allocator and inserts spill code. The allocated
+ * instructions are cleaned up with another peephole pass, and finally they are sent to the
+ * actual assembler.
  */
 public class IntermediateCompiler
 {
@@ -30,6 +32,12 @@ public class IntermediateCompiler
 	 */
 	static final VirtualRegister AUX_REG2 = VirtualRegister.R5;
 
+	/**
+	 * Register for the return value of functions with register calling convention. The auxiliary
+	 * register is never live across instructions, so it is free when a function returns.
+	 */
+	public static final VirtualRegister RETURN_VALUE_REG = AUX_REG2;
+
 	/**
 	 * Label to add to the next instruction.
 	 */
@@ -40,6 +48,11 @@ public class IntermediateCompiler
 	 */
 	private ArrayList<Instruction> instructions = new ArrayList<Instruction>();
 
+	/**
+	 * Whether the address of some stack frame object has been used.
+	 */
+	private boolean frameAddressTaken = false;
+
 	/**
 	 * Emits an instruction with no operands.
 	 *
@@ -121,6 +134,49 @@ public class IntermediateCompiler
 		label = null;
 	}
 
+	/**
+	 * Emits a data block of consecutive words. The label of the block must be set with addLabel()
+	 * before calling this.
+	 *
+	 * @param values values of the initialized words
+	 * @param reservedSize number of zero words reserved after the values
+	 */
+	public void emitData(List<Integer> values, int reservedSize)
+	{
+		instructions.add(new Instruction(label, values, reservedSize));
+		label = null;
+	}
+
+	/**
+	 * Emits a jump through a jump table. The instruction jumps to targets[index], where index is
+	 * the value of the index register. The index must be within the table.
+	 *
+	 * @param tableLabel unique label for the table
+	 * @param indexReg register holding the index
+	 * @param targets jump targets
+	 */
+	public void emitJumpTable(String tableLabel, VirtualRegister indexReg, List<String> targets)
+	{
+		instructions.add(new Instruction(label, tableLabel, indexReg, targets));
+		label = null;
+	}
+
+	/**
+	 * Moves all code from another intermediate compiler to the end of this one. Allows compiling
+	 * code before the code that precedes it.
+	 *
+	 * @param other intermediate compiler whose code is appended; must not be used afterwards
+	 */
+	public void append(IntermediateCompiler other)
+	{
+		if (label != null && !other.instructions.isEmpty())
+			emit("nop");
+		instructions.addAll(other.instructions);
+		if (other.label != null)
+			addLabel(other.label);
+		frameAddressTaken |= other.frameAddressTaken;
+	}
+
 	/**
 	 * Adds a label to next instruction.
 	 *
@@ -133,12 +189,84 @@ public class IntermediateCompiler
 		this.label = label;
 	}
 
+	/**
+	 * Records that the address of a stack frame object is used by the code, so that the object
+	 * may be accessed through a pointer.
+	 */
+	public void markFrameAddressTaken()
+	{
+		frameAddressTaken = true;
+	}
+
+	/**
+	 * Checks whether the address of some stack frame object has been used by the code emitted
+	 * so far.
+	 *
+	 * @return true if frame address has been taken
+	 */
+	public boolean isFrameAddressTaken()
+	{
+		return frameAddressTaken;
+	}
+
+	/**
+	 * Adds a label to the first instruction.
+	 *
+	 * @param label label
+	 */
+	public void addLabelToStart(String label)
+	{
+		if (instructions.isEmpty() || instructions.get(0).label != null)
+			instructions.add(0, new Instruction(null, "nop"));
+		instructions.get(0).label = label;
+	}
+
+	/**
+	 * Emits a jump to trueLabel if condition is true and to falseLabel otherwise. Either label
+	 * can be null, in which case execution continues from the next instruction for that outcome.
+	 *
+	 * @param trueJump conditional jump mnemonic that jumps when the condition is true
+	 * @param falseJump conditional jump mnemonic that jumps when the condition is false
+	 * @param reg register tested by the jump instruction; NONE for jumps after comparison
+	 * @param trueLabel jump target when condition is true or null
+	 * @param falseLabel jump target when condition is false or null
+	 */
+	public void emitConditionalJump(String trueJump, String falseJump, VirtualRegister reg,
+			String trueLabel, String falseLabel)
+	{
+		if (trueLabel != null) {
+			emit(trueJump, reg, trueLabel);
+			if (falseLabel != null)
+				emit("jump", VirtualRegister.NONE, falseLabel);
+		} else if (falseLabel != null)
+			emit(falseJump, reg, falseLabel);
+	}
+
 	/**
 	 * Applies optimizations.
+	 *
+	 * @param stack allocator for local stack data; receives the variables kept in registers
+	 * @param promotableVariables names of the stack frame variables that may be kept in registers
 	 */
-	public void optimize()
+	public void optimize(StackAllocator stack, Set<String> promotableVariables)
 	{
+		new DeadCodeEliminator(instructions, label).apply();
 		applyRhsValuePropagation();
+		new AlgebraicSimplifier(instructions).apply();
+		if (new CommonSubexpressionEliminator(instructions, label).apply())
+			new DeadCodeEliminator(instructions, label).apply();
+		new LoopInvariantCodeMotion(instructions, label).apply();
+		if (new InductionVariableOptimizer(instructions, label).apply())
+			new LoopInvariantCodeMotion(instructions, label).apply();
+		VariablePromoter promoter = new VariablePromoter(instructions, label,
+				promotableVariables);
+		if (promoter.apply()) {
+			stack.setRegisterVariables(promoter.getRegisterVariables());
+			new DeadCodeEliminator(instructions, label).apply();
+		}
+		new CopyCoalescer(instructions, label).apply();
+		applyRhsValuePropagation();
+		new IndexedAddressingSelector(instructions, label).apply();
 		//applyRhsValuePropagation();
 		removeNops();
 	}
@@ -146,19 +274,57 @@ public class IntermediateCompiler
 	/**
 	 * Maps virtual registers to physical registers (R1-R4). First uses linear scan algorithm to
 	 * decide which virtual registers to spill, and then inserts load and store instructions for the
-	 * spilled registers.
+	 * spilled registers. Finally applies peephole optimizations to the allocated instructions.
 	 *
 	 * @param stack allocator for local stack data; used for reserving register spill locations
+	 * @param promotableVariables names of the stack frame variables that may be kept in registers
 	 */
-	public void compile(StackAllocator stack)
+	public void compile(StackAllocator stack, Set<String> promotableVariables)
 	{
 //		if (this.label != null)
 //			emit("nop");
 
-		optimize();
+		optimize(stack, promotableVariables);
 		int spillCount = decideSpillRegisters();
 		stack.reserveSpillLocations(spillCount);
 		insertLoadsAndStores();
+		if (new PeepholeOptimizer(instructions, label).apply())
+			removeNops();
+	}
+
+	/**
+	 * Get the number of instructions, excluding no-op instructions.
+	 *
+	 * @return instruction count
+	 */
+	public int getInstructionCount()
+	{
+		int count = 0;
+		for (Instruction instr : instructions) {
+			if (instr.isTableJump())
+				count += 1 + instr.getJumpTargets().size();
+			else if (!instr.mnemonic.equals("nop"))
+				++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the allocatable registers that are used by the instructions after register allocation.
+	 * These are the registers that must be saved by a function that modifies them.
+	 *
+	 * @return used registers
+	 */
+	public Set<Register> getAllocatedRegisters()
+	{
+		Set<Register> regs = EnumSet.noneOf(Register.class);
+		for (Instruction instr : instructions) {
+			if (instr.leftReg != null && RegisterSet.isAllocatable(instr.leftReg.realRegister))
+				regs.add(instr.leftReg.realRegister);
+			if (instr.rightReg != null && RegisterSet.isAllocatable(instr.rightReg.realRegister))
+				regs.add(instr.rightReg.realRegister);
+		}
+		return regs;
 	}
 
 	/**
@@ -172,12 +338,24 @@ public class IntermediateCompiler
 		for (Instruction instr : instructions) {
 			if (instr.label != null)
 				asm.addLabel(instr.label);
-			if (instr.leftReg == VirtualRegister.NONE) {
+			if (instr.getDataValues() != null) {
+				for (int value : instr.getDataValues())
+					asm.emit("dc", Integer.toString(value));
+				if (instr.pseudoOperand > 0)
+					asm.emit("ds", Integer.toString(instr.pseudoOperand));
+			} else if (instr.leftReg == VirtualRegister.NONE) {
 				asm.emit(instr.mnemonic, instr.getRhsString());
 			} else if (instr.leftReg != null) {
 				asm.emit(instr.mnemonic, instr.leftReg.realRegister, instr.getRhsString());
 			} else
 				asm.emit(instr.mnemonic, Integer.toString(instr.pseudoOperand));
+
+			// Jump table is followed by the jumps to the targets.
+			if (instr.isTableJump()) {
+				asm.addLabel(instr.getImmediateValue());
+				for (String target : instr.getJumpTargets())
+					asm.emit("jump", target);
+			}
 		}
 		if (label != null)
 			asm.addLabel(label);
@@ -226,50 +404,138 @@ public class IntermediateCompiler
 
 	/**
 	 * Insert loads/store instructions before/after each instruction that uses spilled registers.
+	 * A spilled RHS register is replaced with its stack location if the addressing mode allows
+	 * it, and a copy to a spilled register is stored directly. If the next instruction modifies
+	 * the same spilled register, the value is kept in the auxiliary register without storing it
+	 * in between.
 	 */
 	private void insertLoadsAndStores()
 	{
 		ArrayList<Instruction> newInstructions = new ArrayList<Instruction>();
 
-		for (Instruction instr : instructions) {
+		// Spilled register whose current value is in AUX_REG1 and not yet stored.
+		VirtualRegister pendingReg = null;
+
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = foldSpilledOperand(instructions.get(i));
+
 			// If LHS is spilled, load from stack. Move label if necessary.
-			int lhsSpillIdx = 0;
+			VirtualRegister lhsReg = instr.leftReg;
+			int lhsSpillIdx = -1;
 			if (instr.leftReg != null && instr.leftReg.realRegister == null) {
 				lhsSpillIdx = instr.leftReg.spillIdx;
-				if (!instr.discardsLhs())
+				if (!instr.discardsLhs() && instr.leftReg != pendingReg) {
 					newInstructions.add(new Instruction(instr.label, "load", AUX_REG1, 1,
-							Integer.toString(lhsSpillIdx), VirtualRegister.FP));
+							getSpillLocation(lhsSpillIdx), VirtualRegister.FP));
+					instr.label = null;
+				}
 				instr.leftReg = AUX_REG1;
-				instr.label = null;
 			}
+			pendingReg = null;
 
-			// If RHS is spilled, load from stack.
-			int rhsSpillIdx = 0;
+			// If RHS is spilled, load from stack. Pop overwrites the RHS register.
+			int rhsSpillIdx = -1;
 			if (instr.rightReg != null && instr.rightReg.realRegister == null) {
 				rhsSpillIdx = instr.rightReg.spillIdx;
-				if (!instr.discardsLhs())
+				if (!instr.mnemonic.equals("pop")) {
 					newInstructions.add(new Instruction(instr.label, "load", AUX_REG2, 1,
-							Integer.toString(rhsSpillIdx), VirtualRegister.FP));
+							getSpillLocation(rhsSpillIdx), VirtualRegister.FP));
+					instr.label = null;
+				}
 				instr.rightReg = AUX_REG2;
-				instr.label = null;
+			}
+
+			// Copy to a spilled register is stored directly from the source register.
+			if (lhsSpillIdx >= 0 && isRegisterCopy(instr)) {
+				newInstructions.add(new Instruction(instr.label, "store", instr.rightReg, 0,
+						getSpillLocation(lhsSpillIdx), VirtualRegister.FP));
+				continue;
 			}
 
 			// Copy original instruction.
 			newInstructions.add(instr);
 
-			// Write back modified value if necessary.
+			// Write back modified value if necessary. The auxiliary registers can also be used
+			// directly, e.g. for return values, in which case spill index is not set.
 			VirtualRegister modifiedRegister = instr.getModifiedRegister();
-			if (modifiedRegister != null && (instr.leftReg == AUX_REG1
-					|| instr.leftReg == AUX_REG2)) {
-				int spillIdx = modifiedRegister == AUX_REG1 ? lhsSpillIdx : rhsSpillIdx;
+			int spillIdx = -1;
+			if (modifiedRegister == AUX_REG1) {
+				spillIdx = lhsSpillIdx;
+				if (spillIdx >= 0 && isModifiedNext(i, lhsReg)) {
+					pendingReg = lhsReg;
+					spillIdx = -1;
+				}
+			} else if (modifiedRegister == AUX_REG2)
+				spillIdx = rhsSpillIdx;
+			if (spillIdx >= 0) {
 				newInstructions.add(new Instruction(null, "store", modifiedRegister, 0,
-						Integer.toString(spillIdx), VirtualRegister.FP));
+						getSpillLocation(spillIdx), VirtualRegister.FP));
 			}
 		}
 
 		instructions = newInstructions;
 	}
 
+	/**
+	 * Replaces a spilled RHS register operand with its stack location, e.g. "add V1, V2" becomes
+	 * "add V1, 2(fp)" and "load V1, 0(V2)" becomes "load V1, @2(fp)".
+	 *
+	 * @return the new instruction or the original one if the operand cannot be replaced
+	 */
+	private static Instruction foldSpilledOperand(Instruction instr)
+	{
+		if (instr.rightReg == null || instr.rightReg.realRegister != null
+				|| instr.mnemonic.equals("pop") || instr.isTableJump())
+			return instr;
+		VirtualRegister spilledReg = instr.rightReg;
+		Instruction spillLoad = new Instruction(null, "load", spilledReg, 1,
+				getSpillLocation(spilledReg.spillIdx), VirtualRegister.FP);
+
+		// LHS is loaded separately, so it can be the same spilled register.
+		Instruction source = instr;
+		if (instr.leftReg == spilledReg) {
+			source = new Instruction(instr.label, instr.mnemonic, AUX_REG1,
+					instr.getRealAddressingMode(), instr.getImmediateValue(), spilledReg);
+		}
+		Instruction folded = source.propagateRhsValue(spillLoad, 1);
+		if (folded == null)
+			return instr;
+		folded.leftReg = instr.leftReg;
+		return folded;
+	}
+
+	/**
+	 * Checks whether the instruction copies a register to another.
+	 */
+	private static boolean isRegisterCopy(Instruction instr)
+	{
+		return instr.mnemonic.equals("load") && instr.getRealAddressingMode() == 0
+				&& instr.getImmediateValue() == null && instr.rightReg != null
+				&& instr.rightReg.realRegister != Register.R0;
+	}
+
+	/**
+	 * Checks whether the instruction following idx modifies a register in place without using it
+	 * as RHS operand, so that the value of the register doesn't need to be stored in between.
+	 */
+	private boolean isModifiedNext(int idx, VirtualRegister reg)
+	{
+		if (idx + 1 >= instructions.size())
+			return false;
+		Instruction next = instructions.get(idx + 1);
+		return next.label == null && next.leftReg == reg && !next.discardsLhs()
+				&& next.getModifiedRegister() == reg && next.rightReg != reg;
+	}
+
+	/**
+	 * Get the stack frame offset of a spill location. Spill locations are placed at the start of
+	 * local data, which starts from 1(fp).
+	 */
+	private static String getSpillLocation(int spillIdx)
+	{
+		return Integer.toString(1 + spillIdx);
+	}
+
 	/**
 	 * Moves instruction label to next instruction.
 	 */
@@ -309,20 +575,28 @@ public class IntermediateCompiler
 	}
 
 	/**
-	 * Calculates live ranges of all virtual registers.
+	 * Calculates live ranges of all virtual registers. The live range of a register covers all
+	 * instructions that use the register and all points where its value is live, so that values
+	 * that are kept over loop back edges stay alive for the whole loop.
 	 */
 	private List<RangeEvent> calculateLiveRanges()
 	{
-		List<RangeEvent> events = new ArrayList<RangeEvent>();
+		LivenessAnalysis liveness = new LivenessAnalysis(instructions,
+				new FlowGraph(instructions, label));
 
 		for (int i = 0; i < instructions.size(); ++i) {
-			updateLiveRange(instructions.get(i).leftReg, i, true, events);
-			updateLiveRange(instructions.get(i).rightReg, i, true, events);
+			updateLiveRange(instructions.get(i).leftReg, i);
+			updateLiveRange(instructions.get(i).rightReg, i);
+			for (VirtualRegister reg : liveness.getLiveRegistersAfter(i))
+				updateLiveRange(reg, i);
 		}
 
-		for (int i = instructions.size(); i-- > 0;) {
-			updateLiveRange(instructions.get(i).leftReg, i, false, events);
-			updateLiveRange(instructions.get(i).rightReg, i, false, events);
+		List<RangeEvent> events = new ArrayList<RangeEvent>();
+		for (VirtualRegister reg : liveness.getRegisters()) {
+			if (reg.liveRangeStart >= 0) {
+				events.add(new RangeEvent(reg, true));
+				events.add(new RangeEvent(reg, false));
+			}
 		}
 
 		Collections.sort(events);
@@ -330,23 +604,14 @@ public class IntermediateCompiler
 		return events;
 	}
 
-	private void updateLiveRange(VirtualRegister reg, int idx, boolean start,
-			List<RangeEvent> events)
+	private void updateLiveRange(VirtualRegister reg, int idx)
 	{
 		if (reg == null || reg.realRegister != null)
 			return;
 
-		if (start) {
-			if (reg.liveRangeStart < 0) {
-				reg.liveRangeStart = idx;
-				events.add(new RangeEvent(reg, true));
-			}
-		} else {
-			if (reg.liveRangeEnd < 0) {
-				reg.liveRangeEnd = idx + 1;
-				events.add(new RangeEvent(reg, false));
-			}
-		}
+		if (reg.liveRangeStart < 0)
+			reg.liveRangeStart = idx;
+		reg.liveRangeEnd = idx + 1;
 	}
 
 	/**
@@ -3,91 +3,280 @@ package titocc.compiler;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import titocc.compiler.elements.ExternalDeclaration;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.FunctionType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.Token;
 import titocc.tokenizer.TokenStream;
 import titocc.tokenizer.Tokenizer;
 
 /**
- * Manages intrinsic functions/objects that are implemented using C language. They can be called
- * during the compilation process to implement other operations.
+ * Manages intrinsic functions/objects that are implemented using C language or hand-written
+ * assembly. They can be called during the compilation process to implement other operations.
+ *
+ * <p> Assembly definitions are given one instruction per line as "[.label] mnemonic [reg,]
+ * operand". Labels starting with a dot are local to the definition and are replaced with
+ * globally unique names. The first instruction gets the name of the intrinsic as its label.
+ *
+ * <p> The definitions are compiled once per JVM into assembly templates. Each compilation
+ * declares its own symbols for the intrinsics and instantiates the templates of the used
+ * intrinsics with the globally unique names of the translation unit, so the C definitions are
+ * not parsed or compiled again. Adding an intrinsic therefore adds no per-compilation cost
+ * unless it is used.
  */
 class Intrinsics
 {
+	/**
+	 * Definition of an intrinsic. Shared by all compilations.
+	 */
 	private static class Intrinsic
 	{
-		Symbol symbol;
+		final String name;
 
-		String definition;
+		final CType type;
 
-		boolean compiled = false;
+		final String definition;
 
-		Intrinsic(Symbol symbol, String definition)
-		{
-			this.symbol = symbol;
-			this.definition = definition;
-		}
+		final String[] assembly;
 
-		boolean define(Assembler asm, Scope scope) throws IOException, SyntaxException
+		/**
+		 * Compiled code, or null if the templates have not been compiled yet.
+		 */
+		AssemblyTemplate template = null;
+
+		Intrinsic(String name, CType type, String definition, String[] assembly)
 		{
-			if (symbol.getUseCount() == 0 || compiled)
-				return false;
-
-			Tokenizer tokenizer = new Tokenizer(new StringReader(definition));
-			TokenStream tokenStream = new TokenStream(tokenizer.tokenize());
-			ExternalDeclaration declaration = ExternalDeclaration.parse(tokenStream);
-			if (declaration == null) {
-				Token token = tokenStream.getFurthestReadToken();
-				throw new SyntaxException("Unexpected token \"" + token + "\".",
-						token.getPosition());
-			}
-			declaration.compile(asm, scope);
-			compiled = true;
-			return true;
+			this.name = name;
+			this.type = type;
+			this.definition = definition;
+			this.assembly = assembly;
 		}
 	}
 
-	private List<Intrinsic> intrinsics = new ArrayList<Intrinsic>();
+	/**
+	 * Definitions of all intrinsics.
+	 */
+	private static final List<Intrinsic> definitions = new ArrayList<Intrinsic>();
+
+	/**
+	 * Indices of the intrinsics by the global names used in the templates.
+	 */
+	private static final Map<String, Integer> templateIntrinsics = new HashMap<String, Integer>();
 
 	/**
-	 * Constructor. Sets up all necessary data for declaring/defining the intrinsics.
+	 * Values of the pooled constants by the labels used in the templates.
 	 */
-	Intrinsics()
+	private static final Map<String, Integer> templateConstants = new HashMap<String, Integer>();
+
+	/**
+	 * Symbols of the intrinsics for the current compilation, in the same order as definitions.
+	 */
+	private final List<Symbol> symbols = new ArrayList<Symbol>();
+
+	/**
+	 * Whether the intrinsic has been defined in the current compilation.
+	 */
+	private final boolean[] defined;
+
+	static
 	{
 		// The "middle" 32-bit value (2^31).
-		add(new Symbol(
-				"__m",
-				CType.INT,
-				StorageClass.Extern,
-				false),
-				"int __m = 0x80000000;");
-
-		// Unsigned division using only signed operations.
-		add(new Symbol(
-				"__udiv",
-				new FunctionType(CType.INT, CType.INT, CType.INT),
-				StorageClass.Extern,
-				false),
-				"int __udiv(int a, int b)"
+		add("__m", CType.INT, "int __m = 0x80000000;");
+
+		// Unsigned division using only signed operations. Arguments a and b are at -3(FP) and
+		// -2(FP) and the return value is stored to -4(FP). Only the auxiliary registers R0 and
+		// R5 are used, so nothing needs to be saved.
+		//
+		// If the highest bit of b is set, the quotient is 1 if a >= b and 0 otherwise. Both
+		// operands are negative when a >= b, so signed comparison can be used. If the highest
+		// bit of a is set, the quotient of a / 2 is doubled. The result is too small by at most
+		// one, which is checked by comparing the remainder against b.
+		addAssembly("__udiv", CType.function(CType.INT, CType.INT, CType.INT),
+				"       load    R0, -2(FP)",
+				"       jneg    R0, .big",
+				"       load    R5, -3(FP)",
+				"       jneg    R5, .large",
+				"       div     R5, -2(FP)",
+				"       store   R5, -4(FP)",
+				"       exit    SP, =2",
+				".large shr     R5, =1",
+				"       div     R5, -2(FP)",
+				"       shl     R5, =1",
+				"       load    R0, R5",
+				"       mul     R0, -2(FP)",
+				"       sub     R0, -3(FP)",
+				"       add     R0, -2(FP)",
+				"       jpos    R0, .done",
+				"       add     R5, =1",
+				".done  store   R5, -4(FP)",
+				"       exit    SP, =2",
+				".big   load    R5, =0",
+				"       load    R0, -3(FP)",
+				"       jnneg   R0, .done",
+				"       comp    R0, -2(FP)",
+				"       jles    .done",
+				"       load    R5, =1",
+				"       jump    .done");
+
+		// Unsigned remainder using the same method as __udiv.
+		addAssembly("__umod", CType.function(CType.INT, CType.INT, CType.INT),
+				"       load    R0, -2(FP)",
+				"       jneg    R0, .big",
+				"       load    R5, -3(FP)",
+				"       jneg    R5, .large",
+				"       mod     R5, -2(FP)",
+				"       store   R5, -4(FP)",
+				"       exit    SP, =2",
+				".large shr     R5, =1",
+				"       div     R5, -2(FP)",
+				"       shl     R5, =1",
+				"       mul     R5, -2(FP)",
+				"       sub     R5, -3(FP)",
+				"       add     R5, -2(FP)",
+				"       load    R0, =0",
+				"       jnpos   R5, .sub",
+				"       load    R0, -2(FP)",
+				".sub   sub     R0, R5",
+				"       store   R0, -4(FP)",
+				"       exit    SP, =2",
+				".big   load    R5, -3(FP)",
+				"       jnneg   R5, .done",
+				"       comp    R5, -2(FP)",
+				"       jles    .done",
+				"       sub     R5, -2(FP)",
+				".done  store   R5, -4(FP)",
+				"       exit    SP, =2");
+
+		// Copies n words from src to dst. Arguments dst, src and n are at -4(FP), -3(FP) and
+		// -2(FP). R1 and R2 are saved because only R0 and R5 may be used freely.
+		addAssembly("__memcpy",
+				CType.function(CType.VOID, CType.pointer(CType.VOID), CType.pointer(CType.VOID),
+						CType.INT),
+				"       load    R0, -2(FP)",
+				"       jnpos   R0, .done",
+				"       push    SP, R1",
+				"       push    SP, R2",
+				"       load    R1, -4(FP)",
+				"       load    R2, -3(FP)",
+				"       add     R0, R1",
+				".loop  load    R5, 0(R2)",
+				"       store   R5, 0(R1)",
+				"       add     R1, =1",
+				"       add     R2, =1",
+				"       comp    R0, R1",
+				"       jgre    .loop",
+				"       pop     SP, R2",
+				"       pop     SP, R1",
+				".done  exit    SP, =3");
+
+		// Sets n words starting from dst to value. Arguments dst, value and n are at -4(FP),
+		// -3(FP) and -2(FP).
+		addAssembly("__memset",
+				CType.function(CType.VOID, CType.pointer(CType.VOID), CType.INT, CType.INT),
+				"       load    R0, -2(FP)",
+				"       jnpos   R0, .done",
+				"       push    SP, R1",
+				"       load    R1, -4(FP)",
+				"       load    R5, -3(FP)",
+				"       add     R0, R1",
+				".loop  store   R5, 0(R1)",
+				"       add     R1, =1",
+				"       comp    R0, R1",
+				"       jgre    .loop",
+				"       pop     SP, R1",
+				".done  exit    SP, =3");
+
+		// Unsigned 64-bit division and remainder. The third argument selects the remainder.
+		// Values that fit in 32 bits use 32-bit division. Otherwise the quotient is estimated by
+		// dividing the dividend with the divisor rounded up to 16 significant bits. The division
+		// by a 16-bit value is done with 32-bit divisions in 16-bit digits. Each estimate
+		// reduces the remainder by about 15 bits, so only a few rounds are needed.
+		add("__udivmod64", CType.function(CType.ULLONG, CType.ULLONG, CType.ULLONG, CType.INT),
+				"unsigned long long __udivmod64(unsigned long long n, unsigned long long d,"
+				+ "		int remainder)"
+				+ "{"
+				+ "	unsigned long long q = 0;"
+				+ "	unsigned long long t = d;"
+				+ "	unsigned nh;"
+				+ "	unsigned nl;"
+				+ "	unsigned dt;"
+				+ "	unsigned r;"
+				+ "	int s = 0;"
+				+ "	if (!(n >> 32) && !(d >> 32)) {"
+				+ "		nl = n;"
+				+ "		dt = d;"
+				+ "		if (remainder)"
+				+ "			return nl % dt;"
+				+ "		return nl / dt;"
+				+ "	}"
+				+ "	while (t >> 24) {"
+				+ "		t >>= 8;"
+				+ "		s += 8;"
+				+ "	}"
+				+ "	while (t >> 16) {"
+				+ "		t >>= 1;"
+				+ "		++s;"
+				+ "	}"
+				+ "	dt = t;"
+				+ "	if (s)"
+				+ "		++dt;"
+				+ "	while (n >= d) {"
+				+ "		t = n >> s;"
+				+ "		nh = t >> 32;"
+				+ "		nl = t;"
+				+ "		r = nh % dt;"
+				+ "		t = (unsigned long long) (nh / dt) << 32;"
+				+ "		nh = (r << 16) | (nl >> 16);"
+				+ "		r = nh % dt;"
+				+ "		t |= nh / dt << 16;"
+				+ "		nh = (r << 16) | (nl & 65535);"
+				+ "		t |= nh / dt;"
+				+ "		if (!t)"
+				+ "			t = 1;"
+				+ "		q += t;"
+				+ "		n -= t * d;"
+				+ "	}"
+				+ "	if (remainder)"
+				+ "		return n;"
+				+ "	return q;"
+				+ "}");
+
+		// Signed 64-bit division and remainder using __udivmod64. Quotient is truncated toward
+		// zero and remainder has the sign of the dividend.
+		add("__divmod64", CType.function(CType.LLONG, CType.LLONG, CType.LLONG, CType.INT),
+				"long long __divmod64(long long a, long long b, int remainder)"
 				+ "{"
-				+ "  if (b & __m) {"
-				+ "      return a + __m >= b + __m;"
-				+ "  } else {"
-				+ "    int r = 0;"
-				+ "    int c;"
-				+ "    while (a & __m) {"
-				+ "      r += c = (__m - 1) / b;"
-				+ "      a -= c * b;"
-				+ "    }"
-				+ "    return r + a / b;"
-				+ "  }"
+				+ "	unsigned long long r;"
+				+ "	int negative = 0;"
+				+ "	if (a < 0) {"
+				+ "		a = -a;"
+				+ "		negative = 1;"
+				+ "	}"
+				+ "	if (b < 0) {"
+				+ "		b = -b;"
+				+ "		if (!remainder)"
+				+ "			negative = !negative;"
+				+ "	}"
+				+ "	r = __udivmod64(a, b, remainder);"
+				+ "	if (negative)"
+				+ "		r = -r;"
+				+ "	return r;"
 				+ "}");
 	}
 
+	/**
+	 * Constructor. Creates the symbols of the intrinsics for a new compilation.
+	 */
+	Intrinsics()
+	{
+		for (Intrinsic intr : definitions)
+			symbols.add(new Symbol(intr.name, intr.type, StorageClass.Extern, false));
+		defined = new boolean[definitions.size()];
+	}
+
 	/**
 	 * Declares the intrinsic symbols.
 	 *
@@ -95,36 +284,166 @@ class Intrinsics
 	 */
 	void declare(Scope scope)
 	{
-		for (Intrinsic intr : intrinsics) {
-			scope.add(intr.symbol);
-		}
+		for (Symbol sym : symbols)
+			scope.add(sym);
 	}
 
 	/**
-	 * Compiles and defines the intrinsics conditionally. I.e. the assembly code for intrinsic
-	 * is only emitted if the symbol is used.
+	 * Defines the intrinsics conditionally. I.e. the assembly code for intrinsic is only emitted
+	 * if the symbol is used.
 	 *
 	 * @param asm assembler used for code generation
-	 * @param scope scope where they intrinsics are compiled
+	 * @param scope scope where they intrinsics are defined
 	 * @throws IOException if assembler throws
 	 */
 	void define(Assembler asm, Scope scope) throws IOException
 	{
+		compileTemplates();
+
+		boolean newDefinitions;
+		do {
+			newDefinitions = false;
+			for (int i = 0; i < symbols.size(); ++i) {
+				if (symbols.get(i).getUseCount() == 0 || defined[i])
+					continue;
+				instantiate(asm, scope, i);
+				defined[i] = true;
+				newDefinitions = true;
+			}
+		} while (newDefinitions);
+	}
+
+	/**
+	 * Emits the template of an intrinsic. Labels of the template get new globally unique names
+	 * and references to other intrinsics and pooled constants are replaced with the names of
+	 * this compilation.
+	 */
+	private void instantiate(Assembler asm, Scope scope, int index) throws IOException
+	{
+		AssemblyTemplate template = definitions.get(index).template;
+		Map<String, String> renamed = new HashMap<String, String>();
+		for (String name : template.getReferences()) {
+			Integer intrinsic = templateIntrinsics.get(name);
+			Integer constant = templateConstants.get(name);
+			if (intrinsic != null) {
+				Symbol sym = symbols.get(intrinsic);
+				sym.increaseUseCount();
+				renamed.put(name, sym.getGlobalName());
+			} else if (constant != null)
+				renamed.put(name, scope.getConstantPool().add(constant));
+		}
+		for (String label : template.getLabels()) {
+			Integer intrinsic = templateIntrinsics.get(label);
+			if (intrinsic != null)
+				renamed.put(label, symbols.get(intrinsic).getGlobalName());
+			else
+				renamed.put(label, scope.makeGloballyUniqueName(label));
+		}
+		template.instantiate(asm, renamed);
+		symbols.get(index).define();
+	}
+
+	/**
+	 * Compiles the templates of all intrinsics unless already compiled. The intrinsics are
+	 * compiled in a separate global scope as if they were all used by a program.
+	 */
+	private static synchronized void compileTemplates()
+	{
+		if (definitions.get(0).template != null)
+			return;
+
+		Scope scope = new Scope(null, "");
+		for (String name : Compiler.reservedGlobalNames)
+			scope.makeGloballyUniqueName(name);
+		Intrinsics intrinsics = new Intrinsics();
+		intrinsics.declare(scope);
+
+		List<AssemblyTemplate> templates = new ArrayList<AssemblyTemplate>();
 		try {
-			boolean newDefinitions;
-			do {
-				newDefinitions = false;
-				for (Intrinsic intr : intrinsics)
-					newDefinitions |= intr.define(asm, scope);
-			} while (newDefinitions);
+			for (int i = 0; i < definitions.size(); ++i) {
+				Intrinsic intr = definitions.get(i);
+				Symbol sym = intrinsics.symbols.get(i);
+				AssemblyTemplate template = new AssemblyTemplate();
+				if (intr.assembly != null)
+					compileAssembly(template, scope, sym, intr.assembly);
+				else
+					compileC(template, scope, intr.definition);
+				templates.add(template);
+				templateIntrinsics.put(sym.getGlobalName(), i);
+			}
 		} catch (SyntaxException e) {
 			throw new InternalCompilerException("Compiler error in intrinsic function: "
 					+ e.getMessage());
+		} catch (IOException e) {
+			throw new InternalCompilerException("Writing intrinsic function template failed: "
+					+ e.getMessage());
 		}
+
+		for (Map.Entry<Integer, String> e : scope.getConstantPool().getLabels().entrySet())
+			templateConstants.put(e.getValue(), e.getKey());
+
+		// Templates are only set when all of them compiled successfully.
+		for (int i = 0; i < definitions.size(); ++i)
+			definitions.get(i).template = templates.get(i);
+	}
+
+	private static void compileC(Assembler asm, Scope scope, String definition)
+			throws IOException, SyntaxException
+	{
+		Tokenizer tokenizer = new Tokenizer(new StringReader(definition));
+		TokenStream tokenStream = new TokenStream(tokenizer.tokenize());
+		ExternalDeclaration declaration = ExternalDeclaration.parse(tokenStream);
+		if (declaration == null) {
+			Token token = tokenStream.getFurthestReadToken();
+			throw new SyntaxException("Unexpected token \"" + token + "\".",
+					token.getPosition());
+		}
+		declaration.compile(asm, scope);
+	}
+
+	private static void compileAssembly(Assembler asm, Scope scope, Symbol symbol,
+			String[] assembly) throws IOException
+	{
+		Map<String, String> localLabels = new HashMap<String, String>();
+		asm.beginSection();
+		asm.addEmptyLines(1);
+		asm.addLabel(symbol.getGlobalName());
+		for (String line : assembly) {
+			String[] parts = line.trim().split("[\\s,]+");
+			int i = 0;
+			if (parts[0].startsWith("."))
+				asm.addLabel(getLocalLabel(parts[i++], localLabels, scope, symbol));
+			String mnemonic = parts[i++];
+			String operand = parts[parts.length - 1];
+			if (operand.startsWith("."))
+				operand = getLocalLabel(operand, localLabels, scope, symbol);
+			if (parts.length - i == 2)
+				asm.emit(mnemonic, Register.valueOf(parts[i]), operand);
+			else
+				asm.emit(mnemonic, operand);
+		}
+		symbol.define();
+	}
+
+	private static String getLocalLabel(String name, Map<String, String> localLabels,
+			Scope scope, Symbol symbol)
+	{
+		String label = localLabels.get(name);
+		if (label == null) {
+			label = scope.makeGloballyUniqueName(symbol.getGlobalName() + "_"
+					+ name.substring(1));
+			localLabels.put(name, label);
+		}
+		return label;
+	}
+
+	private static void add(String name, CType type, String definition)
+	{
+		definitions.add(new Intrinsic(name, type, definition, null));
 	}
 
-	private void add(Symbol symbol, String definition)
+	private static void addAssembly(String name, CType type, String... assembly)
 	{
-		intrinsics.add(new Intrinsic(symbol, definition));
+		definitions.add(new Intrinsic(name, type, null, assembly));
 	}
 }
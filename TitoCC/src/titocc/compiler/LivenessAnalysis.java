@@ -0,0 +1,209 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backward data flow analysis that finds out which virtual registers are live (i.e. their value
+ * may be read later) before and after each instruction. Only registers that have not been mapped
+ * to physical registers are analyzed. The comparison result set by "comp" is tracked like a
+ * register so that unused comparisons can be detected as well.
+ */
+class LivenessAnalysis
+{
+	/**
+	 * Pseudo register that represents the comparison result in the state register.
+	 */
+	static final VirtualRegister COMPARISON_RESULT = new VirtualRegister();
+
+	/**
+	 * Analyzed instructions.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Maps analyzed registers to bit indices.
+	 */
+	private final Map<VirtualRegister, Integer> registerIds =
+			new HashMap<VirtualRegister, Integer>();
+
+	/**
+	 * Analyzed registers in the order of their bit indices.
+	 */
+	private final List<VirtualRegister> registers = new ArrayList<VirtualRegister>();
+
+	/**
+	 * Live registers at the start of each instruction (and the exit node).
+	 */
+	private final BitSet[] liveIn;
+
+	/**
+	 * Live registers at the end of each instruction.
+	 */
+	private final BitSet[] liveOut;
+
+	/**
+	 * Runs the analysis.
+	 *
+	 * @param instructions list of instructions
+	 * @param graph flow graph for the instructions
+	 */
+	LivenessAnalysis(List<Instruction> instructions, FlowGraph graph)
+	{
+		this.instructions = instructions;
+		getId(COMPARISON_RESULT);
+
+		int n = instructions.size();
+		liveIn = new BitSet[n + 1];
+		liveOut = new BitSet[n];
+		BitSet[] uses = new BitSet[n];
+		int[] defs = new int[n];
+		for (int i = 0; i < n; ++i) {
+			uses[i] = new BitSet();
+			for (VirtualRegister reg : getUsedRegisters(instructions.get(i))) {
+				if (isAnalyzed(reg))
+					uses[i].set(getId(reg));
+			}
+			VirtualRegister def = getDefinedRegister(instructions.get(i));
+			defs[i] = isAnalyzed(def) ? getId(def) : -1;
+			liveIn[i] = new BitSet();
+			liveOut[i] = new BitSet();
+		}
+		liveIn[n] = new BitSet();
+
+		// Iterate backwards until nothing changes.
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = n; i-- > 0;) {
+				BitSet out = liveOut[i];
+				for (int s : graph.getSuccessors(i))
+					out.or(liveIn[s]);
+				BitSet in = (BitSet) out.clone();
+				if (defs[i] >= 0)
+					in.clear(defs[i]);
+				in.or(uses[i]);
+				if (!in.equals(liveIn[i])) {
+					liveIn[i] = in;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a register is live after an instruction.
+	 *
+	 * @param idx instruction index
+	 * @param reg register
+	 * @return true if the value in the register may be used later; registers that are not
+	 * analyzed are always considered live
+	 */
+	boolean isLiveAfter(int idx, VirtualRegister reg)
+	{
+		if (!isAnalyzed(reg))
+			return true;
+		Integer id = registerIds.get(reg);
+		return id != null && liveOut[idx].get(id);
+	}
+
+	/**
+	 * Checks whether a register is live before an instruction.
+	 *
+	 * @param idx instruction index
+	 * @param reg register
+	 * @return true if the value in the register may be used later; registers that are not
+	 * analyzed are always considered live
+	 */
+	boolean isLiveBefore(int idx, VirtualRegister reg)
+	{
+		if (!isAnalyzed(reg))
+			return true;
+		Integer id = registerIds.get(reg);
+		return id != null && liveIn[idx].get(id);
+	}
+
+	/**
+	 * Get all analyzed virtual registers, excluding the comparison result.
+	 *
+	 * @return list of registers
+	 */
+	List<VirtualRegister> getRegisters()
+	{
+		return registers.subList(1, registers.size());
+	}
+
+	/**
+	 * Get the virtual registers that are live after an instruction, excluding the comparison
+	 * result.
+	 *
+	 * @param idx instruction index
+	 * @return list of live registers
+	 */
+	List<VirtualRegister> getLiveRegistersAfter(int idx)
+	{
+		return getRegisters(liveOut[idx]);
+	}
+
+	/**
+	 * Get the virtual registers that are live before an instruction, excluding the comparison
+	 * result.
+	 *
+	 * @param idx instruction index
+	 * @return list of live registers
+	 */
+	List<VirtualRegister> getLiveRegistersBefore(int idx)
+	{
+		return getRegisters(liveIn[idx]);
+	}
+
+	/**
+	 * Get the registers read by an instruction, including the comparison result.
+	 */
+	static List<VirtualRegister> getUsedRegisters(Instruction instr)
+	{
+		List<VirtualRegister> regs = instr.getReadRegisters();
+		if (instr.readsComparisonResult())
+			regs.add(COMPARISON_RESULT);
+		return regs;
+	}
+
+	/**
+	 * Get the register written by an instruction, including the comparison result.
+	 */
+	static VirtualRegister getDefinedRegister(Instruction instr)
+	{
+		if (instr.mnemonic.equals("comp"))
+			return COMPARISON_RESULT;
+		if (instr.isPseudoInstruction() || instr.mnemonic.equals("nop"))
+			return null;
+		return instr.getModifiedRegister();
+	}
+
+	private static boolean isAnalyzed(VirtualRegister reg)
+	{
+		return reg != null && reg.realRegister == null;
+	}
+
+	private List<VirtualRegister> getRegisters(BitSet live)
+	{
+		List<VirtualRegister> regs = new ArrayList<VirtualRegister>();
+		for (int i = live.nextSetBit(1); i >= 0; i = live.nextSetBit(i + 1))
+			regs.add(registers.get(i));
+		return regs;
+	}
+
+	private int getId(VirtualRegister reg)
+	{
+		Integer id = registerIds.get(reg);
+		if (id == null) {
+			id = registers.size();
+			registerIds.put(reg, id);
+			registers.add(reg);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,43 @@
+package titocc.compiler;
+
+import java.util.BitSet;
+
+/**
+ * Natural loop in a flow graph. Consists of a header instruction that dominates the loop and all
+ * instructions that can reach a back edge to the header without passing through the header.
+ */
+class Loop
+{
+	/**
+	 * Index of the header instruction.
+	 */
+	final int header;
+
+	/**
+	 * Indices of the instructions in the loop, including the header.
+	 */
+	final BitSet body;
+
+	/**
+	 * Constructs a Loop.
+	 *
+	 * @param header index of the header instruction
+	 * @param body instructions in the loop
+	 */
+	Loop(int header, BitSet body)
+	{
+		this.header = header;
+		this.body = body;
+	}
+
+	/**
+	 * Checks whether an instruction is inside the loop.
+	 *
+	 * @param idx instruction index
+	 * @return true if in the loop
+	 */
+	boolean contains(int idx)
+	{
+		return body.get(idx);
+	}
+}
@@ -0,0 +1,161 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves computations whose value does not change between loop iterations in front of the loop.
+ *
+ * <p> A computation consists of a load to a virtual register, possibly followed by arithmetic
+ * instructions that modify the same register, e.g. "load V1, n(fp); mul V1, n(fp)". It can be
+ * moved if all of its operands are constants, registers that are not modified in the loop, or
+ * variables that are not written in the loop. The moved instructions are placed in front of
+ * every jump that enters the loop from outside, or just before the loop header if the loop is
+ * entered by falling through.
+ *
+ * <p> Because the moved register stays live for the whole loop, a computation is only moved if
+ * the number of simultaneously live registers in the loop stays within the number of allocatable
+ * registers. Loads that would be merged into the instruction using them anyway are not moved.
+ */
+class LoopInvariantCodeMotion extends LoopOptimizer
+{
+	/**
+	 * Arithmetic instructions that cannot fail and can therefore be executed even when the loop
+	 * body wouldn't execute them.
+	 */
+	private static final Set<String> safeArithmeticInstructions = new HashSet<String>(
+			Arrays.asList("add", "sub", "mul", "and", "or", "xor", "shl", "shr", "shra"));
+
+	/**
+	 * Constructs the optimizer.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	LoopInvariantCodeMotion(List<Instruction> instructions, String endLabel)
+	{
+		super(instructions, endLabel);
+	}
+
+	/**
+	 * Tries to move one computation out of the loop.
+	 */
+	@Override
+	protected boolean optimizeLoop(Loop loop)
+	{
+		List<Integer> entries = getLoopEntries(loop);
+		if (entries == null)
+			return false;
+
+		for (int i = loop.body.nextSetBit(0); i >= 0; i = loop.body.nextSetBit(i + 1)) {
+			List<Integer> chain = getInvariantChain(loop, i);
+			if (chain != null && isWorthMoving(chain)
+					&& fitsInRegisters(loop, instructions.get(i).leftReg)) {
+				moveChain(loop, chain, entries);
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether the instruction at idx starts an invariant computation and returns the
+	 * indices of the instructions in the computation.
+	 */
+	private List<Integer> getInvariantChain(Loop loop, int idx)
+	{
+		Instruction first = instructions.get(idx);
+		if (!first.mnemonic.equals("load") || first.leftReg.realRegister != null)
+			return null;
+
+		VirtualRegister reg = first.leftReg;
+		List<Integer> chain = definitions.get(reg);
+		if (chain.get(0) != idx || liveness.isLiveBefore(loop.header, reg))
+			return null;
+		if (!isInvariantOperand(loop, first, reg))
+			return null;
+
+		int last = chain.get(chain.size() - 1);
+		for (int i = idx + 1; i <= last; ++i) {
+			if (!loop.contains(i) || !graph.continuesBlock(i))
+				return null;
+
+			Instruction instr = instructions.get(i);
+			if (chain.contains(i)) {
+				if (instr.leftReg != reg || !isSafeArithmetic(instr)
+						|| !isInvariantOperand(loop, instr, reg))
+					return null;
+			} else if (LivenessAnalysis.getUsedRegisters(instr).contains(reg))
+				return null;
+		}
+
+		return chain;
+	}
+
+	private static boolean isSafeArithmetic(Instruction instr)
+	{
+		if (safeArithmeticInstructions.contains(instr.mnemonic))
+			return true;
+		if (!instr.mnemonic.equals("div") && !instr.mnemonic.equals("mod"))
+			return false;
+		// Division is only moved if the divisor is a non-zero constant.
+		if (instr.rightReg != null || instr.getRealAddressingMode() != 0)
+			return false;
+		try {
+			return Integer.parseInt(instr.getImmediateValue()) != 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks whether moving a computation would save instructions in the loop. A single load
+	 * is usually merged into the instructions that use the loaded value, so it is not moved
+	 * unless some usage prevents this.
+	 */
+	private boolean isWorthMoving(List<Integer> chain)
+	{
+		if (chain.size() > 1)
+			return true;
+
+		Instruction load = instructions.get(chain.get(0));
+		VirtualRegister reg = load.leftReg;
+		List<Integer> usages = new ArrayList<Integer>();
+		for (int i = 0; i < instructions.size(); ++i) {
+			if (LivenessAnalysis.getUsedRegisters(instructions.get(i)).contains(reg))
+				usages.add(i);
+		}
+
+		if (load.isConstantLoad(0)) {
+			for (int u : usages) {
+				if (instructions.get(u).propagateRhsValue(load, 0) == null)
+					return true;
+			}
+			return false;
+		} else if (load.isConstantLoad(1)) {
+			return usages.size() != 1 || usages.get(0) != chain.get(0) + 1
+					|| instructions.get(usages.get(0)).propagateRhsValue(load, 1) == null;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Replaces the chain instructions with "nop"s and inserts copies of them at the loop
+	 * entries.
+	 */
+	private void moveChain(Loop loop, List<Integer> chain, List<Integer> entries)
+	{
+		List<Instruction> moved = new ArrayList<Instruction>();
+		for (int idx : chain) {
+			Instruction instr = instructions.get(idx);
+			moved.add(copyInstruction(instr));
+			instructions.set(idx, instr.makeNop());
+		}
+		insertAtEntries(loop, entries, moved);
+	}
+}
@@ -0,0 +1,297 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for optimizations that transform one loop at a time. Provides the analyses that are
+ * needed for deciding whether values change inside a loop, and for inserting code in front of a
+ * loop. Loops are found from the back edges of the flow graph, so all loop statements (and loops
+ * made with goto) are handled the same way.
+ */
+abstract class LoopOptimizer
+{
+	/**
+	 * Instruction list that is modified.
+	 */
+	protected final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	protected final String endLabel;
+
+	/**
+	 * Flow graph for current instructions.
+	 */
+	protected FlowGraph graph;
+
+	/**
+	 * Liveness information for current instructions.
+	 */
+	protected LivenessAnalysis liveness;
+
+	/**
+	 * Indices of the instructions that define each virtual register.
+	 */
+	protected Map<VirtualRegister, List<Integer>> definitions;
+
+	/**
+	 * Names of stack frame variables whose address is used in the function.
+	 */
+	protected Set<String> addressTakenVariables;
+
+	/**
+	 * Constructs the optimizer.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	LoopOptimizer(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+	}
+
+	/**
+	 * Transforms loops, one change at a time, until there is nothing left to do. Inner loops are
+	 * handled before outer loops.
+	 *
+	 * @return true if any changes were made
+	 */
+	boolean apply()
+	{
+		boolean changed = false;
+		boolean transformed = true;
+		while (transformed) {
+			transformed = false;
+			analyze();
+			for (Loop loop : graph.getLoops()) {
+				if (optimizeLoop(loop)) {
+					transformed = changed = true;
+					break;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Makes a single change to a loop. Analysis results are recomputed after each change.
+	 *
+	 * @param loop loop
+	 * @return true if the loop was changed
+	 */
+	protected abstract boolean optimizeLoop(Loop loop);
+
+	/**
+	 * Recomputes the information needed for the optimization.
+	 */
+	private void analyze()
+	{
+		graph = new FlowGraph(instructions, endLabel);
+		liveness = new LivenessAnalysis(instructions, graph);
+
+		definitions = new HashMap<VirtualRegister, List<Integer>>();
+		addressTakenVariables = new HashSet<String>();
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			VirtualRegister def = LivenessAnalysis.getDefinedRegister(instr);
+			if (def != null) {
+				List<Integer> defs = definitions.get(def);
+				if (defs == null) {
+					defs = new ArrayList<Integer>();
+					definitions.put(def, defs);
+				}
+				defs.add(i);
+			}
+			if (instr.leftReg != null && instr.rightReg == VirtualRegister.FP
+					&& instr.getNominalAddressingMode() == 0)
+				addressTakenVariables.add(instr.getImmediateValue());
+		}
+	}
+
+	/**
+	 * Finds the places where loop is entered from outside. Returns null if the loop is entered
+	 * by a conditional jump or a jump table, in which case there is no place for code executed
+	 * before the loop.
+	 * Index of the header means that the loop is entered by falling through to the header.
+	 *
+	 * @param loop loop
+	 * @return list of entry positions or null
+	 */
+	protected List<Integer> getLoopEntries(Loop loop)
+	{
+		List<Integer> entries = new ArrayList<Integer>();
+		if (loop.header == 0)
+			entries.add(0);
+		for (int p : graph.getPredecessors(loop.header)) {
+			if (loop.contains(p))
+				continue;
+			if (instructions.get(p).isUnconditionalJump() && !instructions.get(p).isTableJump())
+				entries.add(p);
+			else if (p == loop.header - 1 && !instructions.get(p).isJumpInstruction())
+				entries.add(loop.header);
+			else
+				return null;
+		}
+		return entries;
+	}
+
+	/**
+	 * Inserts copies of instructions at every loop entry.
+	 *
+	 * @param loop loop
+	 * @param entries entry positions returned by getLoopEntries()
+	 * @param code instructions to insert
+	 */
+	protected void insertAtEntries(Loop loop, List<Integer> entries, List<Instruction> code)
+	{
+		// Insert starting from the last position so that the indices stay valid.
+		List<Integer> positions = new ArrayList<Integer>(entries);
+		Collections.sort(positions, Collections.reverseOrder());
+		for (int pos : positions) {
+			List<Instruction> copies = new ArrayList<Instruction>();
+			for (Instruction instr : code)
+				copies.add(copyInstruction(instr));
+			// Jump label is moved to the first inserted instruction.
+			Instruction entry = instructions.get(pos);
+			if (pos != loop.header) {
+				copies.get(0).label = entry.label;
+				entry.label = null;
+			}
+			instructions.addAll(pos, copies);
+		}
+	}
+
+	/**
+	 * Creates an unlabeled copy of a normal instruction.
+	 *
+	 * @param instr instruction
+	 * @return new instruction
+	 */
+	protected static Instruction copyInstruction(Instruction instr)
+	{
+		return new Instruction(null, instr.mnemonic, instr.leftReg, instr.getRealAddressingMode(),
+				instr.getImmediateValue(), instr.rightReg);
+	}
+
+	/**
+	 * Checks whether a register is modified in the loop.
+	 *
+	 * @param loop loop
+	 * @param reg virtual register
+	 * @return true if some instruction in the loop defines the register
+	 */
+	protected boolean isDefinedInLoop(Loop loop, VirtualRegister reg)
+	{
+		List<Integer> defs = definitions.get(reg);
+		if (defs != null) {
+			for (int d : defs) {
+				if (loop.contains(d))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the RHS operand of an instruction has the same value in every iteration.
+	 *
+	 * @param loop loop
+	 * @param instr instruction
+	 * @param reg register whose value is being computed, and therefore not invariant
+	 * @return true if invariant
+	 */
+	protected boolean isInvariantOperand(Loop loop, Instruction instr, VirtualRegister reg)
+	{
+		VirtualRegister rightReg = instr.rightReg;
+		if (rightReg == reg)
+			return false;
+		if (rightReg != null && rightReg != VirtualRegister.FP) {
+			if (rightReg.realRegister != null || isDefinedInLoop(loop, rightReg))
+				return false;
+		}
+
+		int addrMode = instr.getRealAddressingMode();
+		if (addrMode == 0)
+			return true;
+		if (addrMode > 1 || instr.getImmediateValue() == null
+				|| (rightReg != null && rightReg != VirtualRegister.FP))
+			return false;
+		return !isWrittenInLoop(loop, instr.getImmediateValue(), rightReg);
+	}
+
+	/**
+	 * Checks whether a named variable may be modified in the loop. Stack frame variables can
+	 * only be modified by direct stores if their address is never used. Global variables may
+	 * also be modified by indirect stores and function calls.
+	 *
+	 * @param loop loop
+	 * @param name variable name
+	 * @param baseReg FP for stack frame variables, null for global variables
+	 * @return true if the variable may be modified
+	 */
+	protected boolean isWrittenInLoop(Loop loop, String name, VirtualRegister baseReg)
+	{
+		boolean local = baseReg == VirtualRegister.FP;
+		if (local && addressTakenVariables.contains(name))
+			return true;
+
+		for (int i = loop.body.nextSetBit(0); i >= 0; i = loop.body.nextSetBit(i + 1)) {
+			Instruction instr = instructions.get(i);
+			if (instr.mnemonic.equals("call") && !local)
+				return true;
+			if (!instr.mnemonic.equals("store"))
+				continue;
+			boolean direct = isDirectStore(instr);
+			if (!direct && !local)
+				return true;
+			if (direct && name.equals(instr.getImmediateValue()) && instr.rightReg == baseReg)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether a store instruction writes to a named variable.
+	 *
+	 * @param instr store instruction
+	 * @return true if the target is a global or stack frame variable
+	 */
+	protected static boolean isDirectStore(Instruction instr)
+	{
+		return instr.getRealAddressingMode() == 0
+				&& (instr.rightReg == null || instr.rightReg == VirtualRegister.FP);
+	}
+
+	/**
+	 * Checks that the number of live registers in the loop doesn't exceed the number of physical
+	 * registers if an additional register is live in the whole loop.
+	 *
+	 * @param loop loop
+	 * @param reg register that would be live in the whole loop; may be a new register
+	 * @return true if there are enough registers
+	 */
+	protected boolean fitsInRegisters(Loop loop, VirtualRegister reg)
+	{
+		for (int i = loop.body.nextSetBit(0); i >= 0; i = loop.body.nextSetBit(i + 1)) {
+			if (countWith(liveness.getLiveRegistersBefore(i), reg) > RegisterSet.REGISTER_COUNT
+					|| countWith(liveness.getLiveRegistersAfter(i), reg)
+					> RegisterSet.REGISTER_COUNT)
+				return false;
+		}
+		return true;
+	}
+
+	private static int countWith(List<VirtualRegister> regs, VirtualRegister reg)
+	{
+		return regs.contains(reg) ? regs.size() : regs.size() + 1;
+	}
+}
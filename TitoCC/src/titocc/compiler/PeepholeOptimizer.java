@@ -0,0 +1,225 @@
+package titocc.compiler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Peephole optimizer for the final instructions after register allocation. A small window of
+ * adjacent instructions is examined at each position and matching patterns are replaced with
+ * cheaper code:
+ * <br> - "store R, x" followed by "load R, x" drops the load, and a load to another register is
+ * replaced with a register copy (mostly spill code from the register allocator),
+ * <br> - jumps to unconditional jumps are redirected to the final target,
+ * <br> - a conditional jump over an unconditional jump is replaced with the inverted conditional
+ * jump,
+ * <br> - jumps to the instruction that would be executed next anyway are removed,
+ * <br> - instructions that become unreachable are removed.
+ *
+ * <p> Removed instructions are replaced with "nop"s so that their labels are preserved.
+ */
+class PeepholeOptimizer
+{
+	/**
+	 * Conditional jumps and their inverted counterparts.
+	 */
+	private static final Map<String, String> invertedJumps = new HashMap<String, String>();
+
+	static {
+		String[][] pairs = {{"jneg", "jnneg"}, {"jzer", "jnzer"}, {"jpos", "jnpos"},
+			{"jles", "jnles"}, {"jequ", "jnequ"}, {"jgre", "jngre"}};
+		for (String[] pair : pairs) {
+			invertedJumps.put(pair[0], pair[1]);
+			invertedJumps.put(pair[1], pair[0]);
+		}
+	}
+
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	private final String endLabel;
+
+	/**
+	 * Flow graph for current instructions. Label positions stay valid while rules are applied
+	 * because instructions are only replaced, never inserted or removed.
+	 */
+	private FlowGraph graph;
+
+	/**
+	 * Constructs the optimizer.
+	 *
+	 * @param instructions instruction list with physical registers; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 */
+	PeepholeOptimizer(List<Instruction> instructions, String endLabel)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+	}
+
+	/**
+	 * Applies the rules until none of them matches.
+	 *
+	 * @return true if any instructions were changed
+	 */
+	boolean apply()
+	{
+		boolean changedAny = false;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			graph = new FlowGraph(instructions, endLabel);
+			for (int i = 0; i < instructions.size(); ++i) {
+				changed |= removeRedundantLoad(i);
+				changed |= threadJump(i);
+				changed |= invertBranch(i);
+				changed |= removeJumpToNext(i);
+			}
+			changed |= removeUnreachableCode();
+			changedAny |= changed;
+		}
+		return changedAny;
+	}
+
+	/**
+	 * Removes or simplifies a load that reads the value stored by the previous instruction.
+	 */
+	private boolean removeRedundantLoad(int storeIdx)
+	{
+		Instruction store = instructions.get(storeIdx);
+		if (!store.mnemonic.equals("store") || store.getNominalAddressingMode() != 1)
+			return false;
+		int loadIdx = getNext(storeIdx);
+		if (loadIdx >= instructions.size())
+			return false;
+		Instruction load = instructions.get(loadIdx);
+		if (load.label != null || !load.mnemonic.equals("load")
+				|| load.getNominalAddressingMode() != 1
+				|| !load.getRhsString().equals(store.getRhsString()))
+			return false;
+
+		if (load.leftReg.realRegister == store.leftReg.realRegister)
+			instructions.set(loadIdx, load.makeNop());
+		else if (store.leftReg.realRegister != Register.R0) {
+			// R0 cannot be copied because it reads as zero when used as RHS operand.
+			instructions.set(loadIdx, new Instruction(null, "load", load.leftReg, 0, null,
+					store.leftReg));
+		} else
+			return false;
+		return true;
+	}
+
+	/**
+	 * Redirects a jump whose target is an unconditional jump to the final target.
+	 */
+	private boolean threadJump(int jumpIdx)
+	{
+		Instruction jump = instructions.get(jumpIdx);
+		if (!isSimpleJump(jump))
+			return false;
+
+		String target = jump.getImmediateValue();
+		Set<String> visited = new HashSet<String>();
+		while (true) {
+			// Jumps that end up in an infinite loop of jumps are left alone.
+			if (!visited.add(target))
+				return false;
+			int next = graph.getNextExecutable(graph.getLabelPosition(target));
+			if (next >= instructions.size() || !isSimpleJump(instructions.get(next))
+					|| !instructions.get(next).isUnconditionalJump())
+				break;
+			target = instructions.get(next).getImmediateValue();
+		}
+		if (target.equals(jump.getImmediateValue()))
+			return false;
+
+		instructions.set(jumpIdx, new Instruction(jump.label, jump.mnemonic, jump.leftReg,
+				jump.getRealAddressingMode(), target, null));
+		return true;
+	}
+
+	/**
+	 * Replaces "jCC A; jump B; A:" with "jNCC B".
+	 */
+	private boolean invertBranch(int condIdx)
+	{
+		Instruction cond = instructions.get(condIdx);
+		String inverted = invertedJumps.get(cond.mnemonic);
+		if (inverted == null)
+			return false;
+		int jumpIdx = getNext(condIdx);
+		if (jumpIdx >= instructions.size())
+			return false;
+		Instruction jump = instructions.get(jumpIdx);
+		if (jump.label != null || !isSimpleJump(jump) || !jump.isUnconditionalJump())
+			return false;
+		int condTarget = graph.getNextExecutable(graph.getLabelPosition(
+				cond.getImmediateValue()));
+		if (condTarget != graph.getNextExecutable(jumpIdx + 1))
+			return false;
+
+		instructions.set(condIdx, new Instruction(cond.label, inverted, cond.leftReg,
+				cond.getRealAddressingMode(), jump.getImmediateValue(), null));
+		instructions.set(jumpIdx, jump.makeNop());
+		return true;
+	}
+
+	/**
+	 * Removes a jump whose target is the instruction that follows the jump.
+	 */
+	private boolean removeJumpToNext(int jumpIdx)
+	{
+		Instruction jump = instructions.get(jumpIdx);
+		if (!isSimpleJump(jump))
+			return false;
+		int target = graph.getLabelPosition(jump.getImmediateValue());
+		if (graph.getNextExecutable(target) != graph.getNextExecutable(jumpIdx + 1))
+			return false;
+		instructions.set(jumpIdx, jump.makeNop());
+		return true;
+	}
+
+	/**
+	 * Removes executable instructions that are not reachable from the first instruction.
+	 */
+	private boolean removeUnreachableCode()
+	{
+		boolean[] reachable = new FlowGraph(instructions, endLabel).getReachable();
+		boolean removed = false;
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			if (reachable[i] || instr.isPseudoInstruction() || instr.mnemonic.equals("nop"))
+				continue;
+			instructions.set(i, new Instruction(null, "nop"));
+			removed = true;
+		}
+		return removed;
+	}
+
+	/**
+	 * Finds the next instruction, skipping "nop"s that have no label.
+	 */
+	private int getNext(int idx)
+	{
+		++idx;
+		while (idx < instructions.size() && instructions.get(idx).mnemonic.equals("nop")
+				&& instructions.get(idx).label == null)
+			++idx;
+		return idx;
+	}
+
+	/**
+	 * Checks whether the instruction is a jump to a constant label, i.e. not a jump table.
+	 */
+	private static boolean isSimpleJump(Instruction instr)
+	{
+		return instr.isJumpInstruction() && !instr.isTableJump();
+	}
+}
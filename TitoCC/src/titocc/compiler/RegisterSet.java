@@ -8,11 +8,32 @@ import java.util.EnumSet;
  */
 public class RegisterSet
 {
+	/**
+	 * Number of registers available for allocation.
+	 */
+	public static final int REGISTER_COUNT = 4;
+
+	/**
+	 * Registers that can be allocated.
+	 */
+	private static final EnumSet<Register> allocatable = EnumSet.of(Register.R1, Register.R2,
+			Register.R3, Register.R4);
+
 	/**
 	 * Currently available registers.
 	 */
-	private EnumSet<Register> available = EnumSet.of(Register.R1, Register.R2, Register.R3,
-			Register.R4);
+	private EnumSet<Register> available = EnumSet.copyOf(allocatable);
+
+	/**
+	 * Checks whether a physical register is one of the allocatable registers.
+	 *
+	 * @param reg physical register or null
+	 * @return true if the register can be allocated
+	 */
+	public static boolean isAllocatable(Register reg)
+	{
+		return reg != null && allocatable.contains(reg);
+	}
 
 	/**
 	 * Allocates a new register.
@@ -1,7 +1,12 @@
 package titocc.compiler;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * Temporary result of an expression that is located in a register.
+ * Temporary result of an expression that is located in a register. Values of 64-bit types are
+ * located in a pair of registers, one for each word.
  */
 public class Rvalue
 {
@@ -10,6 +15,11 @@ public class Rvalue
 	 */
 	private final VirtualRegister valueRegister;
 
+	/**
+	 * Virtual register for the high word of a 64-bit value, or null.
+	 */
+	private final VirtualRegister highRegister;
+
 	/**
 	 * Constructor.
 	 *
@@ -18,10 +28,23 @@ public class Rvalue
 	public Rvalue(VirtualRegister valueRegister)
 	{
 		this.valueRegister = valueRegister;
+		this.highRegister = null;
 	}
 
 	/**
-	 * Get the register.
+	 * Constructs an Rvalue for a 64-bit value.
+	 *
+	 * @param lowRegister register for the low word
+	 * @param highRegister register for the high word
+	 */
+	public Rvalue(VirtualRegister lowRegister, VirtualRegister highRegister)
+	{
+		this.valueRegister = lowRegister;
+		this.highRegister = highRegister;
+	}
+
+	/**
+	 * Get the register. For 64-bit values this is the register of the low word.
 	 *
 	 * @return
 	 */
@@ -29,4 +52,28 @@ public class Rvalue
 	{
 		return valueRegister;
 	}
+
+	/**
+	 * Get the register of the high word.
+	 *
+	 * @return high word register or null if the value is not a 64-bit value
+	 */
+	public VirtualRegister getHighRegister()
+	{
+		return highRegister;
+	}
+
+	/**
+	 * Get all registers of the value in the order of the words in memory.
+	 *
+	 * @return list of registers; empty if the value has no register
+	 */
+	public List<VirtualRegister> getRegisters()
+	{
+		if (valueRegister == null)
+			return Collections.emptyList();
+		if (highRegister == null)
+			return Collections.singletonList(valueRegister);
+		return Arrays.asList(valueRegister, highRegister);
+	}
 }
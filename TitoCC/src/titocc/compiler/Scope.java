@@ -2,14 +2,18 @@ package titocc.compiler;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import titocc.compiler.elements.SwitchStatement;
 
 /**
- * Represents a scope (aka namespace) that contains symbols declared within that scope.
+ * Represents a scope (aka namespace) that contains symbols declared within that scope. A new scope
+ * is open until close() is called. Symbols of the open scopes are also kept in an identifier table
+ * shared by the translation unit, which makes finding symbols independent of the nesting depth.
  */
 public class Scope
 {
@@ -28,11 +32,39 @@ public class Scope
 	 */
 	private final List<Scope> subScopes = new ArrayList<Scope>();
 
+	/**
+	 * Number of parent scopes.
+	 */
+	private final int depth;
+
+	/**
+	 * Declarations of the open scopes. Shared by all Scope objects.
+	 */
+	private final IdentifierTable identifiers;
+
+	/**
+	 * Whether the symbols of this scope are in the identifier table.
+	 */
+	private boolean open = false;
+
+	/**
+	 * Open scopes that were not parents of this scope and were therefore suspended (i.e. removed
+	 * from the identifier table) when this scope was opened, innermost first. Restored when this
+	 * scope is closed. Happens e.g. when a function is inlined to the calling function.
+	 */
+	private List<Scope> suspendedScopes = null;
+
 	/**
 	 * All the reserved names in the ttk-91 namespace. This is list is shared by all Scope objects.
 	 */
 	private final Set<String> globallyUniqueNames;
 
+	/**
+	 * Next number suffix to try for each lower case name base given to makeGloballyUniqueName.
+	 * Suffix 1 stands for the name without a suffix. Shared by all Scope objects.
+	 */
+	private final Map<String, Integer> nextNameSuffixes;
+
 	/**
 	 * If an identifier has linkage then this map contains mapping from that identifier to the
 	 * first declaration of that identifier. Contains both internal and external linkages.
@@ -40,10 +72,37 @@ public class Scope
 	private final Map<String, Symbol> linkages;
 
 	/**
-	 * Prefix added for this scope when generating globally unique names.
+	 * String literals of the translation unit. Shared by all Scope objects.
+	 */
+	private final StringPool stringPool;
+
+	/**
+	 * Wide integer constants of the translation unit. Shared by all Scope objects.
+	 */
+	private final ConstantPool constantPool;
+
+	/**
+	 * Prefix added when generating globally unique names; the prefixes of all parent scopes
+	 * followed by the prefix of this scope.
 	 */
 	private final String globalNamePrefix;
 
+	/**
+	 * Function whose parameters are declared in this scope, or null if this is not the outermost
+	 * scope of a function body.
+	 */
+	private Symbol function = null;
+
+	/**
+	 * Parameters of the function in declaration order, or null.
+	 */
+	private List<Symbol> parameters = null;
+
+	/**
+	 * Switch statement whose body is this scope, or null.
+	 */
+	private SwitchStatement switchStatement = null;
+
 	/**
 	 * Constructs a new Scope.
 	 *
@@ -53,14 +112,94 @@ public class Scope
 	public Scope(Scope parent, String globalNamePrefix)
 	{
 		this.parent = parent;
-		this.globalNamePrefix = globalNamePrefix;
 		if (parent == null) {
+			this.globalNamePrefix = globalNamePrefix;
+			depth = 0;
+			identifiers = new IdentifierTable();
 			globallyUniqueNames = new HashSet<String>();
+			nextNameSuffixes = new HashMap<String, Integer>();
 			linkages = new HashMap<String, Symbol>();
+			stringPool = new StringPool(this);
+			constantPool = new ConstantPool(this);
 		} else {
+			this.globalNamePrefix = parent.globalNamePrefix + globalNamePrefix;
+			depth = parent.depth + 1;
+			identifiers = parent.identifiers;
 			globallyUniqueNames = parent.globallyUniqueNames;
+			nextNameSuffixes = parent.nextNameSuffixes;
 			linkages = parent.linkages;
+			stringPool = parent.stringPool;
+			constantPool = parent.constantPool;
+		}
+		open();
+	}
+
+	/**
+	 * Makes this scope the innermost open scope if the parent scope is open. Open scopes that are
+	 * not parents of this scope are suspended.
+	 */
+	private void open()
+	{
+		if (parent != null && !parent.open)
+			return;
+
+		Scope innermost = identifiers.getInnermostScope();
+		if (innermost != parent) {
+			suspendedScopes = new ArrayList<Scope>();
+			for (; innermost != parent; innermost = innermost.parent) {
+				innermost.removeIdentifiers();
+				suspendedScopes.add(innermost);
+			}
 		}
+
+		open = true;
+		identifiers.setInnermostScope(this);
+	}
+
+	/**
+	 * Closes the scope after all its contents have been compiled. The symbols of the scope remain
+	 * accessible through getSymbols() but are no longer in the identifier table.
+	 */
+	public void close()
+	{
+		if (!open)
+			return;
+		if (identifiers.getInnermostScope() != this)
+			throw new InternalCompilerException("Closing a scope that has open subscopes.");
+
+		removeIdentifiers();
+		identifiers.setInnermostScope(parent);
+
+		if (suspendedScopes != null) {
+			for (int i = suspendedScopes.size() - 1; i >= 0; --i) {
+				Scope scope = suspendedScopes.get(i);
+				scope.open = true;
+				for (Symbol sym : scope.symbols.values())
+					identifiers.add(sym, scope);
+			}
+			identifiers.setInnermostScope(suspendedScopes.get(0));
+			suspendedScopes = null;
+		}
+	}
+
+	/**
+	 * Removes the symbols of this scope from the identifier table.
+	 */
+	private void removeIdentifiers()
+	{
+		open = false;
+		for (String name : symbols.keySet())
+			identifiers.remove(name, this);
+	}
+
+	/**
+	 * Returns the nesting depth of the scope.
+	 *
+	 * @return number of parent scopes
+	 */
+	int getDepth()
+	{
+		return depth;
 	}
 
 	/**
@@ -83,6 +222,84 @@ public class Scope
 		return parent;
 	}
 
+	/**
+	 * Returns the string pool of the translation unit.
+	 *
+	 * @return the string pool
+	 */
+	public StringPool getStringPool()
+	{
+		return stringPool;
+	}
+
+	/**
+	 * Returns the constant pool of the translation unit.
+	 *
+	 * @return the constant pool
+	 */
+	public ConstantPool getConstantPool()
+	{
+		return constantPool;
+	}
+
+	/**
+	 * Marks this scope as the outermost scope of a function body.
+	 *
+	 * @param function the function
+	 * @param parameters parameter symbols declared in this scope, in declaration order
+	 */
+	public void setFunction(Symbol function, List<Symbol> parameters)
+	{
+		this.function = function;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Returns the function whose body contains this scope.
+	 *
+	 * @return the function symbol or null if not inside a function body
+	 */
+	public Symbol getFunction()
+	{
+		if (function == null && parent != null)
+			return parent.getFunction();
+		return function;
+	}
+
+	/**
+	 * Returns the parameters of the function whose body contains this scope.
+	 *
+	 * @return parameter symbols in declaration order or null if not inside a function body
+	 */
+	public List<Symbol> getFunctionParameters()
+	{
+		if (function == null && parent != null)
+			return parent.getFunctionParameters();
+		return parameters;
+	}
+
+	/**
+	 * Marks this scope as the body of a switch statement.
+	 *
+	 * @param switchStatement the switch statement
+	 */
+	public void setSwitch(SwitchStatement switchStatement)
+	{
+		this.switchStatement = switchStatement;
+	}
+
+	/**
+	 * Returns the innermost switch statement whose body contains this scope.
+	 *
+	 * @return the switch statement or null if not inside a switch body
+	 */
+	public SwitchStatement getSwitch()
+	{
+		if (switchStatement == null && parent != null)
+			return parent.getSwitch();
+		return switchStatement;
+	}
+
 	/**
 	 * Returns a collection of all symbols in this scope.
 	 *
@@ -90,7 +307,7 @@ public class Scope
 	 */
 	public Collection<Symbol> getSymbols()
 	{
-		return new ArrayList<Symbol>(symbols.values());
+		return Collections.unmodifiableCollection(symbols.values());
 	}
 
 	/**
@@ -107,9 +324,16 @@ public class Scope
 
 	private Symbol find(String name, boolean incrementUseCount)
 	{
-		Symbol sym = symbols.get(name);
-		if (sym == null && parent != null)
-			sym = parent.find(name, incrementUseCount);
+		// Closed scopes are searched one by one until reaching an open scope.
+		Scope scope = this;
+		Symbol sym = null;
+		while (scope != null && !scope.open && sym == null) {
+			sym = scope.symbols.get(name);
+			scope = scope.parent;
+		}
+		if (sym == null && scope != null)
+			sym = identifiers.find(name, scope.depth);
+
 		if (sym != null && incrementUseCount)
 			sym.increaseUseCount();
 		return sym;
@@ -155,6 +379,8 @@ public class Scope
 		symbol.setGlobalName(globalName);
 
 		symbols.put(symbol.getName(), symbol);
+		if (open)
+			identifiers.add(symbol, this);
 
 		return new DeclarationResult(symbol);
 	}
@@ -228,12 +454,14 @@ public class Scope
 	 */
 	public Collection<Scope> getSubScopes()
 	{
-		return new ArrayList<Scope>(subScopes);
+		return Collections.unmodifiableList(subScopes);
 	}
 
 	/**
 	 * Generates a globally unique name by first adding the prefixes of the scope and all its parent
-	 * scopes. Then tries number suffixes starting from 2 until the name is unique.
+	 * scopes. Then tries number suffixes starting from 2 until the name is unique. Names are
+	 * compared case-insensitively. The next suffix is remembered for each name, so repeatedly
+	 * requesting the same name does not retry all the previous suffixes.
 	 *
 	 * @param name local name
 	 * @return a globally unique name
@@ -246,24 +474,13 @@ public class Scope
 		if (name.isEmpty())
 			throw new InternalCompilerException("Declaring empty identifier.");
 
-		String uniqueNameBase = generateGlobalNamePrefix() + name;
-		String uniqueName = uniqueNameBase;
-		for (int i = 2; !globallyUniqueNames.add(uniqueName.toLowerCase()); ++i)
-			uniqueName = uniqueNameBase + i;
-		return uniqueName;
-	}
-
-	/**
-	 * Generates the global name prefix for this scope by combining the prefixes from all parent
-	 * scopes.
-	 *
-	 * @return the combined prefix
-	 */
-	private String generateGlobalNamePrefix()
-	{
-		if (parent != null)
-			return parent.generateGlobalNamePrefix() + globalNamePrefix;
-		else
-			return globalNamePrefix;
+		String uniqueNameBase = globalNamePrefix + name;
+		String lowerCaseBase = uniqueNameBase.toLowerCase();
+		Integer nextSuffix = nextNameSuffixes.get(lowerCaseBase);
+		int i = nextSuffix != null ? nextSuffix : 1;
+		while (!globallyUniqueNames.add(i == 1 ? lowerCaseBase : lowerCaseBase + i))
+			++i;
+		nextNameSuffixes.put(lowerCaseBase, i + 1);
+		return i == 1 ? uniqueNameBase : uniqueNameBase + i;
 	}
 }
@@ -1,7 +1,18 @@
 package titocc.compiler;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
- * Manages space in stack frame. (Currently just spill locations.)
+ * Manages space in stack frame. The frame contains register spill locations followed by local
+ * variables. Variables in different subscopes of the same scope are never alive at the same time,
+ * so they share the same stack locations. E.g. in "{ int a; } { int b; }" variables a and b are
+ * placed in the same location.
  */
 public class StackAllocator
 {
@@ -10,6 +21,26 @@ public class StackAllocator
 	 */
 	private int spillCount = 0;
 
+	/**
+	 * Local variables in the order of their offsets.
+	 */
+	private final List<Symbol> localVariables = new ArrayList<Symbol>();
+
+	/**
+	 * Offsets of local variables from the start of the local variable area.
+	 */
+	private final Map<Symbol, Integer> localOffsets = new HashMap<Symbol, Integer>();
+
+	/**
+	 * Total size of the local variable area.
+	 */
+	private int localVariableSize = 0;
+
+	/**
+	 * Names of the variables that are kept in registers and need no stack location.
+	 */
+	private Set<String> registerVariables = Collections.emptySet();
+
 	/**
 	 * Returns the biggest number of spilled registers since the last call to resetMaxSpillCount.
 	 *
@@ -29,4 +60,83 @@ public class StackAllocator
 	{
 		this.spillCount = Math.max(this.spillCount, spillCount);
 	}
+
+	/**
+	 * Sets the variables that are kept in registers. They are not allocated stack locations.
+	 *
+	 * @param registerVariables global names of the variables
+	 */
+	public void setRegisterVariables(Set<String> registerVariables)
+	{
+		this.registerVariables = registerVariables;
+	}
+
+	/**
+	 * Allocates locations for the automatic variables declared in a scope and its subscopes.
+	 * Variables of the scope itself are placed first, and each subscope is then placed after
+	 * them starting from the same offset.
+	 *
+	 * @param scope outermost scope of the function body
+	 * @param excluded symbols that are not allocated from the stack frame, e.g. parameters
+	 */
+	public void allocateLocalVariables(Scope scope, Collection<Symbol> excluded)
+	{
+		localVariableSize = Math.max(localVariableSize,
+				allocateLocalVariables(scope, excluded, 0));
+	}
+
+	private int allocateLocalVariables(Scope scope, Collection<Symbol> excluded, int offset)
+	{
+		for (Symbol sym : scope.getSymbols()) {
+			// All automatic objects except excluded, internal and register objects.
+			if ((sym.getStorageClass() == StorageClass.Auto
+					|| sym.getStorageClass() == StorageClass.Register) && !excluded.contains(sym)
+					&& !sym.getName().startsWith("__")
+					&& !registerVariables.contains(sym.getGlobalName())) {
+				localVariables.add(sym);
+				localOffsets.put(sym, offset);
+				offset += sym.getType().getSize();
+			}
+		}
+
+		int end = offset;
+		for (Scope subscope : scope.getSubScopes())
+			end = Math.max(end, allocateLocalVariables(subscope, excluded, offset));
+		return end;
+	}
+
+	/**
+	 * Returns the allocated local variables.
+	 *
+	 * @return list of local variables
+	 */
+	public List<Symbol> getLocalVariables()
+	{
+		return localVariables;
+	}
+
+	/**
+	 * Returns the offset of a local variable from the frame pointer. 0(FP) is the old program
+	 * counter, so the frame data starts from 1(FP).
+	 *
+	 * @param var local variable
+	 * @return offset from frame pointer
+	 */
+	public int getLocalVariableOffset(Symbol var)
+	{
+		Integer offset = localOffsets.get(var);
+		if (offset == null)
+			throw new InternalCompilerException("Local variable not allocated.");
+		return 1 + spillCount + offset;
+	}
+
+	/**
+	 * Returns the total size of spill locations and local variables.
+	 *
+	 * @return frame size
+	 */
+	public int getFrameSize()
+	{
+		return spillCount + localVariableSize;
+	}
 }
@@ -0,0 +1,107 @@
+package titocc.compiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static storage for the string literals of a translation unit. Identical literals share the same
+ * storage, and a literal that is a suffix of a longer literal (e.g. "world" in "hello world") is
+ * placed inside the longer one. The strings are emitted after all functions as runs of unlabeled
+ * "dc" words, with one label at the start of each pooled literal.
+ */
+public class StringPool
+{
+	/**
+	 * Global scope used for generating the labels.
+	 */
+	private final Scope scope;
+
+	/**
+	 * Labels of the pooled strings in insertion order. Strings include the null termination.
+	 */
+	private final Map<List<Integer>, String> labels = new LinkedHashMap<List<Integer>, String>();
+
+	/**
+	 * Constructs an empty StringPool.
+	 *
+	 * @param scope global scope
+	 */
+	public StringPool(Scope scope)
+	{
+		this.scope = scope;
+	}
+
+	/**
+	 * Adds a string to the pool unless an identical string exists already.
+	 *
+	 * @param values character values including the null termination
+	 * @return label of the first character of the string
+	 */
+	public String add(List<Integer> values)
+	{
+		String label = labels.get(values);
+		if (label == null) {
+			label = scope.makeGloballyUniqueName("str");
+			labels.put(new ArrayList<Integer>(values), label);
+		}
+		return label;
+	}
+
+	/**
+	 * Emits the pooled strings. Longest strings are placed first so that shorter strings can be
+	 * placed as their suffixes.
+	 *
+	 * @param asm assembler used for emitting the data
+	 * @throws IOException if assembler throws
+	 */
+	public void define(Assembler asm) throws IOException
+	{
+		List<List<Integer>> strings = new ArrayList<List<Integer>>(labels.keySet());
+		Collections.sort(strings, new Comparator<List<Integer>>()
+		{
+			@Override
+			public int compare(List<Integer> s1, List<Integer> s2)
+			{
+				return s2.size() - s1.size();
+			}
+		});
+
+		List<List<Integer>> blocks = new ArrayList<List<Integer>>();
+		List<Map<Integer, String>> blockLabels = new ArrayList<Map<Integer, String>>();
+		for (List<Integer> str : strings) {
+			int blockIdx = 0;
+			while (blockIdx < blocks.size() && !endsWith(blocks.get(blockIdx), str))
+				++blockIdx;
+			if (blockIdx == blocks.size()) {
+				blocks.add(str);
+				blockLabels.add(new HashMap<Integer, String>());
+			}
+			List<Integer> block = blocks.get(blockIdx);
+			blockLabels.get(blockIdx).put(block.size() - str.size(), labels.get(str));
+		}
+
+		for (int i = 0; i < blocks.size(); ++i) {
+			asm.beginSection();
+			asm.addEmptyLines(1);
+			List<Integer> block = blocks.get(i);
+			for (int j = 0; j < block.size(); ++j) {
+				String label = blockLabels.get(i).get(j);
+				if (label != null)
+					asm.addLabel(label);
+				asm.emit("dc", block.get(j).toString());
+			}
+		}
+	}
+
+	private static boolean endsWith(List<Integer> str, List<Integer> suffix)
+	{
+		return str.size() >= suffix.size()
+				&& str.subList(str.size() - suffix.size(), str.size()).equals(suffix);
+	}
+}
@@ -1,6 +1,8 @@
 package titocc.compiler;
 
+import titocc.compiler.elements.FunctionDefinition;
 import titocc.compiler.types.CType;
+import titocc.compiler.types.FunctionType;
 
 /**
  * Represents a declared name like variable, function or code position.
@@ -60,6 +62,22 @@ public class Symbol
 	 */
 	private int useCount = 0;
 
+	/**
+	 * For functions with register calling convention, name of the wrapper function that can be
+	 * called using the standard calling convention. Null if the wrapper is not needed.
+	 */
+	private String stackCallWrapperName = null;
+
+	/**
+	 * Registers that hold the value of the object instead of memory, or null if not used.
+	 */
+	private Rvalue registerValue = null;
+
+	/**
+	 * Definition of a function that can be inlined at call sites, or null.
+	 */
+	private FunctionDefinition inlineDefinition = null;
+
 	/**
 	 * Constructs a new Symbol.
 	 *
@@ -266,4 +284,110 @@ public class Symbol
 		this.linkage = linkage;
 		this.linkedSymbol = linkedSymbol;
 	}
+
+	/**
+	 * Checks whether the function uses the register calling convention. Functions with internal
+	 * linkage can only be called from the same translation unit, so the compiler is free to
+	 * choose how they are called. They return their value in a register instead of a stack slot
+	 * reserved by the caller, and they only save the registers they modify.
+	 *
+	 * @return true if the symbol is a function with register calling convention
+	 */
+	public boolean hasRegisterCallingConvention()
+	{
+		if (!type.isFunction() || linkage != Linkage.Internal)
+			return false;
+		CType returnType = ((FunctionType) type).getReturnType();
+		return returnType.equals(CType.VOID) || returnType.getSize() == 1;
+	}
+
+	/**
+	 * Returns the name of the wrapper function that is used when the address of a function with
+	 * register calling convention is taken.
+	 *
+	 * @return wrapper name or null if not set
+	 */
+	public String getStackCallWrapperName()
+	{
+		if (linkedSymbol != null)
+			return linkedSymbol.getStackCallWrapperName();
+		return stackCallWrapperName;
+	}
+
+	/**
+	 * Sets the name of the wrapper function for function pointers.
+	 *
+	 * @param name globally unique name of the wrapper
+	 */
+	public void setStackCallWrapperName(String name)
+	{
+		if (linkedSymbol != null)
+			linkedSymbol.setStackCallWrapperName(name);
+		else
+			stackCallWrapperName = name;
+	}
+
+	/**
+	 * Returns the registers that hold the value of the object. Used for internal objects, like
+	 * return values, that are not stored in memory.
+	 *
+	 * @return value registers or null if the object is stored in memory
+	 */
+	public Rvalue getRegisterValue()
+	{
+		return registerValue;
+	}
+
+	/**
+	 * Sets the registers that hold the value of the object.
+	 *
+	 * @param registerValue value registers
+	 */
+	public void setRegisterValue(Rvalue registerValue)
+	{
+		this.registerValue = registerValue;
+	}
+
+	/**
+	 * Generates code that stores a value to the object in memory. Objects larger than one word
+	 * are stored through a register that holds their address.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param value stored value
+	 */
+	public void compileStore(IntermediateCompiler ic, Rvalue value)
+	{
+		if (type.getSize() == 1) {
+			ic.emit("store", value.getRegister(), getRhsOperand(false));
+		} else {
+			VirtualRegister address = new VirtualRegister();
+			ic.emit("load", address, getRhsOperand(false));
+			type.compileStore(ic, value, address, 0);
+		}
+	}
+
+	/**
+	 * Returns the function definition that is used for inlining calls to this function.
+	 *
+	 * @return function definition or null if calls are not inlined
+	 */
+	public FunctionDefinition getInlineDefinition()
+	{
+		if (linkedSymbol != null)
+			return linkedSymbol.getInlineDefinition();
+		return inlineDefinition;
+	}
+
+	/**
+	 * Sets the function definition that is used for inlining calls to this function.
+	 *
+	 * @param definition function definition
+	 */
+	public void setInlineDefinition(FunctionDefinition definition)
+	{
+		if (linkedSymbol != null)
+			linkedSymbol.setInlineDefinition(definition);
+		else
+			inlineDefinition = definition;
+	}
 }
@@ -0,0 +1,175 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps stack frame variables in virtual registers instead of memory. A variable can be promoted
+ * if its address is never used, i.e. every instruction accesses it directly with operand
+ * "x(fp)". Then
+ *
+ * <br> load V1, x(fp) --> load V1, Vx
+ * <br> add V1, x(fp) --> add V1, Vx
+ * <br> load V1, @x(fp) --> load V1, 0(Vx)
+ * <br> store V1, x(fp) --> load Vx, V1
+ *
+ * <p> The register allocator decides which of the new registers are spilled back to the stack.
+ * The copies are usually removed by coalescing them with the copied registers.
+ *
+ * <p> If the old value in memory may be read (e.g. a parameter), the variable is loaded to the
+ * register at the function entry. The load is placed before any labels, so that jumps to the start
+ * of the function (i.e. tail calls that store the new parameter values) skip it.
+ */
+class VariablePromoter
+{
+	/**
+	 * Instruction list that is modified.
+	 */
+	private final List<Instruction> instructions;
+
+	/**
+	 * Label following the last instruction or null.
+	 */
+	private final String endLabel;
+
+	/**
+	 * Names of the variables that may be promoted.
+	 */
+	private final Set<String> candidates;
+
+	/**
+	 * Names of the variables that are no longer accessed in memory after promotion.
+	 */
+	private final Set<String> registerVariables = new HashSet<String>();
+
+	/**
+	 * Constructs the promoter.
+	 *
+	 * @param instructions instruction list; modified in place
+	 * @param endLabel label that follows the last instruction or null if there is none
+	 * @param candidates names of the scalar stack frame variables whose values are not needed
+	 * after the instructions have been executed
+	 */
+	VariablePromoter(List<Instruction> instructions, String endLabel, Set<String> candidates)
+	{
+		this.instructions = instructions;
+		this.endLabel = endLabel;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * Promotes all variables whose address is not used.
+	 *
+	 * @return true if any variables were promoted
+	 */
+	boolean apply()
+	{
+		Map<String, VirtualRegister> promoted = findPromotableVariables();
+		if (promoted.isEmpty())
+			return false;
+
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			VirtualRegister reg = getVariableRegister(instr, promoted);
+			if (reg != null)
+				instructions.set(i, replaceOperand(instr, reg));
+		}
+
+		// Variables whose initial value is used are loaded from memory at function entry.
+		LivenessAnalysis liveness = new LivenessAnalysis(instructions,
+				new FlowGraph(instructions, endLabel));
+		List<Instruction> entryLoads = new ArrayList<Instruction>();
+		for (Map.Entry<String, VirtualRegister> e : promoted.entrySet()) {
+			if (!instructions.isEmpty() && liveness.isLiveBefore(0, e.getValue())) {
+				entryLoads.add(new Instruction(null, "load", e.getValue(), 1, e.getKey(),
+						VirtualRegister.FP));
+			} else
+				registerVariables.add(e.getKey());
+		}
+		instructions.addAll(0, entryLoads);
+
+		return true;
+	}
+
+	/**
+	 * Get the names of the promoted variables that are no longer stored in the stack frame.
+	 *
+	 * @return set of variable names
+	 */
+	Set<String> getRegisterVariables()
+	{
+		return registerVariables;
+	}
+
+	/**
+	 * Finds the candidate variables that are only accessed directly and creates a register for
+	 * each of them. Iteration order of the returned map follows the instructions, so that the
+	 * generated code doesn't depend on hash codes.
+	 */
+	private Map<String, VirtualRegister> findPromotableVariables()
+	{
+		Set<String> rejected = new HashSet<String>();
+		List<String> accessed = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			String name = instr.getImmediateValue();
+			if (name == null || !candidates.contains(name) || instr.isPseudoInstruction())
+				continue;
+			if (isDirectAccess(instr)) {
+				if (!accessed.contains(name))
+					accessed.add(name);
+			} else
+				rejected.add(name);
+		}
+
+		Map<String, VirtualRegister> promoted = new LinkedHashMap<String, VirtualRegister>();
+		for (String name : accessed) {
+			if (!rejected.contains(name))
+				promoted.put(name, new VirtualRegister());
+		}
+		return promoted;
+	}
+
+	/**
+	 * Checks whether the instruction reads or writes the value of the variable in its RHS
+	 * operand, instead of using its address.
+	 */
+	private static boolean isDirectAccess(Instruction instr)
+	{
+		if (instr.rightReg != VirtualRegister.FP)
+			return false;
+		int mode = instr.getRealAddressingMode();
+		if (instr.mnemonic.equals("store"))
+			return instr.leftReg != VirtualRegister.R0 || mode != 0;
+		if (instr.mnemonic.equals("call") || instr.isJumpInstruction()
+				|| instr.mnemonic.equals("pop"))
+			return false;
+		return mode >= 1;
+	}
+
+	private static VirtualRegister getVariableRegister(Instruction instr,
+			Map<String, VirtualRegister> promoted)
+	{
+		if (instr.rightReg != VirtualRegister.FP || instr.getImmediateValue() == null)
+			return null;
+		return promoted.get(instr.getImmediateValue());
+	}
+
+	/**
+	 * Replaces the variable operand with the register holding its value.
+	 */
+	private static Instruction replaceOperand(Instruction instr, VirtualRegister reg)
+	{
+		int mode = instr.getRealAddressingMode();
+		if (instr.mnemonic.equals("store") && mode == 0)
+			return new Instruction(instr.label, "load", reg, 0, null, instr.leftReg);
+		if (instr.mnemonic.equals("store"))
+			return new Instruction(instr.label, "store", instr.leftReg, 0, "0", reg);
+		if (mode == 1)
+			return new Instruction(instr.label, instr.mnemonic, instr.leftReg, 0, null, reg);
+		return new Instruction(instr.label, instr.mnemonic, instr.leftReg, 1, "0", reg);
+	}
+}
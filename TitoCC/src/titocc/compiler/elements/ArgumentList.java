@@ -1,11 +1,13 @@
 package titocc.compiler.elements;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
+import titocc.compiler.Symbol;
 import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.CType;
 import titocc.tokenizer.SyntaxException;
@@ -60,24 +62,93 @@ public class ArgumentList extends CodeElement
 	public void compile(IntermediateCompiler ic, Scope scope, List<CType> paramTypes)
 			throws SyntaxException
 	{
-		if (paramTypes.size() != arguments.size()) {
-			throw new SyntaxException("Number of arguments doesn't match the number of parameters.",
-					getPosition());
-		}
+		checkArgumentCount(paramTypes.size());
 
 		Iterator<CType> paramIterator = paramTypes.iterator();
 		for (Expression arg : arguments) {
-			CType paramType = paramIterator.next();
-			if (!arg.isAssignableTo(paramType, scope)) {
-				throw new SyntaxException("Argument type doesn't match type of the parameter.",
-						arg.getPosition());
-			}
+			Rvalue val = compileArgument(ic, scope, arg, paramIterator.next());
+			for (VirtualRegister reg : val.getRegisters())
+				ic.emit("push", VirtualRegister.SP, reg);
+		}
+	}
+
+	/**
+	 * Generates assembly code to evaluate the arguments from left to right and store the values
+	 * directly to the parameter objects. Used when the called function is inlined or the call is
+	 * replaced with a jump. All arguments are evaluated before the first store, so the arguments
+	 * can depend on the old parameter values.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the arguments are evaluated
+	 * @param parameters parameter objects of the called function
+	 * @throws SyntaxException if argument list contains an error
+	 */
+	public void compileToParameters(IntermediateCompiler ic, Scope scope, List<Symbol> parameters)
+			throws SyntaxException
+	{
+		List<CType> paramTypes = new ArrayList<CType>();
+		for (Symbol param : parameters)
+			paramTypes.add(param.getType());
+
+		List<Rvalue> values = compileValues(ic, scope, paramTypes);
+		storeToParameters(ic, values, parameters);
+	}
+
+	/**
+	 * Generates assembly code to evaluate the arguments from left to right without passing them
+	 * to the function.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the arguments are evaluated
+	 * @param paramTypes parameter types for the called function
+	 * @return argument values
+	 * @throws SyntaxException if argument list contains an error
+	 */
+	public List<Rvalue> compileValues(IntermediateCompiler ic, Scope scope,
+			List<CType> paramTypes) throws SyntaxException
+	{
+		checkArgumentCount(paramTypes.size());
+
+		List<Rvalue> values = new ArrayList<Rvalue>();
+		Iterator<CType> paramIterator = paramTypes.iterator();
+		for (Expression arg : arguments)
+			values.add(compileArgument(ic, scope, arg, paramIterator.next()));
+		return values;
+	}
+
+	/**
+	 * Generates assembly code to store evaluated argument values to the parameter objects.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param values argument values returned by compileValues()
+	 * @param parameters parameter objects of the called function
+	 */
+	public static void storeToParameters(IntermediateCompiler ic, List<Rvalue> values,
+			List<Symbol> parameters)
+	{
+		for (int i = 0; i < parameters.size(); ++i)
+			parameters.get(i).compileStore(ic, values.get(i));
+	}
 
-			Rvalue val = arg.compileWithConversion(ic, scope, paramType);
-			ic.emit("push", VirtualRegister.SP, val.getRegister());
+	private void checkArgumentCount(int paramCount) throws SyntaxException
+	{
+		if (paramCount != arguments.size()) {
+			throw new SyntaxException("Number of arguments doesn't match the number of parameters.",
+					getPosition());
 		}
 	}
 
+	private Rvalue compileArgument(IntermediateCompiler ic, Scope scope, Expression arg,
+			CType paramType) throws SyntaxException
+	{
+		if (!arg.isAssignableTo(paramType, scope)) {
+			throw new SyntaxException("Argument type doesn't match type of the parameter.",
+					arg.getPosition());
+		}
+
+		return arg.compileWithConversion(ic, scope, paramType);
+	}
+
 	@Override
 	public String toString()
 	{
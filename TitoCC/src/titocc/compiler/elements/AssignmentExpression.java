@@ -1,14 +1,13 @@
 package titocc.compiler.elements;
 
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Lvalue;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
-import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.PointerType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
 import titocc.util.Position;
@@ -149,7 +148,7 @@ public class AssignmentExpression extends Expression
 	{
 		Rvalue rhs = right.compileWithConversion(ic, scope, left.getType(scope).decay());
 		Lvalue lhs = left.compileAsLvalue(ic, scope, false);
-		ic.emit("store", rhs.getRegister(), "0", lhs.getRegister());
+		left.getType(scope).compileStore(ic, rhs, lhs.getRegister(), 0);
 		return rhs;
 	}
 
@@ -161,7 +160,7 @@ public class AssignmentExpression extends Expression
 			leftType = left.getType(scope).decay().promote();
 			rightType = CType.INT;
 		} else if (left.getType(scope).decay().isPointer()) {
-			leftType = new PointerType(CType.CHAR);
+			leftType = CType.pointer(CType.CHAR);
 			rightType = CType.PTRDIFF_T;
 		} else {
 			leftType = rightType = CType.getCommonType(left.getType(scope).decay(),
@@ -179,8 +178,7 @@ public class AssignmentExpression extends Expression
 		Lvalue lhs = left.compileAsLvalue(ic, scope, false);
 
 		// Load LHS to register.
-		Rvalue lhsVal = new Rvalue(new VirtualRegister());
-		ic.emit("load", lhsVal.getRegister(), "0", lhs.getRegister());
+		Rvalue lhsVal = left.getType(scope).compileLoad(ic, lhs.getRegister());
 		lhsVal = left.getType(scope).compileConversion(ic, scope, lhsVal, leftType);
 
 		// Compile the binary operator.
@@ -189,22 +187,36 @@ public class AssignmentExpression extends Expression
 		if (leftType.isPointer()) {
 			// Scale integer operand if necessary.
 			int leftIncrSize = left.getType(scope).decay().getIncrementSize();
-			if (leftIncrSize > 1)
-				ic.emit("mul", rhs.getRegister(), "=" + leftIncrSize);
+			compileScaling(ic, rhs.getRegister(), leftIncrSize);
 			ic.emit(operator.mnemonic, lhsVal.getRegister(), rhs.getRegister());
 			retVal = lhsVal;
 		} else if (operator.type == BinaryExpression.Type.BITWISE)
 			retVal = leftType.compileBinaryBitwiseOperator(ic, scope, lhsVal, rhs, binOp);
-		else if (operator.type == BinaryExpression.Type.SHIFT)
-			retVal = leftType.compileBinaryShiftOperator(ic, scope, lhsVal, rhs, binOp);
-		else //if (operator.type == BinaryExpression.Type.ARITHMETIC)
-			retVal = leftType.compileBinaryArithmeticOperator(ic, scope, lhsVal, rhs, binOp);
+		else if (operator.type == BinaryExpression.Type.SHIFT) {
+			BigInteger rightValue = right.getCompileTimeValue(scope);
+			retVal = null;
+			if (rightValue != null) {
+				retVal = leftType.compileConstantShiftOperator(ic, scope, lhsVal, rhs,
+						rightValue, binOp);
+			}
+			if (retVal == null)
+				retVal = leftType.compileBinaryShiftOperator(ic, scope, lhsVal, rhs, binOp);
+		} else { //if (operator.type == BinaryExpression.Type.ARITHMETIC)
+			BigInteger rightValue = right.getCompileTimeValue(scope);
+			retVal = null;
+			if (rightValue != null) {
+				retVal = leftType.compileConstantArithmeticOperator(ic, scope, lhsVal, rhs,
+						rightValue, binOp);
+			}
+			if (retVal == null)
+				retVal = leftType.compileBinaryArithmeticOperator(ic, scope, lhsVal, rhs, binOp);
+		}
 
 		// Convert to the original type of the left operand.
 		retVal = leftType.compileConversion(ic, scope, retVal, left.getType(scope));
 
 		// Assign result back to lvalue.
-		ic.emit("store", retVal.getRegister(), "0", lhs.getRegister());
+		left.getType(scope).compileStore(ic, retVal, lhs.getRegister(), 0);
 
 		return retVal;
 	}
@@ -8,7 +8,6 @@ import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.PointerType;
 import titocc.compiler.types.VoidType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
@@ -174,6 +173,23 @@ public class BinaryExpression extends Expression
 			return compileArithmeticOperator(ic, scope);
 	}
 
+	@Override
+	public void compileAsCondition(IntermediateCompiler ic, Scope scope, String trueLabel,
+			String falseLabel) throws SyntaxException
+	{
+		checkTypes(scope);
+		if (compileConstantCondition(ic, scope, trueLabel, falseLabel))
+			return;
+
+		Type opType = binaryOperators.get(operator).type;
+		if (opType == Type.LOGICAL)
+			compileLogicalCondition(ic, scope, trueLabel, falseLabel);
+		else if (opType == Type.RELATIONAL || opType == Type.EQUALITY)
+			compileComparisonCondition(ic, scope, trueLabel, falseLabel);
+		else
+			super.compileAsCondition(ic, scope, trueLabel, falseLabel);
+	}
+
 	private CType getCommonTypeIfArithmetic(Scope scope) throws SyntaxException
 	{
 		if (left.getType(scope).decay().isArithmetic()
@@ -201,6 +217,28 @@ public class BinaryExpression extends Expression
 		return lhs;
 	}
 
+	private void compileLogicalCondition(IntermediateCompiler ic, Scope scope, String trueLabel,
+			String falseLabel) throws SyntaxException
+	{
+		// Short circuit evaluation; the left operand jumps past the right operand if it alone
+		// determines the result.
+		String skipLabel = null;
+		if (operator.equals("&&")) {
+			String leftFalseLabel = falseLabel;
+			if (leftFalseLabel == null)
+				leftFalseLabel = skipLabel = scope.makeGloballyUniqueName("lbl");
+			left.compileAsCondition(ic, scope, null, leftFalseLabel);
+		} else {
+			String leftTrueLabel = trueLabel;
+			if (leftTrueLabel == null)
+				leftTrueLabel = skipLabel = scope.makeGloballyUniqueName("lbl");
+			left.compileAsCondition(ic, scope, leftTrueLabel, null);
+		}
+		right.compileAsCondition(ic, scope, trueLabel, falseLabel);
+		if (skipLabel != null)
+			ic.addLabel(skipLabel);
+	}
+
 	private Rvalue compileBitwiseOperator(IntermediateCompiler ic, Scope scope)
 			throws SyntaxException
 	{
@@ -220,6 +258,17 @@ public class BinaryExpression extends Expression
 		return targetType.compileBinaryComparisonOperator(ic, scope, lhs, rhs, operator);
 	}
 
+	private void compileComparisonCondition(IntermediateCompiler ic, Scope scope,
+			String trueLabel, String falseLabel) throws SyntaxException
+	{
+		CType commonType = getCommonTypeIfArithmetic(scope);
+		CType targetType = commonType != null ? commonType : CType.INTPTR_T;
+		Rvalue lhs = left.compileWithConversion(ic, scope, targetType);
+		Rvalue rhs = right.compileWithConversion(ic, scope, targetType);
+		targetType.compileBinaryComparisonJump(ic, scope, lhs, rhs, operator, trueLabel,
+				falseLabel);
+	}
+
 	private Rvalue compileShiftOperator(IntermediateCompiler ic, Scope scope)
 			throws SyntaxException
 	{
@@ -231,6 +280,13 @@ public class BinaryExpression extends Expression
 
 		Rvalue lhs = left.compileWithConversion(ic, scope, leftType);
 		Rvalue rhs = right.compileWithConversion(ic, scope, rightType);
+		BigInteger rightValue = right.getCompileTimeValue(scope);
+		if (rightValue != null) {
+			Rvalue ret = leftType.compileConstantShiftOperator(ic, scope, lhs, rhs, rightValue,
+					operator);
+			if (ret != null)
+				return ret;
+		}
 		return leftType.compileBinaryShiftOperator(ic, scope, lhs, rhs, operator);
 	}
 
@@ -241,6 +297,13 @@ public class BinaryExpression extends Expression
 		if (commonType != null) {
 			Rvalue lhs = left.compileWithConversion(ic, scope, commonType);
 			Rvalue rhs = right.compileWithConversion(ic, scope, commonType);
+			BigInteger rightValue = right.getCompileTimeValue(scope);
+			if (rightValue != null) {
+				Rvalue ret = commonType.compileConstantArithmeticOperator(ic, scope, lhs, rhs,
+						rightValue, operator);
+				if (ret != null)
+					return ret;
+			}
 			return commonType.compileBinaryArithmeticOperator(ic, scope, lhs, rhs, operator);
 		} else
 			return compilePointerArithmeticOperator(ic, scope);
@@ -256,8 +319,8 @@ public class BinaryExpression extends Expression
 		// Standard doesn't specify conversion for the integer operand in pointer arithmetic.
 		// However, any values that don't fit ptrdiff_t would be undefined behavior, so we may do a
 		// conversion to ptrdiff_t.
-		CType leftType = leftIncrSize > 1 ? new PointerType(CType.CHAR) : CType.PTRDIFF_T;
-		CType rightType = rightIncrSize > 1 ? new PointerType(CType.CHAR) : CType.PTRDIFF_T;
+		CType leftType = leftIncrSize > 1 ? CType.pointer(CType.CHAR) : CType.PTRDIFF_T;
+		CType rightType = rightIncrSize > 1 ? CType.pointer(CType.CHAR) : CType.PTRDIFF_T;
 
 		Rvalue lhs = left.compileWithConversion(ic, scope, leftType);
 
@@ -265,16 +328,21 @@ public class BinaryExpression extends Expression
 			// POINTER - POINTER or POINTERTO32BIT +- INTEGER
 			Rvalue rhs = right.compileWithConversion(ic, scope, rightType);
 			ic.emit(mnemonic, lhs.getRegister(), rhs.getRegister());
-			if (leftIncrSize > 1)
+			// Difference of pointers is always divisible by the object size, so the division
+			// can be done with arithmetic shift if the size is a power of two.
+			if (leftIncrSize > 1 && Integer.bitCount(leftIncrSize) == 1) {
+				ic.emit("shra", lhs.getRegister(),
+						"=" + Integer.numberOfTrailingZeros(leftIncrSize));
+			} else if (leftIncrSize > 1)
 				ic.emit("div", lhs.getRegister(), "=" + leftIncrSize);
 		} else if (leftIncrSize > 1) {
 			// POINTER + INTEGER or POINTER - INTEGER.
 			Rvalue rhs = right.compileWithConversion(ic, scope, rightType);
-			ic.emit("mul", rhs.getRegister(), "=" + leftIncrSize);
+			compileScaling(ic, rhs.getRegister(), leftIncrSize);
 			ic.emit(mnemonic, lhs.getRegister(), rhs.getRegister());
 		} else if (rightIncrSize > 1) {
 			// INTEGER + POINTER.
-			ic.emit("mul", lhs.getRegister(), "=" + rightIncrSize);
+			compileScaling(ic, lhs.getRegister(), rightIncrSize);
 			Rvalue rhs = right.compileWithConversion(ic, scope, rightType);
 			ic.emit(mnemonic, lhs.getRegister(), rhs.getRegister());
 		}
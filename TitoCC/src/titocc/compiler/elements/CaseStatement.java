@@ -0,0 +1,120 @@
+package titocc.compiler.elements;
+
+import titocc.compiler.IntermediateCompiler;
+import titocc.compiler.Scope;
+import titocc.compiler.StackAllocator;
+import titocc.tokenizer.SyntaxException;
+import titocc.tokenizer.TokenStream;
+import titocc.util.Position;
+
+/**
+ * Case or default label followed by a statement. Can only appear in the body of a switch
+ * statement.
+ *
+ * <p> EBNF definition:
+ *
+ * <br> CASE_STATEMENT = ("case" BINARY_EXPRESSION | "default") ":" STATEMENT
+ */
+public class CaseStatement extends Statement
+{
+	/**
+	 * Case value expression. Null for default label.
+	 */
+	private final Expression valueExpression;
+
+	/**
+	 * Statement following the label.
+	 */
+	private final Statement statement;
+
+	/**
+	 * Constructs a CaseStatement.
+	 *
+	 * @param valueExpression case value; null for default label
+	 * @param statement statement following the label
+	 * @param position starting position of the case statement
+	 */
+	public CaseStatement(Expression valueExpression, Statement statement, Position position)
+	{
+		super(position);
+		this.valueExpression = valueExpression;
+		this.statement = statement;
+	}
+
+	/**
+	 * Returns the case value expression.
+	 *
+	 * @return the value expression or null for default label
+	 */
+	public Expression getValueExpression()
+	{
+		return valueExpression;
+	}
+
+	/**
+	 * Returns the statement following the label.
+	 *
+	 * @return the statement
+	 */
+	public Statement getStatement()
+	{
+		return statement;
+	}
+
+	@Override
+	public void compile(IntermediateCompiler ic, Scope scope, StackAllocator stack)
+			throws SyntaxException
+	{
+		SwitchStatement switchStatement = scope.getSwitch();
+		String label;
+		if (valueExpression != null) {
+			if (switchStatement == null)
+				throw new SyntaxException("Case label used outside switch.", getPosition());
+			label = switchStatement.addCase(valueExpression, scope);
+		} else {
+			if (switchStatement == null)
+				throw new SyntaxException("Default label used outside switch.", getPosition());
+			label = switchStatement.addDefault(scope, getPosition());
+		}
+
+		ic.addLabel(label);
+		statement.compile(ic, scope, stack);
+	}
+
+	@Override
+	public String toString()
+	{
+		if (valueExpression == null)
+			return "(DEFAULT " + statement + ")";
+		return "(CASE " + valueExpression + " " + statement + ")";
+	}
+
+	/**
+	 * Attempts to parse a case statement from token stream. If parsing fails the stream is reset
+	 * to its initial position.
+	 *
+	 * @param tokens source token stream
+	 * @return CaseStatement object or null if tokens don't form a valid case statement
+	 */
+	public static CaseStatement parse(TokenStream tokens)
+	{
+		Position pos = tokens.getPosition();
+		tokens.pushMark();
+		CaseStatement caseStatement = null;
+
+		String keyword = tokens.read().toString();
+		Expression value = null;
+		if (keyword.equals("case"))
+			value = BinaryExpression.parse(tokens);
+
+		if ((keyword.equals("default") || value != null)
+				&& tokens.read().toString().equals(":")) {
+			Statement statement = Statement.parse(tokens);
+			if (statement != null)
+				caseStatement = new CaseStatement(value, statement, pos);
+		}
+
+		tokens.popMark(caseStatement == null);
+		return caseStatement;
+	}
+}
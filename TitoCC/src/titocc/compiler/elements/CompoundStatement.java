@@ -56,6 +56,7 @@ public class CompoundStatement extends Statement
 		// Compile statements.
 		for (Statement st : statements)
 			st.compile(ic, blockScope, stack);
+		blockScope.close();
 	}
 
 	@Override
@@ -13,6 +13,7 @@ import titocc.compiler.Scope;
 import titocc.compiler.StackAllocator;
 import titocc.compiler.StorageClass;
 import titocc.compiler.Symbol;
+import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.ArrayType;
 import titocc.compiler.types.CType;
 import titocc.tokenizer.SyntaxException;
@@ -22,8 +23,9 @@ import titocc.util.Position;
 /**
  * Declares a function or an object, and in some cases defines the object. Consists of declaration
  * specifiers (giving the base type) and list of one or more init-declarators. Each init-declarator
- * has a declarator (modifies the base type and gives a variable name), and an optional initializer
- * expression. For global variables the initializer must be a compile time constant expression.
+ * has a declarator (modifies the base type and gives a variable name), and an optional initializer.
+ * For static objects the initializer values must be compile time constant expressions. Static
+ * arrays are emitted as "dc" words, except that trailing zeros are reserved with a single "ds".
  *
  * <br> EBNF definition:
  *
@@ -31,23 +33,28 @@ import titocc.util.Position;
  *
  * <br> INIT_DECLARATOR_LIST = INIT_DECLARATOR {"=" INIT_DECLARATOR}
  *
- * <br> INIT_DECLARATOR = DECLARATOR ["=" INIT_DECLARATOR]
+ * <br> INIT_DECLARATOR = DECLARATOR ["=" INITIALIZER]
  */
 public class Declaration extends ExternalDeclaration
 {
 	private static class InitDeclarator extends CodeElement
 	{
+		/**
+		 * Longest run of zero words in an automatic array that is cleared without a loop.
+		 */
+		private static final int MAX_UNROLLED_ZERO_STORES = 8;
+
 		/**
 		 * Declarator which modifies the type and gives the variable name.
 		 */
 		final Declarator declarator;
 
 		/**
-		 * Optional initializer expression. Null if not used.
+		 * Optional initializer. Null if not used.
 		 */
-		final Expression initializer;
+		final Initializer initializer;
 
-		InitDeclarator(Declarator declarator, Expression initializer, Position pos)
+		InitDeclarator(Declarator declarator, Initializer initializer, Position pos)
 		{
 			super(pos);
 			this.declarator = declarator;
@@ -58,6 +65,10 @@ public class Declaration extends ExternalDeclaration
 				StackAllocator stack, DeclarationType declType) throws SyntaxException, IOException
 		{
 			declType = declarator.compile(declType, scope, null);
+			if (initializer != null)
+				declType.type = initializer.completeType(declType.type);
+			if (declType.type instanceof ArrayType && declType.type.isIncomplete())
+				throw new SyntaxException("Array length must be specified.", getPosition());
 			if (!declType.type.isObject() && !declType.type.isFunction()) {
 				throw new SyntaxException("Declaration does not specify an object or a function.",
 						getPosition());
@@ -68,12 +79,12 @@ public class Declaration extends ExternalDeclaration
 			define(scope, sym);
 
 			if (initializer != null) {
-				checkInitializer(scope, sym);
+				List<Expression> values = checkInitializer(scope, sym);
 				if (sym.getType().isObject()) {
 					if (scope.isGlobal() || sym.getStorageClass() == StorageClass.Static)
-						compileStaticObject(asm, ic, scope, sym);
+						compileStaticObject(asm, ic, scope, sym, values);
 					else
-						compileAutomaticObject(ic, scope, stack, sym, sym.getType());
+						compileAutomaticObject(ic, scope, sym, values);
 				}
 			}
 		}
@@ -89,9 +100,15 @@ public class Declaration extends ExternalDeclaration
 					throw new SyntaxException("Illegal storage class in block scope function "
 							+ "declaration.", getPosition());
 				}
-			} else if (!scope.isGlobal()) {
+			} else {
+				// Inline is only allowed for functions. ($6.7.4/1)
+				if (declType.inline) {
+					throw new SyntaxException("Inline specifier in object declaration.",
+							getPosition());
+				}
+
 				// No storage class on local variables is the same as "auto" storage class.
-				if (declType.storageClass == null)
+				if (!scope.isGlobal() && declType.storageClass == null)
 					storageCls = StorageClass.Auto;
 			}
 
@@ -132,51 +149,127 @@ public class Declaration extends ExternalDeclaration
 			}
 		}
 
-		private void checkInitializer(Scope scope, Symbol sym) throws SyntaxException
+		/**
+		 * Checks the initializer and returns the initial values of the scalars in the object.
+		 */
+		private List<Expression> checkInitializer(Scope scope, Symbol sym) throws SyntaxException
 		{
 			Position pos = initializer.getPosition();
 			if (sym.getType().isFunction())
 				throw new SyntaxException("Initializer in function declaration.", pos);
-			if (sym.getType() instanceof ArrayType)
-				throw new SyntaxException("Array initializers are not supported.", pos);
-			if (!initializer.isAssignableTo(sym.getType(), scope))
-				throw new SyntaxException("Initializer type doesn't match variable type.", pos);
+			List<Expression> values = initializer.getScalarValues(sym.getType());
+			CType scalarType = Initializer.getScalarType(sym.getType());
+			for (Expression value : values) {
+				if (value != null && !value.isAssignableTo(scalarType, scope)) {
+					throw new SyntaxException("Initializer type doesn't match variable type.",
+							value.getPosition());
+				}
+			}
 			// Block-scope objects with linkage may not have an initializer. ($6.7.8/5)
 			if (!scope.isGlobal() && sym.getStorageClass() == StorageClass.Extern)
 				throw new SyntaxException("Initializer on block-scope object with linkage.", pos);
+			return values;
 		}
 
 		private void compileStaticObject(Assembler asm, IntermediateCompiler ic, Scope scope,
-				Symbol sym) throws SyntaxException, IOException
+				Symbol sym, List<Expression> values) throws SyntaxException, IOException
 		{
-			// ($6.7.8/4)
-			BigInteger initValue = initializer.getCompileTimeValue(scope);
-			if (initValue == null) {
-				throw new SyntaxException("Initializer for static object is not a constant.",
-						initializer.getPosition());
+			// ($6.7.8/4) Scalars without initializer are zero. Multi-word scalars are stored
+			// starting from the least significant word.
+			int scalarSize = Initializer.getScalarType(sym.getType()).getSize();
+			List<Integer> words = new ArrayList<Integer>();
+			for (Expression value : values) {
+				BigInteger initValue = BigInteger.ZERO;
+				if (value != null)
+					initValue = value.getCompileTimeValue(scope);
+				if (initValue == null) {
+					throw new SyntaxException("Initializer for static object is not a constant.",
+							value.getPosition());
+				}
+				for (int i = 0; i < scalarSize; ++i)
+					words.add(initValue.shiftRight(32 * i).intValue());
+			}
+
+			// Trailing zeros of an array are reserved with a single "ds".
+			int dataEnd = words.size();
+			if (sym.getType() instanceof ArrayType) {
+				while (dataEnd > 0 && words.get(dataEnd - 1) == 0)
+					--dataEnd;
 			}
 
 			if (asm != null) {
+				asm.beginSection();
 				asm.addEmptyLines(1);
 				asm.addLabel(sym.getGlobalName());
-				if (sym.getType() instanceof ArrayType)
-					asm.emit("ds", "" + sym.getType().getSize());
-				else
-					asm.emit("dc", "" + initValue.intValue());
+				for (int i = 0; i < dataEnd; ++i)
+					asm.emit("dc", "" + words.get(i));
+				if (dataEnd < words.size())
+					asm.emit("ds", "" + (words.size() - dataEnd));
 			} else {
 				ic.addLabel(sym.getGlobalName());
-				if (sym.getType() instanceof ArrayType)
-					ic.emit("ds", sym.getType().getSize());
-				else
-					ic.emit("dc", initValue.intValue());
+				ic.emitData(words.subList(0, dataEnd), words.size() - dataEnd);
 			}
 		}
 
-		private void compileAutomaticObject(IntermediateCompiler ic, Scope scope,
-				StackAllocator stack, Symbol sym, CType variableType) throws SyntaxException
+		private void compileAutomaticObject(IntermediateCompiler ic, Scope scope, Symbol sym,
+				List<Expression> values) throws SyntaxException
 		{
-			Rvalue initVal = initializer.compileWithConversion(ic, scope, variableType);
-			ic.emit("store", initVal.getRegister(), sym.getRhsOperand(false));
+			if (!(sym.getType() instanceof ArrayType)) {
+				Rvalue initVal = values.get(0).compileWithConversion(ic, scope, sym.getType());
+				sym.compileStore(ic, initVal);
+				return;
+			}
+
+			// Array elements are stored through a register that holds the array address. Elements
+			// without an initializer are stored from a single zero register.
+			CType scalarType = Initializer.getScalarType(sym.getType());
+			int scalarSize = scalarType.getSize();
+			VirtualRegister address = new VirtualRegister();
+			ic.emit("load", address, sym.getRhsOperand(false));
+			VirtualRegister zero = null;
+			int i = 0;
+			while (i < values.size()) {
+				if (values.get(i) != null) {
+					Rvalue val = values.get(i).compileWithConversion(ic, scope, scalarType);
+					scalarType.compileStore(ic, val, address, i * scalarSize);
+					++i;
+				} else {
+					int end = i;
+					while (end < values.size() && values.get(end) == null)
+						++end;
+					if (zero == null) {
+						zero = new VirtualRegister();
+						ic.emit("load", zero, "=0");
+					}
+					compileZeroFill(ic, scope, address, zero, i * scalarSize, end * scalarSize);
+					i = end;
+				}
+			}
+		}
+
+		/**
+		 * Stores zeros to words [start, end) of an array. Long runs of zeros are cleared in a
+		 * loop instead of a store per word.
+		 */
+		private void compileZeroFill(IntermediateCompiler ic, Scope scope,
+				VirtualRegister address, VirtualRegister zero, int start, int end)
+		{
+			if (end - start <= MAX_UNROLLED_ZERO_STORES) {
+				for (int offset = start; offset < end; ++offset)
+					ic.emit("store", zero, "" + offset, address);
+				return;
+			}
+
+			VirtualRegister ptr = new VirtualRegister();
+			VirtualRegister limit = new VirtualRegister();
+			ic.emit("load", ptr, "=" + start, address);
+			ic.emit("load", limit, "=" + end, address);
+			String loopLabel = scope.makeGloballyUniqueName("lbl");
+			ic.addLabel(loopLabel);
+			ic.emit("store", zero, "0", ptr);
+			ic.emit("add", ptr, "=1");
+			ic.emit("comp", ptr, limit);
+			ic.emit("jles", VirtualRegister.NONE, loopLabel);
 		}
 	}
 
@@ -310,13 +403,13 @@ public class Declaration extends ExternalDeclaration
 		return initDecl;
 	}
 
-	private static Expression parseInitializer(TokenStream tokens)
+	private static Initializer parseInitializer(TokenStream tokens)
 	{
 		tokens.pushMark();
-		Expression initializer = null;
+		Initializer initializer = null;
 
 		if (tokens.read().toString().equals("="))
-			initializer = AssignmentExpression.parse(tokens);
+			initializer = Initializer.parse(tokens);
 
 		tokens.popMark(initializer == null);
 		return initializer;
@@ -118,12 +118,12 @@ public class DeclarationSpecifiers extends CodeElement
 			put(new String[]{"signed", "long", "int"}, CType.LONG);
 			put(new String[]{"unsigned", "long"}, CType.ULONG);
 			put(new String[]{"unsigned", "long", "int"}, CType.ULONG);
-			put(new String[]{"long", "long"}, null);
-			put(new String[]{"signed", "long", "long"}, null);
-			put(new String[]{"long", "long", "int"}, null);
-			put(new String[]{"signed", "long", "long", "int"}, null);
-			put(new String[]{"unsigned", "long", "long"}, null);
-			put(new String[]{"unsigned", "long", "long", "int"}, null);
+			put(new String[]{"long", "long"}, CType.LLONG);
+			put(new String[]{"signed", "long", "long"}, CType.LLONG);
+			put(new String[]{"long", "long", "int"}, CType.LLONG);
+			put(new String[]{"signed", "long", "long", "int"}, CType.LLONG);
+			put(new String[]{"unsigned", "long", "long"}, CType.ULLONG);
+			put(new String[]{"unsigned", "long", "long", "int"}, CType.ULLONG);
 			put(new String[]{"float"}, null);
 			put(new String[]{"double"}, null);
 			put(new String[]{"long", "double"}, null);
@@ -164,16 +164,11 @@ public class DeclarationSpecifiers extends CodeElement
 				throw new SyntaxException("Type qualifiers are not supported yet.",
 						getPosition());
 			}
-
-			if (s.equals("inline")) {
-				throw new SyntaxException("Inline functions are not supported yet.",
-						getPosition());
-			}
 		}
 
 		CType type = getType(specifiers);
 		StorageClass storageClass = getStorageClass(specifiers);
-		boolean inline = false;
+		boolean inline = specifiers.contains("inline");
 
 		return new DeclarationType(type, storageClass, inline);
 	}
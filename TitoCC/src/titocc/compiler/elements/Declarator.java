@@ -8,8 +8,6 @@ import titocc.compiler.Scope;
 import titocc.compiler.Symbol;
 import titocc.compiler.types.ArrayType;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.FunctionType;
-import titocc.compiler.types.PointerType;
 import titocc.compiler.types.VoidType;
 import titocc.tokenizer.IdentifierToken;
 import titocc.tokenizer.SyntaxException;
@@ -32,12 +30,12 @@ import titocc.util.Position;
  * <br> DECLARATOR = "*" DECLARATOR | DIRECT_DECLARATOR
  *
  * <br> DIRECT_DECLARATOR = IDENTIFIER | "(" DECLARATOR ")"
- * | DIRECT_DECLARATOR "[" ASSIGNMENT_EXPRESSION "]" | DIRECT_DECLARATOR PARAMETER_LIST
+ * | DIRECT_DECLARATOR "[" [ASSIGNMENT_EXPRESSION] "]" | DIRECT_DECLARATOR PARAMETER_LIST
  *
  * <br> ABSTRACT_DECLARATOR = "*" ABSTRACT_DECLARATOR | DIRECT_ABSTRACT_DECLARATOR
  *
  * <br> DIRECT_ABSTRACT_DECLARATOR = [IDENTIFIER] | "(" ABSTRACT_DECLARATOR ")"
- * | [DIRECT_ABSTRACT_DECLARATOR] "[" ASSIGNMENT_EXPRESSION "]"
+ * | [DIRECT_ABSTRACT_DECLARATOR] "[" [ASSIGNMENT_EXPRESSION] "]"
  * | [DIRECT_ABSTRACT_DECLARATOR] PARAMETER_LIST
  */
 public abstract class Declarator extends CodeElement
@@ -76,10 +74,14 @@ public abstract class Declarator extends CodeElement
 	}
 
 	/**
-	 * Declarator that declares an array.
+	 * Declarator that declares an array. If the length is omitted, the array type is incomplete
+	 * until it is completed by an initializer.
 	 */
 	private static class ArrayDeclarator extends Declarator
 	{
+		/**
+		 * Array length expression, or null if omitted.
+		 */
 		private final Expression arrayLength;
 
 		public ArrayDeclarator(Declarator subDeclarator, Expression arrayLength, Position position)
@@ -95,6 +97,9 @@ public abstract class Declarator extends CodeElement
 			if (!type.isObject())
 				throw new SyntaxException("Array elements must have object type.", getPosition());
 
+			if (arrayLength == null)
+				return subDeclarator.compile(CType.array(type, 0), scope, paramSymbolsOut);
+
 			BigInteger len = arrayLength.getCompileTimeValue(scope);
 			if (len == null) {
 				throw new SyntaxException("Array length must be a compile time constant.",
@@ -104,7 +109,7 @@ public abstract class Declarator extends CodeElement
 						getPosition());
 			}
 
-			CType arrayType = new ArrayType(type, len.intValue());
+			CType arrayType = CType.array(type, len.intValue());
 			return subDeclarator.compile(arrayType, scope, paramSymbolsOut);
 		}
 
@@ -129,7 +134,7 @@ public abstract class Declarator extends CodeElement
 		CType compile(CType type, Scope scope, List<Symbol> paramSymbolsOut)
 				throws SyntaxException
 		{
-			return subDeclarator.compile(new PointerType(type), scope, paramSymbolsOut);
+			return subDeclarator.compile(CType.pointer(type), scope, paramSymbolsOut);
 		}
 
 		@Override
@@ -175,7 +180,7 @@ public abstract class Declarator extends CodeElement
 			if (funcDefn)
 				paramSymbolsOut.addAll(paramSymbols);
 
-			return subDeclarator.compile(new FunctionType(type, paramTypes), scope,
+			return subDeclarator.compile(CType.function(type, paramTypes), scope,
 					paramSymbolsOut);
 		}
 
@@ -301,9 +306,9 @@ public abstract class Declarator extends CodeElement
 		if (declarator != null) {
 			while (true) {
 				// Array declarator.
-				Expression arrayLength = parseArrayLength(tokens);
-				if (arrayLength != null) {
-					declarator = new ArrayDeclarator(declarator, arrayLength, pos);
+				Declarator arrayDeclarator = parseArrayDeclarator(tokens, declarator, pos);
+				if (arrayDeclarator != null) {
+					declarator = arrayDeclarator;
 					continue;
 				}
 
@@ -357,20 +362,21 @@ public abstract class Declarator extends CodeElement
 	}
 
 	/**
-	 * Parses the array length of an array declarator.
+	 * Parses the array length part of an array declarator. The length may be omitted.
 	 */
-	private static Expression parseArrayLength(TokenStream tokens)
+	private static Declarator parseArrayDeclarator(TokenStream tokens, Declarator subDeclarator,
+			Position pos)
 	{
 		tokens.pushMark();
-		Expression subscript = null;
+		Declarator declarator = null;
 
 		if (tokens.read().toString().equals("[")) {
-			subscript = AssignmentExpression.parse(tokens);
-			if (subscript != null && !tokens.read().toString().equals("]"))
-				subscript = null;
+			Expression arrayLength = AssignmentExpression.parse(tokens);
+			if (tokens.read().toString().equals("]"))
+				declarator = new ArrayDeclarator(subDeclarator, arrayLength, pos);
 		}
 
-		tokens.popMark(subscript == null);
-		return subscript;
+		tokens.popMark(declarator == null);
+		return declarator;
 	}
 }
@@ -86,10 +86,11 @@ public class DoStatement extends Statement
 
 		// Test.
 		compileControlExpression(controlExpression, ic, loopScope, continueSymbol.getReference(),
-				loopStartLabel, "jnzer");
+				loopStartLabel, true);
 
 		// Insert end label to be used by break statements.
 		ic.addLabel(breakSymbol.getReference());
+		loopScope.close();
 	}
 
 	@Override
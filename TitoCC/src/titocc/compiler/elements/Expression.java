@@ -9,6 +9,7 @@ import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.ArrayType;
 import titocc.compiler.types.CType;
 import titocc.compiler.types.FunctionType;
+import titocc.compiler.types.IntegerType;
 import titocc.compiler.types.VoidType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
@@ -56,8 +57,38 @@ public abstract class Expression extends CodeElement
 	public Rvalue compileWithConversion(IntermediateCompiler ic, Scope scope, CType targetType)
 			throws SyntaxException
 	{
+		// Integer constants converted to 64-bit types are loaded directly as 64-bit values instead
+		// of extending them at run time.
+		CType type = getType(scope).decay();
+		if (targetType.getSize() == 2 && type instanceof IntegerType) {
+			BigInteger value = getCompileTimeValue(scope);
+			if (value != null)
+				return compileConstant(ic, scope, wrap(value, (IntegerType) type), 2);
+		}
+
 		Rvalue val = compile(ic, scope);
-		return getType(scope).decay().compileConversion(ic, scope, val, targetType);
+		return type.compileConversion(ic, scope, val, targetType);
+	}
+
+	/**
+	 * Generates code that evaluates the expression as a condition and jumps to trueLabel if the
+	 * value is nonzero and to falseLabel otherwise. Either label can be null, in which case
+	 * execution continues after the generated code for that outcome. Default implementation
+	 * converts the value to boolish type and tests it with jnzer/jzer.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the expression is evaluated
+	 * @param trueLabel jump target when the condition is true or null
+	 * @param falseLabel jump target when the condition is false or null
+	 * @throws SyntaxException if expression contains an error
+	 */
+	public void compileAsCondition(IntermediateCompiler ic, Scope scope, String trueLabel,
+			String falseLabel) throws SyntaxException
+	{
+		if (compileConstantCondition(ic, scope, trueLabel, falseLabel))
+			return;
+		Rvalue val = compileWithConversion(ic, scope, CType.BOOLISH);
+		ic.emitConditionalJump("jnzer", "jzer", val.getRegister(), trueLabel, falseLabel);
 	}
 
 	/**
@@ -123,24 +154,79 @@ public abstract class Expression extends CodeElement
 			throws SyntaxException
 	{
 		BigInteger value = getCompileTimeValue(scope);
-		if (value != null) {
-			// Use immediate operand if value fits in 16 bits; otherwise allocate a data constant.
-			// Load value in first available register.
-			VirtualRegister retReg = new VirtualRegister();
-			if (value.compareTo(BigInteger.valueOf(-32768)) >= 0
-					&& value.compareTo(BigInteger.valueOf(32768)) < 0) {
-				ic.emit("load", retReg, "=" + value);
-			} else {
-				String name = scope.makeGloballyUniqueName("int");
-				ic.addLabel(name);
-				ic.emit("dc", value.intValue());
-				ic.emit("load", retReg, name);
-			}
-			return new Rvalue(retReg);
-		} else
+		if (value != null)
+			return compileConstant(ic, scope, value, getType(scope).getSize());
+		else
 			return null;
 	}
 
+	private static Rvalue compileConstant(IntermediateCompiler ic, Scope scope, BigInteger value,
+			int size)
+	{
+		// Use immediate operand if value fits in 16 bits; otherwise load it from the constant
+		// pool. Load value in first available register. 64-bit values are loaded in two words.
+		VirtualRegister retReg = new VirtualRegister();
+		ic.emit("load", retReg, scope.getConstantPool().getOperand(value.intValue()));
+		if (size == 1)
+			return new Rvalue(retReg);
+
+		VirtualRegister highReg = new VirtualRegister();
+		ic.emit("load", highReg,
+				scope.getConstantPool().getOperand(value.shiftRight(32).intValue()));
+		return new Rvalue(retReg, highReg);
+	}
+
+	/**
+	 * Reduces a value to the range of an integer type, e.g. negated unsigned literals.
+	 */
+	private static BigInteger wrap(BigInteger value, IntegerType type)
+	{
+		BigInteger modulus = BigInteger.ONE.shiftLeft(type.getSize() * 32);
+		BigInteger min = type.getMinValue();
+		return value.subtract(min).mod(modulus).add(min);
+	}
+
+	/**
+	 * Multiplies a pointer arithmetic operand by the size of the pointed object. Sizes that are
+	 * powers of two are scaled with a shift, which is cheaper than multiplication.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param reg register holding the integer operand
+	 * @param incrSize increment size of the pointer
+	 */
+	protected static void compileScaling(IntermediateCompiler ic, VirtualRegister reg,
+			int incrSize)
+	{
+		if (incrSize == 1)
+			return;
+		if (Integer.bitCount(incrSize) == 1)
+			ic.emit("shl", reg, "=" + Integer.numberOfTrailingZeros(incrSize));
+		else
+			ic.emit("mul", reg, "=" + incrSize);
+	}
+
+	/**
+	 * Generates an unconditional jump for a condition whose value is known at compile time.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the expression is evaluated
+	 * @param trueLabel jump target when the condition is true or null
+	 * @param falseLabel jump target when the condition is false or null
+	 * @return true if the condition was a compile time constant
+	 * @throws SyntaxException if expression contains an error
+	 */
+	protected boolean compileConstantCondition(IntermediateCompiler ic, Scope scope,
+			String trueLabel, String falseLabel) throws SyntaxException
+	{
+		BigInteger value = getCompileTimeValue(scope);
+		if (value == null)
+			return false;
+		String target = value.signum() != 0 ? trueLabel : falseLabel;
+		if (target != null)
+			ic.emit("jump", VirtualRegister.NONE, target);
+		return true;
+	}
+
 	/**
 	 * Returns whether the expression can be assigned to the target type. Target type must be a
 	 * decayed type.
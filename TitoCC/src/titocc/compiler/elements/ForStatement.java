@@ -103,10 +103,11 @@ public class ForStatement extends Statement
 		// Loop test code is after the body so that we only need one
 		// jump instruction per iteration.
 		compileControlExpression(controlExpression, ic, loopScope, loopTestLabel,
-				loopStartLabel, "jnzer");
+				loopStartLabel, true);
 
 		// Insert label to be used by break statements.
 		ic.addLabel(breakSymbol.getReference());
+		loopScope.close();
 	}
 
 	private void compileInitStatement(IntermediateCompiler ic, Scope scope, StackAllocator stack)
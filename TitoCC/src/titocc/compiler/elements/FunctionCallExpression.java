@@ -1,8 +1,10 @@
 package titocc.compiler.elements;
 
+import java.util.List;
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
+import titocc.compiler.Symbol;
 import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.CType;
 import titocc.compiler.types.FunctionType;
@@ -69,27 +71,123 @@ public class FunctionCallExpression extends Expression
 	{
 		FunctionType funcType = getFunctionType(scope);
 
-		// Reserve space for return value.
-		if (!funcType.getReturnType().equals(CType.VOID))
+		// Calls to small functions are replaced with the function body.
+		FunctionDefinition inlined = getInlinedFunction(scope);
+		if (inlined != null)
+			return inlined.compileInline(ic, scope, argumentList);
+
+		boolean returnsValue = !funcType.getReturnType().equals(CType.VOID);
+
+		// Functions with register calling convention return the value in register, so space
+		// is only reserved for other functions.
+		Symbol callee = getRegisterConventionCallee(scope);
+		if (callee == null && returnsValue)
 			ic.emit("add", VirtualRegister.SP, "=" + funcType.getReturnType().getSize());
 
 		// Push arguments to stack.
 		argumentList.compile(ic, scope, funcType.getParameterTypes());
 
-		// Evaluate the function pointer.
-		Rvalue funcPtrVal = functionPointer.compile(ic, scope);
+		return compileCall(ic, scope, funcType, callee);
+	}
+
+	/**
+	 * Compiles a recursive call in tail position, i.e. a call to the function whose body is
+	 * being compiled. The arguments are evaluated and stored to the parameters of the current
+	 * call, after which execution jumps to the start of the function. If an argument used the
+	 * address of a stack frame object, the call must get a new stack frame, and the evaluated
+	 * arguments are passed with a normal call instead.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the call is made
+	 * @param functionStart symbol for the start of the function
+	 * @param parameters parameter objects of the function
+	 * @return value of the call or null if the call was compiled as a jump
+	 * @throws SyntaxException if the call contains an error
+	 */
+	public Rvalue compileSelfTailCall(IntermediateCompiler ic, Scope scope, Symbol functionStart,
+			List<Symbol> parameters) throws SyntaxException
+	{
+		FunctionType funcType = getFunctionType(scope);
+		List<Rvalue> values = argumentList.compileValues(ic, scope, funcType.getParameterTypes());
+
+		if (!ic.isFrameAddressTaken()) {
+			ArgumentList.storeToParameters(ic, values, parameters);
+			ic.emit("jump", VirtualRegister.NONE, functionStart.getReference());
+			return null;
+		}
+
+		Symbol callee = getRegisterConventionCallee(scope);
+		if (callee == null && !funcType.getReturnType().equals(CType.VOID))
+			ic.emit("add", VirtualRegister.SP, "=" + funcType.getReturnType().getSize());
+		for (Rvalue val : values) {
+			for (VirtualRegister reg : val.getRegisters())
+				ic.emit("push", VirtualRegister.SP, reg);
+		}
+
+		return compileCall(ic, scope, funcType, callee);
+	}
 
-		// Make the call.
-		ic.emit("call", VirtualRegister.SP, funcPtrVal.getRegister());
+	/**
+	 * Emits the call instruction after the arguments have been pushed, and reads the return
+	 * value.
+	 */
+	private Rvalue compileCall(IntermediateCompiler ic, Scope scope, FunctionType funcType,
+			Symbol callee) throws SyntaxException
+	{
+		boolean returnsValue = !funcType.getReturnType().equals(CType.VOID);
+
+		// Make the call. Function pointer is only evaluated for indirect calls.
+		if (callee != null)
+			ic.emit("call", VirtualRegister.SP, callee.getReference());
+		else {
+			Rvalue funcPtrVal = functionPointer.compile(ic, scope);
+			ic.emit("call", VirtualRegister.SP, funcPtrVal.getRegister());
+		}
 
-		// Read the return value.
+		// Read the return value. High word of a 64-bit value is on top of the stack.
 		VirtualRegister retReg = null;
-		if (!funcType.getReturnType().equals(CType.VOID)) {
+		VirtualRegister highReg = null;
+		if (returnsValue) {
 			retReg = new VirtualRegister();
-			ic.emit("pop", VirtualRegister.SP, retReg);
+			if (callee != null)
+				ic.emit("load", retReg, IntermediateCompiler.RETURN_VALUE_REG);
+			else {
+				if (funcType.getReturnType().getSize() == 2) {
+					highReg = new VirtualRegister();
+					ic.emit("pop", VirtualRegister.SP, highReg);
+				}
+				ic.emit("pop", VirtualRegister.SP, retReg);
+			}
 		}
 
-		return new Rvalue(retReg);
+		return new Rvalue(retReg, highReg);
+	}
+
+	/**
+	 * Get the definition of the called function if the call is a direct call to a function that
+	 * can be inlined.
+	 */
+	private FunctionDefinition getInlinedFunction(Scope scope)
+	{
+		if (!(functionPointer instanceof IdentifierExpression))
+			return null;
+		Symbol sym = scope.find(((IdentifierExpression) functionPointer).getIdentifier());
+		if (sym == null)
+			return null;
+		FunctionDefinition definition = sym.getInlineDefinition();
+		return definition != null && definition.canInline() ? definition : null;
+	}
+
+	/**
+	 * Get the called function if the call is a direct call to a function with register calling
+	 * convention.
+	 */
+	private Symbol getRegisterConventionCallee(Scope scope)
+	{
+		if (!(functionPointer instanceof IdentifierExpression))
+			return null;
+		Symbol sym = scope.find(((IdentifierExpression) functionPointer).getIdentifier());
+		return sym != null && sym.hasRegisterCallingConvention() ? sym : null;
 	}
 
 	private FunctionType getFunctionType(Scope scope) throws SyntaxException
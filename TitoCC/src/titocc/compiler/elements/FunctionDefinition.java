@@ -2,16 +2,22 @@ package titocc.compiler.elements;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import titocc.compiler.Assembler;
 import titocc.compiler.DeclarationResult;
 import titocc.compiler.DeclarationType;
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Register;
+import titocc.compiler.RegisterSet;
+import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 import titocc.compiler.StackAllocator;
 import titocc.compiler.StorageClass;
 import titocc.compiler.Symbol;
+import titocc.compiler.VirtualRegister;
 import titocc.compiler.types.CType;
 import titocc.compiler.types.FunctionType;
 import titocc.tokenizer.SyntaxException;
@@ -31,6 +37,18 @@ import titocc.util.Position;
  */
 public class FunctionDefinition extends ExternalDeclaration
 {
+	/**
+	 * Maximum number of instructions in the body of a function that is inlined at call sites
+	 * even though it is not declared inline.
+	 */
+	private static final int SMALL_FUNCTION_SIZE = 8;
+
+	/**
+	 * Maximum number of instructions in the body of an inline function. Larger inline functions
+	 * are called normally.
+	 */
+	private static final int INLINE_FUNCTION_SIZE = 40;
+
 	/**
 	 * Declaration specifiers that specify the storage class and part of the return type. The
 	 * actual return type is further modified by the declarator.
@@ -57,6 +75,18 @@ public class FunctionDefinition extends ExternalDeclaration
 	 */
 	private Symbol endSymbol;
 
+	/**
+	 * Symbol for the start of the function body, used for replacing tail calls with jumps. Set
+	 * when compiling the function. Null when the function is inlined.
+	 */
+	private Symbol startSymbol;
+
+	/**
+	 * Whether the function body is currently being inlined. Used for preventing infinite
+	 * inlining of recursive functions.
+	 */
+	private boolean inlining = false;
+
 	/**
 	 * Constructs a FunctionDefinition.
 	 *
@@ -77,6 +107,7 @@ public class FunctionDefinition extends ExternalDeclaration
 	@Override
 	public void compile(Assembler asm, Scope scope) throws IOException, SyntaxException
 	{
+		asm.beginSection();
 		asm.addEmptyLines(1);
 
 		// Reset register spill counter.
@@ -100,21 +131,101 @@ public class FunctionDefinition extends ExternalDeclaration
 		// after the function's declarator, i.e. the function name cannot be
 		// used in parameter list.
 		Symbol funcSym = addSymbol(scope, declType);
-		addInternalSymbols(functionScope, returnType);
+		functionScope.setFunction(funcSym, parameters);
+		boolean registerConvention = funcSym.hasRegisterCallingConvention();
+		addInternalSymbols(functionScope, returnType,
+				registerConvention ? new Rvalue(IntermediateCompiler.RETURN_VALUE_REG) : null);
+
+		// Add label for the start of the function body so that tail calls can jump to it.
+		startSymbol = new Symbol("__Start", CType.VOID, StorageClass.Static, false);
+		functionScope.add(startSymbol);
 
 		// Constants for return value and parameters.
-		int paramTotalSize = addParameterConstants(asm, parameters);
+		int paramTotalSize = addParameterConstants(asm, parameters, registerConvention);
 
 		// Compile body before prologue because we want to know all the local
 		// variables in the prologue.
 		IntermediateCompiler bodyIc = new IntermediateCompiler();
 		compileBody(bodyIc, functionScope, stack);
-		bodyIc.compile(stack);
-		List<Symbol> localVariables = getLocalVariables(functionScope, parameters);
-
-		compilePrologue(asm, localVariables, stack.getSpillCount(), funcSym.getReference());
+		functionScope.close();
+		bodyIc.compile(stack, getScalarVariables(functionScope));
+		stack.allocateLocalVariables(functionScope, parameters);
+
+		// Only the registers used by the function are saved. Saving all registers with single
+		// pushr/popr is cheaper when the function uses all of them, but it also restores R5,
+		// which is not allowed with register calling convention.
+		Set<Register> savedRegisters = bodyIc.getAllocatedRegisters();
+		if (!registerConvention && savedRegisters.size() == RegisterSet.REGISTER_COUNT)
+			savedRegisters = null;
+
+		compilePrologue(asm, stack, funcSym.getReference(), savedRegisters);
 		bodyIc.sendToAssembler(asm);
-		compileEpilogue(asm, localVariables, stack.getSpillCount(), paramTotalSize);
+		compileEpilogue(asm, stack, paramTotalSize, savedRegisters);
+
+		// Calls after the definition can be inlined if the function is small enough.
+		boolean inline = declType.inline || funcSym.getInline();
+		int maxSize = inline ? INLINE_FUNCTION_SIZE : SMALL_FUNCTION_SIZE;
+		if (bodyIc.getInstructionCount() <= maxSize && !hasStaticObjects(functionScope))
+			funcSym.setInlineDefinition(this);
+	}
+
+	/**
+	 * Compiles the function body in place of a function call. Parameters and local variables
+	 * are allocated from the stack frame of the calling function, and return statements jump to
+	 * the end of the inlined code.
+	 *
+	 * @param ic intermediate compiler for the calling function
+	 * @param scope scope of the function call
+	 * @param arguments arguments of the function call
+	 * @return returned value, or null register if the function returns void
+	 * @throws SyntaxException if the arguments don't match the parameters
+	 */
+	public Rvalue compileInline(IntermediateCompiler ic, Scope scope, ArgumentList arguments)
+			throws SyntaxException
+	{
+		// The body can only see global declarations, but the new scope is added to the calling
+		// scope so that the local objects are allocated in the calling function's stack frame.
+		Scope globalScope = scope;
+		while (!globalScope.isGlobal())
+			globalScope = globalScope.getParent();
+		Scope inlineScope = new Scope(globalScope, declarator.getName() + "_");
+		scope.addSubScope(inlineScope);
+
+		// Declare parameters and store the argument values to them.
+		List<Symbol> parameters = new ArrayList<Symbol>();
+		DeclarationType declType = declarationSpecifiers.compile(globalScope);
+		declType = declarator.compile(declType, inlineScope, parameters);
+		arguments.compileToParameters(ic, scope, parameters);
+
+		// Return statements load the returned value to virtual registers.
+		CType returnType = ((FunctionType) declType.type).getReturnType();
+		Rvalue retVal = null;
+		if (returnType.getSize() == 1)
+			retVal = new Rvalue(new VirtualRegister());
+		else if (returnType.getSize() == 2)
+			retVal = new Rvalue(new VirtualRegister(), new VirtualRegister());
+		addInternalSymbols(inlineScope, returnType, retVal);
+
+		inlining = true;
+		startSymbol = null;
+		try {
+			compileBody(ic, inlineScope, new StackAllocator());
+		} finally {
+			inlining = false;
+		}
+		inlineScope.close();
+
+		return retVal != null ? retVal : new Rvalue(null);
+	}
+
+	/**
+	 * Checks whether the function body can currently be inlined.
+	 *
+	 * @return false if already inlining the same function
+	 */
+	public boolean canInline()
+	{
+		return !inlining;
 	}
 
 	private Symbol addSymbol(Scope scope, DeclarationType declType) throws SyntaxException
@@ -127,7 +238,7 @@ public class FunctionDefinition extends ExternalDeclaration
 		}
 
 		String name = declarator.getName();
-		Symbol sym = new Symbol(name, declType.type, declType.storageClass, false);
+		Symbol sym = new Symbol(name, declType.type, declType.storageClass, declType.inline);
 
 		DeclarationResult declRes = scope.add(sym);
 		if (declRes.symbol == null)
@@ -141,14 +252,15 @@ public class FunctionDefinition extends ExternalDeclaration
 		return declRes.symbol;
 	}
 
-	private void addInternalSymbols(Scope scope, CType returnType)
+	private void addInternalSymbols(Scope scope, CType returnType, Rvalue retVal)
 	{
 		// Add symbol for the function end so that return statements can jump to it.
 		endSymbol = new Symbol("__End", CType.VOID, StorageClass.Static, false);
 		scope.add(endSymbol);
 
-		// Add symbol for location of the return value.
+		// Add symbol for location of the return value. Value may also be returned in a register.
 		retValSymbol = new Symbol("__Ret", returnType, StorageClass.Auto, false);
+		retValSymbol.setRegisterValue(retVal);
 		scope.add(retValSymbol);
 		retValSymbol.define();
 	}
@@ -156,14 +268,17 @@ public class FunctionDefinition extends ExternalDeclaration
 	/**
 	 * Emit constants for return value and parameters. Returs total size of the parameters.
 	 */
-	private int addParameterConstants(Assembler asm, List<Symbol> parameters) throws IOException
+	private int addParameterConstants(Assembler asm, List<Symbol> parameters,
+			boolean registerConvention) throws IOException
 	{
 		int paramTotalSize = 0;
 		for (Symbol p : parameters)
 			paramTotalSize += p.getType().getSize();
 
-		asm.addLabel(retValSymbol.getGlobalName());
-		asm.emit("equ", "-" + (paramTotalSize + 2));
+		if (!registerConvention) {
+			asm.addLabel(retValSymbol.getGlobalName());
+			asm.emit("equ", "-" + (paramTotalSize + 1 + retValSymbol.getType().getSize()));
+		}
 
 		int paramOffset = -1 - paramTotalSize;
 		for (Symbol p : parameters) {
@@ -175,27 +290,29 @@ public class FunctionDefinition extends ExternalDeclaration
 		return paramTotalSize;
 	}
 
-	private void compilePrologue(Assembler asm, List<Symbol> localVariables, int spillCount,
-			String startLabel) throws IOException, SyntaxException
+	private void compilePrologue(Assembler asm, StackAllocator stack, String startLabel,
+			Set<Register> savedRegisters) throws IOException, SyntaxException
 	{
 		// Define constants for local variables, which are placed after register spill locations.
-		// 0(fp) is old program counter and local data starts from 1(fp).
-		int varOffset = spillCount;
-		for (Symbol var : localVariables) {
+		for (Symbol var : stack.getLocalVariables()) {
 			asm.addLabel(var.getGlobalName());
-			asm.emit("equ", "" + (1 + varOffset));
-			varOffset += var.getType().getSize();
+			asm.emit("equ", "" + stack.getLocalVariableOffset(var));
 		}
 
 		// Label for function entry point.
 		asm.addLabel(startLabel);
 
 		// Allocate stack space for local variables.
-		if (varOffset > 0)
-			asm.emit("add", Register.SP, "=" + varOffset);
-
-		// Push registers.
-		asm.emit("pushr", "SP");
+		if (stack.getFrameSize() > 0)
+			asm.emit("add", Register.SP, "=" + stack.getFrameSize());
+
+		// Push registers. All registers are saved unless the saved registers are given.
+		if (savedRegisters == null)
+			asm.emit("pushr", "SP");
+		else {
+			for (Register reg : savedRegisters)
+				asm.emit("push", Register.SP, reg.toString());
+		}
 	}
 
 	private void compileBody(IntermediateCompiler ic, Scope scope, StackAllocator stack)
@@ -206,43 +323,71 @@ public class FunctionDefinition extends ExternalDeclaration
 		for (Statement st : body.getStatements())
 			st.compile(ic, scope, stack);
 		ic.addLabel(endSymbol.getReference());
+
+		// Start label is only added if some tail call jumps to it.
+		if (startSymbol != null && startSymbol.getUseCount() > 0)
+			ic.addLabelToStart(startSymbol.getReference());
 	}
 
-	private void compileEpilogue(Assembler asm, List<Symbol> localVariables, int spillCount,
-			int paramTotalSize) throws IOException, SyntaxException
+	private void compileEpilogue(Assembler asm, StackAllocator stack, int paramTotalSize,
+			Set<Register> savedRegisters) throws IOException, SyntaxException
 	{
-		// Pop registers from stack.
-		asm.emit("popr", "SP");
-
-		// Calculate total size of local variables and register spill locations on stack.
-		int localDataSize = spillCount;
-		for (Symbol var : localVariables)
-			localDataSize += var.getType().getSize();
+		// Pop registers from stack in reverse order.
+		if (savedRegisters == null)
+			asm.emit("popr", "SP");
+		else {
+			List<Register> regs = new ArrayList<Register>(savedRegisters);
+			Collections.reverse(regs);
+			for (Register reg : regs)
+				asm.emit("pop", Register.SP, reg.toString());
+		}
 
 		// Pop all function local data from program stack.
-		if (localDataSize > 0)
-			asm.emit("sub", Register.SP, "=" + localDataSize);
+		if (stack.getFrameSize() > 0)
+			asm.emit("sub", Register.SP, "=" + stack.getFrameSize());
 
 		// Exit from function.
 		asm.emit("exit", Register.SP, "=" + paramTotalSize);
 	}
 
-	private List<Symbol> getLocalVariables(Scope scope, List<Symbol> parameters)
+	/**
+	 * Checks whether the function declares local objects with static storage. Functions with
+	 * static objects cannot be inlined because each inlined copy would have its own object.
+	 */
+	private static boolean hasStaticObjects(Scope scope)
 	{
-		List<Symbol> localVariables = new ArrayList<Symbol>();
+		for (Symbol sym : scope.getSymbols()) {
+			if (sym.getStorageClass() == StorageClass.Static && sym.getType().isObject())
+				return true;
+		}
+
+		for (Scope subscope : scope.getSubScopes()) {
+			if (hasStaticObjects(subscope))
+				return true;
+		}
+
+		return false;
+	}
 
+	/**
+	 * Get the global names of the automatic scalar objects, including parameters. These may be
+	 * kept in registers if their address is not used.
+	 */
+	private static Set<String> getScalarVariables(Scope scope)
+	{
+		Set<String> variables = new HashSet<String>();
 		for (Symbol sym : scope.getSymbols()) {
-			// All automatic objects except parameters and internal objects.
 			if ((sym.getStorageClass() == StorageClass.Auto
-					|| sym.getStorageClass() == StorageClass.Register) && !parameters.contains(sym)
+					|| sym.getStorageClass() == StorageClass.Register)
+					&& sym.getType().isScalar() && sym.getType().getSize() == 1
 					&& !sym.getName().startsWith("__"))
-				localVariables.add(sym);
+				variables.add(sym.getGlobalName());
 		}
 
 		for (Scope subscope : scope.getSubScopes())
-			localVariables.addAll(getLocalVariables(subscope, parameters));
+			variables.addAll(getScalarVariables(subscope));
 
-		return localVariables;
+		return variables;
 	}
 
 	@Override
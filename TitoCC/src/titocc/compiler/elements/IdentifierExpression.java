@@ -2,6 +2,7 @@ package titocc.compiler.elements;
 
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Lvalue;
+import titocc.compiler.RhsOperand;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 import titocc.compiler.StorageClass;
@@ -64,11 +65,17 @@ public class IdentifierExpression extends Expression
 					getPosition());
 		}
 
-		// Load value to register (or address if we have an array/function).
+		// Load value to register (or address if we have an array/function). Values larger than
+		// one word are loaded through their address.
 		VirtualRegister retReg = new VirtualRegister();
-		if (symbol.getType() instanceof ArrayType || symbol.getType().isFunction())
+		if (symbol.getType() instanceof ArrayType || symbol.getType().isFunction()) {
+			if (symbol.getStorageClass() == StorageClass.Auto)
+				ic.markFrameAddressTaken();
+			ic.emit("load", retReg, getAddressOperand(symbol, scope));
+		} else if (symbol.getType().getSize() > 1) {
 			ic.emit("load", retReg, symbol.getRhsOperand(false));
-		else
+			return symbol.getType().compileLoad(ic, retReg);
+		} else
 			ic.emit("load", retReg, symbol.getRhsOperand(true));
 
 		return new Rvalue(retReg);
@@ -89,8 +96,11 @@ public class IdentifierExpression extends Expression
 					getPosition());
 		}
 
+		if (addressOf && symbol.getStorageClass() == StorageClass.Auto)
+			ic.markFrameAddressTaken();
+
 		VirtualRegister retReg = new VirtualRegister();
-		ic.emit("load", retReg, symbol.getRhsOperand(false));
+		ic.emit("load", retReg, getAddressOperand(symbol, scope));
 
 		return new Lvalue(retReg);
 	}
@@ -107,6 +117,26 @@ public class IdentifierExpression extends Expression
 		return "(ID_EXPR " + identifier + ")";
 	}
 
+	/**
+	 * Get the RHS operand for the address of a symbol. Pointers to functions with register
+	 * calling convention point to a wrapper function that uses the standard calling convention,
+	 * because indirect calls cannot know which convention the called function uses.
+	 */
+	private static RhsOperand getAddressOperand(Symbol symbol, Scope scope)
+	{
+		if (!symbol.hasRegisterCallingConvention())
+			return symbol.getRhsOperand(false);
+
+		if (symbol.getStackCallWrapperName() == null) {
+			Scope globalScope = scope;
+			while (!globalScope.isGlobal())
+				globalScope = globalScope.getParent();
+			symbol.setStackCallWrapperName(
+					globalScope.makeGloballyUniqueName(symbol.getGlobalName() + "_ptr"));
+		}
+		return new RhsOperand(0, symbol.getStackCallWrapperName(), null);
+	}
+
 	private Symbol findSymbol(Scope scope) throws SyntaxException
 	{
 		Symbol symbol = scope.find(identifier);
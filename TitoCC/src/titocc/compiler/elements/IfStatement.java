@@ -86,7 +86,7 @@ public class IfStatement extends Statement
 	{
 		String skipTrueLabel = scope.makeGloballyUniqueName("lbl");
 
-		compileControlExpression(controlExpression, ic, scope, null, skipTrueLabel, "jzer");
+		compileControlExpression(controlExpression, ic, scope, null, skipTrueLabel, false);
 
 		// True statement.
 		compileInNewScope(ic, scope, stack, trueStatement);
@@ -114,6 +114,7 @@ public class IfStatement extends Statement
 		Scope subScope = new Scope(scope, "");
 		scope.addSubScope(subScope);
 		statement.compile(ic, subScope, stack);
+		subScope.close();
 	}
 
 	/**
@@ -0,0 +1,281 @@
+package titocc.compiler.elements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import titocc.compiler.types.ArrayType;
+import titocc.compiler.types.CType;
+import titocc.compiler.types.IntegerType;
+import titocc.tokenizer.SyntaxException;
+import titocc.tokenizer.TokenStream;
+import titocc.util.Position;
+
+/**
+ * Initializer of an object. Either a single expression, or a brace-enclosed list of initializers
+ * for the elements of an array. Braces of nested arrays may be left out, in which case the
+ * elements are initialized from the following expressions of the enclosing list. E.g. "{1, 2, 3,
+ * 4}" and "{{1, 2}, {3, 4}}" both initialize int[2][2] in the same way. A character array can
+ * also be initialized with a string literal. Elements without an initializer are set to zero.
+ *
+ * <p> EBNF definition:
+ *
+ * <br> INITIALIZER = ASSIGNMENT_EXPRESSION | "{" INITIALIZER {"," INITIALIZER} [","] "}"
+ */
+public class Initializer extends CodeElement
+{
+	/**
+	 * Initializer expression, or null if this is an initializer list.
+	 */
+	private final Expression expression;
+
+	/**
+	 * Initializers in the list, or null if this is a single expression.
+	 */
+	private final List<Initializer> initializers;
+
+	/**
+	 * Constructs an Initializer that consists of a single expression.
+	 *
+	 * @param expression initializer expression
+	 * @param position starting position of the initializer
+	 */
+	public Initializer(Expression expression, Position position)
+	{
+		super(position);
+		this.expression = expression;
+		this.initializers = null;
+	}
+
+	/**
+	 * Constructs a brace-enclosed initializer list.
+	 *
+	 * @param initializers initializers in the list
+	 * @param position starting position of the initializer
+	 */
+	public Initializer(List<Initializer> initializers, Position position)
+	{
+		super(position);
+		this.expression = null;
+		this.initializers = initializers;
+	}
+
+	/**
+	 * Completes an array type whose length was not specified. The length is the number of
+	 * elements initialized by this initializer.
+	 *
+	 * @param type type of the initialized object
+	 * @return completed type, or the original type if it is not an incomplete array
+	 * @throws SyntaxException if the initializer is invalid for the type
+	 */
+	public CType completeType(CType type) throws SyntaxException
+	{
+		if (!(type instanceof ArrayType) || !type.isIncomplete())
+			return type;
+
+		ArrayType arrayType = (ArrayType) type;
+		Initializer string = getStringInitializer(arrayType);
+		if (string != null) {
+			int length = ((StringLiteralExpression) string.expression).getValues().size();
+			return CType.array(arrayType.getElementType(), length);
+		}
+
+		if (initializers == null)
+			throw new SyntaxException("Invalid initializer for array.", getPosition());
+		List<Expression> values = new ArrayList<Expression>();
+		addElements(arrayType.getElementType(), Integer.MAX_VALUE, 0, values);
+		int elementCount = getScalarCount(arrayType.getElementType());
+		return CType.array(arrayType.getElementType(), values.size() / elementCount);
+	}
+
+	/**
+	 * Returns the initial values of the scalar objects that form the initialized object, in the
+	 * order of their addresses. Scalar objects without an initializer have a null value.
+	 *
+	 * @param type type of the initialized object; must be complete
+	 * @return list of initializer expressions
+	 * @throws SyntaxException if the initializer is invalid for the type
+	 */
+	public List<Expression> getScalarValues(CType type) throws SyntaxException
+	{
+		List<Expression> values = new ArrayList<Expression>();
+		addValues(type, values);
+		return values;
+	}
+
+	/**
+	 * Returns the type of the scalar objects that form an object of given type. Since there are no
+	 * structures, all scalars in an array have the type of the innermost element.
+	 *
+	 * @param type object type
+	 * @return scalar type
+	 */
+	public static CType getScalarType(CType type)
+	{
+		while (type instanceof ArrayType)
+			type = ((ArrayType) type).getElementType();
+		return type;
+	}
+
+	private static int getScalarCount(CType type)
+	{
+		if (!(type instanceof ArrayType))
+			return 1;
+		ArrayType arrayType = (ArrayType) type;
+		return arrayType.getLength() * getScalarCount(arrayType.getElementType());
+	}
+
+	/**
+	 * Adds the values for an object of given type initialized by this initializer.
+	 */
+	private void addValues(CType type, List<Expression> values) throws SyntaxException
+	{
+		if (!(type instanceof ArrayType)) {
+			if (initializers == null) {
+				values.add(expression);
+			} else {
+				if (initializers.size() > 1) {
+					throw new SyntaxException("Too many initializers.",
+							initializers.get(1).getPosition());
+				}
+				initializers.get(0).addValues(type, values);
+			}
+			return;
+		}
+
+		ArrayType arrayType = (ArrayType) type;
+		Initializer string = getStringInitializer(arrayType);
+		if (string != null) {
+			string.addString(arrayType, values);
+			return;
+		}
+
+		if (initializers == null)
+			throw new SyntaxException("Invalid initializer for array.", getPosition());
+		int end = values.size() + getScalarCount(arrayType);
+		int next = addElements(arrayType.getElementType(), arrayType.getLength(), 0, values);
+		if (next < initializers.size()) {
+			throw new SyntaxException("Too many initializers.",
+					initializers.get(next).getPosition());
+		}
+		while (values.size() < end)
+			values.add(null);
+	}
+
+	/**
+	 * Adds values for at most maxCount array elements from the initializers of this list
+	 * starting from the index. Each element is padded to its full size. Returns the index of the
+	 * first unused initializer.
+	 */
+	private int addElements(CType elementType, int maxCount, int index, List<Expression> values)
+			throws SyntaxException
+	{
+		int elementCount = getScalarCount(elementType);
+		for (int i = 0; i < maxCount && index < initializers.size(); ++i) {
+			int start = values.size();
+			Initializer init = initializers.get(index);
+			if (elementType instanceof ArrayType && init.expression != null
+					&& init.getStringInitializer((ArrayType) elementType) == null) {
+				// Braces omitted: the element takes as many initializers as it needs.
+				index = addElements(((ArrayType) elementType).getElementType(),
+						((ArrayType) elementType).getLength(), index, values);
+			} else {
+				init.addValues(elementType, values);
+				++index;
+			}
+			while (values.size() < start + elementCount)
+				values.add(null);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the initializer that holds a string literal for a character array, or null if
+	 * this doesn't initialize the array with a string. The string may be enclosed in braces.
+	 */
+	private Initializer getStringInitializer(ArrayType type)
+	{
+		CType elementType = type.getElementType();
+		if (!(elementType instanceof IntegerType) || ((IntegerType) elementType).getRank() != 0)
+			return null;
+		if (expression instanceof StringLiteralExpression)
+			return this;
+		if (initializers != null && initializers.size() == 1
+				&& initializers.get(0).expression instanceof StringLiteralExpression)
+			return initializers.get(0);
+		return null;
+	}
+
+	/**
+	 * Adds the characters of the string literal. Null termination is left out if the array has
+	 * room only for the other characters.
+	 */
+	private void addString(ArrayType type, List<Expression> values) throws SyntaxException
+	{
+		List<Integer> chars = ((StringLiteralExpression) expression).getValues();
+		if (chars.size() - 1 > type.getLength())
+			throw new SyntaxException("Initializer string is too long.", getPosition());
+		for (int i = 0; i < type.getLength(); ++i) {
+			if (i < chars.size()) {
+				values.add(new CharacterLiteralExpression(Arrays.asList(chars.get(i)),
+						getPosition()));
+			} else
+				values.add(null);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		if (expression != null)
+			return expression.toString();
+
+		String str = "(INIT_LIST";
+		for (Initializer init : initializers)
+			str += " " + init;
+		return str + ")";
+	}
+
+	/**
+	 * Attempts to parse an initializer from token stream. If parsing fails the stream is reset to
+	 * its initial position.
+	 *
+	 * @param tokens source token stream
+	 * @return Initializer object or null if tokens don't form a valid initializer
+	 */
+	public static Initializer parse(TokenStream tokens)
+	{
+		Position pos = tokens.getPosition();
+		tokens.pushMark();
+		Initializer initializer = null;
+
+		if (tokens.read().toString().equals("{")) {
+			List<Initializer> initializers = new ArrayList<Initializer>();
+			Initializer init = Initializer.parse(tokens);
+			while (init != null) {
+				initializers.add(init);
+				tokens.pushMark();
+				init = null;
+				if (tokens.read().toString().equals(","))
+					init = Initializer.parse(tokens);
+				tokens.popMark(init == null);
+			}
+
+			// Optional trailing comma.
+			tokens.pushMark();
+			tokens.popMark(!tokens.read().toString().equals(","));
+
+			if (!initializers.isEmpty() && tokens.read().toString().equals("}"))
+				initializer = new Initializer(initializers, pos);
+		}
+
+		tokens.popMark(initializer == null);
+
+		if (initializer == null) {
+			Expression expr = AssignmentExpression.parse(tokens);
+			if (expr != null)
+				initializer = new Initializer(expr, pos);
+		}
+
+		return initializer;
+	}
+}
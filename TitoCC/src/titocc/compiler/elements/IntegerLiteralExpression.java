@@ -15,7 +15,7 @@ import titocc.tokenizer.TokenStream;
 import titocc.util.Position;
 
 /**
- * Integer literal expression. Consists of digits and suffix. Suffixes are not currently supported.
+ * Integer literal expression. Consists of digits and suffix.
  *
  * <p> EBNF definition:
  *
@@ -24,7 +24,7 @@ import titocc.util.Position;
 public class IntegerLiteralExpression extends Expression
 {
 	/**
-	 * Mapping of suffixes to types, as specified in ($6.4.4.1/5). Long long not supported yet.
+	 * Mapping of suffixes to types, as specified in ($6.4.4.1/5).
 	 */
 	private static Map<String, IntegerType[]> suffixes = new HashMap<String, IntegerType[]>()
 	{
@@ -36,21 +36,22 @@ public class IntegerLiteralExpression extends Expression
 
 		{
 			put(new String[]{""},
-					new IntegerType[]{CType.INT, CType.UINT, CType.LONG, CType.ULONG});
+					new IntegerType[]{CType.INT, CType.UINT, CType.LONG, CType.ULONG,
+						CType.LLONG, CType.ULLONG});
 			put(new String[]{"u", "U"},
-					new IntegerType[]{CType.UINT, CType.ULONG});
+					new IntegerType[]{CType.UINT, CType.ULONG, CType.ULLONG});
 			put(new String[]{"l", "L"},
-					new IntegerType[]{CType.LONG, CType.ULONG});
+					new IntegerType[]{CType.LONG, CType.ULONG, CType.LLONG, CType.ULLONG});
 			put(new String[]{"ul", "uL", "Ul", "UL"},
-					new IntegerType[]{CType.ULONG});
+					new IntegerType[]{CType.ULONG, CType.ULLONG});
 			put(new String[]{"lu", "lU", "Lu", "LU"},
-					new IntegerType[]{CType.ULONG});
+					new IntegerType[]{CType.ULONG, CType.ULLONG});
 			put(new String[]{"ll", "LL"},
-					null);
+					new IntegerType[]{CType.LLONG, CType.ULLONG});
 			put(new String[]{"ull", "uLL", "Ull", "ULL"},
-					null);
+					new IntegerType[]{CType.ULLONG});
 			put(new String[]{"llu", "llU", "LLu", "LLU"},
-					null);
+					new IntegerType[]{CType.ULLONG});
 		}
 	};
 
@@ -82,12 +83,8 @@ public class IntegerLiteralExpression extends Expression
 	{
 		String suffix = token.getSuffix().replace("U", "u").replace("LL", "ll");
 		IntegerType[] types = suffixes.get(suffix);
-		if (types == null) {
-			if (suffixes.containsKey(suffix))
-				throw new SyntaxException("Unsupported suffix on integer literal.", getPosition());
-			else
-				throw new SyntaxException("Illegal suffix on integer literal.", getPosition());
-		}
+		if (types == null)
+			throw new SyntaxException("Illegal suffix on integer literal.", getPosition());
 
 		BigInteger val = new BigInteger(token.getValue(), token.getBase());
 		IntegerType biggest = null;
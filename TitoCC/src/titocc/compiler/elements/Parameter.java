@@ -82,6 +82,10 @@ public class Parameter extends CodeElement
 		if (!declType.type.isObject())
 			throw new SyntaxException("Parameter must have object type.", getPosition());
 
+		// Inline is only allowed for functions. ($6.7.4/1)
+		if (declType.inline)
+			throw new SyntaxException("Inline specifier in object declaration.", getPosition());
+
 		return declType;
 	}
 
@@ -75,6 +75,8 @@ public class ParameterList extends CodeElement
 			paramSymbols.add(paramSymbol);
 			++i;
 		}
+		if (paramScope != scope)
+			paramScope.close();
 
 		return paramSymbols;
 	}
@@ -9,7 +9,6 @@ import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 import titocc.compiler.types.ArrayType;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.PointerType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
 import titocc.util.Position;
@@ -99,6 +98,20 @@ public class PrefixExpression extends Expression
 			throw new InternalCompilerException("Unknown prefix operator.");
 	}
 
+	@Override
+	public void compileAsCondition(IntermediateCompiler ic, Scope scope, String trueLabel,
+			String falseLabel) throws SyntaxException
+	{
+		if (!operator.equals("!")) {
+			super.compileAsCondition(ic, scope, trueLabel, falseLabel);
+			return;
+		}
+
+		// Logical negation just swaps the jump targets.
+		checkLogicalNegationOperand(scope);
+		operand.compileAsCondition(ic, scope, falseLabel, trueLabel);
+	}
+
 	@Override
 	public Lvalue compileAsLvalue(IntermediateCompiler ic, Scope scope, boolean addressOf)
 			throws SyntaxException
@@ -149,11 +162,7 @@ public class PrefixExpression extends Expression
 	private Rvalue compileLogicalNegation(IntermediateCompiler ic, Scope scope)
 			throws SyntaxException
 	{
-		// ($6.5.3.3/1)
-		if (!operand.getType(scope).decay().isScalar()) {
-			throw new SyntaxException("Operator " + operator
-					+ " requires a scalar type.", getPosition());
-		}
+		checkLogicalNegationOperand(scope);
 
 		Rvalue val = operand.compileWithConversion(ic, scope, CType.BOOLISH);
 
@@ -167,6 +176,15 @@ public class PrefixExpression extends Expression
 		return val;
 	}
 
+	private void checkLogicalNegationOperand(Scope scope) throws SyntaxException
+	{
+		// ($6.5.3.3/1)
+		if (!operand.getType(scope).decay().isScalar()) {
+			throw new SyntaxException("Operator " + operator
+					+ " requires a scalar type.", getPosition());
+		}
+	}
+
 	private Rvalue compileBitwiseNegation(IntermediateCompiler ic, Scope scope)
 			throws SyntaxException
 	{
@@ -205,7 +223,7 @@ public class PrefixExpression extends Expression
 		// Dereference the pointer unless the result type is an array or function!
 		CType resultType = getType(scope);
 		if (!(resultType instanceof ArrayType) && !resultType.isFunction())
-			ic.emit("load", val.getRegister(), "0", val.getRegister());
+			return resultType.compileLoad(ic, val.getRegister());
 
 		return val;
 	}
@@ -217,7 +235,7 @@ public class PrefixExpression extends Expression
 
 		if (operator.equals("&")) {
 			// No decay with operator &. ($6.3.2.1/3-4)
-			return new PointerType(operand.getType(scope));
+			return CType.pointer(operand.getType(scope));
 		} else if (operator.equals("*")) {
 			if (!operandType.isPointer()) {
 				throw new SyntaxException("Invalid operand for operator *. Pointer type required.",
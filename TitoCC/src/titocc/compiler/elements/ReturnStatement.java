@@ -1,5 +1,6 @@
 package titocc.compiler.elements;
 
+import java.util.List;
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
@@ -60,9 +61,24 @@ public class ReturnStatement extends Statement
 						getPosition());
 			}
 
-			// Load expression to first register and store to the return value.
-			Rvalue initVal = expression.compileWithConversion(ic, scope, retVal.getType());
-			ic.emit("store", initVal.getRegister(), retVal.getRhsOperand(false));
+			// Load expression to first register and store to the return value, unless the value
+			// is returned in register. Recursive call in tail position is replaced with a jump to
+			// the function start when possible.
+			Rvalue initVal;
+			if (isSelfTailCall(ic, scope)) {
+				initVal = ((FunctionCallExpression) expression).compileSelfTailCall(ic, scope,
+						scope.find("__Start"), scope.getFunctionParameters());
+				if (initVal == null)
+					return;
+			} else
+				initVal = expression.compileWithConversion(ic, scope, retVal.getType());
+			Rvalue registerValue = retVal.getRegisterValue();
+			if (registerValue != null) {
+				List<VirtualRegister> registers = registerValue.getRegisters();
+				for (int i = 0; i < registers.size(); ++i)
+					ic.emit("load", registers.get(i), initVal.getRegisters().get(i));
+			} else
+				retVal.compileStore(ic, initVal);
 		} else {
 			if (!retVal.getType().equals(CType.VOID))
 				throw new SyntaxException("Function must return a value.", getPosition());
@@ -73,6 +89,34 @@ public class ReturnStatement extends Statement
 		ic.emit("jump", VirtualRegister.NONE, functionEnd.getReference());
 	}
 
+	/**
+	 * Checks whether the returned expression calls the function itself, so that the call can
+	 * be replaced with a jump to the start of the function. This makes recursion run in constant
+	 * stack space. Not done if the address of some stack frame object has been used, because
+	 * the callee might access the object through a pointer. Calls inside loops are also left
+	 * alone to keep the loop structure simple for the loop optimizations.
+	 */
+	private boolean isSelfTailCall(IntermediateCompiler ic, Scope scope)
+	{
+		if (!(expression instanceof FunctionCallExpression) || ic.isFrameAddressTaken()
+				|| scope.find("__Cont") != null)
+			return false;
+		FunctionCallExpression call = (FunctionCallExpression) expression;
+		if (!(call.getFunctionPointerExpression() instanceof IdentifierExpression))
+			return false;
+
+		// Called symbol must be the function being compiled.
+		Symbol function = scope.getFunction();
+		String name = ((IdentifierExpression) call.getFunctionPointerExpression()).getIdentifier();
+		Symbol callee = scope.find(name);
+		if (function == null || callee == null || !callee.getType().isFunction()
+				|| !callee.getGlobalName().equals(function.getGlobalName()))
+			return false;
+
+		// Inlined copies of the function have no start label.
+		return scope.find("__Start") != null;
+	}
+
 	@Override
 	public String toString()
 	{
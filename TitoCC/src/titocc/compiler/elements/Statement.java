@@ -2,11 +2,9 @@ package titocc.compiler.elements;
 
 import java.util.LinkedList;
 import titocc.compiler.IntermediateCompiler;
-import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 import titocc.compiler.StackAllocator;
 import titocc.compiler.VirtualRegister;
-import titocc.compiler.types.CType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
 import titocc.util.Position;
@@ -17,7 +15,8 @@ import titocc.util.Position;
  * <p> EBNF definition:
  *
  * <br> STATEMENT = EXPRESSION_STATEMENT | DECLARATION_STATEMENT | IF_STATEMENT
- * | WHILE_STATEMENT | FOR_STATEMENT | COMPOUND_STATEMENT | JUMP_STATEMENT | ";"
+ * | WHILE_STATEMENT | FOR_STATEMENT | SWITCH_STATEMENT | CASE_STATEMENT | COMPOUND_STATEMENT
+ * | JUMP_STATEMENT | ";"
  */
 public abstract class Statement extends CodeElement
 {
@@ -49,11 +48,12 @@ public abstract class Statement extends CodeElement
 	 * @param ic intermediate compiler used for code generation
 	 * @param scope scope in which the control expression is evaluated
 	 * @param testLabel label added just before the test
-	 * @param jumpLabel jump target label when test is true
-	 * @param jumpInstr mnemonic for the jump/test instruction
+	 * @param jumpLabel jump target label
+	 * @param jumpIfTrue true if the jump is taken when the control expression is true, false if
+	 * it is taken when the expression is false
 	 */
 	protected static void compileControlExpression(Expression controlExpr, IntermediateCompiler ic,
-			Scope scope, String testLabel, String jumpLabel, String jumpInstr)
+			Scope scope, String testLabel, String jumpLabel, boolean jumpIfTrue)
 			throws SyntaxException
 	{
 		if (controlExpr != null && !controlExpr.getType(scope).decay().isScalar()) {
@@ -67,10 +67,11 @@ public abstract class Statement extends CodeElement
 		// Only generate code for the test if there is a control expression. Otherwise make
 		// unconditional jump (only allowed in for loops).
 		if (controlExpr != null) {
-			Rvalue val = controlExpr.compileWithConversion(ic, scope, CType.BOOLISH);
-
-			// Jump if test was false/true (depending on jump instruction).
-			ic.emit(jumpInstr, val.getRegister(), jumpLabel); // jnzer/jzer
+			// Jump if test was true/false and otherwise continue with the next instruction.
+			if (jumpIfTrue)
+				controlExpr.compileAsCondition(ic, scope, jumpLabel, null);
+			else
+				controlExpr.compileAsCondition(ic, scope, null, jumpLabel);
 		} else
 			ic.emit("jump", VirtualRegister.NONE, jumpLabel);
 	}
@@ -104,6 +105,12 @@ public abstract class Statement extends CodeElement
 		if (statement == null)
 			statement = ForStatement.parse(tokens);
 
+		if (statement == null)
+			statement = SwitchStatement.parse(tokens);
+
+		if (statement == null)
+			statement = CaseStatement.parse(tokens);
+
 		if (statement == null)
 			statement = CompoundStatement.parse(tokens);
 
@@ -7,7 +7,6 @@ import titocc.compiler.Lvalue;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 import titocc.compiler.VirtualRegister;
-import titocc.compiler.types.ArrayType;
 import titocc.compiler.types.CType;
 import titocc.tokenizer.StringLiteralToken;
 import titocc.tokenizer.SyntaxException;
@@ -44,10 +43,20 @@ public class StringLiteralExpression extends Expression
 		this.values = values;
 	}
 
+	/**
+	 * Returns the character values.
+	 *
+	 * @return character values including the null termination
+	 */
+	public List<Integer> getValues()
+	{
+		return values;
+	}
+
 	@Override
 	public Rvalue compile(IntermediateCompiler ic, Scope scope) throws SyntaxException
 	{
-		String startLabel = allocateArray(ic, scope);
+		String startLabel = allocateArray(scope);
 		VirtualRegister retReg = new VirtualRegister();
 		ic.emit("load", retReg, "=" + startLabel);
 		return new Rvalue(retReg);
@@ -60,7 +69,7 @@ public class StringLiteralExpression extends Expression
 		if (!addressOf)
 			requireLvalueType(scope);
 
-		String startLabel = allocateArray(ic, scope);
+		String startLabel = allocateArray(scope);
 		VirtualRegister retReg = new VirtualRegister();
 		ic.emit("load", retReg, "=" + startLabel);
 
@@ -68,27 +77,19 @@ public class StringLiteralExpression extends Expression
 	}
 
 	/**
-	 * Allocates static data area for the string. In current implementations of Titokone
-	 * consequtive "dc" commands will allocate consecutive memory locations, so we can take
-	 * advantage of that. (Otherwise it would require using "ds" and separate initialization code.)
+	 * Allocates static storage for the string from the string pool of the translation unit.
+	 * Consecutive "dc" commands allocate consecutive memory locations in current implementations
+	 * of Titokone, so the pool can emit the characters as a single run of "dc" words.
 	 */
-	private String allocateArray(IntermediateCompiler ic, Scope scope)
+	private String allocateArray(Scope scope)
 	{
-		String startLabel = null;
-		for (int i = 0; i < values.size(); ++i) {
-			String label = scope.makeGloballyUniqueName("str");
-			if (i == 0)
-				startLabel = label;
-			ic.addLabel(label);
-			ic.emit("dc", values.get(i));
-		}
-		return startLabel;
+		return scope.getStringPool().add(values);
 	}
 
 	@Override
 	public CType getType(Scope scope) throws SyntaxException
 	{
-		return new ArrayType(CType.CHAR, values.size());
+		return CType.array(CType.CHAR, values.size());
 	}
 
 	@Override
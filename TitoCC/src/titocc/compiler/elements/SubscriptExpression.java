@@ -81,8 +81,7 @@ public class SubscriptExpression extends Expression
 
 		// If increment size > 1 then multiply subscript.
 		int incSize = actualArrayOperand.getType(scope).decay().getIncrementSize();
-		if (incSize != 1)
-			ic.emit("mul", subscriptVal.getRegister(), "=" + incSize);
+		compileScaling(ic, subscriptVal.getRegister(), incSize);
 
 		// Add subscript to the array pointer.
 		ic.emit("add", arrayVal.getRegister(), subscriptVal.getRegister());
@@ -91,7 +90,7 @@ public class SubscriptExpression extends Expression
 		// or function.
 		CType resultType = getType(scope);
 		if (!lvalue && !(resultType instanceof ArrayType) && !resultType.isFunction())
-			ic.emit("load", arrayVal.getRegister(), "0", arrayVal.getRegister());
+			return resultType.compileLoad(ic, arrayVal.getRegister());
 
 		return arrayVal;
 	}
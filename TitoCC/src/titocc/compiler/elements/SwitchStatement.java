@@ -0,0 +1,506 @@
+package titocc.compiler.elements;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import titocc.compiler.IntermediateCompiler;
+import titocc.compiler.Rvalue;
+import titocc.compiler.Scope;
+import titocc.compiler.StackAllocator;
+import titocc.compiler.StorageClass;
+import titocc.compiler.Symbol;
+import titocc.compiler.VirtualRegister;
+import titocc.compiler.types.CType;
+import titocc.compiler.types.IntegerType;
+import titocc.tokenizer.SyntaxException;
+import titocc.tokenizer.TokenStream;
+import titocc.util.Position;
+
+/**
+ * Switch statement. Consists of an integer control expression and a body statement that contains
+ * the case labels.
+ *
+ * <p> The body is compiled first so that all case values are known when the code for selecting
+ * the case is generated. Dense sets of cases use a jump table, which takes constant time. Other
+ * cases are found by binary search, splitting the search at dense parts that use jump tables.
+ * Long long values are compared one word at a time, and their jump tables are limited to cases
+ * that have the same high word.
+ *
+ * <p> EBNF definition:
+ *
+ * <br> SWITCH_STATEMENT = "switch" "(" EXPRESSION ")" STATEMENT
+ */
+public class SwitchStatement extends Statement
+{
+	/**
+	 * Minimum number of cases that use a jump table.
+	 */
+	private static final int JUMP_TABLE_MIN_CASES = 4;
+
+	/**
+	 * Maximum ratio of jump table size to the number of cases in the table.
+	 */
+	private static final int JUMP_TABLE_MAX_SPARSENESS = 3;
+
+	/**
+	 * Maximum number of cases that are tested one by one instead of binary search.
+	 */
+	private static final int LINEAR_SEARCH_MAX_CASES = 3;
+
+	/**
+	 * Control expression.
+	 */
+	private final Expression controlExpression;
+
+	/**
+	 * Body statement.
+	 */
+	private final Statement body;
+
+	/**
+	 * Labels for the case values. Filled when compiling the body.
+	 */
+	private Map<Long, String> caseLabels;
+
+	/**
+	 * Label for the default case or null if there is none.
+	 */
+	private String defaultLabel;
+
+	/**
+	 * True if the promoted control expression is long long.
+	 */
+	private boolean wide;
+
+	/**
+	 * Constructs a SwitchStatement.
+	 *
+	 * @param controlExpression control expression
+	 * @param body body statement
+	 * @param position starting position of the switch statement
+	 */
+	public SwitchStatement(Expression controlExpression, Statement body, Position position)
+	{
+		super(position);
+		this.controlExpression = controlExpression;
+		this.body = body;
+	}
+
+	/**
+	 * Returns the control expression.
+	 *
+	 * @return the control expression
+	 */
+	public Expression getControlExpression()
+	{
+		return controlExpression;
+	}
+
+	/**
+	 * Returns the body of the switch statement.
+	 *
+	 * @return the body statement
+	 */
+	public Statement getBody()
+	{
+		return body;
+	}
+
+	@Override
+	public void compile(IntermediateCompiler ic, Scope scope, StackAllocator stack)
+			throws SyntaxException
+	{
+		CType type = controlExpression.getType(scope).decay();
+		if (!type.isInteger()) {
+			throw new SyntaxException("Illegal control expression. Integer type required.",
+					controlExpression.getPosition());
+		}
+		CType controlType = type.promote();
+		caseLabels = new TreeMap<Long, String>();
+		defaultLabel = null;
+		wide = controlType.getSize() > 1;
+
+		// Switch statement creates a new scope.
+		Scope switchScope = new Scope(scope, "");
+		scope.addSubScope(switchScope);
+		switchScope.setSwitch(this);
+
+		// Symbol for break.
+		Symbol breakSymbol = new Symbol("__Brk", CType.VOID, StorageClass.Static, false);
+		switchScope.add(breakSymbol);
+
+		Rvalue value = controlExpression.compileWithConversion(ic, scope, controlType);
+
+		// Compile the body separately to find the case labels.
+		IntermediateCompiler bodyIc = new IntermediateCompiler();
+		if (ic.isFrameAddressTaken())
+			bodyIc.markFrameAddressTaken();
+		body.compile(bodyIc, switchScope, stack);
+		switchScope.close();
+
+		// Unsigned values are offset by 0x80000000 so that signed comparisons can be used. The
+		// low word of a long long is always unsigned.
+		VirtualRegister reg = value.getRegister();
+		VirtualRegister highReg = wide ? value.getHighRegister() : null;
+		boolean unsigned = !((IntegerType) controlType).isSigned();
+		if (unsigned && !caseLabels.isEmpty())
+			ic.emit("xor", wide ? highReg : reg, scope.find("__m").getReference());
+		if (wide && !caseLabels.isEmpty())
+			ic.emit("xor", reg, scope.find("__m").getReference());
+
+		long signBit = wide ? Long.MIN_VALUE : Integer.MIN_VALUE;
+		Map<Long, String> orderedLabels = new TreeMap<Long, String>();
+		for (Map.Entry<Long, String> e : caseLabels.entrySet())
+			orderedLabels.put(unsigned ? e.getKey() ^ signBit : e.getKey(), e.getValue());
+		String otherLabel = defaultLabel != null ? defaultLabel : breakSymbol.getReference();
+		new Dispatcher(ic, scope, reg, highReg, orderedLabels, otherLabel).compile();
+
+		ic.append(bodyIc);
+
+		// Insert label to be used by break statements.
+		ic.addLabel(breakSymbol.getReference());
+	}
+
+	/**
+	 * Adds a case label with the given value to this switch statement.
+	 *
+	 * @param valueExpression case value
+	 * @param scope scope in which the case label is
+	 * @return label for the case
+	 * @throws SyntaxException if the value is not a constant or is a duplicate
+	 */
+	public String addCase(Expression valueExpression, Scope scope) throws SyntaxException
+	{
+		BigInteger value = valueExpression.getCompileTimeValue(scope);
+		if (value == null || !valueExpression.getType(scope).isInteger()) {
+			throw new SyntaxException("Case label is not an integer constant.",
+					valueExpression.getPosition());
+		}
+
+		// Value is converted to the promoted type of the control expression. ($6.8.4.2/5)
+		long key = wide ? value.longValue() : value.intValue();
+		if (caseLabels.containsKey(key))
+			throw new SyntaxException("Duplicate case value.", valueExpression.getPosition());
+
+		String label = scope.makeGloballyUniqueName("Case");
+		caseLabels.put(key, label);
+		return label;
+	}
+
+	/**
+	 * Adds the default label to this switch statement.
+	 *
+	 * @param scope scope in which the default label is
+	 * @param position position of the default label
+	 * @return label for the default case
+	 * @throws SyntaxException if the switch already has a default label
+	 */
+	public String addDefault(Scope scope, Position position) throws SyntaxException
+	{
+		if (defaultLabel != null)
+			throw new SyntaxException("Multiple default labels in one switch.", position);
+
+		defaultLabel = scope.makeGloballyUniqueName("Default");
+		return defaultLabel;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "(SWITCH " + controlExpression + " " + body + ")";
+	}
+
+	/**
+	 * Attempts to parse a switch statement from token stream. If parsing fails the stream is
+	 * reset to its initial position.
+	 *
+	 * @param tokens source token stream
+	 * @return SwitchStatement object or null if tokens don't form a valid switch statement
+	 */
+	public static SwitchStatement parse(TokenStream tokens)
+	{
+		Position pos = tokens.getPosition();
+		tokens.pushMark();
+		SwitchStatement switchStatement = null;
+
+		if (tokens.read().toString().equals("switch")) {
+			if (tokens.read().toString().equals("(")) {
+				Expression expr = Expression.parse(tokens);
+				if (expr != null) {
+					if (tokens.read().toString().equals(")")) {
+						Statement statement = Statement.parse(tokens);
+						if (statement != null)
+							switchStatement = new SwitchStatement(expr, statement, pos);
+					}
+				}
+			}
+		}
+
+		tokens.popMark(switchStatement == null);
+		return switchStatement;
+	}
+
+	/**
+	 * Generates the code that jumps to the matching case. The sorted keys are first divided into
+	 * segments that are either dense enough for a jump table or single keys, and then the
+	 * segment is found by binary search. Long long keys are ordered as signed 64-bit values, and
+	 * the low word register holds the low word offset by 0x80000000.
+	 */
+	private static class Dispatcher
+	{
+		private final IntermediateCompiler ic;
+
+		private final Scope scope;
+
+		/**
+		 * Register holding the value of the control expression, or its low word.
+		 */
+		private final VirtualRegister reg;
+
+		/**
+		 * Register holding the high word of a long long value, or null.
+		 */
+		private final VirtualRegister highReg;
+
+		/**
+		 * Case values in ascending order.
+		 */
+		private final List<Long> keys;
+
+		/**
+		 * Labels corresponding to the keys.
+		 */
+		private final List<String> labels;
+
+		/**
+		 * Label for values that don't match any case.
+		 */
+		private final String otherLabel;
+
+		/**
+		 * Start indices of the segments, followed by the key count.
+		 */
+		private final List<Integer> segments = new ArrayList<Integer>();
+
+		Dispatcher(IntermediateCompiler ic, Scope scope, VirtualRegister reg,
+				VirtualRegister highReg, Map<Long, String> caseLabels, String otherLabel)
+		{
+			this.ic = ic;
+			this.scope = scope;
+			this.reg = reg;
+			this.highReg = highReg;
+			this.keys = new ArrayList<Long>(caseLabels.keySet());
+			this.labels = new ArrayList<String>(caseLabels.values());
+			this.otherLabel = otherLabel;
+		}
+
+		void compile()
+		{
+			findSegments();
+			if (highReg != null)
+				compileSearch(0, segments.size() - 1, Long.MIN_VALUE, Long.MAX_VALUE);
+			else
+				compileSearch(0, segments.size() - 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Divides the keys to segments. Each segment is the longest run of keys starting from
+		 * the end of the previous segment that is dense enough for a jump table, or a single key.
+		 */
+		private void findSegments()
+		{
+			int first = 0;
+			while (first < keys.size()) {
+				segments.add(first);
+				int last = first + 1;
+				for (int i = first + JUMP_TABLE_MIN_CASES; i <= keys.size(); ++i) {
+					if (isDense(first, i))
+						last = i;
+				}
+				first = last;
+			}
+			segments.add(keys.size());
+		}
+
+		private boolean isDense(int first, int last)
+		{
+			// Jump tables of long long keys only index the low word.
+			if (highReg != null && getHighWord(keys.get(first)) != getHighWord(keys.get(last - 1)))
+				return false;
+			long range = keys.get(last - 1) - keys.get(first) + 1;
+			return range <= (long) (last - first) * JUMP_TABLE_MAX_SPARSENESS;
+		}
+
+		/**
+		 * Generates code for jumping to the case in segments [firstSeg, lastSeg) when the value
+		 * is known to be within [lowBound, highBound].
+		 */
+		private void compileSearch(int firstSeg, int lastSeg, long lowBound, long highBound)
+		{
+			int count = lastSeg - firstSeg;
+			if (count == 0) {
+				ic.emit("jump", VirtualRegister.NONE, otherLabel);
+			} else if (count == 1 && isTable(firstSeg)) {
+				compileJumpTable(firstSeg, lowBound, highBound);
+			} else if (count <= LINEAR_SEARCH_MAX_CASES && !hasTables(firstSeg, lastSeg)) {
+				// Test the keys one by one. Only possible value needs no test.
+				for (int i = segments.get(firstSeg); i < segments.get(lastSeg); ++i) {
+					long key = keys.get(i);
+					if (lowBound == highBound) {
+						ic.emit("jump", VirtualRegister.NONE, labels.get(i));
+						return;
+					}
+					compileComparison(key, null, labels.get(i), null);
+					if (key == lowBound)
+						++lowBound;
+					else if (key == highBound)
+						--highBound;
+				}
+				ic.emit("jump", VirtualRegister.NONE, otherLabel);
+			} else {
+				// Test the middle segment and search the segments before or after it.
+				int middle = (firstSeg + lastSeg) / 2;
+				long min = keys.get(segments.get(middle));
+				long max = keys.get(segments.get(middle + 1) - 1);
+				String lessLabel = scope.makeGloballyUniqueName("lbl");
+				if (isTable(middle)) {
+					// Values outside the table jump directly to the default if there are no
+					// other segments on that side.
+					boolean hasGreater = middle + 1 < lastSeg;
+					String greaterLabel = hasGreater ? scope.makeGloballyUniqueName("lbl")
+							: otherLabel;
+					compileComparison(min, firstSeg < middle ? lessLabel : otherLabel, null,
+							null);
+					compileComparison(max, null, null, greaterLabel);
+					compileJumpTable(middle, min, max);
+					if (hasGreater)
+						ic.addLabel(greaterLabel);
+				} else {
+					compileComparison(min, lessLabel, labels.get(segments.get(middle)), null);
+				}
+				compileSearch(middle + 1, lastSeg, max + 1L, highBound);
+				ic.addLabel(lessLabel);
+				compileSearch(firstSeg, middle, lowBound, min - 1L);
+			}
+		}
+
+		private boolean isTable(int segment)
+		{
+			return segments.get(segment + 1) - segments.get(segment) > 1;
+		}
+
+		private boolean hasTables(int firstSeg, int lastSeg)
+		{
+			for (int i = firstSeg; i < lastSeg; ++i) {
+				if (isTable(i))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Generates code that checks that the value is within the range of the segment and jumps
+		 * through a jump table. Range checks that are known to succeed from the bounds are
+		 * omitted.
+		 */
+		private void compileJumpTable(int segment, long lowBound, long highBound)
+		{
+			int first = segments.get(segment);
+			int last = segments.get(segment + 1);
+			long min = keys.get(first);
+			long max = keys.get(last - 1);
+
+			List<String> targets = new ArrayList<String>();
+			for (int i = first; i < last; ++i) {
+				while (min + targets.size() < keys.get(i))
+					targets.add(otherLabel);
+				targets.add(labels.get(i));
+			}
+
+			// Long long values are compared to the range first, after which the table is indexed
+			// with the low word.
+			if (highReg != null) {
+				if (lowBound < min)
+					compileComparison(min, otherLabel, null, null);
+				if (highBound > max)
+					compileComparison(max, null, null, otherLabel);
+				lowBound = min;
+				highBound = max;
+			}
+
+			// Index is value - min. If the subtraction can overflow, out of range values can
+			// wrap to either side of the table, so both checks are needed.
+			boolean overflow = lowBound - min < Integer.MIN_VALUE
+					|| highBound - min > Integer.MAX_VALUE;
+			VirtualRegister indexReg = new VirtualRegister();
+			ic.emit("load", indexReg, reg);
+			if (getLowWord(min) != 0)
+				ic.emit("sub", indexReg, getConstantOperand(getLowWord(min)));
+			if (lowBound < min || overflow)
+				ic.emit("jneg", indexReg, otherLabel);
+			if (highBound > max || overflow) {
+				ic.emit("comp", indexReg, getConstantOperand((int) (max - min)));
+				ic.emit("jgre", VirtualRegister.NONE, otherLabel);
+			}
+			ic.emitJumpTable(scope.makeGloballyUniqueName("Table"), indexReg, targets);
+		}
+
+		/**
+		 * Generates code that compares the value to a key and jumps to the label given for the
+		 * result. Null labels fall through. Long long values are compared by the high words
+		 * first and then by the low words.
+		 */
+		private void compileComparison(long key, String lessLabel, String equalLabel,
+				String greaterLabel)
+		{
+			String nextLabel = null;
+			if (highReg != null) {
+				if (lessLabel == null || greaterLabel == null)
+					nextLabel = scope.makeGloballyUniqueName("lbl");
+				ic.emit("comp", highReg, getConstantOperand(getHighWord(key)));
+				if (lessLabel == null && greaterLabel == null) {
+					ic.emit("jnequ", VirtualRegister.NONE, nextLabel);
+				} else {
+					ic.emit("jles", VirtualRegister.NONE,
+							lessLabel != null ? lessLabel : nextLabel);
+					ic.emit("jgre", VirtualRegister.NONE,
+							greaterLabel != null ? greaterLabel : nextLabel);
+				}
+			}
+			ic.emit("comp", reg, getConstantOperand(getLowWord(key)));
+			if (equalLabel != null)
+				ic.emit("jequ", VirtualRegister.NONE, equalLabel);
+			if (lessLabel != null)
+				ic.emit("jles", VirtualRegister.NONE, lessLabel);
+			if (greaterLabel != null)
+				ic.emit("jgre", VirtualRegister.NONE, greaterLabel);
+			if (nextLabel != null)
+				ic.addLabel(nextLabel);
+		}
+
+		private int getHighWord(long key)
+		{
+			return (int) (key >> 32);
+		}
+
+		/**
+		 * Returns the value that is compared to the value register. The low word of a long long
+		 * key is offset by 0x80000000 like the register.
+		 */
+		private int getLowWord(long key)
+		{
+			return highReg != null ? (int) key ^ Integer.MIN_VALUE : (int) key;
+		}
+
+		/**
+		 * Get an RHS operand for a constant. Values that don't fit in the 16-bit immediate
+		 * operand are read from the constant pool.
+		 */
+		private String getConstantOperand(int value)
+		{
+			return scope.getConstantPool().getOperand(value);
+		}
+	}
+}
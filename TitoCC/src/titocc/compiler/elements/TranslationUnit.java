@@ -1,7 +1,6 @@
 package titocc.compiler.elements;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import titocc.compiler.Assembler;
@@ -9,7 +8,6 @@ import titocc.compiler.Register;
 import titocc.compiler.Scope;
 import titocc.compiler.Symbol;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.FunctionType;
 import titocc.tokenizer.EofToken;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
@@ -118,8 +116,7 @@ public class TranslationUnit extends CodeElement
 			return false;
 
 		// Required main function type: int()
-		List<CType> paramTypes = new ArrayList<CType>();
-		CType requiredType = new FunctionType(CType.INT, paramTypes);
+		CType requiredType = CType.function(CType.INT);
 
 		return sym.getType().equals(requiredType);
 	}
@@ -89,10 +89,11 @@ public class WhileStatement extends Statement
 		// Loop test code is after the body so that we only need one
 		// jump instruction per iteration.
 		compileControlExpression(controlExpression, ic, loopScope, continueSymbol.getReference(),
-				loopStartLabel, "jnzer");
+				loopStartLabel, true);
 
 		// Insert label to be used by break statements.
 		ic.addLabel(breakSymbol.getReference());
+		loopScope.close();
 	}
 
 	@Override
@@ -1,8 +1,9 @@
 package titocc.compiler.types;
 
 /**
- * Corresponds to C array type. Is an object, but not scalar or arithmetic. Equals only to ArrayType
- * that has same element type and length.
+ * Corresponds to C array type. Is an object, but not scalar or arithmetic. Instances are obtained
+ * from CType.array(), so an array type equals only to itself. Array whose length is not specified
+ * (e.g. "int a[]") is an incomplete type with length 0.
  */
 public class ArrayType extends CType
 {
@@ -12,7 +13,7 @@ public class ArrayType extends CType
 	private final CType elementType;
 
 	/**
-	 * Array length.
+	 * Array length, or 0 if not specified.
 	 */
 	private final int length;
 
@@ -20,39 +21,56 @@ public class ArrayType extends CType
 	 * Constructs an ArrayType.
 	 *
 	 * @param elementType type of the elements in the array
-	 * @param length length of the array
+	 * @param length length of the array, or 0 if not specified
 	 */
-	public ArrayType(CType elementType, int length)
+	ArrayType(CType elementType, int length)
 	{
 		this.elementType = elementType;
 		this.length = length;
 	}
 
+	/**
+	 * Returns the element type.
+	 *
+	 * @return element type
+	 */
+	public CType getElementType()
+	{
+		return elementType;
+	}
+
+	/**
+	 * Returns the array length.
+	 *
+	 * @return length, or 0 if the array type is incomplete
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
 	@Override
 	public boolean isObject()
 	{
-		return true;
+		return length > 0;
 	}
 
 	@Override
-	public int getSize()
+	public boolean isIncomplete()
 	{
-		return elementType.getSize() * length;
+		return length == 0;
 	}
 
 	@Override
-	public CType decay()
+	public int getSize()
 	{
-		return new PointerType(elementType);
+		return elementType.getSize() * length;
 	}
 
 	@Override
-	public boolean equals(Object obj)
+	public CType decay()
 	{
-		if (!(obj instanceof ArrayType))
-			return false;
-
-		return elementType.equals(((ArrayType) obj).elementType)
-				&& length == (((ArrayType) obj).length);
+		return pointer(elementType);
 	}
+
 }
@@ -7,9 +7,4 @@ package titocc.compiler.types;
  */
 public class BoolishType extends CType
 {
-	@Override
-	public boolean equals(Object obj)
-	{
-		return obj instanceof BoolishType;
-	}
 }
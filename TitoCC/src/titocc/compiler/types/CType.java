@@ -1,19 +1,45 @@
 package titocc.compiler.types;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.InternalCompilerException;
 import titocc.compiler.Lvalue;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
+import titocc.compiler.VirtualRegister;
 
 /**
  * Abstract base class for representing types in C type system. Allows testing equality between
- * types and querying their features.
+ * types and querying their features. Derived types are only constructed through the factory methods
+ * pointer(), array() and function(), which return the same object for structurally equal types.
+ * Therefore equals() is a reference check (except for InvalidType, which equals nothing). The
+ * factory methods are thread safe, so types can be shared by compilations running in parallel.
  */
 public abstract class CType
 {
+	/**
+	 * Interned array and function types, keyed by their component types (and array length). The
+	 * table is shared by all compilations in the JVM and is never cleared, so it grows with the
+	 * number of distinct types compiled. Types are small and programs use few of them, so this
+	 * is not a problem even for a long running compiler process.
+	 */
+	private static final ConcurrentMap<List<Object>, CType> derivedTypes =
+			new ConcurrentHashMap<List<Object>, CType>();
+
+	/**
+	 * Pointer type pointing to this type, or null if not yet created. Written only while
+	 * holding the lock of this type.
+	 */
+	private volatile PointerType pointerType;
+
 	/**
 	 * Returns whether the type is an object (i.e. not a function or void).
 	 *
@@ -71,7 +97,7 @@ public abstract class CType
 	 */
 	public CType dereference()
 	{
-		return new InvalidType();
+		return INVALID;
 	}
 
 	/**
@@ -209,6 +235,36 @@ public abstract class CType
 			throw new InternalCompilerException("Unimplemented type conversion.");
 	}
 
+	/**
+	 * Generates code that loads an object of this type from memory. Default implementation loads
+	 * a single word.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param address register holding the address of the object
+	 * @return Rvalue object describing the loaded value
+	 */
+	public Rvalue compileLoad(IntermediateCompiler ic, VirtualRegister address)
+	{
+		VirtualRegister retReg = new VirtualRegister();
+		ic.emit("load", retReg, "0", address);
+		return new Rvalue(retReg);
+	}
+
+	/**
+	 * Generates code that stores a value of this type to memory. Default implementation stores a
+	 * single word.
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param value stored value
+	 * @param address register holding the base address
+	 * @param offset offset of the object from the base address
+	 */
+	public void compileStore(IntermediateCompiler ic, Rvalue value, VirtualRegister address,
+			int offset)
+	{
+		ic.emit("store", value.getRegister(), "" + offset, address);
+	}
+
 	/**
 	 * Generates code for binary bitwise operator with two operands of this type.
 	 *
@@ -241,6 +297,27 @@ public abstract class CType
 		throw new InternalCompilerException("Unimplemented binary comparison operator.");
 	}
 
+	/**
+	 * Generates code that compares two operands of this type and jumps to trueLabel if the
+	 * comparison is true and to falseLabel otherwise. Either label can be null, in which case
+	 * execution continues from the next instruction for that outcome. Default implementation
+	 * tests the result of compileBinaryComparisonOperator().
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the compilation takes place; only used for adding labels
+	 * @param lhs LHS value
+	 * @param rhs RHS value
+	 * @param operator operator as a string
+	 * @param trueLabel jump target when the comparison is true or null
+	 * @param falseLabel jump target when the comparison is false or null
+	 */
+	public void compileBinaryComparisonJump(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, String trueLabel, String falseLabel)
+	{
+		Rvalue val = compileBinaryComparisonOperator(ic, scope, lhs, rhs, operator);
+		ic.emitConditionalJump("jnzer", "jzer", val.getRegister(), trueLabel, falseLabel);
+	}
+
 	/**
 	 * Generates code for binary shift operator, where left operand has this type and right
 	 * operand has "int" type.
@@ -258,6 +335,26 @@ public abstract class CType
 		throw new InternalCompilerException("Unimplemented binary shift operator.");
 	}
 
+	/**
+	 * Generates specialized code for binary shift operator whose RHS operand is a compile time
+	 * constant. Default implementation returns null, in which case the operator must be compiled
+	 * with compileBinaryShiftOperator().
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the compilation takes place; only used for adding labels
+	 * @param lhs LHS value
+	 * @param rhs RHS value; register holding the constant
+	 * @param rhsValue value of the RHS operand
+	 * @param operator operator as a string
+	 * @return Rvalue object describing the result value or null if there is no specialized code
+	 * for the operator and value
+	 */
+	public Rvalue compileConstantShiftOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		return null;
+	}
+
 	/**
 	 * Generates code for binary arithmetic operator with two operands of this type.
 	 *
@@ -274,6 +371,26 @@ public abstract class CType
 		throw new InternalCompilerException("Unimplemented binary arithmetic operator.");
 	}
 
+	/**
+	 * Generates specialized code for binary arithmetic operator whose RHS operand is a compile
+	 * time constant. Default implementation returns null, in which case the operator must be
+	 * compiled with compileBinaryArithmeticOperator().
+	 *
+	 * @param ic intermediate compiler used for code generation
+	 * @param scope scope in which the compilation takes place; only used for adding labels
+	 * @param lhs LHS value
+	 * @param rhs RHS value; register holding the constant
+	 * @param rhsValue value of the RHS operand before conversion to this type
+	 * @param operator operator as a string
+	 * @return Rvalue object describing the result value or null if there is no specialized code
+	 * for the operator and value
+	 */
+	public Rvalue compileConstantArithmeticOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue lhs, Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		return null;
+	}
+
 	/**
 	 * Generates code for unary increment/decrement operator for this type.
 	 *
@@ -320,6 +437,90 @@ public abstract class CType
 		throw new InternalCompilerException("Unimplemented unary bitwise negation operator.");
 	}
 
+	/**
+	 * Returns the pointer type that points to the given type.
+	 *
+	 * @param pointedType type of the pointed object
+	 * @return the unique pointer type
+	 */
+	public static PointerType pointer(CType pointedType)
+	{
+		PointerType type = pointedType.pointerType;
+		if (type == null) {
+			synchronized (pointedType) {
+				type = pointedType.pointerType;
+				if (type == null) {
+					type = new PointerType(pointedType);
+					pointedType.pointerType = type;
+				}
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * Returns the array type with the given element type and length.
+	 *
+	 * @param elementType type of the elements in the array
+	 * @param length length of the array, or 0 if not specified
+	 * @return the unique array type
+	 */
+	public static ArrayType array(CType elementType, int length)
+	{
+		List<Object> key = Arrays.<Object>asList(ArrayType.class, elementType, length);
+		CType type = derivedTypes.get(key);
+		if (type == null)
+			type = intern(key, new ArrayType(elementType, length));
+		return (ArrayType) type;
+	}
+
+	/**
+	 * Returns the function type with the given return type and parameter types.
+	 *
+	 * @param returnType return type
+	 * @param parameterTypes types of all the parameters
+	 * @return the unique function type
+	 */
+	public static FunctionType function(CType returnType, List<CType> parameterTypes)
+	{
+		List<Object> key = new ArrayList<Object>(parameterTypes.size() + 2);
+		key.add(FunctionType.class);
+		key.add(returnType);
+		key.addAll(parameterTypes);
+		CType type = derivedTypes.get(key);
+		if (type == null) {
+			type = intern(key, new FunctionType(returnType, Collections.unmodifiableList(
+					new ArrayList<CType>(parameterTypes))));
+		}
+		return (FunctionType) type;
+	}
+
+	/**
+	 * Returns the function type with the given return type and parameter types, taking the
+	 * parameter types from a variadic parameter list.
+	 *
+	 * @param returnType return type
+	 * @param parameterTypes types of all the parameters
+	 * @return the unique function type
+	 */
+	public static FunctionType function(CType returnType, CType... parameterTypes)
+	{
+		return function(returnType, Arrays.asList(parameterTypes));
+	}
+
+	/**
+	 * Adds a new derived type to the table unless another thread added an equal type first.
+	 *
+	 * @param key key of the type
+	 * @param type new type
+	 * @return the type in the table
+	 */
+	private static CType intern(List<Object> key, CType type)
+	{
+		CType existing = derivedTypes.putIfAbsent(key, type);
+		return existing != null ? existing : type;
+	}
+
 	/**
 	 * Standard "void" type.
 	 */
@@ -380,6 +581,11 @@ public abstract class CType
 	 */
 	public static IntegerType ULLONG = new Uint64Type(4, 0);
 
+	/**
+	 * Standard unsigned integer types indexed by rank.
+	 */
+	protected static IntegerType[] unsignedTypes = {UCHAR, USHORT, UINT, ULONG, ULLONG};
+
 	/**
 	 * Result type for subtraction between two pointers (ptrdiff_t).
 	 */
@@ -410,6 +616,11 @@ public abstract class CType
 	 */
 	public static CType BOOLISH = new BoolishType();
 
+	/**
+	 * Result of invalid type operations, e.g. dereferencing a non-pointer type.
+	 */
+	public static CType INVALID = new InvalidType();
+
 	/**
 	 * Canonical names for standard types.
 	 */
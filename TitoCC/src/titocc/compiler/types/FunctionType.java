@@ -1,12 +1,10 @@
 package titocc.compiler.types;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
- * Corresponds to C function types. Is not an object, scalar, arithmetic or integer type. Equals
- * only to FunctionType with the same return type and parameter types.
+ * Corresponds to C function types. Is not an object, scalar, arithmetic or integer type. Instances
+ * are obtained from CType.function(), so a function type equals only to itself.
  */
 public class FunctionType extends CType
 {
@@ -26,24 +24,12 @@ public class FunctionType extends CType
 	 * @param returnType return type
 	 * @param parameterTypes types of all the parameters
 	 */
-	public FunctionType(CType returnType, List<CType> parameterTypes)
+	FunctionType(CType returnType, List<CType> parameterTypes)
 	{
 		this.returnType = returnType;
 		this.parameterTypes = parameterTypes;
 	}
 
-	/**
-	 * Constructs a new FunctionType, taking parameter types from variadic parameter list .
-	 *
-	 * @param returnType return type
-	 * @param parameterTypes types of all the parameters
-	 */
-	public FunctionType(CType returnType, CType... parameterTypes)
-	{
-		this.returnType = returnType;
-		this.parameterTypes = new ArrayList<CType>(Arrays.asList(parameterTypes));
-	}
-
 	/**
 	 * Returns the function return type.
 	 *
@@ -73,18 +59,7 @@ public class FunctionType extends CType
 	@Override
 	public CType decay()
 	{
-		return new PointerType(this);
-	}
-
-	@Override
-	public boolean equals(Object obj)
-	{
-		if (!(obj instanceof FunctionType))
-			return false;
-
-		FunctionType func = (FunctionType) obj;
-
-		return parameterTypes.equals(func.parameterTypes) && returnType.equals(func.returnType);
+		return pointer(this);
 	}
 
 	@Override
@@ -39,6 +39,21 @@ class Int32Type extends IntegerType
 		}
 	};
 
+	/**
+	 * Comparison operators that have the opposite result.
+	 */
+	private static final Map<String, String> negatedComparisons = new HashMap<String, String>()
+	{
+		{
+			put("==", "!=");
+			put("!=", "==");
+			put("<", ">=");
+			put("<=", ">");
+			put(">", "<=");
+			put(">=", "<");
+		}
+	};
+
 	/**
 	 * Constructs an Int32Type.
 	 *
@@ -59,7 +74,7 @@ class Int32Type extends IntegerType
 	@Override
 	public IntegerType toUnsigned()
 	{
-		return new Uint32Type(getRank(), tag);
+		return unsignedTypes[getRank()];
 	}
 
 	@Override
@@ -69,6 +84,12 @@ class Int32Type extends IntegerType
 		if (targetType.equals(CType.BOOLISH) || targetType instanceof Int32Type
 				|| targetType instanceof Uint32Type || targetType instanceof PointerType) {
 			return value; // No-op.
+		} else if (targetType instanceof Int64Type || targetType instanceof Uint64Type) {
+			// Sign extension.
+			VirtualRegister high = new VirtualRegister();
+			ic.emit("load", high, value.getRegister());
+			ic.emit("shra", high, "=31");
+			return new Rvalue(value.getRegister(), high);
 		} else
 			return super.compileConversion(ic, scope, value, targetType);
 	}
@@ -94,6 +115,16 @@ class Int32Type extends IntegerType
 		return lhs;
 	}
 
+	@Override
+	public void compileBinaryComparisonJump(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, String trueLabel, String falseLabel)
+	{
+		ic.emit("comp", lhs.getRegister(), rhs.getRegister());
+		ic.emitConditionalJump(instructions.get(operator),
+				instructions.get(negatedComparisons.get(operator)), VirtualRegister.NONE,
+				trueLabel, falseLabel);
+	}
+
 	@Override
 	public Rvalue compileBinaryShiftOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
 			Rvalue rhs, String operator)
@@ -137,11 +168,13 @@ class Int32Type extends IntegerType
 		if (plus)
 			return operand;
 
-		// Negative in two's complement: negate all bits and add 1.
-		ic.emit("xor", operand.getRegister(), "=-1");
-		ic.emit("add", operand.getRegister(), "=1");
+		// Negation is computed as 0 - x, so that the operand can be used directly as the RHS
+		// operand of the subtraction if it is a variable.
+		VirtualRegister retReg = new VirtualRegister();
+		ic.emit("load", retReg, "=0");
+		ic.emit("sub", retReg, operand.getRegister());
 
-		return operand;
+		return new Rvalue(retReg);
 	}
 
 	@Override
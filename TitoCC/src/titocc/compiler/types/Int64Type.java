@@ -1,8 +1,21 @@
 package titocc.compiler.types;
 
+import java.math.BigInteger;
+import titocc.compiler.IntermediateCompiler;
+import titocc.compiler.InternalCompilerException;
+import titocc.compiler.Lvalue;
+import titocc.compiler.Rvalue;
+import titocc.compiler.Scope;
+import titocc.compiler.Symbol;
+import titocc.compiler.VirtualRegister;
+
 /**
  * 64-bit signed integer type. Implemented on TTK-91 using two 32-bit machine bytes. The only type
  * using this representation is long long int.
+ *
+ * <p> Values are held in a pair of registers and stored in memory low word first. TTK-91 has no
+ * carry flag, so addition and subtraction detect the carry between the words by comparing the low
+ * words as unsigned values. Division and remainder call intrinsic functions.
  */
 class Int64Type extends IntegerType
 {
@@ -26,6 +39,500 @@ class Int64Type extends IntegerType
 	@Override
 	public IntegerType toUnsigned()
 	{
-		return new Uint64Type(getRank(), tag);
+		return unsignedTypes[getRank()];
+	}
+
+	@Override
+	public Rvalue compileConversion(IntermediateCompiler ic, Scope scope, Rvalue value,
+			CType targetType)
+	{
+		if (targetType instanceof Int64Type || targetType instanceof Uint64Type) {
+			return value; // No-op.
+		} else if (targetType instanceof Int32Type || targetType instanceof Uint32Type
+				|| targetType instanceof PointerType) {
+			return new Rvalue(value.getRegister()); // Only the low word is kept.
+		} else if (targetType.equals(CType.BOOLISH)) {
+			ic.emit("or", value.getRegister(), value.getHighRegister());
+			return new Rvalue(value.getRegister());
+		} else
+			return super.compileConversion(ic, scope, value, targetType);
+	}
+
+	@Override
+	public Rvalue compileLoad(IntermediateCompiler ic, VirtualRegister address)
+	{
+		VirtualRegister low = new VirtualRegister();
+		VirtualRegister high = new VirtualRegister();
+		ic.emit("load", low, "0", address);
+		ic.emit("load", high, "1", address);
+		return new Rvalue(low, high);
+	}
+
+	@Override
+	public void compileStore(IntermediateCompiler ic, Rvalue value, VirtualRegister address,
+			int offset)
+	{
+		ic.emit("store", value.getRegister(), "" + offset, address);
+		ic.emit("store", value.getHighRegister(), "" + (offset + 1), address);
+	}
+
+	@Override
+	public Rvalue compileBinaryBitwiseOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		String mnemonic = Int32Type.instructions.get(operator);
+		ic.emit(mnemonic, lhs.getRegister(), rhs.getRegister());
+		ic.emit(mnemonic, lhs.getHighRegister(), rhs.getHighRegister());
+		return lhs;
+	}
+
+	@Override
+	public Rvalue compileBinaryComparisonOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		return compileComparison(ic, scope, lhs, rhs, operator, true);
+	}
+
+	@Override
+	public void compileBinaryComparisonJump(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, String trueLabel, String falseLabel)
+	{
+		compileComparisonJump(ic, scope, lhs, rhs, operator, trueLabel, falseLabel, true);
+	}
+
+	@Override
+	public Rvalue compileBinaryShiftOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		return compileShift(ic, scope, lhs, rhs, operator, true);
+	}
+
+	@Override
+	public Rvalue compileConstantShiftOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		return compileConstantShift(ic, lhs, rhsValue, operator, true);
+	}
+
+	@Override
+	public Rvalue compileBinaryArithmeticOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		return compileArithmetic(ic, scope, lhs, rhs, operator, true);
+	}
+
+	@Override
+	public Rvalue compileConstantArithmeticOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue lhs, Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		if (operator.equals("*"))
+			return compileConstantMultiplication(ic, scope, lhs, rhsValue);
+		return null;
+	}
+
+	@Override
+	public Rvalue compileIncDecOperator(IntermediateCompiler ic, Scope scope, Lvalue operand,
+			boolean inc, boolean postfix, int incSize)
+	{
+		Rvalue value = compileLoad(ic, operand.getRegister());
+		VirtualRegister low = value.getRegister();
+		VirtualRegister high = value.getHighRegister();
+
+		// Postfix operator must return the old value.
+		Rvalue oldValue = null;
+		if (postfix) {
+			oldValue = new Rvalue(new VirtualRegister(), new VirtualRegister());
+			ic.emit("load", oldValue.getRegister(), low);
+			ic.emit("load", oldValue.getHighRegister(), high);
+		}
+
+		// Increment carries if the new low word is smaller than the increment, and decrement
+		// borrows if the old low word is smaller than the decrement.
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		if (inc)
+			ic.emit("add", low, "=" + incSize);
+		ic.emit("jneg", low, doneLabel);
+		ic.emit("comp", low, "=" + incSize);
+		ic.emit("jnles", VirtualRegister.NONE, doneLabel);
+		ic.emit(inc ? "add" : "sub", high, "=1");
+		ic.addLabel(doneLabel);
+		if (!inc)
+			ic.emit("sub", low, "=" + incSize);
+
+		compileStore(ic, value, operand.getRegister(), 0);
+		return postfix ? oldValue : value;
+	}
+
+	@Override
+	public Rvalue compileUnaryPlusMinusOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue operand, boolean plus)
+	{
+		// Unary plus is no-op;
+		if (plus)
+			return operand;
+
+		// Negation inverts the bits and adds one. The carry to the high word happens only when
+		// the low word becomes zero.
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		compileUnaryBitwiseNegationOperator(ic, scope, operand);
+		ic.emit("add", operand.getRegister(), "=1");
+		ic.emit("jnzer", operand.getRegister(), doneLabel);
+		ic.emit("add", operand.getHighRegister(), "=1");
+		ic.addLabel(doneLabel);
+		return operand;
+	}
+
+	@Override
+	public Rvalue compileUnaryBitwiseNegationOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue operand)
+	{
+		ic.emit("xor", operand.getRegister(), "=-1");
+		ic.emit("xor", operand.getHighRegister(), "=-1");
+		return operand;
+	}
+
+	/**
+	 * Compiles a comparison operator for 64-bit operands. The result is 1 or 0 in a single
+	 * register.
+	 */
+	static Rvalue compileComparison(IntermediateCompiler ic, Scope scope, Rvalue lhs, Rvalue rhs,
+			String operator, boolean signed)
+	{
+		VirtualRegister retReg = new VirtualRegister();
+		String falseLabel = scope.makeGloballyUniqueName("lbl");
+		ic.emit("load", retReg, "=0");
+		compileComparisonJump(ic, scope, lhs, rhs, operator, null, falseLabel, signed);
+		ic.emit("load", retReg, "=1");
+		ic.addLabel(falseLabel);
+		return new Rvalue(retReg);
+	}
+
+	/**
+	 * Compiles a comparison of 64-bit operands followed by conditional jumps. High words decide
+	 * the result unless they are equal, in which case the low words are compared as unsigned
+	 * values.
+	 */
+	static void compileComparisonJump(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, String trueLabel, String falseLabel, boolean signed)
+	{
+		// Outcomes that continue from the next instruction jump past the comparison.
+		String endLabel = null;
+		if (trueLabel == null || falseLabel == null)
+			endLabel = scope.makeGloballyUniqueName("lbl");
+		String highTrueLabel = trueLabel != null ? trueLabel : endLabel;
+		String highFalseLabel = falseLabel != null ? falseLabel : endLabel;
+
+		Rvalue lhsHigh = new Rvalue(lhs.getHighRegister());
+		Rvalue rhsHigh = new Rvalue(rhs.getHighRegister());
+		if (operator.equals("==")) {
+			ic.emit("comp", lhsHigh.getRegister(), rhsHigh.getRegister());
+			ic.emit("jnequ", VirtualRegister.NONE, highFalseLabel);
+		} else if (operator.equals("!=")) {
+			ic.emit("comp", lhsHigh.getRegister(), rhsHigh.getRegister());
+			ic.emit("jnequ", VirtualRegister.NONE, highTrueLabel);
+		} else {
+			// Strict comparison of the high words decides the result if they are not equal.
+			IntegerType highType = signed ? CType.INT : CType.UINT;
+			highType.compileBinaryComparisonJump(ic, scope, lhsHigh, rhsHigh,
+					operator.substring(0, 1), highTrueLabel, null);
+			ic.emit("jnequ", VirtualRegister.NONE, highFalseLabel);
+		}
+
+		CType.UINT.compileBinaryComparisonJump(ic, scope, new Rvalue(lhs.getRegister()),
+				new Rvalue(rhs.getRegister()), operator, trueLabel, falseLabel);
+		if (endLabel != null)
+			ic.addLabel(endLabel);
+	}
+
+	/**
+	 * Compiles a shift by a variable amount. Amounts of 32 or more move one word to the other.
+	 * Smaller amounts move the bits shifted out of one word to the other word by shifting them
+	 * 32 - count bits in the opposite direction. This is done in two steps, first by one and
+	 * then by 31 - count, because shifts by 32 are not supported.
+	 */
+	static Rvalue compileShift(IntermediateCompiler ic, Scope scope, Rvalue lhs, Rvalue rhs,
+			String operator, boolean signed)
+	{
+		VirtualRegister low = lhs.getRegister();
+		VirtualRegister high = lhs.getHighRegister();
+		VirtualRegister count = rhs.getRegister();
+		VirtualRegister tmp = new VirtualRegister();
+		String bigLabel = scope.makeGloballyUniqueName("lbl");
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		String rightShift = signed ? "shra" : "shr";
+
+		ic.emit("comp", count, "=32");
+		ic.emit("jnles", VirtualRegister.NONE, bigLabel);
+		if (operator.equals("<<")) {
+			ic.emit("shl", high, count);
+			ic.emit("load", tmp, low);
+			ic.emit("shl", low, count);
+			ic.emit("shr", tmp, "=1");
+			ic.emit("xor", count, "=31");
+			ic.emit("shr", tmp, count);
+			ic.emit("or", high, tmp);
+		} else {
+			ic.emit("shr", low, count);
+			ic.emit("load", tmp, high);
+			ic.emit(rightShift, high, count);
+			ic.emit("shl", tmp, "=1");
+			ic.emit("xor", count, "=31");
+			ic.emit("shl", tmp, count);
+			ic.emit("or", low, tmp);
+		}
+		ic.emit("jump", VirtualRegister.NONE, doneLabel);
+
+		ic.addLabel(bigLabel);
+		ic.emit("sub", count, "=32");
+		if (operator.equals("<<")) {
+			ic.emit("load", high, low);
+			ic.emit("shl", high, count);
+			ic.emit("load", low, "=0");
+		} else {
+			ic.emit("load", low, high);
+			ic.emit(rightShift, low, count);
+			compileHighWordFill(ic, high, signed);
+		}
+		ic.addLabel(doneLabel);
+
+		return lhs;
+	}
+
+	/**
+	 * Compiles a shift by a constant amount. Returns null if the amount is out of range.
+	 */
+	static Rvalue compileConstantShift(IntermediateCompiler ic, Rvalue lhs, BigInteger rhsValue,
+			String operator, boolean signed)
+	{
+		if (rhsValue.signum() < 0 || rhsValue.compareTo(BigInteger.valueOf(64)) >= 0)
+			return null;
+
+		int count = rhsValue.intValue();
+		VirtualRegister low = lhs.getRegister();
+		VirtualRegister high = lhs.getHighRegister();
+		String rightShift = signed ? "shra" : "shr";
+		if (count == 0)
+			return lhs;
+
+		if (count < 32) {
+			VirtualRegister tmp = new VirtualRegister();
+			if (operator.equals("<<")) {
+				ic.emit("load", tmp, low);
+				ic.emit("shr", tmp, "=" + (32 - count));
+				ic.emit("shl", high, "=" + count);
+				ic.emit("or", high, tmp);
+				ic.emit("shl", low, "=" + count);
+			} else {
+				ic.emit("load", tmp, high);
+				ic.emit("shl", tmp, "=" + (32 - count));
+				ic.emit("shr", low, "=" + count);
+				ic.emit("or", low, tmp);
+				ic.emit(rightShift, high, "=" + count);
+			}
+		} else if (operator.equals("<<")) {
+			ic.emit("load", high, low);
+			if (count > 32)
+				ic.emit("shl", high, "=" + (count - 32));
+			ic.emit("load", low, "=0");
+		} else {
+			ic.emit("load", low, high);
+			if (count > 32)
+				ic.emit(rightShift, low, "=" + (count - 32));
+			compileHighWordFill(ic, high, signed);
+		}
+
+		return lhs;
+	}
+
+	/**
+	 * Sets the high word to the bits shifted in by a right shift of 32 or more bits.
+	 */
+	private static void compileHighWordFill(IntermediateCompiler ic, VirtualRegister high,
+			boolean signed)
+	{
+		if (signed)
+			ic.emit("shra", high, "=31");
+		else
+			ic.emit("load", high, "=0");
+	}
+
+	/**
+	 * Compiles the binary arithmetic operators for 64-bit operands.
+	 */
+	static Rvalue compileArithmetic(IntermediateCompiler ic, Scope scope, Rvalue lhs, Rvalue rhs,
+			String operator, boolean signed)
+	{
+		VirtualRegister low = lhs.getRegister();
+		VirtualRegister high = lhs.getHighRegister();
+		if (operator.equals("+")) {
+			// Sum of the low words carries if it is smaller than an operand.
+			ic.emit("add", low, rhs.getRegister());
+			ic.emit("add", high, rhs.getHighRegister());
+			compileCarry(ic, scope, low, rhs.getRegister(), high, "add");
+		} else if (operator.equals("-")) {
+			// Subtraction borrows if the low word of the RHS is larger.
+			ic.emit("sub", high, rhs.getHighRegister());
+			compileCarry(ic, scope, low, rhs.getRegister(), high, "sub");
+			ic.emit("sub", low, rhs.getRegister());
+		} else if (operator.equals("*"))
+			compileMultiplication(ic, scope, lhs, rhs);
+		else
+			return compileDivision(ic, scope, lhs, rhs, operator, signed);
+		return lhs;
+	}
+
+	/**
+	 * Adds or subtracts one to/from the high word if x is smaller than y as unsigned values. The
+	 * comparison only uses signed operations: if the highest bits of x and y differ, the one
+	 * whose highest bit is set is larger; otherwise signed comparison gives the same result.
+	 */
+	private static void compileCarry(IntermediateCompiler ic, Scope scope, VirtualRegister x,
+			VirtualRegister y, VirtualRegister high, String mnemonic)
+	{
+		String carryLabel = scope.makeGloballyUniqueName("lbl");
+		String negativeLabel = scope.makeGloballyUniqueName("lbl");
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		ic.emit("comp", x, y);
+		ic.emit("jneg", x, negativeLabel);
+		ic.emit("jneg", y, carryLabel);
+		ic.emit("jnles", VirtualRegister.NONE, doneLabel);
+		ic.addLabel(carryLabel);
+		ic.emit(mnemonic, high, "=1");
+		ic.emit("jump", VirtualRegister.NONE, doneLabel);
+		ic.addLabel(negativeLabel);
+		ic.emit("jnneg", y, doneLabel);
+		ic.emit("jles", VirtualRegister.NONE, carryLabel);
+		ic.addLabel(doneLabel);
+	}
+
+	/**
+	 * The product is the product of the low words plus the cross products of low and high words
+	 * shifted by 32 bits. The mul instruction only gives the low word of a product, so the high
+	 * word of the product of the low words is computed from their 16-bit halves (Hacker's
+	 * Delight, 8-2).
+	 */
+	private static void compileMultiplication(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs)
+	{
+		VirtualRegister low = lhs.getRegister();
+		VirtualRegister high = lhs.getHighRegister();
+		VirtualRegister rhsLow = rhs.getRegister();
+		VirtualRegister rhsHigh = rhs.getHighRegister();
+		String mask = scope.getConstantPool().getOperand(0xFFFF);
+
+		// Cross products.
+		ic.emit("mul", high, rhsLow);
+		ic.emit("mul", rhsHigh, low);
+		ic.emit("add", high, rhsHigh);
+
+		// Split the low words to halves u1:u0 and v1:v0.
+		VirtualRegister u1 = new VirtualRegister();
+		VirtualRegister u0 = new VirtualRegister();
+		VirtualRegister v1 = new VirtualRegister();
+		VirtualRegister v0 = new VirtualRegister();
+		ic.emit("load", u1, low);
+		ic.emit("shr", u1, "=16");
+		ic.emit("load", u0, low);
+		ic.emit("and", u0, mask);
+		ic.emit("load", v1, rhsLow);
+		ic.emit("shr", v1, "=16");
+		ic.emit("load", v0, rhsLow);
+		ic.emit("and", v0, mask);
+
+		// t = u1 * v0 + (u0 * v0 >>> 16)
+		VirtualRegister w0 = new VirtualRegister();
+		ic.emit("load", w0, u0);
+		ic.emit("mul", w0, v0);
+		ic.emit("shr", w0, "=16");
+		ic.emit("mul", v0, u1);
+		ic.emit("add", v0, w0);
+
+		// w1 = u0 * v1 + (t & 0xFFFF)
+		VirtualRegister w1 = new VirtualRegister();
+		ic.emit("load", w1, v0);
+		ic.emit("and", w1, mask);
+		ic.emit("mul", u0, v1);
+		ic.emit("add", w1, u0);
+
+		// High word is u1 * v1 + (t >>> 16) + (w1 >>> 16).
+		ic.emit("shr", v0, "=16");
+		ic.emit("shr", w1, "=16");
+		ic.emit("mul", u1, v1);
+		ic.emit("add", u1, v0);
+		ic.emit("add", u1, w1);
+		ic.emit("add", high, u1);
+
+		ic.emit("mul", low, rhsLow);
+	}
+
+	/**
+	 * Multiplication by a constant whose low word c fits in an immediate operand. Powers of two
+	 * are shifts. Otherwise the high word of the product of the low words is computed from the
+	 * halves u1:u0 of the low word as ((u1 * c) + (u0 * c >>> 16)) >>> 16, which cannot overflow
+	 * since c < 2^15.
+	 */
+	static Rvalue compileConstantMultiplication(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			BigInteger rhsValue)
+	{
+		BigInteger value = rhsValue.and(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE));
+		if (value.bitCount() == 1) {
+			return compileConstantShift(ic, lhs, BigInteger.valueOf(value.getLowestSetBit()),
+					"<<", true);
+		}
+		int factor = value.intValue();
+		int highFactor = value.shiftRight(32).intValue();
+		if (factor < 0 || factor > Short.MAX_VALUE)
+			return null;
+
+		VirtualRegister low = lhs.getRegister();
+		VirtualRegister high = lhs.getHighRegister();
+		VirtualRegister u1 = new VirtualRegister();
+		VirtualRegister u0 = new VirtualRegister();
+		ic.emit("mul", high, "=" + factor);
+		ic.emit("load", u1, low);
+		ic.emit("shr", u1, "=16");
+		ic.emit("mul", u1, "=" + factor);
+		ic.emit("load", u0, low);
+		ic.emit("and", u0, scope.getConstantPool().getOperand(0xFFFF));
+		ic.emit("mul", u0, "=" + factor);
+		ic.emit("shr", u0, "=16");
+		ic.emit("add", u1, u0);
+		ic.emit("shr", u1, "=16");
+		ic.emit("add", high, u1);
+
+		// Cross product of the low word and the high word of the constant.
+		if (highFactor != 0) {
+			VirtualRegister cross = new VirtualRegister();
+			ic.emit("load", cross, low);
+			ic.emit("mul", cross, scope.getConstantPool().getOperand(highFactor));
+			ic.emit("add", high, cross);
+		}
+
+		ic.emit("mul", low, "=" + factor);
+		return lhs;
+	}
+
+	/**
+	 * Division and remainder call the __divmod64 or __udivmod64 intrinsic. The third argument
+	 * selects the remainder instead of the quotient.
+	 */
+	private static Rvalue compileDivision(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, boolean signed)
+	{
+		String intrinsic = signed ? "__divmod64" : "__udivmod64";
+		Symbol sym = scope.find(intrinsic);
+		if (sym == null)
+			throw new InternalCompilerException("Intrinsic " + intrinsic + " not found.");
+		ic.emit("add", VirtualRegister.SP, "=2");
+		ic.emit("push", VirtualRegister.SP, lhs.getRegister());
+		ic.emit("push", VirtualRegister.SP, lhs.getHighRegister());
+		ic.emit("push", VirtualRegister.SP, rhs.getRegister());
+		ic.emit("push", VirtualRegister.SP, rhs.getHighRegister());
+		ic.emit("push", VirtualRegister.SP, operator.equals("%") ? "=1" : "=0");
+		ic.emit("call", VirtualRegister.SP, sym.getReference());
+		Rvalue result = new Rvalue(new VirtualRegister(), new VirtualRegister());
+		ic.emit("pop", VirtualRegister.SP, result.getHighRegister());
+		ic.emit("pop", VirtualRegister.SP, result.getRegister());
+		return result;
 	}
 }
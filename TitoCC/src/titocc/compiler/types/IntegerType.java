@@ -4,7 +4,7 @@ import java.math.BigInteger;
 
 /**
  * Abstract base class for all integer types. Classified as object, scalar, arithmetic and integer
- * type. Equals only to integer types of the same class.
+ * type. Each integer type has a single instance in CType, so it equals only to itself.
  */
 public abstract class IntegerType extends CType
 {
@@ -57,17 +57,6 @@ public abstract class IntegerType extends CType
 		return true;
 	}
 
-	@Override
-	public boolean equals(Object obj)
-	{
-		if (!(obj instanceof IntegerType))
-			return false;
-
-		// Integer types are equal if they have same rank, signedness and tag.
-		IntegerType type2 = (IntegerType) obj;
-		return getRank() == type2.getRank() && isSigned() == type2.isSigned() && tag == type2.tag;
-	}
-
 	@Override
 	public int getIncrementSize()
 	{
@@ -104,12 +93,6 @@ public abstract class IntegerType extends CType
 		return names.get(this);
 	}
 
-	@Override
-	public int hashCode()
-	{
-		return 10 * rank + (signed ? 5 : 1) + tag;
-	}
-
 	/**
 	 * Get the corresponding unsigned integer type. If the type is already unsigned then returns the
 	 * type itself
@@ -4,10 +4,11 @@ import titocc.compiler.IntermediateCompiler;
 import titocc.compiler.Lvalue;
 import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
+import titocc.compiler.VirtualRegister;
 
 /**
- * Corresponds to C pointer type. Is an object and a scalar, but not arithmetic. Equals only to
- * PointerType that has same pointed type.
+ * Corresponds to C pointer type. Is an object and a scalar, but not arithmetic. Instances are
+ * obtained from CType.pointer(), so a pointer type equals only to itself.
  */
 public class PointerType extends CType
 {
@@ -21,7 +22,7 @@ public class PointerType extends CType
 	 *
 	 * @param pointedType type of the pointed object.
 	 */
-	public PointerType(CType pointedType)
+	PointerType(CType pointedType)
 	{
 		this.pointedType = pointedType;
 	}
@@ -44,15 +45,6 @@ public class PointerType extends CType
 		return pointedType;
 	}
 
-	@Override
-	public boolean equals(Object obj)
-	{
-		if (!(obj instanceof PointerType))
-			return false;
-
-		return pointedType.equals(((PointerType) obj).pointedType);
-	}
-
 	@Override
 	public int getSize()
 	{
@@ -66,6 +58,10 @@ public class PointerType extends CType
 		if (targetType.equals(CType.BOOLISH) || targetType instanceof Int32Type
 				|| targetType instanceof Uint32Type || targetType instanceof PointerType) {
 			return value; // No-op.
+		} else if (targetType instanceof Int64Type || targetType instanceof Uint64Type) {
+			VirtualRegister high = new VirtualRegister();
+			ic.emit("load", high, "=0");
+			return new Rvalue(value.getRegister(), high);
 		} else
 			return super.compileConversion(ic, scope, value, targetType);
 	}
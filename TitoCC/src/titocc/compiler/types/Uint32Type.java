@@ -1,5 +1,6 @@
 package titocc.compiler.types;
 
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 import titocc.compiler.IntermediateCompiler;
@@ -65,6 +66,10 @@ class Uint32Type extends IntegerType
 		if (targetType.equals(CType.BOOLISH) || targetType instanceof Int32Type
 				|| targetType instanceof Uint32Type || targetType instanceof PointerType) {
 			return value; // No-op.
+		} else if (targetType instanceof Int64Type || targetType instanceof Uint64Type) {
+			VirtualRegister high = new VirtualRegister();
+			ic.emit("load", high, "=0");
+			return new Rvalue(value.getRegister(), high);
 		} else
 			return super.compileConversion(ic, scope, value, targetType);
 	}
@@ -73,12 +78,28 @@ class Uint32Type extends IntegerType
 	public Rvalue compileBinaryBitwiseOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
 			Rvalue rhs, String operator)
 	{
-		return new Int32Type(0, 0).compileBinaryBitwiseOperator(ic, scope, lhs, rhs, operator);
+		return CType.INT.compileBinaryBitwiseOperator(ic, scope, lhs, rhs, operator);
 	}
 
 	@Override
 	public Rvalue compileBinaryComparisonOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
 			Rvalue rhs, String operator)
+	{
+		compileSignedOffset(ic, scope, lhs, rhs, operator);
+		return CType.INT.compileBinaryComparisonOperator(ic, scope, lhs, rhs, operator);
+	}
+
+	@Override
+	public void compileBinaryComparisonJump(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, String trueLabel, String falseLabel)
+	{
+		compileSignedOffset(ic, scope, lhs, rhs, operator);
+		CType.INT.compileBinaryComparisonJump(ic, scope, lhs, rhs, operator,
+				trueLabel, falseLabel);
+	}
+
+	private void compileSignedOffset(IntermediateCompiler ic, Scope scope, Rvalue lhs, Rvalue rhs,
+			String operator)
 	{
 		// For relational operators apply an offset of 0x80000000 to both operands and then do
 		// the comparison normally. For equality operators the signed operation can be used as is.
@@ -89,7 +110,6 @@ class Uint32Type extends IntegerType
 			ic.emit("xor", lhs.getRegister(), msym.getReference());
 			ic.emit("xor", rhs.getRegister(), msym.getReference());
 		}
-		return new Int32Type(0, 0).compileBinaryComparisonOperator(ic, scope, lhs, rhs, operator);
 	}
 
 	@Override
@@ -105,72 +125,164 @@ class Uint32Type extends IntegerType
 	public Rvalue compileBinaryArithmeticOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
 			Rvalue rhs, String operator)
 	{
-		if (operator.equals("/"))
-			return compileDivisionOperator(ic, scope, lhs, rhs);
-		else if (operator.equals("%"))
-			return compileRemainderOperator(ic, scope, lhs, rhs);
+		if (operator.equals("/") || operator.equals("%"))
+			return compileDivisionOperator(ic, scope, lhs, rhs, operator);
 		else {
-			return new Int32Type(0, 0).compileBinaryArithmeticOperator(ic, scope, lhs, rhs,
+			return CType.INT.compileBinaryArithmeticOperator(ic, scope, lhs, rhs,
 					operator);
 		}
 	}
 
+	@Override
+	public Rvalue compileConstantArithmeticOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue lhs, Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		long divisor = rhsValue.longValue() & 0xFFFFFFFFL;
+		if ((!operator.equals("/") && !operator.equals("%")) || divisor == 0)
+			return null;
+		else if (Long.bitCount(divisor) == 1)
+			return compilePowerOfTwoDivision(ic, lhs, divisor, operator);
+		else if (divisor > Integer.MAX_VALUE)
+			return compileLargeConstantDivision(ic, scope, lhs, rhs, operator);
+		else
+			return compileConstantDivision(ic, scope, lhs, rhs, operator);
+	}
 	@Override
 	public Rvalue compileIncDecOperator(IntermediateCompiler ic, Scope scope, Lvalue operand,
 			boolean inc, boolean postfix, int incSize)
 	{
-		return new Int32Type(0, 0).compileIncDecOperator(ic, scope, operand, inc, postfix, incSize);
+		return CType.INT.compileIncDecOperator(ic, scope, operand, inc, postfix, incSize);
 	}
 
 	@Override
 	public Rvalue compileUnaryPlusMinusOperator(IntermediateCompiler ic, Scope scope,
 			Rvalue operand, boolean plus)
 	{
-		return new Int32Type(0, 0).compileUnaryPlusMinusOperator(ic, scope, operand, plus);
+		return CType.INT.compileUnaryPlusMinusOperator(ic, scope, operand, plus);
 	}
 
 	@Override
 	public Rvalue compileUnaryBitwiseNegationOperator(IntermediateCompiler ic, Scope scope,
 			Rvalue operand)
 	{
-		return new Int32Type(0, 0).compileUnaryBitwiseNegationOperator(ic, scope, operand);
+		return CType.INT.compileUnaryBitwiseNegationOperator(ic, scope, operand);
 	}
 
 	/**
-	 * Implementation of 32-bit unsigned division using the __udiv intrinsic.
+	 * Implementation of 32-bit unsigned division and remainder. Operands whose highest bit is
+	 * clear are divided with signed division; otherwise the __udiv or __umod intrinsic is called.
 	 */
 	private Rvalue compileDivisionOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
-			Rvalue rhs)
+			Rvalue rhs, String operator)
 	{
+		String intrinsicLabel = scope.makeGloballyUniqueName("lbl");
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		ic.emit("jneg", lhs.getRegister(), intrinsicLabel);
+		ic.emit("jneg", rhs.getRegister(), intrinsicLabel);
+		ic.emit(instructions.get(operator), lhs.getRegister(), rhs.getRegister());
+		ic.emit("jump", VirtualRegister.NONE, doneLabel);
+
+		ic.addLabel(intrinsicLabel);
+		String intrinsic = operator.equals("/") ? "__udiv" : "__umod";
+		Symbol sym = scope.find(intrinsic);
+		if (sym == null)
+			throw new InternalCompilerException("Intrinsic " + intrinsic + " not found.");
 		ic.emit("add", VirtualRegister.SP, "=" + getSize());
 		ic.emit("push", VirtualRegister.SP, lhs.getRegister());
 		ic.emit("push", VirtualRegister.SP, rhs.getRegister());
-		Symbol udivSym = scope.find("__udiv");
-		if (udivSym == null)
-			throw new InternalCompilerException("Intrinsic __udiv not found.");
-		ic.emit("call", VirtualRegister.SP, udivSym.getReference());
+		ic.emit("call", VirtualRegister.SP, sym.getReference());
 		ic.emit("pop", VirtualRegister.SP, lhs.getRegister());
+		ic.addLabel(doneLabel);
 
 		return lhs;
 	}
 
 	/**
-	 * Implementation of 32-bit unsigned division using the __udiv intrinsic.
+	 * Division and remainder by a power of two are a logical shift and a mask.
 	 */
-	private Rvalue compileRemainderOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
-			Rvalue rhs)
+	private Rvalue compilePowerOfTwoDivision(IntermediateCompiler ic, Rvalue lhs, long divisor,
+			String operator)
 	{
-		ic.emit("add", VirtualRegister.SP, "=" + getSize());
-		ic.emit("push", VirtualRegister.SP, lhs.getRegister());
-		ic.emit("push", VirtualRegister.SP, rhs.getRegister());
-		Symbol udivSym = scope.find("__udiv");
-		if (udivSym == null)
-			throw new InternalCompilerException("Intrinsic __udiv not found.");
-		ic.emit("call", VirtualRegister.SP, udivSym.getReference());
-		VirtualRegister tmpReg = new VirtualRegister();
-		ic.emit("pop", VirtualRegister.SP, tmpReg);
-		ic.emit("mul", rhs.getRegister(), tmpReg);
-		ic.emit("sub", lhs.getRegister(), rhs.getRegister());
+		int shift = Long.numberOfTrailingZeros(divisor);
+		if (operator.equals("/"))
+			ic.emit("shr", lhs.getRegister(), "=" + shift);
+		else if (divisor - 1 <= Short.MAX_VALUE)
+			ic.emit("and", lhs.getRegister(), "=" + (divisor - 1));
+		else {
+			// Mask doesn't fit in immediate operand, so the high bits are shifted out.
+			ic.emit("shl", lhs.getRegister(), "=" + (32 - shift));
+			ic.emit("shr", lhs.getRegister(), "=" + (32 - shift));
+		}
+		return lhs;
+	}
+
+	/**
+	 * Division and remainder by a constant that has the highest bit set. The quotient is 1 if
+	 * the dividend is not smaller than the divisor and 0 otherwise. The dividend must be
+	 * negative for the quotient to be 1, so signed comparison can be used.
+	 */
+	private Rvalue compileLargeConstantDivision(IntermediateCompiler ic, Scope scope,
+			Rvalue lhs, Rvalue rhs, String operator)
+	{
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		VirtualRegister quotient = new VirtualRegister();
+		if (operator.equals("/"))
+			ic.emit("load", quotient, "=0");
+		ic.emit("jnneg", lhs.getRegister(), doneLabel);
+		ic.emit("comp", lhs.getRegister(), rhs.getRegister());
+		ic.emit("jles", VirtualRegister.NONE, doneLabel);
+		if (operator.equals("/"))
+			ic.emit("load", quotient, "=1");
+		else
+			ic.emit("sub", lhs.getRegister(), rhs.getRegister());
+		ic.addLabel(doneLabel);
+
+		return operator.equals("/") ? new Rvalue(quotient) : lhs;
+	}
+
+	/**
+	 * Division and remainder by a constant smaller than 2^31. Dividend with the highest bit set
+	 * is halved and the quotient of the halved dividend is doubled. This quotient is too small
+	 * by at most one, which is corrected by comparing the remainder against the divisor.
+	 */
+	private Rvalue compileConstantDivision(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		VirtualRegister reg = lhs.getRegister();
+		String largeLabel = scope.makeGloballyUniqueName("lbl");
+		String fixLabel = scope.makeGloballyUniqueName("lbl");
+		String doneLabel = scope.makeGloballyUniqueName("lbl");
+		boolean division = operator.equals("/");
+
+		ic.emit("jneg", reg, largeLabel);
+		ic.emit(instructions.get(operator), reg, rhs.getRegister());
+		ic.emit("jump", VirtualRegister.NONE, doneLabel);
+
+		// Compute remainder of the dividend and the doubled quotient.
+		ic.addLabel(largeLabel);
+		VirtualRegister quotient = new VirtualRegister();
+		ic.emit("load", quotient, reg);
+		ic.emit("shr", quotient, "=1");
+		ic.emit("div", quotient, rhs.getRegister());
+		ic.emit("shl", quotient, "=1");
+		VirtualRegister product = new VirtualRegister();
+		ic.emit("load", product, quotient);
+		ic.emit("mul", product, rhs.getRegister());
+		ic.emit("sub", reg, product);
+
+		// Remainder with the highest bit set is always larger than the divisor.
+		String skipLabel = division ? scope.makeGloballyUniqueName("lbl") : doneLabel;
+		ic.emit("jneg", reg, fixLabel);
+		ic.emit("comp", reg, rhs.getRegister());
+		ic.emit("jles", VirtualRegister.NONE, skipLabel);
+		ic.addLabel(fixLabel);
+		if (division) {
+			ic.emit("add", quotient, "=1");
+			ic.addLabel(skipLabel);
+			ic.emit("load", reg, quotient);
+		} else
+			ic.emit("sub", reg, rhs.getRegister());
+		ic.addLabel(doneLabel);
 
 		return lhs;
 	}
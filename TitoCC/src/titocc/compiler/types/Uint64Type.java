@@ -1,5 +1,12 @@
 package titocc.compiler.types;
 
+import java.math.BigInteger;
+import titocc.compiler.IntermediateCompiler;
+import titocc.compiler.Lvalue;
+import titocc.compiler.Rvalue;
+import titocc.compiler.Scope;
+import titocc.compiler.VirtualRegister;
+
 /**
  * 64-bit unsigned integer type. Implemented on TTK-91 using two 32-bit machine bytes. The only type
  * using this representation is unsigned long long int.
@@ -22,4 +29,123 @@ class Uint64Type extends IntegerType
 	{
 		return 2;
 	}
+
+	@Override
+	public Rvalue compileConversion(IntermediateCompiler ic, Scope scope, Rvalue value,
+			CType targetType)
+	{
+		return CType.LLONG.compileConversion(ic, scope, value, targetType);
+	}
+
+	@Override
+	public Rvalue compileLoad(IntermediateCompiler ic, VirtualRegister address)
+	{
+		return CType.LLONG.compileLoad(ic, address);
+	}
+
+	@Override
+	public void compileStore(IntermediateCompiler ic, Rvalue value, VirtualRegister address,
+			int offset)
+	{
+		CType.LLONG.compileStore(ic, value, address, offset);
+	}
+
+	@Override
+	public Rvalue compileBinaryBitwiseOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		return CType.LLONG.compileBinaryBitwiseOperator(ic, scope, lhs, rhs, operator);
+	}
+
+	@Override
+	public Rvalue compileBinaryComparisonOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		return Int64Type.compileComparison(ic, scope, lhs, rhs, operator, false);
+	}
+
+	@Override
+	public void compileBinaryComparisonJump(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator, String trueLabel, String falseLabel)
+	{
+		Int64Type.compileComparisonJump(ic, scope, lhs, rhs, operator, trueLabel, falseLabel,
+				false);
+	}
+
+	@Override
+	public Rvalue compileBinaryShiftOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		// For unsigned ints right shift must be logical (not arithmetic right shift).
+		return Int64Type.compileShift(ic, scope, lhs, rhs, operator, false);
+	}
+
+	@Override
+	public Rvalue compileConstantShiftOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		return Int64Type.compileConstantShift(ic, lhs, rhsValue, operator, false);
+	}
+
+	@Override
+	public Rvalue compileBinaryArithmeticOperator(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			Rvalue rhs, String operator)
+	{
+		return Int64Type.compileArithmetic(ic, scope, lhs, rhs, operator, false);
+	}
+
+	@Override
+	public Rvalue compileConstantArithmeticOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue lhs, Rvalue rhs, BigInteger rhsValue, String operator)
+	{
+		BigInteger value = rhsValue.and(getMaxValue());
+		if (operator.equals("*"))
+			return Int64Type.compileConstantMultiplication(ic, scope, lhs, value);
+		else if (!operator.equals("/") && !operator.equals("%") || value.bitCount() != 1)
+			return null;
+		else
+			return compilePowerOfTwoDivision(ic, scope, lhs, value.getLowestSetBit(), operator);
+	}
+
+	@Override
+	public Rvalue compileIncDecOperator(IntermediateCompiler ic, Scope scope, Lvalue operand,
+			boolean inc, boolean postfix, int incSize)
+	{
+		return CType.LLONG.compileIncDecOperator(ic, scope, operand, inc, postfix,
+				incSize);
+	}
+
+	@Override
+	public Rvalue compileUnaryPlusMinusOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue operand, boolean plus)
+	{
+		return CType.LLONG.compileUnaryPlusMinusOperator(ic, scope, operand, plus);
+	}
+
+	@Override
+	public Rvalue compileUnaryBitwiseNegationOperator(IntermediateCompiler ic, Scope scope,
+			Rvalue operand)
+	{
+		return CType.LLONG.compileUnaryBitwiseNegationOperator(ic, scope, operand);
+	}
+
+	/**
+	 * Division and remainder by 2^shift are a logical shift and a mask.
+	 */
+	private Rvalue compilePowerOfTwoDivision(IntermediateCompiler ic, Scope scope, Rvalue lhs,
+			int shift, String operator)
+	{
+		if (operator.equals("/")) {
+			return Int64Type.compileConstantShift(ic, lhs, BigInteger.valueOf(shift), ">>",
+					false);
+		} else if (shift < 32) {
+			ic.emit("and", lhs.getRegister(),
+					scope.getConstantPool().getOperand((int) ((1L << shift) - 1)));
+			ic.emit("load", lhs.getHighRegister(), "=0");
+		} else {
+			ic.emit("and", lhs.getHighRegister(),
+					scope.getConstantPool().getOperand((int) ((1L << (shift - 32)) - 1)));
+		}
+		return lhs;
+	}
 }
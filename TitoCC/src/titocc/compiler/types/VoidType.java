@@ -5,8 +5,8 @@ import titocc.compiler.Rvalue;
 import titocc.compiler.Scope;
 
 /**
- * Corresponds to C void type. Is not an object, scalar, arithmetic or integer type. Equals only to
- * VoidType.
+ * Corresponds to C void type. Is not an object, scalar, arithmetic or integer type. The only
+ * instance is CType.VOID.
  */
 public class VoidType extends CType
 {
@@ -16,12 +16,6 @@ public class VoidType extends CType
 		return true;
 	}
 
-	@Override
-	public boolean equals(Object obj)
-	{
-		return obj instanceof VoidType;
-	}
-
 	@Override
 	public Rvalue compileConversion(IntermediateCompiler ic, Scope scope, Rvalue value,
 			CType targetType)
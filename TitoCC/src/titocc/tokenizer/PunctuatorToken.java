@@ -58,7 +58,8 @@ public class PunctuatorToken extends Token
 		"[",
 		"]",
 		";",
-		","
+		",",
+		":"
 	};
 
 	private static Set<String> punctuators = new HashSet<String>(Arrays.asList(punctuatorList));
@@ -0,0 +1,95 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class AlgebraicSimplifierTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private List<String> simplify(Instruction... instrs)
+	{
+		List<Instruction> instructions = list(instrs);
+		new AlgebraicSimplifier(instructions).apply();
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			String s = label(instr) + instr.mnemonic;
+			if (instr.getImmediateValue() != null)
+				s += " =" + instr.getImmediateValue();
+			else if (instr.rightReg != null)
+				s += " " + (instr.rightReg == v1 ? "v1" : instr.rightReg == v2 ? "v2" : "tmp");
+			result.add(s);
+		}
+		return result;
+	}
+
+	@Test
+	public void removesIdentities()
+	{
+		assertEquals(Arrays.asList("nop", "nop", "nop", "L:nop", "nop", "nop", "out =crt"),
+				simplify(
+				instr(null, "add", v1, 0, "0", null),
+				instr(null, "sub", v1, 0, "0", null),
+				instr(null, "shl", v1, 0, "0", null),
+				instr("L", "mul", v1, 0, "1", null),
+				instr(null, "div", v1, 0, "1", null),
+				instr(null, "and", v1, 0, "-1", null),
+				instr(null, "out", v1, 0, "crt", null)));
+	}
+
+	@Test
+	public void replacesConstantResultsWithLoads()
+	{
+		assertEquals(Arrays.asList("load =0", "L:load =0", "load =0"), simplify(
+				instr(null, "mul", v1, 0, "0", null),
+				instr("L", "and", v1, 0, "0", null),
+				instr(null, "mod", v1, 0, "-1", null)));
+	}
+
+	@Test
+	public void replacesMultiplicationWithShift()
+	{
+		assertEquals(Arrays.asList("shl =3", "mul =6", "mul =-8"), simplify(
+				instr(null, "mul", v1, 0, "8", null),
+				instr(null, "mul", v1, 0, "6", null),
+				instr(null, "mul", v1, 0, "-8", null)));
+	}
+
+	@Test
+	public void replacesSignedDivisionWithBiasedShift()
+	{
+		assertEquals(Arrays.asList("L:load v1", "shr =31", "add tmp", "shra =1",
+				"load v1", "shra =31", "shr =28", "add tmp", "shra =4", "div =-4", "div =6"),
+				simplify(
+				instr("L", "div", v1, 0, "2", null),
+				instr(null, "div", v1, 0, "16", null),
+				instr(null, "div", v1, 0, "-4", null),
+				instr(null, "div", v1, 0, "6", null)));
+	}
+
+	@Test
+	public void replacesSignedModuloWithBiasedMask()
+	{
+		assertEquals(Arrays.asList("load v1", "shra =31", "shr =29", "add tmp", "and =7",
+				"sub tmp", "load v1", "shr =31", "add tmp", "and =1", "sub tmp", "mod =10"),
+				simplify(
+				instr(null, "mod", v1, 0, "-8", null),
+				instr(null, "mod", v1, 0, "2", null),
+				instr(null, "mod", v1, 0, "10", null)));
+	}
+
+	@Test
+	public void ignoresNonConstantOperands()
+	{
+		assertEquals(Arrays.asList("mul v2", "mul =x", "add =0"), simplify(
+				new Instruction(null, "mul", v1, 0, null, v2),
+				instr(null, "mul", v1, 0, "x", null),
+				new Instruction(null, "add", v1, 1, "0", VirtualRegister.FP)));
+	}
+}
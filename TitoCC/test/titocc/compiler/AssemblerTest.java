@@ -124,4 +124,47 @@ public class AssemblerTest
 		assertEquals("            abc     xy\n\n\nl           abc     xy\n",
 				asm.getWriter().toString());
 	}
+
+	@Test
+	public void sectionsAreWrittenOnFinish() throws IOException
+	{
+		asm.emit("call", Register.SP, "f");
+		asm.beginSection();
+		asm.addLabel("f");
+		asm.emit("exit", Register.SP, "=0");
+		assertEquals("            call    SP, f\n", asm.getWriter().toString());
+		asm.finish();
+		assertEquals("            call    SP, f\nf           exit    SP, =0\n",
+				asm.getWriter().toString());
+	}
+
+	@Test
+	public void unreferencedSectionsAreRemoved() throws IOException
+	{
+		asm.emit("call", Register.SP, "f");
+		asm.beginSection();
+		asm.addLabel("g");
+		asm.emit("load", Register.R1, "@h");
+		asm.beginSection();
+		asm.addLabel("f");
+		asm.emit("load", Register.R1, "x(R2)");
+		asm.beginSection();
+		asm.addLabel("x");
+		asm.emit("dc", "1");
+		asm.beginSection();
+		asm.addLabel("h");
+		asm.emit("dc", "2");
+		asm.finish();
+		assertEquals("            call    SP, f\nf           load    R1, x(R2)\n"
+				+ "x           dc      1\n", asm.getWriter().toString());
+	}
+
+	@Test
+	public void sectionsWithoutLabelsAreKept() throws IOException
+	{
+		asm.beginSection();
+		asm.emit("abc", "xy");
+		asm.finish();
+		assertEquals("            abc     xy\n", asm.getWriter().toString());
+	}
 }
@@ -0,0 +1,129 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class CommonSubexpressionEliminatorTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private final VirtualRegister v3 = new VirtualRegister();
+
+	private final VirtualRegister v4 = new VirtualRegister();
+
+	private List<Instruction> instructions;
+
+	private List<String> eliminate(Instruction... instrs)
+	{
+		instructions = list(instrs);
+		new CommonSubexpressionEliminator(instructions, "End").apply();
+		new DeadCodeEliminator(instructions, "End").apply();
+		List<String> result = new ArrayList<String>();
+		List<Instruction> remaining = new ArrayList<Instruction>();
+		for (Instruction instr : instructions) {
+			if (!instr.mnemonic.equals("nop")) {
+				result.add(instr.mnemonic);
+				remaining.add(instr);
+			}
+		}
+		instructions = remaining;
+		return result;
+	}
+
+	@Test
+	public void reusesAddressComputation()
+	{
+		assertEquals(Arrays.asList("load", "add", "load", "add", "store"), eliminate(
+				instr(null, "load", v1, 0, "a", null),
+				instr(null, "add", v1, 1, "i", VirtualRegister.FP),
+				instr(null, "load", v1, 1, "0", v1),
+				instr(null, "add", v1, 0, "=1", null),
+				instr(null, "load", v2, 0, "a", null),
+				instr(null, "add", v2, 1, "i", VirtualRegister.FP),
+				instr(null, "store", v1, 0, "0", v2)));
+		assertSame(instructions.get(1).leftReg, instructions.get(4).rightReg);
+		assertNotSame(instructions.get(1).leftReg, instructions.get(2).leftReg);
+	}
+
+	@Test
+	public void reusesIndirectLoad()
+	{
+		assertEquals(Arrays.asList("load", "load", "out", "out"), eliminate(
+				instr(null, "load", v1, 0, "p", null),
+				instr(null, "load", v2, 1, "0", v1),
+				instr(null, "out", v2, 0, "crt", null),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null)));
+		assertSame(instructions.get(2).leftReg, instructions.get(3).leftReg);
+	}
+
+	@Test
+	public void storeInvalidatesLoadedValues()
+	{
+		assertEquals(Arrays.asList("load", "load", "store", "load", "out"), eliminate(
+				instr(null, "load", v1, 0, "p", null),
+				instr(null, "load", v2, 1, "0", v1),
+				instr(null, "store", v2, 0, "x", null),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null)));
+		assertEquals(1, instructions.get(3).getRealAddressingMode());
+	}
+
+	@Test
+	public void callInvalidatesLoadedValues()
+	{
+		assertEquals(Arrays.asList("load", "load", "out", "call", "load", "out"), eliminate(
+				instr(null, "load", v1, 0, "p", null),
+				instr(null, "load", v2, 1, "0", v1),
+				instr(null, "out", v2, 0, "crt", null),
+				instr(null, "call", VirtualRegister.SP, 0, "f", null),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null)));
+	}
+
+	@Test
+	public void doesNotReuseValuesFromOtherPaths()
+	{
+		assertEquals(Arrays.asList("load", "jzer", "load", "mul", "out", "L:load", "mul", "out"),
+				labeledMnemonics(eliminate(
+				instr(null, "load", v1, 1, "x", null),
+				instr(null, "jzer", v1, 0, "L", null),
+				instr(null, "load", v2, 1, "x", null),
+				instr(null, "mul", v2, 0, "=3", null),
+				instr(null, "out", v2, 0, "crt", null),
+				new Instruction("L", "load", v3, 1, "x", null),
+				instr(null, "mul", v3, 0, "=3", null),
+				instr(null, "out", v3, 0, "crt", null))));
+	}
+
+	@Test
+	public void continuesNumberingAfterConditionalJump()
+	{
+		assertEquals(Arrays.asList("load", "mul", "jzer", "out", "out"), eliminate(
+				instr(null, "load", v1, 1, "x", null),
+				instr(null, "mul", v1, 0, "=3", null),
+				instr(null, "jzer", v1, 0, "End", null),
+				instr(null, "load", v2, 1, "x", null),
+				instr(null, "mul", v2, 0, "=3", null),
+				instr(null, "out", v2, 0, "crt", null),
+				instr(null, "load", v4, 1, "x", null),
+				instr(null, "mul", v4, 0, "=3", null),
+				instr(null, "out", v4, 0, "crt", null)));
+	}
+
+	private List<String> labeledMnemonics(List<String> mnemonics)
+	{
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < mnemonics.size(); ++i) {
+			Instruction instr = instructions.get(i);
+			result.add((instr.label != null ? instr.label + ":" : "") + mnemonics.get(i));
+		}
+		return result;
+	}
+}
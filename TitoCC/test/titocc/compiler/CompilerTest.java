@@ -19,6 +19,28 @@ public class CompilerTest
 		return writer.toString();
 	}
 
+	/**
+	 * Returns the instructions of a compiled function from its entry label to the exit
+	 * instruction, one instruction per line with labels and extra whitespace removed.
+	 */
+	private String functionCode(String asm, String name)
+	{
+		StringBuilder code = new StringBuilder();
+		boolean inFunction = false;
+		for (String line : asm.split("\n")) {
+			String[] fields = line.trim().split("\\s+", 2);
+			if (fields[0].equals(name))
+				inFunction = true;
+			if (!inFunction)
+				continue;
+			String instr = line.startsWith(" ") ? line.trim() : fields[1];
+			code.append(instr.replaceAll("\\s+", " ")).append("\n");
+			if (instr.startsWith("exit"))
+				break;
+		}
+		return code.toString();
+	}
+
 	private void testErr(String src, String msg, int line, int column) throws IOException
 	{
 		try {
@@ -360,17 +382,6 @@ public class CompilerTest
 				"Number of arguments doesn't match the number of parameters.", 1, 11);
 	}
 
-	@Test
-	public void errorWhenUnsupportedSuffixOnIntegerLiteral() throws IOException
-	{
-		String msg = "Unsupported suffix on integer literal.";
-		testErr("\nvoid f() { 1ll; }", msg, 1, 11);
-		testErr("\nvoid f() { 0x1LL; }", msg, 1, 11);
-		testErr("\nvoid f() { 0xabull; }", msg, 1, 11);
-		testErr("\nvoid f() { 123123123123123123123123123123123Ull; }", msg, 1, 11);
-		testErr("\nvoid f() { 1llu; }", msg, 1, 11);
-	}
-
 	@Test
 	public void errorWhenIllegalSuffixOnIntegerLiteral() throws IOException
 	{
@@ -386,22 +397,23 @@ public class CompilerTest
 	public void errorWhenIntegerLiteralTooLargeForSigned() throws IOException
 	{
 		String msg = "Integer literal is too large to fit signed type.";
-		testErr("\nvoid f() { 2147483648; }", msg, 1, 11);
-		testErr("\nvoid f() { -2147483648; }", msg, 1, 12);
-		testErr("\nvoid f() { 2147483648l; }", msg, 1, 11);
-		testErr("\nvoid f() { 4294967295; }", msg, 1, 11);
-		//testErr("\nvoid f() { 9223372036854775808ll; }", msg, 1, 11);
+		testErr("\nvoid f() { 9223372036854775808; }", msg, 1, 11);
+		testErr("\nvoid f() { -9223372036854775808; }", msg, 1, 12);
+		testErr("\nvoid f() { 9223372036854775808l; }", msg, 1, 11);
+		testErr("\nvoid f() { 18446744073709551615; }", msg, 1, 11);
+		testErr("\nvoid f() { 9223372036854775808ll; }", msg, 1, 11);
 	}
 
 	@Test
 	public void errorWhenIntegerLiteralTooLargeForAnyType() throws IOException
 	{
 		String msg = "Integer literal is too large to fit any supported type.";
-		testErr("\nvoid f() { 4294967296; }", msg, 1, 11);
-		testErr("\nvoid f() { -4294967296; }", msg, 1, 12);
-		testErr("\nvoid f() { 123123123123132123l; }", msg, 1, 11);
-		testErr("\nvoid f() { 0x10000000000ul; }", msg, 1, 11);
-		testErr("\nvoid f() { 040000000000ul; }", msg, 1, 11);
+		testErr("\nvoid f() { 18446744073709551616; }", msg, 1, 11);
+		testErr("\nvoid f() { -18446744073709551616; }", msg, 1, 12);
+		testErr("\nvoid f() { 123123123123132123123l; }", msg, 1, 11);
+		testErr("\nvoid f() { 0x10000000000000000ul; }", msg, 1, 11);
+		testErr("\nvoid f() { 02000000000000000000000ul; }", msg, 1, 11);
+		testErr("\nvoid f() { 123123123123123123123123123123123Ull; }", msg, 1, 11);
 	}
 
 	@Test
@@ -452,9 +464,13 @@ public class CompilerTest
 	}
 
 	@Test
-	public void errorWhenArrayHasInitializer() throws IOException
+	public void errorWhenArrayInitializerInvalid() throws IOException
 	{
-		testErr("\nint a[2] = 0;", "Array initializers are not supported.", 1, 11);
+		testErr("\nint a[2] = 0;", "Invalid initializer for array.", 1, 11);
+		testErr("\nint a[2] = {1, 2, 3};", "Too many initializers.", 1, 18);
+		testErr("\nint a[2][2] = {{1}, {2}, 3};", "Too many initializers.", 1, 25);
+		testErr("\nchar a[2] = \"abc\";", "Initializer string is too long.", 1, 12);
+		testErr("\nint a[];", "Array length must be specified.", 1, 4);
 	}
 
 	@Test
@@ -844,6 +860,16 @@ public class CompilerTest
 				"Illegal control expression. Scalar type required.", 1, 16);
 	}
 
+	@Test
+	public void errorWhenIllegalOperandsInControlExpression() throws IOException
+	{
+		testErr("\nvoid f() { if(!f()); }", "Operator ! requires a scalar type.", 1, 14);
+		testErr("\nvoid f() { while(1 && f()); }",
+				"Incompatible operands for operator &&.", 1, 17);
+		testErr("\nvoid f() { for(;f() < 1;); }",
+				"Incompatible operands for operator <.", 1, 16);
+	}
+
 	@Test
 	public void errorWhenBreakUsedOutsideLoopOrSwitch() throws IOException
 	{
@@ -860,6 +886,32 @@ public class CompilerTest
 		testErr("\nvoid f() { {for(;;); if (1) ; else { continue; } } }", msg, 1, 37);
 	}
 
+	@Test
+	public void errorWhenCaseUsedOutsideSwitch() throws IOException
+	{
+		testErr("\nvoid f() { case 1: ; }", "Case label used outside switch.", 1, 11);
+		testErr("\nvoid f() { switch(1); default: ; }", "Default label used outside switch.",
+				1, 22);
+	}
+
+	@Test
+	public void errorWhenSwitchHasIllegalLabels() throws IOException
+	{
+		testErr("\nvoid f(int a) { switch(a) { case a: ; } }",
+				"Case label is not an integer constant.", 1, 33);
+		testErr("\nvoid f(int a) { switch(a) { case 1: case 2: case 1: ; } }",
+				"Duplicate case value.", 1, 49);
+		testErr("\nvoid f(int a) { switch(a) { default: ; { default: ; } } }",
+				"Multiple default labels in one switch.", 1, 41);
+	}
+
+	@Test
+	public void errorWhenIllegalControlExpressionInSwitch() throws IOException
+	{
+		testErr("\nvoid f(int* p) { switch(p) { } }",
+				"Illegal control expression. Integer type required.", 1, 24);
+	}
+
 	@Test
 	public void errorWhenUsingCommaOperatorResultAsAnLvalue() throws IOException
 	{
@@ -906,11 +958,12 @@ public class CompilerTest
 	}
 
 	@Test
-	public void errorWhenUnsupportedInlineSpecifierUsed() throws IOException
+	public void errorWhenInlineSpecifierUsedForObject() throws IOException
 	{
-		String msg = "Inline functions are not supported yet.";
-		testErr("\ninline int x;", msg, 1, 0); //TODO different error
-		testErr("\ninline void f() { }", msg, 1, 0);
+		String msg = "Inline specifier in object declaration.";
+		testErr("\ninline int x;", msg, 1, 11);
+		testErr("void f() {\n static inline int x; }", msg, 1, 19);
+		testErr("void f(\ninline int x) { }", msg, 1, 0);
 	}
 
 	@Test
@@ -954,4 +1007,36 @@ public class CompilerTest
 		// Register array expressions
 		testErr("\nvoid f() { register int x[10]; x; }", msg, 1, 31);
 	}
+
+	@Test
+	public void savesOnlyUsedRegisters() throws IOException, SyntaxException
+	{
+		String asm = compile("void empty() { }\n"
+				+ "void show(int x) { out(x); }\n"
+				+ "int mix(int a, int b, int c, int d)\n"
+				+ "{ return (a * b + c * d) * (a * c + b * d) + (a - d) * (b - c); }\n"
+				+ "int main() {\n"
+				+ "void (*e)() = empty; void (*s)(int) = show;\n"
+				+ "int (*m)(int, int, int, int) = mix;\n"
+				+ "e(); s(1); return m(1, 2, 3, 4); }");
+
+		// Leaf function without locals has no register saving or frame allocation.
+		String empty = functionCode(asm, "empty");
+		assertTrue(empty.endsWith("exit SP, =0\n"));
+		assertFalse(empty.contains("push"));
+		assertFalse(empty.contains("pop"));
+		assertFalse(empty.contains("add SP"));
+
+		// Function that only uses R1 saves only R1.
+		assertEquals("push SP, R1\nload R1, show_x(FP)\nout R1, =crt\npop SP, R1\n"
+				+ "exit SP, =1\n", functionCode(asm, "show"));
+
+		// Function with stack calling convention that uses all registers saves them all at
+		// once.
+		String mix = functionCode(asm, "mix");
+		assertTrue(mix.contains("pushr SP\n"));
+		assertTrue(mix.contains("popr SP\n"));
+		assertFalse(mix.contains("push SP, R"));
+		assertFalse(mix.contains("pop SP, R"));
+	}
 }
@@ -0,0 +1,51 @@
+package titocc.compiler;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConstantPoolTest
+{
+	private ConstantPool pool;
+
+	@Before
+	public void setUp()
+	{
+		pool = new ConstantPool(new Scope(null, ""));
+	}
+
+	private String define(String... referencedLabels) throws IOException
+	{
+		// Unreferenced data is left out, so the labels are referenced before the pool.
+		StringWriter writer = new StringWriter();
+		Assembler asm = new Assembler(writer);
+		for (String label : referencedLabels)
+			asm.emit("load", Register.R1, "=" + label);
+		int start = writer.getBuffer().length();
+		pool.define(asm);
+		asm.finish();
+		String output = writer.toString().substring(start);
+		return output.replaceAll(" +", " ").replaceAll("\n+", "\n").trim();
+	}
+
+	@Test
+	public void usesImmediateOperandForSmallValues() throws IOException
+	{
+		assertEquals("=-32768", pool.getOperand(-32768));
+		assertEquals("=32767", pool.getOperand(32767));
+		assertEquals("", define());
+	}
+
+	@Test
+	public void identicalValuesShareLabel() throws IOException
+	{
+		String label = pool.getOperand(32768);
+		assertEquals(label, pool.getOperand(32768));
+		assertEquals(label, pool.add(32768));
+		String label2 = pool.getOperand(-32769);
+		assertFalse(label.equals(label2));
+		assertEquals("int dc 32768\nint2 dc -32769", define(label, label2));
+	}
+}
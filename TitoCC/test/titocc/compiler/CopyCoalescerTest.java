@@ -0,0 +1,49 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class CopyCoalescerTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private List<Instruction> instructions;
+
+	private List<String> coalesce(Instruction... instrs)
+	{
+		instructions = list(instrs);
+		new CopyCoalescer(instructions, "End").apply();
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions)
+			result.add(instr.mnemonic);
+		return result;
+	}
+
+	@Test
+	public void mergesRegistersThatDoNotInterfere()
+	{
+		assertEquals(Arrays.asList("load", "nop", "add", "out"), coalesce(
+				instr(null, "load", v1, 0, "1", null),
+				instr(null, "load", v2, 0, null, v1),
+				instr(null, "add", v2, 0, "1", null),
+				instr(null, "out", v2, 0, "crt", null)));
+		assertSame(instructions.get(0).leftReg, instructions.get(2).leftReg);
+	}
+
+	@Test
+	public void keepsCopyOfValueThatIsStillNeeded()
+	{
+		assertEquals(Arrays.asList("load", "load", "add", "out", "out"), coalesce(
+				instr(null, "load", v1, 0, "1", null),
+				instr(null, "load", v2, 0, null, v1),
+				instr(null, "add", v2, 0, "1", null),
+				instr(null, "out", v2, 0, "crt", null),
+				instr(null, "out", v1, 0, "crt", null)));
+	}
+}
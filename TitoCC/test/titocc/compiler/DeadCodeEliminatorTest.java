@@ -0,0 +1,88 @@
+package titocc.compiler;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class DeadCodeEliminatorTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private List<String> eliminate(Instruction... instrs)
+	{
+		List<Instruction> instructions = list(instrs);
+		new DeadCodeEliminator(instructions, "End").apply();
+		return render(instructions);
+	}
+
+	@Test
+	public void removesUnusedResults()
+	{
+		assertEquals(Arrays.asList("load", "store"), eliminate(
+				instr(null, "load", v1, 0, "=1", null),
+				instr(null, "add", v1, 0, "=2", null),
+				instr(null, "load", v2, 0, "=3", null),
+				instr(null, "store", v2, 0, "x", null)));
+	}
+
+	@Test
+	public void removesUnusedComparisons()
+	{
+		assertEquals(Arrays.asList("load", "store"), eliminate(
+				instr(null, "load", v1, 0, "=1", null),
+				instr(null, "comp", v1, 0, "=2", null),
+				instr(null, "store", v1, 0, "x", null)));
+	}
+
+	@Test
+	public void keepsResultsUsedInLoop()
+	{
+		assertEquals(Arrays.asList("load", "Loop:add", "comp", "jles", "store"), eliminate(
+				instr(null, "load", v1, 0, "=0", null),
+				instr("Loop", "add", v1, 0, "=1", null),
+				instr(null, "comp", v1, 0, "=10", null),
+				instr(null, "jles", VirtualRegister.NONE, 0, "Loop", null),
+				instr(null, "store", v1, 0, "x", null)));
+	}
+
+	@Test
+	public void removesUnreachableCode()
+	{
+		assertEquals(Arrays.asList("load", "store", "x:dc", "Skip:store"), eliminate(
+				instr(null, "load", v1, 0, "=0", null),
+				instr(null, "store", v1, 0, "x", null),
+				instr(null, "jump", VirtualRegister.NONE, 0, "Skip", null),
+				instr(null, "load", v2, 0, "=1", null),
+				instr(null, "store", v2, 0, "x", null),
+				new Instruction("x", "dc", 0),
+				instr("Skip", "store", v1, 0, "y", null)));
+	}
+
+	@Test
+	public void removesJumpsToNextInstruction()
+	{
+		assertEquals(Arrays.asList("load", "store"), eliminate(
+				instr(null, "load", v1, 0, "=0", null),
+				instr(null, "jump", VirtualRegister.NONE, 0, "Next", null),
+				new Instruction("Next", "nop"),
+				instr(null, "store", v1, 0, "x", null)));
+	}
+
+	@Test
+	public void keepsJumpTableTargets()
+	{
+		assertEquals(Arrays.asList("load", "jump", "A:store", "B:nop"),
+				eliminate(
+				instr(null, "load", v1, 0, "=0", null),
+				new Instruction(null, "Table", v1, Arrays.asList("A", "B", "A")),
+				instr(null, "load", v2, 0, "=1", null),
+				instr("A", "store", v1, 0, "x", null),
+				instr(null, "jump", VirtualRegister.NONE, 0, "End", null),
+				new Instruction("B", "nop"),
+				new Instruction("End", "nop")));
+	}
+}
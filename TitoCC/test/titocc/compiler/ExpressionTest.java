@@ -7,10 +7,7 @@ import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 import titocc.compiler.elements.Expression;
-import titocc.compiler.types.ArrayType;
 import titocc.compiler.types.CType;
-import titocc.compiler.types.FunctionType;
-import titocc.compiler.types.PointerType;
 import titocc.tokenizer.SyntaxException;
 import titocc.tokenizer.TokenStream;
 import titocc.tokenizer.Tokenizer;
@@ -49,15 +46,15 @@ public class ExpressionTest
 		scope.add(new Symbol("ul", CType.ULONG, null, false));
 		scope.add(new Symbol("ll", CType.LLONG, null, false));
 		scope.add(new Symbol("ull", CType.ULLONG, null, false));
-		scope.add(new Symbol("fv", new FunctionType(CType.VOID, new ArrayList<CType>()),
+		scope.add(new Symbol("fv", CType.function(CType.VOID, new ArrayList<CType>()),
 				null, false));
-		scope.add(new Symbol("fi", new FunctionType(CType.INT, new ArrayList<CType>()),
+		scope.add(new Symbol("fi", CType.function(CType.INT, new ArrayList<CType>()),
 				null, false));
-		scope.add(new Symbol("a", new ArrayType(CType.INT, 2), null, false));
-		scope.add(new Symbol("a2", new ArrayType(new ArrayType(CType.INT, 2), 3), null, false));
-		scope.add(new Symbol("pi", new PointerType(CType.INT), null, false));
-		scope.add(new Symbol("pv", new PointerType(CType.VOID), null, false));
-		scope.add(new Symbol("pfv", new PointerType(new FunctionType(CType.VOID,
+		scope.add(new Symbol("a", CType.array(CType.INT, 2), null, false));
+		scope.add(new Symbol("a2", CType.array(CType.array(CType.INT, 2), 3), null, false));
+		scope.add(new Symbol("pi", CType.pointer(CType.INT), null, false));
+		scope.add(new Symbol("pv", CType.pointer(CType.VOID), null, false));
+		scope.add(new Symbol("pfv", CType.pointer(CType.function(CType.VOID,
 				new ArrayList<CType>())), null, false));
 	}
 
@@ -190,7 +187,7 @@ public class ExpressionTest
 	{
 		testType("0", CType.INT);
 		testType("2147483647", CType.INT);
-		//testType("2147483648", CType.LLONG);
+		testType("2147483648", CType.LLONG);
 		testType("4294967295U", CType.UINT);
 		testType("13Lu", CType.ULONG);
 
@@ -200,13 +197,18 @@ public class ExpressionTest
 		testType("0xffffffffUl", CType.ULONG);
 
 		testType("0L", CType.LONG);
+		testType("4294967296l", CType.LLONG);
+		testType("1ll", CType.LLONG);
+		testType("0xffffffffffffffffLL", CType.ULLONG);
+		testType("1llu", CType.ULLONG);
+		testType("0x100000000u", CType.ULLONG);
 	}
 
 	@Test
 	public void stringLiteralExpressionType() throws IOException, SyntaxException
 	{
-		testType("\"ab\"", new ArrayType(CType.CHAR, 3));
-		testType("\"abc\" \"\\\"\"", new ArrayType(CType.CHAR, 5));
+		testType("\"ab\"", CType.array(CType.CHAR, 3));
+		testType("\"abc\" \"\\\"\"", CType.array(CType.CHAR, 5));
 	}
 
 	@Test
@@ -221,7 +223,7 @@ public class ExpressionTest
 		testType("-1", CType.INT);
 		testType("-2147483647", CType.INT);
 		testType("-0x80000000", CType.UINT);
-		//testType("-2147483648", CType.LLONG);
+		testType("-2147483648", CType.LLONG);
 	}
 
 	@Test
@@ -232,8 +234,8 @@ public class ExpressionTest
 		testType("i", CType.INT);
 		testType("l", CType.LONG);
 		testType("ull", CType.ULLONG);
-		testType("fv", new FunctionType(CType.VOID, new ArrayList<CType>()));
-		testType("a", new ArrayType(CType.INT, 2));
+		testType("fv", CType.function(CType.VOID, new ArrayList<CType>()));
+		testType("a", CType.array(CType.INT, 2));
 	}
 
 	@Test
@@ -244,7 +246,7 @@ public class ExpressionTest
 		testType("s++", CType.SHORT);
 		testType("i--", CType.INT);
 		testType("ull++", CType.ULLONG);
-		testType("pi--", new PointerType(CType.INT));
+		testType("pi--", CType.pointer(CType.INT));
 	}
 
 	@Test
@@ -255,7 +257,7 @@ public class ExpressionTest
 		testType("++s", CType.SHORT);
 		testType("--i", CType.INT);
 		testType("++ull", CType.ULLONG);
-		testType("--pi", new PointerType(CType.INT));
+		testType("--pi", CType.pointer(CType.INT));
 	}
 
 	@Test
@@ -271,7 +273,7 @@ public class ExpressionTest
 		testType("l -= uc", CType.LONG);
 		testType("ll <<= ll", CType.LLONG);
 		testType("ull >>= us", CType.ULLONG);
-		testType("pi += c", new PointerType(CType.INT));
+		testType("pi += c", CType.pointer(CType.INT));
 	}
 
 	@Test
@@ -339,8 +341,8 @@ public class ExpressionTest
 		testType("l + u", CType.ULONG);
 		testType("ul + ll", CType.LLONG);
 		testType("ll + ull", CType.ULLONG);
-		testType("a + c", new PointerType(CType.INT));
-		testType("i + pi", new PointerType(CType.INT));
+		testType("a + c", CType.pointer(CType.INT));
+		testType("i + pi", CType.pointer(CType.INT));
 	}
 
 	@Test
@@ -355,8 +357,8 @@ public class ExpressionTest
 		testType("l - u", CType.ULONG);
 		testType("ul - ll", CType.LLONG);
 		testType("ll - ull", CType.ULLONG);
-		testType("a - c", new PointerType(CType.INT));
-		testType("pi - i", new PointerType(CType.INT));
+		testType("a - c", CType.pointer(CType.INT));
+		testType("pi - i", CType.pointer(CType.INT));
 	}
 
 	@Test
@@ -410,8 +412,8 @@ public class ExpressionTest
 		testType("(i)", CType.INT);
 		testType("(l)", CType.LONG);
 		testType("(ull)", CType.ULLONG);
-		testType("(fv)", new FunctionType(CType.VOID, new ArrayList<CType>()));
-		testType("(a)", new ArrayType(CType.INT, 2));
+		testType("(fv)", CType.function(CType.VOID, new ArrayList<CType>()));
+		testType("(a)", CType.array(CType.INT, 2));
 	}
 
 	@Test
@@ -422,8 +424,8 @@ public class ExpressionTest
 		testType("s=1, i", CType.INT);
 		testType("4, l", CType.LONG);
 		testType("fv(), 3, ull", CType.ULLONG);
-		testType("i/=2, fv", new PointerType(new FunctionType(CType.VOID, new ArrayList<CType>())));
-		testType("a[0]=1, a", new PointerType(CType.INT));
+		testType("i/=2, fv", CType.pointer(CType.function(CType.VOID, new ArrayList<CType>())));
+		testType("a[0]=1, a", CType.pointer(CType.INT));
 	}
 
 	@Test
@@ -442,13 +444,13 @@ public class ExpressionTest
 	@Test
 	public void addressOfExpressionType() throws IOException, SyntaxException
 	{
-		testType("&c", new PointerType(CType.CHAR));
-		testType("&ul", new PointerType(CType.ULONG));
-		testType("&pi", new PointerType(new PointerType(CType.INT)));
-		testType("&*pv", new PointerType(CType.VOID));
-		testType("&a", new PointerType(new ArrayType(CType.INT, 2)));
-		testType("&a2[0]", new PointerType(new ArrayType(CType.INT, 2)));
-		testType("&fv", new PointerType(new FunctionType(CType.VOID, new ArrayList<CType>())));
+		testType("&c", CType.pointer(CType.CHAR));
+		testType("&ul", CType.pointer(CType.ULONG));
+		testType("&pi", CType.pointer(CType.pointer(CType.INT)));
+		testType("&*pv", CType.pointer(CType.VOID));
+		testType("&a", CType.pointer(CType.array(CType.INT, 2)));
+		testType("&a2[0]", CType.pointer(CType.array(CType.INT, 2)));
+		testType("&fv", CType.pointer(CType.function(CType.VOID, new ArrayList<CType>())));
 	}
 
 	@Test
@@ -457,9 +459,9 @@ public class ExpressionTest
 		testType("*pi", CType.INT);
 		testType("*pv", CType.VOID);
 		testType("*a", CType.INT);
-		testType("*a2", new ArrayType(CType.INT, 2));
-		testType("*fi", new FunctionType(CType.INT, new ArrayList<CType>()));
-		testType("*pfv", new FunctionType(CType.VOID, new ArrayList<CType>()));
+		testType("*a2", CType.array(CType.INT, 2));
+		testType("*fi", CType.function(CType.INT, new ArrayList<CType>()));
+		testType("*pfv", CType.function(CType.VOID, new ArrayList<CType>()));
 	}
 
 	@Test
@@ -491,7 +493,7 @@ public class ExpressionTest
 	public void subscriptExpressionType() throws IOException, SyntaxException
 	{
 		testType("pi[i]", CType.INT);
-		testType("c[a2]", new ArrayType(CType.INT, 2));
+		testType("c[a2]", CType.array(CType.INT, 2));
 		testType("pi[ull]", CType.INT);
 	}
 
@@ -501,6 +503,6 @@ public class ExpressionTest
 		testType("(unsigned long)c", CType.ULONG);
 		testType("(void)c", CType.VOID);
 		testType("(void)(void)ull", CType.VOID);
-		testType("(void*)pi", new PointerType(CType.VOID));
+		testType("(void*)pi", CType.pointer(CType.VOID));
 	}
 }
@@ -0,0 +1,117 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class IndexedAddressingSelectorTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private final VirtualRegister v3 = new VirtualRegister();
+
+	private List<String> select(Instruction... instrs)
+	{
+		List<Instruction> instructions = list(instrs);
+		new IndexedAddressingSelector(instructions, "End").apply();
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			if (instr.mnemonic.equals("nop"))
+				continue;
+			String s = instr.mnemonic;
+			if (instr.getImmediateValue() != null)
+				s += " " + instr.getImmediateValue();
+			if (instr.rightReg != null)
+				s += "(" + regName(instr.rightReg) + ")";
+			result.add(s);
+		}
+		return result;
+	}
+
+	private String regName(VirtualRegister reg)
+	{
+		if (reg == VirtualRegister.FP)
+			return "fp";
+		return reg == v1 ? "v1" : reg == v2 ? "v2" : "v3";
+	}
+
+	@Test
+	public void loadsIndexInsteadOfBase()
+	{
+		assertEquals(Arrays.asList("load i(fp)", "load a(v1)", "out crt"), select(
+				instr(null, "load", v1, 0, "a", null),
+				instr(null, "add", v1, 1, "i", VirtualRegister.FP),
+				instr(null, "load", v2, 1, "0", v1),
+				instr(null, "out", v2, 0, "crt", null)));
+	}
+
+	@Test
+	public void usesIndexRegisterDirectly()
+	{
+		assertEquals(Arrays.asList("in kbd", "load a(v2)", "add 1", "store a(v2)"), select(
+				instr(null, "load", v1, 0, "a", null),
+				instr(null, "in", v2, 0, "kbd", null),
+				instr(null, "add", v1, 0, null, v2),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "add", v3, 0, "1", null),
+				instr(null, "store", v3, 0, "0", v1)));
+	}
+
+	@Test
+	public void addsFramePointerToIndexOfFrameArray()
+	{
+		assertEquals(Arrays.asList("in kbd", "add(fp)", "load a(v2)", "out crt"), select(
+				instr(null, "load", v1, 0, "a", VirtualRegister.FP),
+				instr(null, "in", v2, 0, "kbd", null),
+				instr(null, "add", v1, 0, null, v2),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null)));
+	}
+
+	@Test
+	public void keepsFrameArrayAddressIfIndexIsLive()
+	{
+		List<String> expected = Arrays.asList("load a(fp)", "in kbd", "add(v2)", "load 0(v1)",
+				"out crt", "out crt");
+		assertEquals(expected, select(
+				instr(null, "load", v1, 0, "a", VirtualRegister.FP),
+				instr(null, "in", v2, 0, "kbd", null),
+				instr(null, "add", v1, 0, null, v2),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null),
+				instr(null, "out", v2, 0, "crt", null)));
+	}
+
+	@Test
+	public void keepsAddressThatIsUsedAsValue()
+	{
+		List<String> expected = Arrays.asList("load a", "add i(fp)", "load 0(v1)", "store p",
+				"out crt");
+		assertEquals(expected, select(
+				instr(null, "load", v1, 0, "a", null),
+				instr(null, "add", v1, 1, "i", VirtualRegister.FP),
+				instr(null, "load", v2, 1, "0", v1),
+				instr(null, "store", v1, 0, "p", null),
+				instr(null, "out", v2, 0, "crt", null)));
+	}
+
+	@Test
+	public void keepsAddressIfIndexChangesBeforeAccess()
+	{
+		List<String> expected = Arrays.asList("load a", "in kbd", "add(v2)", "add 1",
+				"load 0(v1)", "out crt", "out crt");
+		assertEquals(expected, select(
+				instr(null, "load", v1, 0, "a", null),
+				instr(null, "in", v2, 0, "kbd", null),
+				instr(null, "add", v1, 0, null, v2),
+				instr(null, "add", v2, 0, "1", null),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null),
+				instr(null, "out", v2, 0, "crt", null)));
+	}
+}
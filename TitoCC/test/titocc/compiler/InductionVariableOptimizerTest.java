@@ -0,0 +1,136 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class InductionVariableOptimizerTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private final VirtualRegister v3 = new VirtualRegister();
+
+	private final VirtualRegister v4 = new VirtualRegister();
+
+	private final VirtualRegister v5 = new VirtualRegister();
+
+	private List<String> reduce(Instruction... instrs)
+	{
+		List<Instruction> instructions = list(instrs);
+		new InductionVariableOptimizer(instructions, "End").apply();
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			if (!instr.mnemonic.equals("nop") || instr.label != null) {
+				String s = label(instr) + instr.mnemonic;
+				if (instr.rightReg == null && instr.getRealAddressingMode() == 0
+						&& instr.getImmediateValue() != null && !instr.isJumpInstruction()
+						&& !instr.mnemonic.equals("out") && !instr.mnemonic.equals("store"))
+					s += " =" + instr.getImmediateValue();
+				result.add(s);
+			}
+		}
+		return result;
+	}
+
+	private List<String> reduceLoop(Instruction scaling, Instruction step)
+	{
+		return reduce(
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "load", v1, 0, "a", null),
+				instr(null, "load", v2, 1, "i", VirtualRegister.FP),
+				scaling,
+				instr(null, "add", v1, 0, null, v2),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null),
+				instr(null, "load", v4, 1, "i", VirtualRegister.FP),
+				step,
+				instr(null, "store", v4, 0, "i", VirtualRegister.FP),
+				instr("Test", "load", v5, 1, "i", VirtualRegister.FP),
+				instr(null, "jnzer", v5, 0, "Body", null));
+	}
+
+	@Test
+	public void reducesScaledSubscript()
+	{
+		List<String> expected = Arrays.asList("load =a", "load", "mul =3", "add", "jump",
+				"Body:nop", "load", "out", "load", "add =1", "store", "add =3", "Test:load",
+				"jnzer");
+		assertEquals(expected, reduceLoop(
+				instr(null, "mul", v2, 0, "3", null),
+				instr(null, "add", v4, 0, "1", null)));
+	}
+
+	@Test
+	public void reducesShiftedSubscript()
+	{
+		List<String> expected = Arrays.asList("load =a", "load", "shl =2", "add", "jump",
+				"Body:nop", "load", "out", "load", "sub =2", "store", "sub =8", "Test:load",
+				"jnzer");
+		assertEquals(expected, reduceLoop(
+				instr(null, "shl", v2, 0, "2", null),
+				instr(null, "sub", v4, 0, "2", null)));
+	}
+
+	@Test
+	public void reducesVariableStepWithoutScaling()
+	{
+		List<String> expected = Arrays.asList("load =a", "add", "jump", "Body:nop", "load", "out",
+				"load", "add", "store", "add", "Test:load", "jnzer");
+		assertEquals(expected, reduce(
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "load", v1, 0, "a", null),
+				instr(null, "add", v1, 1, "i", VirtualRegister.FP),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null),
+				instr(null, "load", v4, 1, "i", VirtualRegister.FP),
+				instr(null, "add", v4, 1, "n", VirtualRegister.FP),
+				instr(null, "store", v4, 0, "i", VirtualRegister.FP),
+				instr("Test", "load", v5, 1, "i", VirtualRegister.FP),
+				instr(null, "jnzer", v5, 0, "Body", null)));
+	}
+
+	@Test
+	public void doesNotReduceVariableStepWithScaling()
+	{
+		List<String> expected = Arrays.asList("jump", "Body:load =a", "load", "mul =3", "add",
+				"load", "out", "load", "add", "store", "Test:load", "jnzer");
+		assertEquals(expected, reduceLoop(
+				instr(null, "mul", v2, 0, "3", null),
+				instr(null, "add", v4, 1, "n", VirtualRegister.FP)));
+	}
+
+	@Test
+	public void doesNotReduceWhenStepIsNotInvariant()
+	{
+		List<String> expected = Arrays.asList("jump", "Body:load =a", "load", "mul =3", "add",
+				"load", "out", "load", "add", "store", "Test:load", "jnzer");
+		assertEquals(expected, reduceLoop(
+				instr(null, "mul", v2, 0, "3", null),
+				instr(null, "add", v4, 1, "0", v5)));
+	}
+
+	@Test
+	public void doesNotReduceWhenAddressIsTaken()
+	{
+		List<String> expected = Arrays.asList("load", "store", "jump", "Body:load =a", "add",
+				"load", "out", "load", "add =1", "store", "Test:load", "jnzer");
+		assertEquals(expected, reduce(
+				instr(null, "load", v5, 0, "i", VirtualRegister.FP),
+				instr(null, "store", v5, 0, "p", null),
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "load", v1, 0, "a", null),
+				instr(null, "add", v1, 1, "i", VirtualRegister.FP),
+				instr(null, "load", v3, 1, "0", v1),
+				instr(null, "out", v3, 0, "crt", null),
+				instr(null, "load", v4, 1, "i", VirtualRegister.FP),
+				instr(null, "add", v4, 0, "1", null),
+				instr(null, "store", v4, 0, "i", VirtualRegister.FP),
+				instr("Test", "load", v2, 1, "i", VirtualRegister.FP),
+				instr(null, "jnzer", v2, 0, "Body", null)));
+	}
+}
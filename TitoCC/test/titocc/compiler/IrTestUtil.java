@@ -0,0 +1,70 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helpers for the tests of the passes that operate on intermediate instructions.
+ */
+class IrTestUtil
+{
+	private IrTestUtil()
+	{
+	}
+
+	/**
+	 * Constructs an instruction with a register or memory operand.
+	 *
+	 * @param label label or null
+	 * @param mnemonic mnemonic
+	 * @param left left register operand
+	 * @param addrMode addressing mode
+	 * @param imm immediate operand or null
+	 * @param right index register or null
+	 * @return the instruction
+	 */
+	static Instruction instr(String label, String mnemonic, VirtualRegister left, int addrMode,
+			String imm, VirtualRegister right)
+	{
+		return new Instruction(label, mnemonic, left, addrMode, imm, right);
+	}
+
+	/**
+	 * Returns a modifiable list of instructions for a pass to work on.
+	 *
+	 * @param instrs instructions
+	 * @return new list
+	 */
+	static List<Instruction> list(Instruction... instrs)
+	{
+		return new ArrayList<Instruction>(Arrays.asList(instrs));
+	}
+
+	/**
+	 * Returns the label of an instruction followed by a colon, or an empty string.
+	 *
+	 * @param instr instruction
+	 * @return label prefix
+	 */
+	static String label(Instruction instr)
+	{
+		return instr.label != null ? instr.label + ":" : "";
+	}
+
+	/**
+	 * Renders instructions as "label:mnemonic" strings. Nops without a label are skipped.
+	 *
+	 * @param instructions instructions
+	 * @return rendered instructions
+	 */
+	static List<String> render(List<Instruction> instructions)
+	{
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			if (!instr.mnemonic.equals("nop") || instr.label != null)
+				result.add(label(instr) + instr.mnemonic);
+		}
+		return result;
+	}
+}
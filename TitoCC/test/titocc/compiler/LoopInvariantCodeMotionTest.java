@@ -0,0 +1,110 @@
+package titocc.compiler;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class LoopInvariantCodeMotionTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private final VirtualRegister v3 = new VirtualRegister();
+
+	private final VirtualRegister v4 = new VirtualRegister();
+
+	private final VirtualRegister v5 = new VirtualRegister();
+
+	private List<String> hoist(Instruction... instrs)
+	{
+		List<Instruction> instructions = list(instrs);
+		new LoopInvariantCodeMotion(instructions, "End").apply();
+		return render(instructions);
+	}
+
+	@Test
+	public void hoistsInvariantComputations()
+	{
+		assertEquals(Arrays.asList("load", "load", "mul", "jump", "Body:nop", "store",
+				"Test:nop", "jnzer"), hoist(
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "load", v1, 0, "1", null),
+				instr(null, "store", v1, 0, "x", null),
+				instr("Test", "load", v2, 1, "n", VirtualRegister.FP),
+				instr(null, "mul", v2, 1, "n", VirtualRegister.FP),
+				instr(null, "jnzer", v2, 0, "Body", null)));
+	}
+
+	@Test
+	public void hoistsIntoFallThroughEntry()
+	{
+		assertEquals(Arrays.asList("load", "load", "Body:nop", "store", "jnzer"), hoist(
+				instr(null, "load", v1, 1, "n", VirtualRegister.FP),
+				instr("Body", "load", v2, 0, "1", null),
+				instr(null, "store", v2, 0, "x", null),
+				instr(null, "jnzer", v1, 0, "Body", null)));
+	}
+
+	@Test
+	public void doesNotHoistVariablesWrittenInLoop()
+	{
+		List<String> expected = Arrays.asList("jump", "Body:load", "add", "store", "Test:load",
+				"mul", "jnzer");
+		assertEquals(expected, hoist(
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "load", v1, 1, "i", VirtualRegister.FP),
+				instr(null, "add", v1, 0, "1", null),
+				instr(null, "store", v1, 0, "i", VirtualRegister.FP),
+				instr("Test", "load", v2, 1, "i", VirtualRegister.FP),
+				instr(null, "mul", v2, 0, "3", null),
+				instr(null, "jnzer", v2, 0, "Body", null)));
+	}
+
+	@Test
+	public void doesNotHoistGlobalsWhenLoopHasCalls()
+	{
+		List<String> expected = Arrays.asList("jump", "Body:call", "Test:load", "mul",
+				"jnzer");
+		assertEquals(expected, hoist(
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "call", VirtualRegister.SP, 0, "f", null),
+				instr("Test", "load", v1, 1, "g", null),
+				instr(null, "mul", v1, 0, "3", null),
+				instr(null, "jnzer", v1, 0, "Body", null)));
+	}
+
+	@Test
+	public void doesNotHoistLocalsWhoseAddressIsTaken()
+	{
+		List<String> expected = Arrays.asList("load", "jump", "Body:store", "Test:load",
+				"mul", "jnzer");
+		assertEquals(expected, hoist(
+				instr(null, "load", v1, 0, "i", VirtualRegister.FP),
+				instr(null, "jump", VirtualRegister.NONE, 0, "Test", null),
+				instr("Body", "store", v3, 0, "0", v1),
+				instr("Test", "load", v2, 1, "i", VirtualRegister.FP),
+				instr(null, "mul", v2, 0, "3", null),
+				instr(null, "jnzer", v2, 0, "Body", null)));
+	}
+
+	@Test
+	public void respectsRegisterPressure()
+	{
+		List<String> expected = Arrays.asList("Body:in", "in", "in", "in", "add", "add", "add",
+				"load", "store", "jnzer");
+		assertEquals(expected, hoist(
+				instr("Body", "in", v1, 0, "kbd", null),
+				instr(null, "in", v2, 0, "kbd", null),
+				instr(null, "in", v3, 0, "kbd", null),
+				instr(null, "in", v4, 0, "kbd", null),
+				instr(null, "add", v1, 0, null, v2),
+				instr(null, "add", v1, 0, null, v3),
+				instr(null, "add", v1, 0, null, v4),
+				instr(null, "load", v5, 0, "1", null),
+				instr(null, "store", v5, 0, "0", v1),
+				instr(null, "jnzer", v1, 0, "Body", null)));
+	}
+}
@@ -41,6 +41,14 @@ public class ParserTest
 				parse("int xyz = 0U;"));
 	}
 
+	@Test
+	public void matchDeclarationWithInitializerList() throws IOException, SyntaxException
+	{
+		assertEquals("(TRUNIT (VAR_DECL (DS int) (DCLTOR (DCLTOR xyz) null)"
+				+ " (INIT_LIST (INT_EXPR 1) (INIT_LIST (INT_EXPR 2)))))",
+				parse("int xyz[] = {1, {2}, };"));
+	}
+
 	@Test
 	public void matchArrayDeclarator() throws IOException, SyntaxException
 	{
@@ -328,6 +336,17 @@ public class ParserTest
 				parse("void f() { for(;;) break; }"));
 	}
 
+	@Test
+	public void matchSwitchStatement() throws IOException, SyntaxException
+	{
+		assertEquals(inFunc("(SWITCH (ID_EXPR a) (BLK_ST (CASE (INT_EXPR 1) (BRK))"
+				+ " (DEFAULT (BLK_ST))))"),
+				parse("void f() { switch(a) { case 1: break; default: ; } }"));
+		assertEquals(inFunc("(SWITCH (ID_EXPR a) (CASE (INT_EXPR 1) (CASE (INT_EXPR 2)"
+				+ " (BLK_ST))))"),
+				parse("void f() { switch(a) case 1: case 2: ; }"));
+	}
+
 	@Test
 	public void matchContinueStatement() throws IOException, SyntaxException
 	{
@@ -464,7 +483,13 @@ public class ParserTest
 	@Test
 	public void failAtArrayDeclaratorExpression() throws IOException, SyntaxException
 	{
-		testFailure("\nint a[];", "]", 1, 6);
+		testFailure("\nint a[+];", "]", 1, 7);
+	}
+
+	@Test
+	public void failAtEmptyInitializerList() throws IOException, SyntaxException
+	{
+		testFailure("\nint a[2] = {};", "}", 1, 12);
 	}
 
 	@Test
@@ -0,0 +1,134 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class PeepholeOptimizerTest
+{
+	private final VirtualRegister r1 = new VirtualRegister(Register.R1);
+
+	private final VirtualRegister r2 = new VirtualRegister(Register.R2);
+
+	private final VirtualRegister none = VirtualRegister.NONE;
+
+	private List<String> optimize(Instruction... instrs)
+	{
+		List<Instruction> instructions = list(instrs);
+		new PeepholeOptimizer(instructions, "End").apply();
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			if (instr.mnemonic.equals("nop") && instr.label == null)
+				continue;
+			String s = label(instr) + instr.mnemonic;
+			if (instr.leftReg != null && instr.leftReg != VirtualRegister.NONE)
+				s += " " + instr.leftReg.realRegister + ",";
+			if (!instr.mnemonic.equals("nop"))
+				s += " " + instr.getRhsString();
+			result.add(s);
+		}
+		return result;
+	}
+
+	private Instruction load(VirtualRegister left, String imm, VirtualRegister right)
+	{
+		return instr(null, "load", left, 1, imm, right);
+	}
+
+	@Test
+	public void removesReloadOfStoredValue()
+	{
+		assertEquals(Arrays.asList("store R1, 1(FP)", "add R1, =1"), optimize(
+				instr(null, "store", r1, 0, "1", VirtualRegister.FP),
+				load(r1, "1", VirtualRegister.FP),
+				instr(null, "add", r1, 0, "1", null)));
+	}
+
+	@Test
+	public void replacesLoadOfStoredValueWithCopy()
+	{
+		assertEquals(Arrays.asList("store R1, x", "load R2, R1"), optimize(
+				instr(null, "store", r1, 0, "x", null),
+				load(r2, "x", null)));
+	}
+
+	@Test
+	public void doesNotCopyFromR0()
+	{
+		assertEquals(Arrays.asList("store R0, x", "load R2, x"), optimize(
+				instr(null, "store", VirtualRegister.R0, 0, "x", null),
+				load(r2, "x", null)));
+	}
+
+	@Test
+	public void keepsReloadWithLabelOrDifferentAddress()
+	{
+		assertEquals(Arrays.asList("store R1, x", "L:load R1, x", "load R1, y", "jump L"),
+				optimize(
+				instr(null, "store", r1, 0, "x", null),
+				new Instruction("L", "load", r1, 1, "x", null),
+				load(r1, "y", null),
+				instr(null, "jump", none, 0, "L", null)));
+	}
+
+	@Test
+	public void threadsJumpChains()
+	{
+		assertEquals(Arrays.asList("jzer R1, C", "X:out R1, =crt", "C:out R2, =crt"), optimize(
+				instr(null, "jzer", r1, 0, "A", null),
+				instr(null, "jump", none, 0, "X", null),
+				instr("A", "jump", none, 0, "B", null),
+				instr("B", "jump", none, 0, "C", null),
+				instr("X", "out", r1, 0, "crt", null),
+				instr("C", "out", r2, 0, "crt", null)));
+	}
+
+	@Test
+	public void keepsInfiniteJumpLoops()
+	{
+		assertEquals(Arrays.asList("jzer R1, A", "out R1, =crt", "A:nop", "B:jump A"),
+				optimize(
+				instr(null, "jzer", r1, 0, "A", null),
+				instr(null, "out", r1, 0, "crt", null),
+				instr("A", "jump", none, 0, "B", null),
+				instr("B", "jump", none, 0, "A", null)));
+	}
+
+	@Test
+	public void invertsBranchOverJump()
+	{
+		assertEquals(Arrays.asList("comp R1, =0", "jnles B", "A:out R1, =crt",
+				"B:out R2, =crt"), optimize(
+				instr(null, "comp", r1, 0, "0", null),
+				instr(null, "jles", none, 0, "A", null),
+				instr(null, "jump", none, 0, "B", null),
+				instr("A", "out", r1, 0, "crt", null),
+				instr("B", "out", r2, 0, "crt", null)));
+	}
+
+	@Test
+	public void removesJumpsToNextInstruction()
+	{
+		assertEquals(Arrays.asList("jnzer R1, A", "out R1, =crt", "A:nop", "B:out R2, =crt"),
+				optimize(
+				instr(null, "jnzer", r1, 0, "A", null),
+				instr(null, "out", r1, 0, "crt", null),
+				instr(null, "jump", none, 0, "B", null),
+				new Instruction("A", "nop"),
+				instr("B", "out", r2, 0, "crt", null),
+				instr(null, "jump", none, 0, "End", null)));
+	}
+
+	@Test
+	public void keepsJumpTables()
+	{
+		assertEquals(Arrays.asList("jump Tbl(R1)", "A:out R1, =crt", "B:out R2, =crt"),
+				optimize(
+				new Instruction(null, "Tbl", r1, Arrays.asList("A", "B")),
+				instr("A", "out", r1, 0, "crt", null),
+				instr("B", "out", r2, 0, "crt", null)));
+	}
+}
@@ -108,6 +108,35 @@ public class ScopeTest
 		assertSame(sym1, globalScope.find(sym1.getName()));
 	}
 
+	@Test
+	public void closingScopeRestoresShadowedSymbols()
+	{
+		globalScope.add(sym1);
+		Scope subScope = new Scope(globalScope, "");
+		Symbol sym3 = new Symbol(sym1.getName(), CType.INT, StorageClass.Auto, false);
+		subScope.add(sym3);
+		globalScope.add(sym2);
+		subScope.close();
+		assertSame(sym1, globalScope.find(sym1.getName()));
+		assertSame(sym3, subScope.find(sym1.getName()));
+		assertSame(sym2, subScope.find(sym2.getName()));
+		assertTrue(subScope.getSymbols().contains(sym3));
+	}
+
+	@Test
+	public void scopeWithOtherParentSuspendsOpenScopes()
+	{
+		globalScope.add(sym1);
+		Scope callerScope = new Scope(globalScope, "");
+		Symbol sym3 = new Symbol(sym1.getName(), CType.INT, StorageClass.Auto, false);
+		callerScope.add(sym3);
+		Scope inlineScope = new Scope(globalScope, "");
+		assertSame(sym1, inlineScope.find(sym1.getName()));
+		assertSame(sym3, callerScope.find(sym1.getName()));
+		inlineScope.close();
+		assertSame(sym3, new Scope(callerScope, "").find(sym1.getName()));
+	}
+
 	@Test
 	public void findsDoesntSearchSubscopesOrSiblingScopes()
 	{
@@ -169,6 +198,15 @@ public class ScopeTest
 		assertEquals("prefix1_prefix2_name2", subScope.makeGloballyUniqueName("name"));
 	}
 
+	@Test
+	public void numberSuffixesSkipNamesTakenInAnyCase()
+	{
+		assertEquals("prefix1_name", globalScope.makeGloballyUniqueName("name"));
+		assertEquals("prefix1_NAME2", globalScope.makeGloballyUniqueName("NAME2"));
+		assertEquals("prefix1_Name3", globalScope.makeGloballyUniqueName("Name"));
+		assertEquals("prefix1_name4", globalScope.makeGloballyUniqueName("name"));
+	}
+
 	@Test
 	public void addingToScopeSetsGlobalName()
 	{
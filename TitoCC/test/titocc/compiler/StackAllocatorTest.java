@@ -0,0 +1,81 @@
+package titocc.compiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import titocc.compiler.types.CType;
+
+public class StackAllocatorTest
+{
+	private StackAllocator stack;
+
+	private Scope functionScope;
+
+	@Before
+	public void setUp()
+	{
+		stack = new StackAllocator();
+		functionScope = new Scope(new Scope(null, ""), "f_");
+	}
+
+	private Symbol declare(Scope scope, String name, CType type, StorageClass storageClass)
+	{
+		Symbol sym = new Symbol(name, type, storageClass, false);
+		scope.add(sym);
+		return sym;
+	}
+
+	private Scope addSubScope(Scope scope)
+	{
+		Scope subScope = new Scope(scope, "");
+		scope.addSubScope(subScope);
+		return subScope;
+	}
+
+	@Test
+	public void placesVariablesAfterSpillLocations()
+	{
+		Symbol a = declare(functionScope, "a", CType.array(CType.INT, 3), StorageClass.Auto);
+		Symbol b = declare(functionScope, "b", CType.INT, StorageClass.Auto);
+		stack.reserveSpillLocations(2);
+		stack.allocateLocalVariables(functionScope, Collections.<Symbol>emptyList());
+		assertEquals(6, stack.getFrameSize());
+		int offsetA = stack.getLocalVariableOffset(a);
+		int offsetB = stack.getLocalVariableOffset(b);
+		assertTrue(offsetA >= 3 && offsetB >= 3);
+		assertTrue(offsetA == offsetB + 1 || offsetB == offsetA + 3);
+	}
+
+	@Test
+	public void sharesLocationsBetweenSiblingScopes()
+	{
+		Symbol a = declare(functionScope, "a", CType.INT, StorageClass.Auto);
+		Scope block1 = addSubScope(functionScope);
+		Symbol b = declare(block1, "b", CType.INT, StorageClass.Auto);
+		Scope block2 = addSubScope(functionScope);
+		Symbol c = declare(block2, "c", CType.array(CType.INT, 2), StorageClass.Auto);
+		Symbol d = declare(addSubScope(block1), "d", CType.INT, StorageClass.Auto);
+		stack.allocateLocalVariables(functionScope, Collections.<Symbol>emptyList());
+
+		assertEquals(3, stack.getFrameSize());
+		assertEquals(1, stack.getLocalVariableOffset(a));
+		assertEquals(2, stack.getLocalVariableOffset(b));
+		assertEquals(2, stack.getLocalVariableOffset(c));
+		assertEquals(3, stack.getLocalVariableOffset(d));
+	}
+
+	@Test
+	public void skipsExcludedAndStaticObjects()
+	{
+		Symbol param = declare(functionScope, "p", CType.INT, StorageClass.Auto);
+		declare(functionScope, "s", CType.INT, StorageClass.Static);
+		declare(functionScope, "__Ret", CType.INT, StorageClass.Auto);
+		Symbol r = declare(functionScope, "r", CType.INT, StorageClass.Register);
+		stack.allocateLocalVariables(functionScope, Arrays.asList(param));
+
+		assertEquals(Arrays.asList(r), stack.getLocalVariables());
+		assertEquals(1, stack.getFrameSize());
+	}
+}
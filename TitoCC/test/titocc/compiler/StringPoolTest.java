@@ -0,0 +1,78 @@
+package titocc.compiler;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StringPoolTest
+{
+	private StringPool pool;
+
+	@Before
+	public void setUp()
+	{
+		pool = new StringPool(new Scope(null, ""));
+	}
+
+	private List<Integer> str(String s)
+	{
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i = 0; i < s.length(); ++i)
+			values.add((int) s.charAt(i));
+		values.add(0);
+		return values;
+	}
+
+	private String define(String... referencedLabels) throws IOException
+	{
+		// Unreferenced data is left out, so the labels are referenced before the pool.
+		StringWriter writer = new StringWriter();
+		Assembler asm = new Assembler(writer);
+		for (String label : referencedLabels)
+			asm.emit("load", Register.R1, "=" + label);
+		int start = writer.getBuffer().length();
+		pool.define(asm);
+		asm.finish();
+		String output = writer.toString().substring(start);
+		return output.replaceAll(" +", " ").replaceAll("\n+", "\n").trim();
+	}
+
+	@Test
+	public void identicalStringsShareLabel()
+	{
+		String label = pool.add(str("ab"));
+		assertEquals(label, pool.add(str("ab")));
+		assertFalse(label.equals(pool.add(str("abc"))));
+	}
+
+	@Test
+	public void emitsOneLabelPerString() throws IOException
+	{
+		String label = pool.add(str("ab"));
+		pool.add(str("ab"));
+		assertEquals("str dc 97\n dc 98\n dc 0", define(label));
+	}
+
+	@Test
+	public void placesSuffixesInsideLongerStrings() throws IOException
+	{
+		String c = pool.add(str("c"));
+		String abc = pool.add(str("abc"));
+		String x = pool.add(str("x"));
+		String bc = pool.add(str("bc"));
+		assertEquals("str2 dc 97\nstr4 dc 98\nstr dc 99\n dc 0\nstr3 dc 120\n dc 0",
+				define(c, abc, x, bc));
+	}
+
+	@Test
+	public void leavesOutUnreferencedStrings() throws IOException
+	{
+		pool.add(str("ab"));
+		String label = pool.add(str("x"));
+		assertEquals("str2 dc 120\n dc 0", define(label));
+	}
+}
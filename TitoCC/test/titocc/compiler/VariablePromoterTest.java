@@ -0,0 +1,70 @@
+package titocc.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static titocc.compiler.IrTestUtil.*;
+
+public class VariablePromoterTest
+{
+	private final VirtualRegister v1 = new VirtualRegister();
+
+	private final VirtualRegister v2 = new VirtualRegister();
+
+	private List<Instruction> instructions;
+
+	private VariablePromoter promoter;
+
+	private List<String> promote(Instruction... instrs)
+	{
+		instructions = list(instrs);
+		promoter = new VariablePromoter(instructions, "End",
+				new HashSet<String>(Arrays.asList("x", "y")));
+		promoter.apply();
+		List<String> result = new ArrayList<String>();
+		for (Instruction instr : instructions) {
+			String s = label(instr) + instr.mnemonic;
+			if (instr.rightReg == VirtualRegister.FP)
+				s += " " + instr.getImmediateValue() + "(fp)";
+			result.add(s);
+		}
+		return result;
+	}
+
+	@Test
+	public void promotesDirectlyAccessedVariables()
+	{
+		assertEquals(Arrays.asList("load", "load", "add", "load", "out"), promote(
+				instr(null, "load", v1, 0, "1", null),
+				instr(null, "store", v1, 0, "x", VirtualRegister.FP),
+				instr(null, "add", v1, 1, "x", VirtualRegister.FP),
+				instr(null, "load", v2, 1, "x", VirtualRegister.FP),
+				instr(null, "out", v2, 0, "crt", null)));
+		assertEquals(new HashSet<String>(Arrays.asList("x")), promoter.getRegisterVariables());
+		assertNull(instructions.get(2).getImmediateValue());
+		assertSame(instructions.get(1).leftReg, instructions.get(2).rightReg);
+	}
+
+	@Test
+	public void doesNotPromoteVariablesWhoseAddressIsUsed()
+	{
+		assertEquals(Arrays.asList("load x(fp)", "store x(fp)", "load y(fp)"), promote(
+				instr(null, "load", v1, 0, "x", VirtualRegister.FP),
+				instr(null, "store", v1, 0, "x", VirtualRegister.FP),
+				instr(null, "load", v2, 0, "y", VirtualRegister.FP)));
+		assertTrue(promoter.getRegisterVariables().isEmpty());
+	}
+
+	@Test
+	public void loadsInitialValueBeforeLabels()
+	{
+		assertEquals(Arrays.asList("load x(fp)", "Start:add", "jnzer"), promote(
+				instr("Start", "add", v1, 1, "x", VirtualRegister.FP),
+				instr(null, "jnzer", v1, 0, "Start", null)));
+		assertTrue(promoter.getRegisterVariables().isEmpty());
+		assertSame(instructions.get(0).leftReg, instructions.get(1).rightReg);
+	}
+}
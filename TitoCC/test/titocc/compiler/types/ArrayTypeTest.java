@@ -1,6 +1,7 @@
 package titocc.compiler.types;
 
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,7 +13,7 @@ public class ArrayTypeTest
 	@Before
 	public void setUp()
 	{
-		t = new ArrayType(new ArrayType(CType.INT, 6), 7);
+		t = CType.array(CType.array(CType.INT, 6), 7);
 	}
 
 	@Test
@@ -47,19 +48,56 @@ public class ArrayTypeTest
 	@Test
 	public void decayReturnsCorrectType()
 	{
-		assertEquals(new PointerType(new ArrayType(CType.INT, 6)), t.decay());
+		assertEquals(CType.pointer(CType.array(CType.INT, 6)), t.decay());
 	}
 
 	@Test
 	public void equalsWorksCorrectly()
 	{
-		assertTrue(t.equals(new ArrayType(new ArrayType(CType.INT, 6), 7)));
-		assertFalse(t.equals(new ArrayType(new ArrayType(CType.INT, 5), 7)));
-		assertFalse(t.equals(new ArrayType(new ArrayType(CType.INT, 6), 8)));
+		assertTrue(t.equals(CType.array(CType.array(CType.INT, 6), 7)));
+		assertFalse(t.equals(CType.array(CType.array(CType.INT, 5), 7)));
+		assertFalse(t.equals(CType.array(CType.array(CType.INT, 6), 8)));
 		assertFalse(t.equals(CType.INT));
 		assertFalse(t.equals(CType.VOID));
-		assertFalse(t.equals(new PointerType(new ArrayType(CType.INT, 6))));
-		assertFalse(t.equals(new FunctionType(CType.VOID, new ArrayList<CType>())));
-		assertFalse(t.equals(new InvalidType()));
+		assertFalse(t.equals(CType.pointer(CType.array(CType.INT, 6))));
+		assertFalse(t.equals(CType.function(CType.VOID, new ArrayList<CType>())));
+		assertFalse(t.equals(CType.INVALID));
+	}
+
+	@Test
+	public void typesInternedInParallelAreSameInstance() throws InterruptedException
+	{
+		// Each thread creates the same new array and pointer types at the same time.
+		final int threadCount = 4;
+		final int typeCount = 1000;
+		final CType[][] types = new CType[threadCount][typeCount];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; ++i) {
+			final CType[] results = types[i];
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < typeCount; ++j)
+						results[j] = CType.pointer(CType.array(CType.SHORT, 100000 + j));
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		for (int i = 1; i < threadCount; ++i) {
+			for (int j = 0; j < typeCount; ++j)
+				assertSame(types[0][j], types[i][j]);
+		}
 	}
 }
@@ -17,7 +17,7 @@ public class FunctionTypeTest
 	{
 		params = new ArrayList<CType>();
 		params.add(CType.INT);
-		t = new FunctionType(CType.INT, params);
+		t = CType.function(CType.INT, params);
 	}
 
 	@Test
@@ -52,21 +52,31 @@ public class FunctionTypeTest
 	@Test
 	public void decayReturnsCorrectType()
 	{
-		assertEquals(new PointerType(t), t.decay());
+		assertEquals(CType.pointer(t), t.decay());
 	}
 
 	@Test
 	public void equalsWorksCorrectly()
 	{
-		assertFalse(t.equals(new ArrayType(new ArrayType(CType.INT, 6), 7)));
+		assertFalse(t.equals(CType.array(CType.array(CType.INT, 6), 7)));
 		assertFalse(t.equals(CType.INT));
 		assertFalse(t.equals(CType.VOID));
-		assertFalse(t.equals(new PointerType(new ArrayType(CType.INT, 6))));
-		assertTrue(t.equals(new FunctionType(CType.INT, params)));
+		assertFalse(t.equals(CType.pointer(CType.array(CType.INT, 6))));
+		assertTrue(t.equals(CType.function(CType.INT, params)));
 		List<CType> params2 = new ArrayList<CType>();
-		params2.add(new PointerType(CType.INT));
-		assertFalse(t.equals(new FunctionType(CType.INT, params2)));
-		assertFalse(t.equals(new FunctionType(CType.VOID, params)));
-		assertFalse(t.equals(new InvalidType()));
+		params2.add(CType.pointer(CType.INT));
+		assertFalse(t.equals(CType.function(CType.INT, params2)));
+		assertFalse(t.equals(CType.function(CType.VOID, params)));
+		assertFalse(t.equals(CType.INVALID));
+	}
+
+	@Test
+	public void structurallyEqualTypesAreSameInstance()
+	{
+		List<CType> params2 = new ArrayList<CType>(params);
+		assertSame(t, CType.function(CType.INT, params2));
+		params2.add(CType.INT);
+		assertNotSame(t, CType.function(CType.INT, params2));
+		assertEquals(1, ((FunctionType) t).getParameterTypes().size());
 	}
 }
@@ -53,11 +53,11 @@ public class IntTypeTest
 	@Test
 	public void equalsWorksCorrectly()
 	{
-		assertFalse(t.equals(new ArrayType(new ArrayType(CType.INT, 6), 7)));
+		assertFalse(t.equals(CType.array(CType.array(CType.INT, 6), 7)));
 		assertTrue(t.equals(CType.INT));
 		assertFalse(t.equals(CType.VOID));
-		assertFalse(t.equals(new PointerType(new ArrayType(CType.INT, 6))));
-		assertFalse(t.equals(new FunctionType(CType.VOID, new ArrayList<CType>())));
-		assertFalse(t.equals(new InvalidType()));
+		assertFalse(t.equals(CType.pointer(CType.array(CType.INT, 6))));
+		assertFalse(t.equals(CType.function(CType.VOID, new ArrayList<CType>())));
+		assertFalse(t.equals(CType.INVALID));
 	}
 }
@@ -12,7 +12,7 @@ public class PointerTypeTest
 	@Before
 	public void setUp()
 	{
-		t = new PointerType(new ArrayType(CType.INT, 6));
+		t = CType.pointer(CType.array(CType.INT, 6));
 	}
 
 	@Test
@@ -41,7 +41,7 @@ public class PointerTypeTest
 	@Test
 	public void dereferenceReturnsCorrectType()
 	{
-		assertEquals(new ArrayType(CType.INT, 6), t.dereference());
+		assertEquals(CType.array(CType.INT, 6), t.dereference());
 	}
 
 	@Test
@@ -53,12 +53,19 @@ public class PointerTypeTest
 	@Test
 	public void equalsWorksCorrectly()
 	{
-		assertFalse(t.equals(new ArrayType(new ArrayType(CType.INT, 6), 7)));
+		assertFalse(t.equals(CType.array(CType.array(CType.INT, 6), 7)));
 		assertFalse(t.equals(CType.INT));
 		assertFalse(t.equals(CType.VOID));
-		assertTrue(t.equals(new PointerType(new ArrayType(CType.INT, 6))));
-		assertFalse(t.equals(new PointerType(new ArrayType(CType.INT, 5))));
-		assertFalse(t.equals(new FunctionType(CType.VOID, new ArrayList<CType>())));
-		assertFalse(t.equals(new InvalidType()));
+		assertTrue(t.equals(CType.pointer(CType.array(CType.INT, 6))));
+		assertFalse(t.equals(CType.pointer(CType.array(CType.INT, 5))));
+		assertFalse(t.equals(CType.function(CType.VOID, new ArrayList<CType>())));
+		assertFalse(t.equals(CType.INVALID));
+	}
+
+	@Test
+	public void structurallyEqualTypesAreSameInstance()
+	{
+		assertSame(t, CType.pointer(CType.array(CType.INT, 6)));
+		assertSame(t.dereference(), CType.array(CType.INT, 6));
 	}
 }
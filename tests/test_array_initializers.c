@@ -0,0 +1,92 @@
+int* stackCheckVarLoc;
+
+int primes[] = { 2, 3, 5, 7, 11 };
+int matrix[3][2] = { { 1, 2 }, { 3 } };
+int flat[2][3] = { 1, 2, 3, 4 };
+int table[100] = { 5, 6 };
+unsigned wide[3] = { 0x12345678, -1, 70000 };
+char greeting[] = "hello";
+char exact[3] = "abc";
+char names[2][4] = { "ab", { 'c', 'd' } };
+int scalarInBraces = { 42 };
+
+int sum(int* a, int n)
+{
+	int s = 0;
+	int i;
+	for (i = 0; i < n; ++i)
+		s += a[i];
+	return s;
+}
+
+int main() {
+	// Variable for testing stack integrity.
+	int stackCheckVar = 987654321;
+	stackCheckVarLoc = &stackCheckVar;
+
+	// Static: length from initializer
+	out(primes[4] == 11 && sum(primes, 5) == 28);
+
+	// Static: nested and partial initializers
+	out(matrix[0][1] == 2 && matrix[1][0] == 3 && matrix[1][1] == 0 && matrix[2][0] == 0);
+
+	// Static: braces omitted for subarrays
+	out(flat[0][2] == 3 && flat[1][0] == 4 && flat[1][1] == 0 && flat[1][2] == 0);
+
+	// Static: zero tail
+	out(table[0] == 5 && table[1] == 6 && sum(table, 100) == 11);
+
+	// Static: values that don't fit in immediate operands, converted to element type
+	out(wide[0] == 0x12345678 && wide[1] == 0xffffffff && wide[2] == 70000);
+
+	// Static: string initializers
+	out(greeting[0] == 'h' && greeting[4] == 'o' && greeting[5] == 0);
+	out(exact[0] == 'a' && exact[2] == 'c');
+	out(names[0][0] == 'a' && names[0][2] == 0 && names[1][1] == 'd' && names[1][3] == 0);
+
+	// Static: scalar initializer in braces
+	out(scalarInBraces == 42);
+
+	// Static local array
+	{
+		static int counts[4] = { 1, 2 };
+		counts[3] += 1;
+		out(counts[0] == 1 && counts[1] == 2 && counts[2] == 0 && counts[3] == 1);
+	}
+
+	// Automatic: values computed at run time
+	{
+		int x = 7;
+		int a[] = { x, x * 2, sum(primes, 2) };
+		out(a[0] == 7 && a[1] == 14 && a[2] == 5);
+	}
+
+	// Automatic: nested, partial and zero-filled
+	{
+		int i;
+		for (i = 0; i < 2; ++i) {
+			int m[2][3] = { { i }, { 4, 5 } };
+			m[0][1] = 9;
+			out(m[0][0] == i && m[0][1] == 9 && m[0][2] == 0 && m[1][1] == 5 && m[1][2] == 0);
+		}
+	}
+
+	// Automatic: long zero tail
+	{
+		int big[50] = { 1, 2, 3 };
+		big[49] += 4;
+		out(sum(big, 50) == 10 && big[10] == 0);
+	}
+
+	// Automatic: string initializer
+	{
+		char s[8] = "abc";
+		out(s[0] == 'a' && s[2] == 'c' && s[3] == 0 && s[7] == 0);
+	}
+
+	// Stack integrity checks.
+	out(stackCheckVar == 987654321);
+	out(&stackCheckVar == stackCheckVarLoc);
+
+	return 0;
+}
@@ -38,6 +38,24 @@ int recursiveFactorial(int n)
 		return n * recursiveFactorial(n - 1);
 }
 
+int tailRecursiveSum(int n, int acc)
+{
+	if(n == 0)
+		return acc;
+	return tailRecursiveSum(n - 1, acc + n);
+}
+
+// Tail call that passes a pointer to a local variable.
+int tailRecursiveCheck(int* p, int n)
+{
+	int a = n;
+	if(p != 0 && *p != n + 1)
+		return 0;
+	if(n == 0)
+		return 1;
+	return tailRecursiveCheck(&a, n - 1);
+}
+
 // Using variable name in initializer (undefined behavior but must compile).
 void scope_start_test1(int scope_start_test1)
 {
@@ -138,6 +156,10 @@ int main()
 	// Recursive function call
 	out(recursiveFactorial(3) == 6);
 
+	// Recursive function call in tail position
+	out(tailRecursiveSum(1000, 0) == 500500);
+	out(tailRecursiveCheck(0, 5));
+
 	// Calling function with return statement in middle of function
 	gok = 0;
 	voidFunc2();
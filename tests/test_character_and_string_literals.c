@@ -41,4 +41,14 @@ int main()
 	// String literal: taking address
 	char (*s2)[4] = &"xy""z";
 	out((*s2)[0] == 'x');
-}
\ No newline at end of file
+
+	// String literal: identical and suffix literals share storage
+	s = "hello world";
+	char* t = "world";
+	out(t[0] == 'w');
+	out(t[5] == '\0');
+	out(s[6] == 'w');
+	out("hello world" == s);
+	out(t == s + 6);
+	out("d" == t + 4);
+}
@@ -166,8 +166,13 @@ extern int x29 = -29;
 int f30(register int a) { a = 30 * a; return a; }
 void TEST30() { out(f30(1) == 30); }
 
-void TEST31() { }
-void TEST32() { }
+// Inline function.
+inline int f31(int a) { if (a < 0) return -31 * a; return 31 * a; }
+void TEST31() { out(f31(1) == 31 && f31(-2) == 62); }
+
+// Static inline function with local variables, called recursively.
+static inline int f32(int a) { int b = a; if (b > 1) b = b + f32(a - 1); return b; }
+void TEST32() { out(f32(1) == 1 && f32(4) == 10); }
 void TEST33() { }
 void TEST34() { }
 void TEST35() { }
@@ -31,6 +31,12 @@ int f5(int a[2], int b(int))
 	return (a[0] == -a[1]) && ((*b)(3) == 6);
 }
 
+// Function with internal linkage
+static int f6(int a, int b)
+{
+	return a * f1(b) + 1;
+}
+
 // Named and unnamed parameters in function prototypes
 void (*p1)(int);
 void (*p2)(int a, int);
@@ -140,6 +146,16 @@ int main() {
 		out(r);
 	}
 
+	// Pointers to function with internal linkage
+	{
+		int (*p)(int, int) = f6;
+		out(f6(3, 4) == 25);
+		out(p(2, 5) == 21);
+		out((*p)(f6(1, 1), 1) == 7);
+		out(p == &f6);
+		out(p != 0);
+	}
+
 	// Stack integrity checks.
 	out(stackCheckVar == 987654321);
 	out(&stackCheckVar == stackCheckVarLoc);
@@ -127,5 +127,25 @@ int main()
 	a = 4222111000u; out((a <<= 25) == 805306368u && a == 805306368u);
 	a = 4222111000u; out((a >>= 17) == 32212u && a == 32212u);
 
+	// Constant operands: identities and powers of two
+	int s = -29;
+	int t = 29;
+	out(s * 1 == -29 && s + 0 == -29 && s - 0 == -29 && (s | 0) == -29 && (s ^ 0) == -29);
+	out(s * 0 == 0 && (s & 0) == 0 && (s & -1) == -29 && s / 1 == -29 && s % 1 == 0);
+	out(s * 8 == -232 && t * 8 == 232 && s * 2 == -58);
+	out(s / 2 == -14 && t / 2 == 14 && s / 8 == -3 && t / 8 == 3 && s / 32 == 0);
+	out(s % 2 == -1 && t % 2 == 1 && s % 8 == -5 && t % 8 == 5 && s % -8 == -5);
+	s = -32; out(s / 8 == -4 && s % 8 == 0 && s / 16384 == 0 && s % 16384 == -32);
+	s = -29; s /= 4; t = 29; t %= 4; out(s == -7 && t == 1);
+	a = 4222111000u; out(a / 8 == 527763875u && a % 8 == 0 && a / 1 == a && a % 1 == 0);
+	a = 4222111001u; out(a / 65536 == 64424u && a % 65536 == 19737u);
+	out(a % 2147483648u == 2074627353u && a / 2147483648u == 1);
+	a = 4222111000u; out((a /= 16) == 263881937u && (a %= 32) == 17u);
+	out(-s == 7 && -(s * 2) == 14 && -a == 4294967279u);
+	a = 4222111001u; out(a / 7 == 603158714u && a % 7 == 3u);
+	out(a / 40000 == 105552u && a % 40000 == 31001u);
+	out(a / 3000000000u == 1 && a % 3000000000u == 1222111001u && a / 4222111002u == 0);
+	a = 1234567; out(a / 7 == 176366u && a % 7 == 5u && a % 3000000000u == 1234567u);
+
 	return 0;
 }
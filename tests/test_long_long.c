@@ -0,0 +1,301 @@
+int* stackCheckVarLoc;
+
+long long gs = -5;
+unsigned long long gu = 0x123456789abcdef0ull;
+long long garr[3] = { 1, -2, 0x100000000 };
+
+long long add(long long a, long long b)
+{
+	return a + b;
+}
+
+unsigned long long mulu(unsigned long long a, unsigned long long b)
+{
+	return a * b;
+}
+
+static long long neg(long long a)
+{
+	return -a;
+}
+
+long long fact(int n)
+{
+	if (n <= 1)
+		return 1;
+	return n * fact(n - 1);
+}
+
+unsigned long long fnv(char* s)
+{
+	unsigned long long h = 0xcbf29ce484222325ull;
+	while (*s) {
+		h ^= *s++;
+		h *= 0x100000001b3ull;
+	}
+	return h;
+}
+
+int sclass(long long x)
+{
+	switch (x) {
+	case -0x100000000ll:
+		return 1;
+	case -1:
+		return 2;
+	case 0:
+		return 3;
+	case 5: case 6: case 8: case 9:
+		return 4;
+	case 0x7ffffffe: case 0x7fffffff: case 0x80000000: case 0x80000001:
+		return 5;
+	case 0xfffffffe: case 0xffffffff: case 0x100000000: case 0x100000001:
+		return 6;
+	case 0x100000005ll:
+		return 7;
+	case 0x7fffffffffffffffll:
+		return 8;
+	case 0x8000000000000000ll:
+		return 9;
+	default:
+		return 0;
+	}
+}
+
+int uclass(unsigned long long x)
+{
+	int r = 0;
+	switch (x) {
+	case 0:
+		r = 1;
+		break;
+	case 0x8000000000000000ull:
+		r = 2;
+		break;
+	case 0xffffffffffffffffull:
+		r = 3;
+		break;
+	case 0x500000001ull: case 0x500000002ull: case 0x500000003ull: case 0x500000004ull:
+		r = 4;
+		break;
+	case 0x600000001ull:
+		r = 5;
+	}
+	return r;
+}
+
+int main() {
+	// Variable for testing stack integrity.
+	int stackCheckVar = 987654321;
+	stackCheckVarLoc = &stackCheckVar;
+
+	// Static objects
+	out(gs == -5 && gs < 0);
+	out(gu == 0x123456789abcdef0ull);
+	out(garr[0] == 1 && garr[1] == -2 && garr[2] == 4294967296);
+
+	// Addition and subtraction with carry and borrow
+	{
+		unsigned long long a = 0xffffffff;
+		unsigned long long b = a + 1;
+		long long c = -1;
+		out(b == 0x100000000 && (b >> 32) == 1);
+		out(b - 1 == a);
+		out(c + 1 == 0 && c - 1 == -2);
+		out(add(0x7fffffff, 0x7fffffff) == 0xfffffffe);
+		out(add(-0x80000000ll, -1) == -0x80000001ll);
+		out(add(0x80000000, 0x80000000) == 0x100000000);
+		out(0x100000000ull - 0x80000001 == 0x7fffffff);
+		out(0xffffffffffffffffull + 1 == 0);
+		out(0 - 1ull == 0xffffffffffffffffull);
+	}
+
+	// Increment and decrement
+	{
+		long long a = 0xffffffff;
+		long long b = 0x100000000;
+		out(++a == 0x100000000 && a == 0x100000000);
+		out(b-- == 0x100000000 && b == 0xffffffff);
+		out(--b == 0xfffffffe);
+		a = -1;
+		a++;
+		out(a == 0);
+		a--;
+		out(a == -1);
+	}
+
+	// Comparisons
+	{
+		long long a = -1;
+		long long b = 1;
+		unsigned long long ua = -1;
+		unsigned long long ub = 1;
+		out(a < b && b > a && a <= b && b >= a && a != b);
+		out(ua > ub && ub < ua && !(ua < ub));
+		out(0x100000000 > 0xffffffff && 0xffffffff < 0x100000000);
+		out(-0x100000000ll < -0xffffffffll);
+		out((0x100000001 == 0x100000000) == 0 && (0x100000001 != 1) == 1);
+		out(a == a && !(a != a) && a <= a && a >= a);
+		out(0x180000000ull > 0x100000000ull && 0x100000000 > 0x80000000u);
+	}
+
+	// Negation and bitwise operators
+	{
+		long long a = 0x100000000;
+		out(-a == -4294967296 && neg(-a) == a);
+		out(-0 == 0 && neg(1) == -1 && neg(0x80000000) == -2147483648);
+		out(~0ll == -1 && ~a == -4294967297);
+		out((0xff00ff00ff00ff00ull & 0x0ff00ff00ff00ff0ull) == 0x0f000f000f000f00ull);
+		out((0xff00000000ull | 0xff) == 0xff000000ffull);
+		out((0xffffffff00000000ull ^ 0xffffffffffffffffull) == 0xffffffff);
+		out(!a == 0 && !(a - a) == 1);
+		if (a)
+			out(1);
+		else
+			out(0);
+	}
+
+	// Shifts by constants
+	{
+		unsigned long long u = 0x8000000000000001ull;
+		long long s = -0x100000000ll;
+		out((u << 1) == 2 && (u >> 1) == 0x4000000000000000ull);
+		out((u << 32) == 0x100000000ull && (u >> 32) == 0x80000000u);
+		out((u << 63) == 0x8000000000000000ull && (u >> 63) == 1);
+		out((u << 0) == u && (1ull << 40) == 0x10000000000ull);
+		out((s >> 1) == -0x80000000ll && (s >> 32) == -1 && (s >> 40) == -1);
+		out((0x123456789ll >> 4) == 0x12345678 && (0x123456789ll << 4) == 0x1234567890ll);
+		out((0x7000000000000000ll >> 60) == 7 && (0x7000000000000000ll >> 33) == 0x38000000);
+	}
+
+	// Shifts by variables
+	{
+		unsigned long long u = 0x8000000000000001ull;
+		long long s = -0x100000000ll;
+		int i;
+		int ok = 1;
+		for (i = 0; i < 64; ++i) {
+			if ((1ull << i) >> i != 1)
+				ok = 0;
+			if (i > 0 && ((u >> i) << i) != 0x8000000000000000ull)
+				ok = 0;
+			if ((s >> i) >= 0)
+				ok = 0;
+		}
+		out(ok);
+		i = 31;
+		out((u << i) == 0x80000000ull && (u >> i) == 0x100000000ull);
+		i = 33;
+		out((u << i) == 0x200000000ull && (s >> i) == -1);
+		u = 0x0123456789abcdefull;
+		u <<= i;
+		out(u == 0x13579bde00000000ull);
+		s >>= 4;
+		out(s == -0x10000000ll);
+	}
+
+	// Multiplication
+	{
+		unsigned long long a = 0xffffffff;
+		long long b = -3;
+		out(a * a == 0xfffffffe00000001ull);
+		out(mulu(0x123456789ull, 0x987654321ull) == 0xd77d742cce1833a9ull);
+		out(b * 7 == -21 && b * b == 9 && b * -b == -9);
+		out(a * 3 == 0x2fffffffdull && a * 1000 == 0x3e7fffffc18ull);
+		out(a * 16 == 0xffffffff0ull && a * 0 == 0 && a * 1 == a);
+		out(fact(20) == 2432902008176640000ll);
+		out(0x100000000ll * 0x100000000ll == 0);
+		out(fnv("a") != 0xcbf29ce484222325ull);
+		out(fnv("a") == 0xaf63dc4c8601ec8cull);
+		out(fnv("foobar") == 0x85944171f73967e8ull);
+	}
+
+	// Division and remainder
+	{
+		unsigned long long a = 0xfedcba9876543210ull;
+		long long b = -1000000000000ll;
+		out(a / 10 == 0x197c790f3f086b68ull && a % 10 == 0);
+		out(a / 0x123456789ull == 0xe0000000ull && a % 0x123456789ull == 0x96543210ull);
+		out(a / 3 == 0x54f43e32d21c10b0ull && a % 3 == 0);
+		out(a / 0x10000 == 0xfedcba987654ull && a % 0x10000 == 0x3210);
+		out(a / 0x100000000ull == 0xfedcba98ull && a % 0x100000000ull == 0x76543210);
+		out(a / a == 1 && a % a == 0 && 5 / a == 0 && 5 % a == 5);
+		out(a / 0x8000000000000000ull == 1 && a / 65537 == 0xfedbbbbcba97ull);
+		out(b / 7 == -142857142857ll && b % 7 == -1);
+		out(b / -7 == 142857142857ll && -b % 7 == 1);
+		out(-b / -7 == -142857142857ll && b / b == 1);
+		out(1000ll / 7 == 142 && 1000ll % 7 == 6);
+		a = 12345678901234567ull;
+		a /= 1000;
+		out(a == 12345678901234ull);
+		a %= 1000;
+		out(a == 234);
+	}
+
+	// Conversions
+	{
+		int i = -2;
+		unsigned u = 0xfffffffe;
+		long long a = i;
+		long long b = u;
+		unsigned long long c = i;
+		char* p = 0;
+		out(a == -2 && b == 4294967294 && c == 0xfffffffffffffffeull);
+		out((int) 0x1ffffffffll == -1 && (unsigned) 0x123456789ull == 0x23456789);
+		out((char) 0x100000041ll == 'A');
+		out((long long) -1 == -1 && (unsigned long long) (unsigned) -1 == 0xffffffff);
+		out(a + i == -4 && u + 2ll == 0x100000000);
+		out(p + 3ll == (char*) 3 && (long long) (p + 5) == 5);
+	}
+
+	// Arrays and pointers
+	{
+		long long arr[4] = { 1, 0x100000000, -1 };
+		long long* q = arr;
+		out(arr[1] == 0x100000000 && arr[2] == -1 && arr[3] == 0);
+		out(*(q + 1) == 0x100000000 && q[2] == -1);
+		q[3] = 0x123456789;
+		arr[0] += 0xffffffff;
+		out(arr[3] == 0x123456789 && arr[0] == 0x100000000);
+		out(&arr[3] - &arr[0] == 3);
+	}
+
+	// Conditions
+	{
+		long long a = 0x100000000;
+		int n = 0;
+		while (a) {
+			a >>= 8;
+			++n;
+		}
+		out(n == 5);
+		out(a == 0 || a < 0);
+	}
+
+	// Switch
+	{
+		out(sclass(-0x100000000ll) == 1 && sclass(-0xffffffffll) == 0 && sclass(-1) == 2);
+		out(sclass(0) == 3 && sclass(1) == 0 && sclass(5) == 4 && sclass(6) == 4 && sclass(7) == 0);
+		out(sclass(8) == 4 && sclass(9) == 4 && sclass(10) == 0 && sclass(0x7ffffffd) == 0);
+		out(sclass(0x7ffffffe) == 5 && sclass(0x80000000) == 5 && sclass(0x80000001) == 5);
+		out(sclass(0x80000002) == 0 && sclass(0xfffffffd) == 0 && sclass(0xfffffffe) == 6);
+		out(sclass(0xffffffff) == 6 && sclass(0x100000000ll) == 6 && sclass(0x100000001ll) == 6);
+		out(sclass(0x100000002ll) == 0 && sclass(0x100000005ll) == 7 && sclass(0x200000005ll) == 0);
+		out(sclass(0x7fffffffffffffffll) == 8 && sclass(-0x7fffffffffffffffll - 1) == 9);
+		out(sclass(-0x7fffffffffffffffll) == 0 && sclass(-0x100000001ll) == 0);
+		out(sclass(5 + 0x100000000ll) == 7);
+		out(uclass(0) == 1 && uclass(1) == 0 && uclass(0x8000000000000000ull) == 2);
+		out(uclass(0x7fffffffffffffffull) == 0 && uclass(0xffffffffffffffffull) == 3);
+		out(uclass(0xfffffffffffffffeull) == 0 && uclass(0x500000000ull) == 0);
+		out(uclass(0x500000001ull) == 4 && uclass(0x500000003ull) == 4);
+		out(uclass(0x500000004ull) == 4 && uclass(0x500000005ull) == 0);
+		out(uclass(0x400000002ull) == 0 && uclass(0x600000001ull) == 5 && uclass(0x1ull) == 0);
+		out(uclass(0x100000000ull) == 0);
+	}
+
+	// Stack integrity checks.
+	out(stackCheckVar == 987654321);
+	out(&stackCheckVar == stackCheckVarLoc);
+
+	return 0;
+}
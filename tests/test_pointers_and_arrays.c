@@ -119,6 +119,17 @@ int main()
 	out((p3 += 1) == p2 && p3 == p2);
 	out((p3 -= 1) == p1 && p3 == p1);
 
+	// Runtime helpers for copying and filling memory.
+	int src[5] = { 1, 2, 3, 4, 5 };
+	int dst[6] = { 9, 9, 9, 9, 9, 9 };
+	__memcpy(dst, src, 5);
+	out(dst[0] == 1 && dst[4] == 5 && dst[5] == 9);
+	__memset(dst + 1, -7, 3);
+	out(dst[0] == 1 && dst[1] == -7 && dst[3] == -7 && dst[4] == 5);
+	__memcpy(dst, src, 0);
+	__memset(dst, 0, -1);
+	out(dst[0] == 1 && dst[1] == -7);
+
 	out(&fpCheckVar == fpCheckVarLoc);
 
 }
@@ -0,0 +1,181 @@
+int* stackCheckVarLoc;
+
+// Dense cases (jump table).
+int dense(int x)
+{
+	switch (x) {
+	case 1: return 10;
+	case 2: return 20;
+	case 3: return 30;
+	case 5: return 50;
+	case 6: return 60;
+	default: return -1;
+	}
+}
+
+// Sparse cases (binary search).
+int sparse(int x)
+{
+	switch (x) {
+	case -1000000: return 1;
+	case -7: return 2;
+	case 0: return 3;
+	case 12: return 4;
+	case 300: return 5;
+	case 4000: return 6;
+	case 100000: return 7;
+	case 2147483647: return 8;
+	}
+	return 0;
+}
+
+// Dense cluster among sparse cases.
+int mixed(int x)
+{
+	int r = 0;
+	switch (x) {
+	case 10: r = 1; break;
+	case 11: r = 2; break;
+	case 12: r = 3; break;
+	case 13: r = 4; break;
+	case 14: r = 5; break;
+	case 500: r = 6; break;
+	case -500: r = 7; break;
+	case 9000: r = 8; break;
+	}
+	return r;
+}
+
+int fallthrough(int x)
+{
+	int r = 0;
+	switch (x) {
+	case 0:
+		r += 1;
+	case 1:
+		r += 10;
+		break;
+	default:
+		r += 100;
+	case 2:
+		r += 1000;
+	}
+	return r;
+}
+
+int unsignedSwitch(unsigned x)
+{
+	switch (x) {
+	case 0: return 1;
+	case 1: return 2;
+	case 0x7fffffff: return 3;
+	case 0x80000000: return 4;
+	case 0xfffffffe: return 5;
+	case 0xffffffff: return 6;
+	}
+	return 0;
+}
+
+int charSwitch(char c)
+{
+	switch (c) {
+	case 'a': case 'e': case 'i': case 'o': case 'u':
+		return 1;
+	case ' ':
+		return 2;
+	default:
+		return 0;
+	}
+}
+
+// Case labels inside nested statements, nested switch and continue in a loop.
+int nested(int n)
+{
+	int i;
+	int r = 0;
+	for (i = 0; i < n; ++i) {
+		switch (i % 4) {
+		case 0:
+			if (i > 4) {
+		case 1:
+				r += 1;
+				break;
+			}
+			r += 10;
+			continue;
+		case 2:
+			switch (i) {
+			case 2: r += 100; break;
+			default: r += 1000;
+			}
+			break;
+		}
+		r += 10000;
+	}
+	return r;
+}
+
+int main()
+{
+	// Variable for testing stack integrity.
+	int stackCheckVar = 987654321;
+	stackCheckVarLoc = &stackCheckVar;
+
+	// Dense cases
+	out(dense(1) == 10 && dense(2) == 20 && dense(3) == 30);
+	out(dense(5) == 50 && dense(6) == 60);
+	out(dense(0) == -1 && dense(4) == -1 && dense(7) == -1);
+	out(dense(-2147483647 - 1) == -1 && dense(2147483647) == -1);
+
+	// Sparse cases
+	out(sparse(-1000000) == 1 && sparse(-7) == 2 && sparse(0) == 3 && sparse(12) == 4);
+	out(sparse(300) == 5 && sparse(4000) == 6 && sparse(100000) == 7);
+	out(sparse(2147483647) == 8);
+	out(sparse(1) == 0 && sparse(-8) == 0 && sparse(2147483646) == 0);
+
+	// Dense and sparse cases
+	out(mixed(10) == 1 && mixed(12) == 3 && mixed(14) == 5);
+	out(mixed(500) == 6 && mixed(-500) == 7 && mixed(9000) == 8);
+	out(mixed(9) == 0 && mixed(15) == 0 && mixed(0) == 0);
+
+	// Fall through and default in the middle
+	out(fallthrough(0) == 11 && fallthrough(1) == 10);
+	out(fallthrough(2) == 1000 && fallthrough(3) == 1100);
+
+	// Unsigned control expression
+	out(unsignedSwitch(0) == 1 && unsignedSwitch(1) == 2);
+	out(unsignedSwitch(0x7fffffff) == 3 && unsignedSwitch(0x80000000) == 4);
+	out(unsignedSwitch(0xfffffffe) == 5 && unsignedSwitch(0xffffffff) == 6);
+	out(unsignedSwitch(2) == 0 && unsignedSwitch(0x80000001) == 0);
+
+	// Promoted char control expression
+	out(charSwitch('a') == 1 && charSwitch('u') == 1);
+	out(charSwitch(' ') == 2 && charSwitch('b') == 0);
+
+	// Labels in nested statements
+	out(nested(8) == 61122);
+
+	// Switch without cases evaluates the control expression
+	{
+		int a = 0;
+		switch (++a)
+			;
+		out(a == 1);
+	}
+
+	// Only default
+	{
+		int a = 0;
+		switch (a) {
+		default:
+			a = 5;
+		}
+		out(a == 5);
+	}
+
+	// Stack integrity checks.
+	out(stackCheckVar == 987654321);
+	out(stackCheckVarLoc == &stackCheckVar);
+
+	return 0;
+}